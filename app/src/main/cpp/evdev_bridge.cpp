@@ -0,0 +1,484 @@
+#include "evdev_bridge.h"
+#include "uinput_frame.h"
+
+#include <atomic>
+#include <mutex>
+#include <ctype.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <unistd.h>
+#include <linux/input.h>
+#include <sys/epoll.h>
+#include <sys/eventfd.h>
+#include <sys/ioctl.h>
+
+// Сколько событий забирается одним read() с источника
+#define JCM_READ_BATCH 64
+
+// Метка eventfd остановки в epoll (источники помечаются индексом)
+#define JCM_STOP_TOKEN 0xFFFFFFFFu
+
+#define JCM_AXIS_MAX 32767
+
+struct jcm_bridge {
+    int output_fd;
+    int epoll_fd;
+    int stop_fd;
+
+    int sources[JCM_BRIDGE_MAX_SOURCES];
+    // После SYN_DROPPED события источника пропускаются до SYN_REPORT
+    bool dropping[JCM_BRIDGE_MAX_SOURCES];
+    // Начало события, недочитанного прошлым read(): evdev отдаёт события целиком,
+    // а pipe и сокет могут разрезать их на любой границе
+    unsigned char partial[JCM_BRIDGE_MAX_SOURCES][sizeof(struct input_event)];
+    int partial_bytes[JCM_BRIDGE_MAX_SOURCES];
+    int source_count;
+
+    // Таблицы читает только поток моста; новые кладутся в pending под мьютексом
+    jcm_bridge_tables tables;
+    jcm_bridge_tables pending;
+    std::mutex pending_lock;
+    std::atomic<bool> pending_ready;
+    std::atomic<bool> stopped;
+
+    // Кнопка, отправленная нажатием, по скан-коду: отпускание уходит туда же,
+    // даже если таблицы сменились, пока кнопка была зажата
+    int pressed[JCM_SCAN_LIMIT - JCM_SCAN_BASE];
+    // Источник, нажавший кнопку: при его отключении кнопка отпускается
+    signed char pressed_by[JCM_SCAN_LIMIT - JCM_SCAN_BASE];
+
+    // Состояние стиков: сырое с устройств, после мёртвой зоны и последнее отправленное
+    int raw[JCM_AXIS_COUNT];
+    int current[JCM_AXIS_COUNT];
+    int last_emitted[JCM_AXIS_COUNT];
+    bool axes_dirty;
+    // Оси, приходившие от источника (бит на ось): при отключении они центрируются
+    unsigned axis_owner[JCM_BRIDGE_MAX_SOURCES];
+
+    // Кадр копится по всем источникам за одно пробуждение epoll и уходит одним write().
+    // committed - граница последнего полного пакета (SYN_REPORT)
+    int frame[JCM_MAX_FRAME_EVENTS * JCM_FRAME_STRIDE];
+    int frame_count;
+    int committed;
+
+    // Пишет только поток моста, читает Java
+    std::atomic<uint64_t> events_in;
+    std::atomic<uint64_t> reads;
+    std::atomic<uint64_t> frames_out;
+    std::atomic<uint64_t> events_out;
+    std::atomic<uint64_t> write_errors;
+    std::atomic<uint64_t> sync_dropped;
+    std::atomic<uint64_t> sources_lost;
+};
+
+// Единственный писатель, поэтому хватает load + store без RMW
+static inline void bump(std::atomic<uint64_t> &counter, uint64_t delta) {
+    counter.store(counter.load(std::memory_order_relaxed) + delta, std::memory_order_relaxed);
+}
+
+static int axis_of(int code) {
+    switch (code) {
+        case ABS_X: return 0;
+        case ABS_Y: return 1;
+        case ABS_RX: return 2;
+        case ABS_RY: return 3;
+        default: return -1;
+    }
+}
+
+static const int AXIS_CODES[JCM_AXIS_COUNT] = { ABS_X, ABS_Y, ABS_RX, ABS_RY };
+
+jcm_bridge *jcm_bridge_create(int output_fd, const jcm_bridge_tables *tables) {
+    jcm_bridge *bridge = new jcm_bridge();
+    bridge->output_fd = output_fd;
+    bridge->tables = *tables;
+    bridge->pending_ready.store(false);
+    bridge->stopped.store(false);
+
+    bridge->epoll_fd = epoll_create1(EPOLL_CLOEXEC);
+    bridge->stop_fd = eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+    if (bridge->epoll_fd < 0 || bridge->stop_fd < 0) {
+        jcm_bridge_destroy(bridge);
+        return NULL;
+    }
+
+    struct epoll_event ev;
+    memset(&ev, 0, sizeof(ev));
+    ev.events = EPOLLIN;
+    ev.data.u32 = JCM_STOP_TOKEN;
+    if (epoll_ctl(bridge->epoll_fd, EPOLL_CTL_ADD, bridge->stop_fd, &ev) < 0) {
+        jcm_bridge_destroy(bridge);
+        return NULL;
+    }
+    return bridge;
+}
+
+int jcm_bridge_add_source(jcm_bridge *bridge, int fd) {
+    if (bridge->source_count >= JCM_BRIDGE_MAX_SOURCES) return -ENOSPC;
+
+    int index = bridge->source_count;
+    struct epoll_event ev;
+    memset(&ev, 0, sizeof(ev));
+    ev.events = EPOLLIN;
+    ev.data.u32 = (uint32_t) index;
+    if (epoll_ctl(bridge->epoll_fd, EPOLL_CTL_ADD, fd, &ev) < 0) {
+        return -errno;
+    }
+    bridge->sources[index] = fd;
+    bridge->dropping[index] = false;
+    bridge->partial_bytes[index] = 0;
+    bridge->source_count++;
+    return 0;
+}
+
+// То же правило, что в DeviceRegistry.classify: "Joy-Con" и сторона в имени
+static bool is_joycon_name(const char *name) {
+    char lower[256];
+    size_t i = 0;
+    for (; name[i] != '\0' && i < sizeof(lower) - 1; i++) {
+        lower[i] = (char) tolower((unsigned char) name[i]);
+    }
+    lower[i] = '\0';
+
+    if (strstr(lower, "joy-con") == NULL && strstr(lower, "joycon") == NULL) return false;
+    return strstr(lower, "left") != NULL || strstr(lower, "(l)") != NULL
+        || strstr(lower, "right") != NULL || strstr(lower, "(r)") != NULL;
+}
+
+int jcm_bridge_add_joycons(jcm_bridge *bridge, int grab) {
+    int added = 0;
+    for (int i = 0; i < 64 && bridge->source_count < JCM_BRIDGE_MAX_SOURCES; i++) {
+        char path[32];
+        snprintf(path, sizeof(path), "/dev/input/event%d", i);
+        int fd = open(path, O_RDONLY | O_NONBLOCK | O_CLOEXEC);
+        if (fd < 0) continue;
+
+        char name[256] = {0};
+        if (ioctl(fd, EVIOCGNAME(sizeof(name) - 1), name) < 0 || !is_joycon_name(name)) {
+            close(fd);
+            continue;
+        }
+        // IMU Joy-Con - отдельный узел с тем же именем и суффиксом "IMU".
+        // Его не захватываем: датчики читает Android для ImuPipeline
+        unsigned char props[INPUT_PROP_CNT / 8 + 1];
+        memset(props, 0, sizeof(props));
+        if (ioctl(fd, EVIOCGPROP(sizeof(props)), props) >= 0
+                && (props[INPUT_PROP_ACCELEROMETER / 8] & (1 << (INPUT_PROP_ACCELEROMETER % 8))) != 0) {
+            close(fd);
+            continue;
+        }
+        // Без захвата те же события пришли бы ещё и через Android - двойной ввод
+        if (grab && ioctl(fd, EVIOCGRAB, (void *) 1) < 0) {
+            close(fd);
+            continue;
+        }
+        if (jcm_bridge_add_source(bridge, fd) < 0) {
+            close(fd);
+            continue;
+        }
+        added++;
+    }
+    return added;
+}
+
+void jcm_bridge_set_tables(jcm_bridge *bridge, const jcm_bridge_tables *tables) {
+    std::lock_guard<std::mutex> guard(bridge->pending_lock);
+    bridge->pending = *tables;
+    bridge->pending_ready.store(true, std::memory_order_release);
+}
+
+void jcm_bridge_stop(jcm_bridge *bridge) {
+    bridge->stopped.store(true);
+    uint64_t one = 1;
+    ssize_t ignored = write(bridge->stop_fd, &one, sizeof(one));
+    (void) ignored;
+}
+
+void jcm_bridge_get_stats(jcm_bridge *bridge, jcm_bridge_stats *out) {
+    out->events_in = bridge->events_in.load(std::memory_order_relaxed);
+    out->reads = bridge->reads.load(std::memory_order_relaxed);
+    out->frames_out = bridge->frames_out.load(std::memory_order_relaxed);
+    out->events_out = bridge->events_out.load(std::memory_order_relaxed);
+    out->write_errors = bridge->write_errors.load(std::memory_order_relaxed);
+    out->sync_dropped = bridge->sync_dropped.load(std::memory_order_relaxed);
+    out->sources_lost = bridge->sources_lost.load(std::memory_order_relaxed);
+}
+
+void jcm_bridge_destroy(jcm_bridge *bridge) {
+    if (bridge == NULL) return;
+    for (int i = 0; i < bridge->source_count; i++) {
+        if (bridge->sources[i] >= 0) {
+            close(bridge->sources[i]);
+        }
+    }
+    if (bridge->epoll_fd >= 0) close(bridge->epoll_fd);
+    if (bridge->stop_fd >= 0) close(bridge->stop_fd);
+    delete bridge;
+}
+
+// Отправляет завершённые пакеты, незавершённый хвост остаётся в кадре
+static void flush_committed(jcm_bridge *bridge) {
+    int count = bridge->committed;
+    if (count == 0) return;
+
+    int result = jcm_write_frame(bridge->output_fd, bridge->frame, count);
+    if (result < 0) {
+        bump(bridge->write_errors, 1);
+    } else {
+        bump(bridge->frames_out, 1);
+        bump(bridge->events_out, (uint64_t) count);
+    }
+
+    int rest = bridge->frame_count - count;
+    if (rest > 0) {
+        memmove(bridge->frame, bridge->frame + count * JCM_FRAME_STRIDE,
+                sizeof(int) * rest * JCM_FRAME_STRIDE);
+    }
+    bridge->frame_count = rest;
+    bridge->committed = 0;
+}
+
+static void put_event(jcm_bridge *bridge, int type, int code, int value) {
+    // Кадр заполнен: сначала отправляем полные пакеты, и только если их нет -
+    // режем текущий пакет (в нём больше JCM_MAX_FRAME_EVENTS событий)
+    if (bridge->frame_count >= JCM_MAX_FRAME_EVENTS) {
+        flush_committed(bridge);
+        if (bridge->frame_count >= JCM_MAX_FRAME_EVENTS) {
+            bridge->committed = bridge->frame_count;
+            flush_committed(bridge);
+        }
+    }
+    int *entry = bridge->frame + bridge->frame_count * JCM_FRAME_STRIDE;
+    entry[0] = type;
+    entry[1] = code;
+    entry[2] = value;
+    bridge->frame_count++;
+}
+
+static void handle_key(jcm_bridge *bridge, int source, int code, int value) {
+    int index = code - JCM_SCAN_BASE;
+    if (index < 0 || index >= JCM_SCAN_LIMIT - JCM_SCAN_BASE) return;
+
+    if (value == 0) {
+        int target = bridge->pressed[index];
+        if (target != 0) {
+            bridge->pressed[index] = 0;
+            put_event(bridge, EV_KEY, target, 0);
+        }
+    } else if (value == 1) {
+        int target = bridge->tables.buttons[index];
+        if (target != 0) {
+            bridge->pressed[index] = target;
+            bridge->pressed_by[index] = (signed char) source;
+            put_event(bridge, EV_KEY, target, 1);
+        }
+    }
+    // value == 2 - автоповтор, геймпаду не нужен
+}
+
+static int clamp_axis(int value) {
+    if (value > JCM_AXIS_MAX) return JCM_AXIS_MAX;
+    if (value < -JCM_AXIS_MAX) return -JCM_AXIS_MAX;
+    return value;
+}
+
+static void apply_deadzone(jcm_bridge *bridge, int first_axis, int x, int y) {
+    long long deadzone = bridge->tables.deadzone;
+    long long distance_squared = (long long) x * x + (long long) y * y;
+    if (distance_squared < deadzone * deadzone) {
+        x = 0;
+        y = 0;
+    }
+    bridge->current[first_axis] = x;
+    bridge->current[first_axis + 1] = y;
+}
+
+// Та же логика гистерезиса, что в StickFilter.shouldEmit
+static bool should_emit(const jcm_bridge *bridge, int value, int last) {
+    if (value == last) return false;
+    if (value == 0 || value >= JCM_AXIS_MAX || value <= -JCM_AXIS_MAX) return true;
+    return abs(value - last) >= bridge->tables.threshold;
+}
+
+static void emit_axes(jcm_bridge *bridge) {
+    if (!bridge->axes_dirty) return;
+    bridge->axes_dirty = false;
+
+    int mapped[JCM_AXIS_COUNT];
+    for (int axis = 0; axis < JCM_AXIS_COUNT; axis++) {
+        mapped[axis] = clamp_axis(bridge->tables.axis_scale[axis]
+                                  * bridge->raw[bridge->tables.axis_source[axis]]);
+    }
+    apply_deadzone(bridge, 0, mapped[0], mapped[1]);
+    apply_deadzone(bridge, 2, mapped[2], mapped[3]);
+
+    for (int axis = 0; axis < JCM_AXIS_COUNT; axis++) {
+        if (should_emit(bridge, bridge->current[axis], bridge->last_emitted[axis])) {
+            bridge->last_emitted[axis] = bridge->current[axis];
+            put_event(bridge, EV_ABS, AXIS_CODES[axis], bridge->current[axis]);
+        }
+    }
+}
+
+// После потери событий в ядре состояние берётся у самого устройства.
+// У pipe нет ioctl evdev - тогда просто продолжаем со следующего пакета
+static void resync_source(jcm_bridge *bridge, int source) {
+    int fd = bridge->sources[source];
+    unsigned char keys[KEY_CNT / 8 + 1];
+    memset(keys, 0, sizeof(keys));
+    if (ioctl(fd, EVIOCGKEY(sizeof(keys)), keys) >= 0) {
+        for (int code = JCM_SCAN_BASE; code < JCM_SCAN_LIMIT; code++) {
+            bool down = (keys[code / 8] & (1 << (code % 8))) != 0;
+            bool pressed = bridge->pressed[code - JCM_SCAN_BASE] != 0;
+            if (down != pressed) {
+                handle_key(bridge, source, code, down ? 1 : 0);
+            }
+        }
+    }
+    for (int axis = 0; axis < JCM_AXIS_COUNT; axis++) {
+        struct input_absinfo info;
+        if (ioctl(fd, EVIOCGABS(AXIS_CODES[axis]), &info) >= 0) {
+            bridge->raw[axis] = clamp_axis(info.value);
+            bridge->axes_dirty = true;
+        }
+    }
+}
+
+static void handle_event(jcm_bridge *bridge, int source, const struct input_event *ev) {
+    if (bridge->dropping[source]) {
+        if (ev->type == EV_SYN && ev->code == SYN_REPORT) {
+            bridge->dropping[source] = false;
+            resync_source(bridge, source);
+            emit_axes(bridge);
+            bridge->committed = bridge->frame_count;
+        }
+        return;
+    }
+
+    switch (ev->type) {
+        case EV_SYN:
+            if (ev->code == SYN_REPORT) {
+                emit_axes(bridge);
+                bridge->committed = bridge->frame_count;
+            } else if (ev->code == SYN_DROPPED) {
+                bridge->dropping[source] = true;
+                bump(bridge->sync_dropped, 1);
+            }
+            break;
+        case EV_KEY:
+            handle_key(bridge, source, ev->code, ev->value);
+            break;
+        case EV_ABS: {
+            int axis = axis_of(ev->code);
+            if (axis >= 0) {
+                bridge->raw[axis] = clamp_axis(ev->value);
+                bridge->axes_dirty = true;
+                bridge->axis_owner[source] |= 1u << axis;
+            }
+            break;
+        }
+        default:
+            // EV_MSC, датчики и прочее мосту не нужны
+            break;
+    }
+}
+
+// Отключённый Joy-Con не должен оставить зажатые кнопки и отклонённые стики:
+// отпускаем его кнопки и центрируем его оси одним пакетом. uinput устройство
+// остаётся, при переподключении игра продолжает с тем же контроллером
+static void release_source_state(jcm_bridge *bridge, int source) {
+    for (int index = 0; index < JCM_SCAN_LIMIT - JCM_SCAN_BASE; index++) {
+        if (bridge->pressed[index] != 0 && bridge->pressed_by[index] == source) {
+            put_event(bridge, EV_KEY, bridge->pressed[index], 0);
+            bridge->pressed[index] = 0;
+        }
+    }
+    for (int axis = 0; axis < JCM_AXIS_COUNT; axis++) {
+        if (bridge->axis_owner[source] & (1u << axis)) {
+            bridge->raw[axis] = 0;
+            bridge->axes_dirty = true;
+        }
+    }
+    bridge->axis_owner[source] = 0;
+    emit_axes(bridge);
+    bridge->committed = bridge->frame_count;
+}
+
+static void remove_source(jcm_bridge *bridge, int source) {
+    release_source_state(bridge, source);
+    epoll_ctl(bridge->epoll_fd, EPOLL_CTL_DEL, bridge->sources[source], NULL);
+    close(bridge->sources[source]);
+    bridge->sources[source] = -1;
+    bump(bridge->sources_lost, 1);
+}
+
+static void read_source(jcm_bridge *bridge, int source) {
+    struct input_event events[JCM_READ_BATCH];
+    // Остаток прошлого чтения идёт первым, read() дописывает событие до конца
+    int carried = bridge->partial_bytes[source];
+    memcpy(events, bridge->partial[source], (size_t) carried);
+    ssize_t bytes = read(bridge->sources[source], (unsigned char *) events + carried,
+        sizeof(events) - (size_t) carried);
+    if (bytes < 0) {
+        // ENODEV - Joy-Con отключился; EAGAIN - ложное пробуждение
+        if (errno != EAGAIN && errno != EINTR) {
+            remove_source(bridge, source);
+        }
+        return;
+    }
+    if (bytes == 0) {
+        remove_source(bridge, source);
+        return;
+    }
+
+    size_t total = (size_t) bytes + (size_t) carried;
+    int count = (int) (total / sizeof(struct input_event));
+    int tail = (int) (total % sizeof(struct input_event));
+    memcpy(bridge->partial[source], &events[count], (size_t) tail);
+    bridge->partial_bytes[source] = tail;
+    bump(bridge->reads, 1);
+    bump(bridge->events_in, (uint64_t) count);
+    for (int i = 0; i < count; i++) {
+        handle_event(bridge, source, &events[i]);
+    }
+}
+
+int jcm_bridge_run(jcm_bridge *bridge) {
+    struct epoll_event ready[JCM_BRIDGE_MAX_SOURCES + 1];
+    // Пока в очереди вывода uinput есть хвост, просыпаемся, чтобы его дописать
+    int timeout = -1;
+
+    while (!bridge->stopped.load(std::memory_order_relaxed)) {
+        int n = epoll_wait(bridge->epoll_fd, ready, JCM_BRIDGE_MAX_SOURCES + 1, timeout);
+        if (n < 0) {
+            if (errno == EINTR) continue;
+            return -errno;
+        }
+
+        if (bridge->pending_ready.load(std::memory_order_acquire)) {
+            std::lock_guard<std::mutex> guard(bridge->pending_lock);
+            bridge->tables = bridge->pending;
+            bridge->pending_ready.store(false, std::memory_order_relaxed);
+        }
+
+        for (int i = 0; i < n; i++) {
+            uint32_t token = ready[i].data.u32;
+            if (token == JCM_STOP_TOKEN) continue;
+            if (bridge->sources[token] >= 0) {
+                read_source(bridge, (int) token);
+            }
+        }
+
+        // Пакеты обоих Joy-Con за одно пробуждение уходят одним кадром
+        flush_committed(bridge);
+        int pending = jcm_output_flush(bridge->output_fd, 0);
+        if (pending < 0) {
+            bump(bridge->write_errors, 1);
+        }
+        timeout = pending > 0 ? JCM_OUTPUT_RETRY_MS : -1;
+    }
+    return 0;
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+#ifndef JOYCONMAPPER_EVDEV_BRIDGE_H
+#define JOYCONMAPPER_EVDEV_BRIDGE_H
+
+#include <stdint.h>
+
+// Native режим маппера: один поток читает evdev узлы Joy-Con через epoll,
+// транслирует события по таблицам и пишет объединённые кадры в uinput.
+// Java только запускает и останавливает мост и забирает счётчики.
+//
+// Ядро не зависит от JNI и Android: источниками могут быть любые fd
+// с потоком struct input_event (например pipe), выходом - pipe или файл.
+
+#define JCM_BRIDGE_MAX_SOURCES 8
+
+// Диапазон скан-кодов совпадает с ButtonTable.SCAN_BASE / SCAN_LIMIT
+#define JCM_SCAN_BASE 304
+#define JCM_SCAN_LIMIT 548
+
+// Порядок осей совпадает с StickFilter.AXIS_*: LX, LY, RX, RY
+#define JCM_AXIS_COUNT 4
+
+struct jcm_bridge_tables {
+    // Скан-код - JCM_SCAN_BASE -> Linux BTN_*, 0 - кнопка не транслируется
+    int buttons[JCM_SCAN_LIMIT - JCM_SCAN_BASE];
+    // Выходная ось i = axis_scale[i] * входная ось axis_source[i]
+    int axis_source[JCM_AXIS_COUNT];
+    int axis_scale[JCM_AXIS_COUNT];
+    // Порог изменения и радиальная мёртвая зона, как в StickFilter
+    int threshold;
+    int deadzone;
+};
+
+// Порядок полей совпадает с NativeBridge.STAT_*
+struct jcm_bridge_stats {
+    uint64_t events_in;
+    uint64_t reads;
+    uint64_t frames_out;
+    uint64_t events_out;
+    uint64_t write_errors;
+    uint64_t sync_dropped;
+    uint64_t sources_lost;
+};
+
+struct jcm_bridge;
+
+// output_fd не принадлежит мосту и не закрывается им
+jcm_bridge *jcm_bridge_create(int output_fd, const jcm_bridge_tables *tables);
+
+// Мост забирает fd себе и закроет его в jcm_bridge_destroy. Возвращает 0 или -errno
+int jcm_bridge_add_source(jcm_bridge *bridge, int fd);
+
+// Открывает /dev/input/event* Joy-Con по имени и добавляет их как источники.
+// grab - захватить устройства (EVIOCGRAB), чтобы Android не получал их события
+// в обход моста. Возвращает число добавленных источников
+int jcm_bridge_add_joycons(jcm_bridge *bridge, int grab);
+
+// Подмена таблиц из другого потока: применяются перед следующим кадром
+void jcm_bridge_set_tables(jcm_bridge *bridge, const jcm_bridge_tables *tables);
+
+// Цикл моста, возвращается после jcm_bridge_stop() или при ошибке epoll (-errno)
+int jcm_bridge_run(jcm_bridge *bridge);
+
+// Потокобезопасно, можно вызывать до или во время jcm_bridge_run()
+void jcm_bridge_stop(jcm_bridge *bridge);
+
+void jcm_bridge_get_stats(jcm_bridge *bridge, jcm_bridge_stats *out);
+
+// Закрывает источники; вызывать после возврата из jcm_bridge_run()
+void jcm_bridge_destroy(jcm_bridge *bridge);
+
+#endif
\ No newline at end of file
@@ -0,0 +1,293 @@
+#include "ff_service.h"
+
+#include <atomic>
+#include <errno.h>
+#include <poll.h>
+#include <string.h>
+#include <time.h>
+#include <unistd.h>
+#include <sys/eventfd.h>
+#include <sys/ioctl.h>
+
+// Сколько запросов забирается одним read()
+#define JCM_FF_READ_BATCH 16
+
+struct jcm_ff_service {
+    int fd;
+    int stop_fd;
+    jcm_ff_sink sink;
+    jcm_ff_ops ops;
+    int64_t min_interval_ns;
+    std::atomic<bool> stopped;
+
+    struct ff_effect effects[JCM_FF_MAX_EFFECTS];
+    bool loaded[JCM_FF_MAX_EFFECTS];
+    // Общее усиление FF_GAIN, 0..0xFFFF
+    int gain;
+
+    // Последнее запрошенное состояние, ещё не переданное приёмнику
+    bool pending;
+    int pending_strong;
+    int pending_weak;
+    int pending_duration_ms;
+    int64_t last_sink_ns;
+
+    // Пишет только поток обслуживания
+    std::atomic<uint64_t> uploads;
+    std::atomic<uint64_t> erases;
+    std::atomic<uint64_t> plays;
+    std::atomic<uint64_t> stops;
+    std::atomic<uint64_t> coalesced;
+    std::atomic<uint64_t> sink_calls;
+    std::atomic<uint64_t> request_errors;
+    std::atomic<uint64_t> max_service_us;
+    std::atomic<uint64_t> total_service_us;
+};
+
+static inline void bump(std::atomic<uint64_t> &counter, uint64_t delta) {
+    counter.store(counter.load(std::memory_order_relaxed) + delta, std::memory_order_relaxed);
+}
+
+static int64_t now_ns() {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (int64_t) ts.tv_sec * 1000000000LL + ts.tv_nsec;
+}
+
+static int ioctl_begin_upload(int fd, struct uinput_ff_upload *upload) {
+    return ioctl(fd, UI_BEGIN_FF_UPLOAD, upload);
+}
+
+static int ioctl_end_upload(int fd, struct uinput_ff_upload *upload) {
+    return ioctl(fd, UI_END_FF_UPLOAD, upload);
+}
+
+static int ioctl_begin_erase(int fd, struct uinput_ff_erase *erase) {
+    return ioctl(fd, UI_BEGIN_FF_ERASE, erase);
+}
+
+static int ioctl_end_erase(int fd, struct uinput_ff_erase *erase) {
+    return ioctl(fd, UI_END_FF_ERASE, erase);
+}
+
+jcm_ff_service *jcm_ff_create(int fd, const jcm_ff_sink *sink, const jcm_ff_ops *ops, int min_interval_ms) {
+    jcm_ff_service *service = new jcm_ff_service();
+    service->fd = fd;
+    service->sink = *sink;
+    if (ops != NULL) {
+        service->ops = *ops;
+    } else {
+        service->ops.begin_upload = ioctl_begin_upload;
+        service->ops.end_upload = ioctl_end_upload;
+        service->ops.begin_erase = ioctl_begin_erase;
+        service->ops.end_erase = ioctl_end_erase;
+    }
+    service->min_interval_ns = (int64_t) min_interval_ms * 1000000LL;
+    service->gain = 0xFFFF;
+    service->stopped.store(false);
+
+    service->stop_fd = eventfd(0, EFD_NONBLOCK | EFD_CLOEXEC);
+    if (service->stop_fd < 0) {
+        delete service;
+        return NULL;
+    }
+    return service;
+}
+
+void jcm_ff_stop(jcm_ff_service *service) {
+    service->stopped.store(true);
+    uint64_t one = 1;
+    ssize_t ignored = write(service->stop_fd, &one, sizeof(one));
+    (void) ignored;
+}
+
+void jcm_ff_get_stats(jcm_ff_service *service, jcm_ff_stats *out) {
+    out->uploads = service->uploads.load(std::memory_order_relaxed);
+    out->erases = service->erases.load(std::memory_order_relaxed);
+    out->plays = service->plays.load(std::memory_order_relaxed);
+    out->stops = service->stops.load(std::memory_order_relaxed);
+    out->coalesced = service->coalesced.load(std::memory_order_relaxed);
+    out->sink_calls = service->sink_calls.load(std::memory_order_relaxed);
+    out->request_errors = service->request_errors.load(std::memory_order_relaxed);
+    out->max_service_us = service->max_service_us.load(std::memory_order_relaxed);
+    out->total_service_us = service->total_service_us.load(std::memory_order_relaxed);
+}
+
+void jcm_ff_destroy(jcm_ff_service *service) {
+    if (service == NULL) return;
+    if (service->stop_fd >= 0) close(service->stop_fd);
+    delete service;
+}
+
+static void account_service_time(jcm_ff_service *service, int64_t started_ns) {
+    uint64_t micros = (uint64_t) ((now_ns() - started_ns) / 1000);
+    bump(service->total_service_us, micros);
+    if (micros > service->max_service_us.load(std::memory_order_relaxed)) {
+        service->max_service_us.store(micros, std::memory_order_relaxed);
+    }
+}
+
+static void handle_upload(jcm_ff_service *service, int request_id, int64_t started_ns) {
+    struct uinput_ff_upload upload;
+    memset(&upload, 0, sizeof(upload));
+    upload.request_id = request_id;
+    if (service->ops.begin_upload(service->fd, &upload) < 0) {
+        bump(service->request_errors, 1);
+        return;
+    }
+
+    int id = upload.effect.id;
+    if (id < 0 || id >= JCM_FF_MAX_EFFECTS) {
+        upload.retval = -EINVAL;
+    } else if (upload.effect.type != FF_RUMBLE && upload.effect.type != FF_PERIODIC) {
+        upload.retval = -EINVAL;
+    } else {
+        service->effects[id] = upload.effect;
+        service->loaded[id] = true;
+        upload.retval = 0;
+    }
+
+    if (service->ops.end_upload(service->fd, &upload) < 0 || upload.retval != 0) {
+        bump(service->request_errors, 1);
+    } else {
+        bump(service->uploads, 1);
+    }
+    account_service_time(service, started_ns);
+}
+
+static void handle_erase(jcm_ff_service *service, int request_id, int64_t started_ns) {
+    struct uinput_ff_erase erase;
+    memset(&erase, 0, sizeof(erase));
+    erase.request_id = request_id;
+    if (service->ops.begin_erase(service->fd, &erase) < 0) {
+        bump(service->request_errors, 1);
+        return;
+    }
+
+    if (erase.effect_id < JCM_FF_MAX_EFFECTS) {
+        service->loaded[erase.effect_id] = false;
+    }
+    erase.retval = 0;
+
+    if (service->ops.end_erase(service->fd, &erase) < 0) {
+        bump(service->request_errors, 1);
+    } else {
+        bump(service->erases, 1);
+    }
+    account_service_time(service, started_ns);
+}
+
+// Новое состояние заменяет ещё не отправленное
+static void request_rumble(jcm_ff_service *service, int strong, int weak, int duration_ms) {
+    if (service->pending) {
+        bump(service->coalesced, 1);
+    }
+    service->pending = true;
+    service->pending_strong = strong;
+    service->pending_weak = weak;
+    service->pending_duration_ms = duration_ms;
+}
+
+static void handle_play(jcm_ff_service *service, int id, int count) {
+    if (id < 0 || id >= JCM_FF_MAX_EFFECTS || !service->loaded[id]) {
+        bump(service->request_errors, 1);
+        return;
+    }
+    if (count == 0) {
+        bump(service->stops, 1);
+        request_rumble(service, 0, 0, 0);
+        return;
+    }
+
+    const struct ff_effect *effect = &service->effects[id];
+    int strong;
+    int weak;
+    if (effect->type == FF_RUMBLE) {
+        strong = effect->u.rumble.strong_magnitude;
+        weak = effect->u.rumble.weak_magnitude;
+    } else {
+        // Периодический эффект - одна амплитуда на оба мотора
+        int magnitude = effect->u.periodic.magnitude;
+        strong = (magnitude < 0 ? -magnitude : magnitude) * 2;
+        if (strong > 0xFFFF) strong = 0xFFFF;
+        weak = strong;
+    }
+    strong = (int) ((int64_t) strong * service->gain / 0xFFFF);
+    weak = (int) ((int64_t) weak * service->gain / 0xFFFF);
+
+    bump(service->plays, 1);
+    request_rumble(service, strong, weak, effect->replay.length * count);
+}
+
+// Возвращает таймаут poll: сколько мс ждать до разрешённой отправки, -1 - нечего ждать
+static int deliver_if_due(jcm_ff_service *service) {
+    if (!service->pending) return -1;
+
+    int64_t wait_ns = service->last_sink_ns + service->min_interval_ns - now_ns();
+    if (wait_ns > 0) {
+        return (int) ((wait_ns + 999999) / 1000000);
+    }
+
+    service->pending = false;
+    service->last_sink_ns = now_ns();
+    bump(service->sink_calls, 1);
+    if (service->sink.rumble != NULL) {
+        service->sink.rumble(service->sink.context, service->pending_strong,
+                             service->pending_weak, service->pending_duration_ms);
+    }
+    return -1;
+}
+
+static void read_requests(jcm_ff_service *service) {
+    struct input_event events[JCM_FF_READ_BATCH];
+    for (;;) {
+        ssize_t bytes = read(service->fd, events, sizeof(events));
+        if (bytes <= 0) {
+            return;
+        }
+        int64_t started_ns = now_ns();
+        int count = (int) (bytes / sizeof(struct input_event));
+        for (int i = 0; i < count; i++) {
+            const struct input_event *ev = &events[i];
+            if (ev->type == EV_UINPUT && ev->code == UI_FF_UPLOAD) {
+                handle_upload(service, ev->value, started_ns);
+            } else if (ev->type == EV_UINPUT && ev->code == UI_FF_ERASE) {
+                handle_erase(service, ev->value, started_ns);
+            } else if (ev->type == EV_FF && ev->code == FF_GAIN) {
+                service->gain = ev->value & 0xFFFF;
+            } else if (ev->type == EV_FF) {
+                handle_play(service, ev->code, ev->value);
+            }
+        }
+        if (count < JCM_FF_READ_BATCH) {
+            return;
+        }
+    }
+}
+
+int jcm_ff_run(jcm_ff_service *service) {
+    struct pollfd fds[2];
+    fds[0].fd = service->fd;
+    fds[0].events = POLLIN;
+    fds[1].fd = service->stop_fd;
+    fds[1].events = POLLIN;
+
+    int timeout = -1;
+    while (!service->stopped.load(std::memory_order_relaxed)) {
+        int n = poll(fds, 2, timeout);
+        if (n < 0) {
+            if (errno == EINTR) continue;
+            return -errno;
+        }
+        if (fds[1].revents & POLLIN) {
+            break;
+        }
+        if (fds[0].revents & POLLIN) {
+            read_requests(service);
+        } else if (fds[0].revents & (POLLERR | POLLHUP | POLLNVAL)) {
+            return -EIO;
+        }
+        timeout = deliver_if_due(service);
+    }
+    return 0;
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+#ifndef JOYCONMAPPER_FF_SERVICE_H
+#define JOYCONMAPPER_FF_SERVICE_H
+
+#include <stdint.h>
+#include <linux/uinput.h>
+
+// Обслуживание force feedback виртуального контроллера: отдельный поток
+// ждёт запросов на uinput fd через poll, отвечает на загрузку и удаление
+// эффектов и передаёт воспроизведение в подключаемый приёмник вибрации.
+//
+// Игра блокируется в ioctl(EVIOCSFF), пока мы не ответим UI_END_FF_UPLOAD,
+// поэтому запросы обслуживаются сразу, а до приёмника доходит не чаще
+// одного вызова за min_interval_ms - промежуточные состояния схлопываются.
+
+// Должно совпадать с uinput_setup.ff_effects_max в nativeCreateDevice
+#define JCM_FF_MAX_EFFECTS 16
+
+// strong/weak - 0..0xFFFF, оба 0 - остановить вибрацию.
+// duration_ms = 0 - без ограничения, до следующего вызова
+struct jcm_ff_sink {
+    void (*rumble)(void *context, int strong, int weak, int duration_ms);
+    void *context;
+};
+
+// Запросы к uinput. По умолчанию ioctl, на хосте можно подменить
+struct jcm_ff_ops {
+    int (*begin_upload)(int fd, struct uinput_ff_upload *upload);
+    int (*end_upload)(int fd, struct uinput_ff_upload *upload);
+    int (*begin_erase)(int fd, struct uinput_ff_erase *erase);
+    int (*end_erase)(int fd, struct uinput_ff_erase *erase);
+};
+
+// Порядок полей совпадает с ForceFeedback.STAT_*
+struct jcm_ff_stats {
+    uint64_t uploads;
+    uint64_t erases;
+    uint64_t plays;
+    uint64_t stops;
+    uint64_t coalesced;
+    uint64_t sink_calls;
+    uint64_t request_errors;
+    // Время от чтения запроса до ответа ядру - столько игра ждёт в ioctl
+    uint64_t max_service_us;
+    uint64_t total_service_us;
+};
+
+struct jcm_ff_service;
+
+// fd должен быть открыт на чтение и в режиме O_NONBLOCK. ops = NULL - ioctl
+jcm_ff_service *jcm_ff_create(int fd, const jcm_ff_sink *sink, const jcm_ff_ops *ops, int min_interval_ms);
+
+// Цикл обслуживания, возвращается после jcm_ff_stop() или при ошибке poll (-errno)
+int jcm_ff_run(jcm_ff_service *service);
+
+// Потокобезопасно
+void jcm_ff_stop(jcm_ff_service *service);
+
+void jcm_ff_get_stats(jcm_ff_service *service, jcm_ff_stats *out);
+
+// fd устройства не закрывается
+void jcm_ff_destroy(jcm_ff_service *service);
+
+#endif
\ No newline at end of file
@@ -1,232 +1,444 @@
-#include <jni.h>
-#include <fcntl.h>
-#include <unistd.h>
-#include <linux/uinput.h>
-#include <string.h>
-#include <errno.h>
-#include <android/log.h>
-
-#define LOG_TAG "JoyConMapper-Native"
-#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
-#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
-
-extern "C" {
-
-// Создание виртуального устройства
-JNIEXPORT jint JNICALL
-Java_com_switchroot_joyconmapper_VirtualXboxController_nativeCreateDevice(JNIEnv *env, jobject thiz) {
-    int fd;
-    struct uinput_setup usetup;
-    
-    // Открываем uinput
-    fd = open("/dev/uinput", O_WRONLY | O_NONBLOCK);
-    if (fd < 0) {
-        LOGE("Failed to open /dev/uinput: %s", strerror(errno));
-        return -1;
-    }
-    
-    // Включаем события кнопок
-    ioctl(fd, UI_SET_EVBIT, EV_KEY);
-    
-    // Xbox кнопки
-    ioctl(fd, UI_SET_KEYBIT, BTN_A);
-    ioctl(fd, UI_SET_KEYBIT, BTN_B);
-    ioctl(fd, UI_SET_KEYBIT, BTN_X);
-    ioctl(fd, UI_SET_KEYBIT, BTN_Y);
-    ioctl(fd, UI_SET_KEYBIT, BTN_TL);
-    ioctl(fd, UI_SET_KEYBIT, BTN_TR);
-    ioctl(fd, UI_SET_KEYBIT, BTN_TL2);
-    ioctl(fd, UI_SET_KEYBIT, BTN_TR2);
-    ioctl(fd, UI_SET_KEYBIT, BTN_SELECT);
-    ioctl(fd, UI_SET_KEYBIT, BTN_START);
-    ioctl(fd, UI_SET_KEYBIT, BTN_MODE);
-    ioctl(fd, UI_SET_KEYBIT, BTN_THUMBL);
-    ioctl(fd, UI_SET_KEYBIT, BTN_THUMBR);
-    
-    // D-pad
-    ioctl(fd, UI_SET_KEYBIT, BTN_DPAD_UP);
-    ioctl(fd, UI_SET_KEYBIT, BTN_DPAD_DOWN);
-    ioctl(fd, UI_SET_KEYBIT, BTN_DPAD_LEFT);
-    ioctl(fd, UI_SET_KEYBIT, BTN_DPAD_RIGHT);
-    
-    // Включаем абсолютные оси (стики)
-    ioctl(fd, UI_SET_EVBIT, EV_ABS);
-    
-    struct uinput_abs_setup abs_setup;
-    
-    // Левый стик X
-    memset(&abs_setup, 0, sizeof(abs_setup));
-    abs_setup.code = ABS_X;
-    abs_setup.absinfo.minimum = -32768;
-    abs_setup.absinfo.maximum = 32767;
-    abs_setup.absinfo.fuzz = 250;
-    abs_setup.absinfo.flat = 1500;
-    ioctl(fd, UI_ABS_SETUP, &abs_setup);
-    
-    // Левый стик Y
-    abs_setup.code = ABS_Y;
-    ioctl(fd, UI_ABS_SETUP, &abs_setup);
-    
-    // Правый стик X
-    abs_setup.code = ABS_RX;
-    ioctl(fd, UI_ABS_SETUP, &abs_setup);
-    
-    // Правый стик Y
-    abs_setup.code = ABS_RY;
-    ioctl(fd, UI_ABS_SETUP, &abs_setup);
-    
-    // Триггеры
-    abs_setup.code = ABS_Z;
-    abs_setup.absinfo.minimum = 0;
-    abs_setup.absinfo.maximum = 255;
-    abs_setup.absinfo.fuzz = 0;
-    abs_setup.absinfo.flat = 0;
-    ioctl(fd, UI_ABS_SETUP, &abs_setup);
-    
-    abs_setup.code = ABS_RZ;
-    ioctl(fd, UI_ABS_SETUP, &abs_setup);
-    
-    // Включаем Force Feedback (вибрация)
-    ioctl(fd, UI_SET_EVBIT, EV_FF);
-    ioctl(fd, UI_SET_FFBIT, FF_RUMBLE);
-    ioctl(fd, UI_SET_FFBIT, FF_PERIODIC);
-    
-    // Настраиваем устройство
-    memset(&usetup, 0, sizeof(usetup));
-    usetup.id.bustype = BUS_USB;
-    usetup.id.vendor = 0x045e;  // Microsoft
-    usetup.id.product = 0x02dd; // Xbox One Controller
-    usetup.id.version = 0x0100;
-    strcpy(usetup.name, "Xbox One Controller (JoyCon Mapper)");
-    
-    if (ioctl(fd, UI_DEV_SETUP, &usetup) < 0) {
-        LOGE("UI_DEV_SETUP failed: %s", strerror(errno));
-        close(fd);
-        return -1;
-    }
-    
-    // Создаем устройство
-    if (ioctl(fd, UI_DEV_CREATE) < 0) {
-        LOGE("UI_DEV_CREATE failed: %s", strerror(errno));
-        close(fd);
-        return -1;
-    }
-    
-    LOGD("Virtual Xbox controller created successfully");
-    return fd;
-}
-
-// Уничтожение устройства
-JNIEXPORT void JNICALL
-Java_com_switchroot_joyconmapper_VirtualXboxController_nativeDestroyDevice(JNIEnv *env, jobject thiz, jint fd) {
-    if (fd >= 0) {
-        ioctl(fd, UI_DEV_DESTROY);
-        close(fd);
-        LOGD("Virtual device destroyed");
-    }
-}
-
-// Отправка события кнопки
-JNIEXPORT void JNICALL
-Java_com_switchroot_joyconmapper_VirtualXboxController_nativeSendButton(JNIEnv *env, jobject thiz, jint fd, jint button, jint value) {
-    if (fd < 0) return;
-    
-    struct input_event ev;
-    memset(&ev, 0, sizeof(ev));
-    
-    // Маппинг Android KeyEvent на Linux кнопки
-    int linux_button;
-    switch(button) {
-        case 96:  // KEYCODE_BUTTON_A
-            linux_button = BTN_A;
-            break;
-        case 97:  // KEYCODE_BUTTON_B
-            linux_button = BTN_B;
-            break;
-        case 99:  // KEYCODE_BUTTON_X
-            linux_button = BTN_X;
-            break;
-        case 100: // KEYCODE_BUTTON_Y
-            linux_button = BTN_Y;
-            break;
-        case 102: // KEYCODE_BUTTON_L1
-            linux_button = BTN_TL;
-            break;
-        case 103: // KEYCODE_BUTTON_R1
-            linux_button = BTN_TR;
-            break;
-        case 104: // KEYCODE_BUTTON_L2
-            linux_button = BTN_TL2;
-            break;
-        case 105: // KEYCODE_BUTTON_R2
-            linux_button = BTN_TR2;
-            break;
-        case 109: // KEYCODE_BUTTON_SELECT
-            linux_button = BTN_SELECT;
-            break;
-        case 108: // KEYCODE_BUTTON_START
-            linux_button = BTN_START;
-            break;
-        case 110: // KEYCODE_BUTTON_MODE
-            linux_button = BTN_MODE;
-            break;
-        case 106: // KEYCODE_BUTTON_THUMBL
-            linux_button = BTN_THUMBL;
-            break;
-        case 107: // KEYCODE_BUTTON_THUMBR
-            linux_button = BTN_THUMBR;
-            break;
-        case 19:  // KEYCODE_DPAD_UP
-            linux_button = BTN_DPAD_UP;
-            break;
-        case 20:  // KEYCODE_DPAD_DOWN
-            linux_button = BTN_DPAD_DOWN;
-            break;
-        case 21:  // KEYCODE_DPAD_LEFT
-            linux_button = BTN_DPAD_LEFT;
-            break;
-        case 22:  // KEYCODE_DPAD_RIGHT
-            linux_button = BTN_DPAD_RIGHT;
-            break;
-        default:
-            return;
-    }
-    
-    ev.type = EV_KEY;
-    ev.code = linux_button;
-    ev.value = value;
-    
-    write(fd, &ev, sizeof(ev));
-}
-
-// Отправка события оси
-JNIEXPORT void JNICALL
-Java_com_switchroot_joyconmapper_VirtualXboxController_nativeSendAxis(JNIEnv *env, jobject thiz, jint fd, jint axis, jint value) {
-    if (fd < 0) return;
-    
-    struct input_event ev;
-    memset(&ev, 0, sizeof(ev));
-    
-    ev.type = EV_ABS;
-    ev.code = axis;
-    ev.value = value;
-    
-    write(fd, &ev, sizeof(ev));
-}
-
-// Синхронизация событий
-JNIEXPORT void JNICALL
-Java_com_switchroot_joyconmapper_VirtualXboxController_nativeSendSync(JNIEnv *env, jobject thiz, jint fd) {
-    if (fd < 0) return;
-    
-    struct input_event ev;
-    memset(&ev, 0, sizeof(ev));
-    
-    ev.type = EV_SYN;
-    ev.code = SYN_REPORT;
-    ev.value = 0;
-    
-    write(fd, &ev, sizeof(ev));
-}
-
+#include <jni.h>
+#include <fcntl.h>
+#include <unistd.h>
+#include <linux/uinput.h>
+#include <string.h>
+#include <errno.h>
+#include <stdio.h>
+#include <pthread.h>
+#include <sys/resource.h>
+#include <android/log.h>
+
+#include "uinput_frame.h"
+#include "evdev_bridge.h"
+#include "ff_service.h"
+#include "motion_device.h"
+
+#define LOG_TAG "JoyConMapper-Native"
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
+
+// Мост evdev -> uinput и его поток
+struct BridgeHandle {
+    jcm_bridge *bridge;
+    pthread_t thread;
+};
+
+static void *bridge_thread(void *arg) {
+    jcm_bridge *bridge = (jcm_bridge *) arg;
+    // Тот же приоритет, что у Java потока вывода (THREAD_PRIORITY_URGENT_DISPLAY)
+    setpriority(PRIO_PROCESS, 0, -8);
+    int result = jcm_bridge_run(bridge);
+    if (result < 0) {
+        LOGE("Bridge loop failed: %s", strerror(-result));
+    }
+    return NULL;
+}
+
+// Таблицы из профиля Java: кнопки по скан-кодам и перестановка осей
+static bool read_tables(JNIEnv *env, jintArray buttons, jintArray axisSource, jintArray axisScale,
+                        jint threshold, jint deadzone, jcm_bridge_tables *tables) {
+    memset(tables, 0, sizeof(*tables));
+    jsize buttonCount = env->GetArrayLength(buttons);
+    if (buttonCount > JCM_SCAN_LIMIT - JCM_SCAN_BASE
+            || env->GetArrayLength(axisSource) != JCM_AXIS_COUNT
+            || env->GetArrayLength(axisScale) != JCM_AXIS_COUNT) {
+        return false;
+    }
+    env->GetIntArrayRegion(buttons, 0, buttonCount, tables->buttons);
+    env->GetIntArrayRegion(axisSource, 0, JCM_AXIS_COUNT, tables->axis_source);
+    env->GetIntArrayRegion(axisScale, 0, JCM_AXIS_COUNT, tables->axis_scale);
+    for (int i = 0; i < JCM_AXIS_COUNT; i++) {
+        if (tables->axis_source[i] < 0 || tables->axis_source[i] >= JCM_AXIS_COUNT) return false;
+    }
+    tables->threshold = threshold;
+    tables->deadzone = deadzone;
+    return true;
+}
+
+// Обслуживание force feedback: приёмник вызывает ForceFeedback.onRumble
+struct ForceFeedbackHandle {
+    jcm_ff_service *service;
+    pthread_t thread;
+    JavaVM *vm;
+    jobject target;
+    jmethodID onRumble;
+    JNIEnv *threadEnv;
+};
+
+static void rumble_to_java(void *context, int strong, int weak, int durationMs) {
+    ForceFeedbackHandle *handle = (ForceFeedbackHandle *) context;
+    JNIEnv *env = handle->threadEnv;
+    env->CallVoidMethod(handle->target, handle->onRumble, strong, weak, durationMs);
+    if (env->ExceptionCheck()) {
+        env->ExceptionClear();
+        LOGE("Rumble sink threw an exception");
+    }
+}
+
+static void *force_feedback_thread(void *arg) {
+    ForceFeedbackHandle *handle = (ForceFeedbackHandle *) arg;
+    if (handle->vm->AttachCurrentThread(&handle->threadEnv, NULL) != JNI_OK) {
+        LOGE("Failed to attach force feedback thread");
+        return NULL;
+    }
+    int result = jcm_ff_run(handle->service);
+    if (result < 0) {
+        LOGE("Force feedback loop failed: %s", strerror(-result));
+    }
+    handle->vm->DetachCurrentThread();
+    return NULL;
+}
+
+extern "C" {
+
+// Создание виртуального устройства
+JNIEXPORT jint JNICALL
+Java_com_switchroot_joyconmapper_VirtualXboxController_nativeCreateDevice(JNIEnv *env, jobject thiz, jintArray buttonTable, jint slot) {
+    int fd;
+    struct uinput_setup usetup;
+    
+    // Открываем uinput. Чтение нужно для запросов force feedback (ff_service)
+    fd = open("/dev/uinput", O_RDWR | O_NONBLOCK);
+    if (fd < 0) {
+        LOGE("Failed to open /dev/uinput: %s", strerror(errno));
+        return -1;
+    }
+    
+    // Включаем события кнопок
+    ioctl(fd, UI_SET_EVBIT, EV_KEY);
+    
+    // Xbox кнопки
+    ioctl(fd, UI_SET_KEYBIT, BTN_A);
+    ioctl(fd, UI_SET_KEYBIT, BTN_B);
+    ioctl(fd, UI_SET_KEYBIT, BTN_X);
+    ioctl(fd, UI_SET_KEYBIT, BTN_Y);
+    ioctl(fd, UI_SET_KEYBIT, BTN_TL);
+    ioctl(fd, UI_SET_KEYBIT, BTN_TR);
+    ioctl(fd, UI_SET_KEYBIT, BTN_TL2);
+    ioctl(fd, UI_SET_KEYBIT, BTN_TR2);
+    ioctl(fd, UI_SET_KEYBIT, BTN_SELECT);
+    ioctl(fd, UI_SET_KEYBIT, BTN_START);
+    ioctl(fd, UI_SET_KEYBIT, BTN_MODE);
+    ioctl(fd, UI_SET_KEYBIT, BTN_THUMBL);
+    ioctl(fd, UI_SET_KEYBIT, BTN_THUMBR);
+    
+    // D-pad
+    ioctl(fd, UI_SET_KEYBIT, BTN_DPAD_UP);
+    ioctl(fd, UI_SET_KEYBIT, BTN_DPAD_DOWN);
+    ioctl(fd, UI_SET_KEYBIT, BTN_DPAD_LEFT);
+    ioctl(fd, UI_SET_KEYBIT, BTN_DPAD_RIGHT);
+    
+    // Кнопки из таблицы трансляции Java (скан-код Joy-Con -> Linux BTN_*).
+    // Таблица передаётся один раз, дальше кадры приходят уже в Linux кодах
+    if (buttonTable != NULL) {
+        jsize tableSize = env->GetArrayLength(buttonTable);
+        jint *table = env->GetIntArrayElements(buttonTable, NULL);
+        if (table != NULL) {
+            for (jsize i = 0; i < tableSize; i++) {
+                if (table[i] > 0 && table[i] < KEY_CNT) {
+                    ioctl(fd, UI_SET_KEYBIT, table[i]);
+                }
+            }
+            env->ReleaseIntArrayElements(buttonTable, table, JNI_ABORT);
+        }
+    }
+    
+    // Включаем абсолютные оси (стики)
+    ioctl(fd, UI_SET_EVBIT, EV_ABS);
+    
+    struct uinput_abs_setup abs_setup;
+    
+    // Левый стик X
+    memset(&abs_setup, 0, sizeof(abs_setup));
+    abs_setup.code = ABS_X;
+    abs_setup.absinfo.minimum = -32768;
+    abs_setup.absinfo.maximum = 32767;
+    abs_setup.absinfo.fuzz = 250;
+    abs_setup.absinfo.flat = 1500;
+    ioctl(fd, UI_ABS_SETUP, &abs_setup);
+    
+    // Левый стик Y
+    abs_setup.code = ABS_Y;
+    ioctl(fd, UI_ABS_SETUP, &abs_setup);
+    
+    // Правый стик X
+    abs_setup.code = ABS_RX;
+    ioctl(fd, UI_ABS_SETUP, &abs_setup);
+    
+    // Правый стик Y
+    abs_setup.code = ABS_RY;
+    ioctl(fd, UI_ABS_SETUP, &abs_setup);
+    
+    // Триггеры
+    abs_setup.code = ABS_Z;
+    abs_setup.absinfo.minimum = 0;
+    abs_setup.absinfo.maximum = 255;
+    abs_setup.absinfo.fuzz = 0;
+    abs_setup.absinfo.flat = 0;
+    ioctl(fd, UI_ABS_SETUP, &abs_setup);
+    
+    abs_setup.code = ABS_RZ;
+    ioctl(fd, UI_ABS_SETUP, &abs_setup);
+    
+    // Включаем Force Feedback (вибрация)
+    ioctl(fd, UI_SET_EVBIT, EV_FF);
+    ioctl(fd, UI_SET_FFBIT, FF_RUMBLE);
+    ioctl(fd, UI_SET_FFBIT, FF_PERIODIC);
+    
+    // Общий phys связывает геймпад с устройством датчиков движения,
+    // номер в нём различает контроллеры игроков
+    char phys[64];
+    snprintf(phys, sizeof(phys), "%s%d", JCM_DEVICE_PHYS_PREFIX, slot);
+    ioctl(fd, UI_SET_PHYS, phys);
+    
+    // Настраиваем устройство
+    memset(&usetup, 0, sizeof(usetup));
+    usetup.id.bustype = BUS_USB;
+    usetup.id.vendor = 0x045e;  // Microsoft
+    usetup.id.product = 0x02dd; // Xbox One Controller
+    usetup.id.version = 0x0100;
+    // Без этого ядро не создаёт FF часть устройства и отклоняет загрузку эффектов
+    usetup.ff_effects_max = JCM_FF_MAX_EFFECTS;
+    strcpy(usetup.name, "Xbox One Controller (JoyCon Mapper)");
+    
+    if (ioctl(fd, UI_DEV_SETUP, &usetup) < 0) {
+        LOGE("UI_DEV_SETUP failed: %s", strerror(errno));
+        close(fd);
+        return -1;
+    }
+    
+    // Создаем устройство
+    if (ioctl(fd, UI_DEV_CREATE) < 0) {
+        LOGE("UI_DEV_CREATE failed: %s", strerror(errno));
+        close(fd);
+        return -1;
+    }
+    
+    // fd открыт с O_NONBLOCK: EAGAIN и частичные записи уходят в очередь вывода
+    jcm_output_open(fd);
+    
+    LOGD("Virtual Xbox controller created successfully, player %d", slot + 1);
+    return fd;
+}
+
+// Уничтожение устройства
+JNIEXPORT void JNICALL
+Java_com_switchroot_joyconmapper_VirtualXboxController_nativeDestroyDevice(JNIEnv *env, jobject thiz, jint fd) {
+    if (fd >= 0) {
+        jcm_output_close(fd);
+        ioctl(fd, UI_DEV_DESTROY);
+        close(fd);
+        LOGD("Virtual device destroyed");
+    }
+}
+
+// Отправка целого кадра: тройки (type, code, value) + SYN_REPORT одним write()
+JNIEXPORT jint JNICALL
+Java_com_switchroot_joyconmapper_VirtualXboxController_nativeSendFrame(JNIEnv *env, jobject thiz, jint fd, jintArray frame, jint count) {
+    if (fd < 0) return -EBADF;
+    if (count < 0 || count > JCM_MAX_FRAME_EVENTS) return -EINVAL;
+    
+    // Кадр уже в Linux кодах: трансляция кнопок сделана таблицей на стороне Java
+    jint packed[JCM_MAX_FRAME_EVENTS * JCM_FRAME_STRIDE];
+    env->GetIntArrayRegion(frame, 0, count * JCM_FRAME_STRIDE, packed);
+    
+    return jcm_write_frame(fd, packed, count);
+}
+
+// Дописывает очередь вывода без ожидания. Возвращает число оставшихся событий или -errno
+JNIEXPORT jint JNICALL
+Java_com_switchroot_joyconmapper_VirtualXboxController_nativeFlushOutput(JNIEnv *env, jobject thiz, jint fd) {
+    return jcm_output_flush(fd, 0);
+}
+
+// Счётчики в порядке полей jcm_output_stats
+JNIEXPORT void JNICALL
+Java_com_switchroot_joyconmapper_VirtualXboxController_nativeOutputStats(JNIEnv *env, jobject thiz, jint fd, jlongArray out) {
+    jcm_output_stats stats;
+    if (jcm_output_get_stats(fd, &stats) < 0) return;
+    jlong values[] = {
+        (jlong) stats.frames, (jlong) stats.eagain, (jlong) stats.partial, (jlong) stats.retries,
+        (jlong) stats.collapsed, (jlong) stats.dropped, (jlong) stats.errors, (jlong) stats.pending
+    };
+    jsize count = env->GetArrayLength(out);
+    jsize total = (jsize) (sizeof(values) / sizeof(values[0]));
+    env->SetLongArrayRegion(out, 0, count < total ? count : total, values);
+}
+
+// Запуск native моста: открывает и захватывает evdev узлы Joy-Con и
+// пишет в уже созданное uinput устройство. Возвращает handle или 0
+JNIEXPORT jlong JNICALL
+Java_com_switchroot_joyconmapper_NativeBridge_nativeStart(JNIEnv *env, jobject thiz, jint uinputFd,
+        jintArray buttons, jintArray axisSource, jintArray axisScale, jint threshold, jint deadzone) {
+    jcm_bridge_tables tables;
+    if (!read_tables(env, buttons, axisSource, axisScale, threshold, deadzone, &tables)) {
+        LOGE("Invalid bridge tables");
+        return 0;
+    }
+    
+    jcm_bridge *bridge = jcm_bridge_create(uinputFd, &tables);
+    if (bridge == NULL) {
+        LOGE("Failed to create bridge: %s", strerror(errno));
+        return 0;
+    }
+    
+    int sources = jcm_bridge_add_joycons(bridge, 1);
+    if (sources == 0) {
+        LOGE("No Joy-Con evdev nodes could be opened and grabbed");
+        jcm_bridge_destroy(bridge);
+        return 0;
+    }
+    
+    BridgeHandle *handle = new BridgeHandle();
+    handle->bridge = bridge;
+    if (pthread_create(&handle->thread, NULL, bridge_thread, bridge) != 0) {
+        LOGE("Failed to start bridge thread");
+        jcm_bridge_destroy(bridge);
+        delete handle;
+        return 0;
+    }
+    
+    LOGD("Native bridge started with %d sources", sources);
+    return (jlong) (intptr_t) handle;
+}
+
+JNIEXPORT void JNICALL
+Java_com_switchroot_joyconmapper_NativeBridge_nativeUpdateTables(JNIEnv *env, jobject thiz, jlong handlePtr,
+        jintArray buttons, jintArray axisSource, jintArray axisScale, jint threshold, jint deadzone) {
+    BridgeHandle *handle = (BridgeHandle *) (intptr_t) handlePtr;
+    if (handle == NULL) return;
+    
+    jcm_bridge_tables tables;
+    if (read_tables(env, buttons, axisSource, axisScale, threshold, deadzone, &tables)) {
+        jcm_bridge_set_tables(handle->bridge, &tables);
+    }
+}
+
+// Останавливает поток, отпускает захват и закрывает evdev узлы
+JNIEXPORT void JNICALL
+Java_com_switchroot_joyconmapper_NativeBridge_nativeStop(JNIEnv *env, jobject thiz, jlong handlePtr) {
+    BridgeHandle *handle = (BridgeHandle *) (intptr_t) handlePtr;
+    if (handle == NULL) return;
+    
+    jcm_bridge_stop(handle->bridge);
+    pthread_join(handle->thread, NULL);
+    jcm_bridge_destroy(handle->bridge);
+    delete handle;
+    LOGD("Native bridge stopped");
+}
+
+// Счётчики в порядке полей jcm_bridge_stats
+JNIEXPORT void JNICALL
+Java_com_switchroot_joyconmapper_NativeBridge_nativeStats(JNIEnv *env, jobject thiz, jlong handlePtr, jlongArray out) {
+    BridgeHandle *handle = (BridgeHandle *) (intptr_t) handlePtr;
+    if (handle == NULL) return;
+    
+    jcm_bridge_stats stats;
+    jcm_bridge_get_stats(handle->bridge, &stats);
+    jlong values[] = {
+        (jlong) stats.events_in, (jlong) stats.reads, (jlong) stats.frames_out, (jlong) stats.events_out,
+        (jlong) stats.write_errors, (jlong) stats.sync_dropped, (jlong) stats.sources_lost
+    };
+    jsize count = env->GetArrayLength(out);
+    jsize total = (jsize) (sizeof(values) / sizeof(values[0]));
+    env->SetLongArrayRegion(out, 0, count < total ? count : total, values);
+}
+
+// Запуск потока force feedback на uinput fd контроллера. Возвращает handle или 0
+JNIEXPORT jlong JNICALL
+Java_com_switchroot_joyconmapper_ForceFeedback_nativeStart(JNIEnv *env, jobject thiz, jint fd, jint minIntervalMs) {
+    ForceFeedbackHandle *handle = new ForceFeedbackHandle();
+    env->GetJavaVM(&handle->vm);
+    handle->target = env->NewGlobalRef(thiz);
+    handle->onRumble = env->GetMethodID(env->GetObjectClass(thiz), "onRumble", "(III)V");
+    if (handle->onRumble == NULL) {
+        env->DeleteGlobalRef(handle->target);
+        delete handle;
+        return 0;
+    }
+    
+    jcm_ff_sink sink;
+    sink.rumble = rumble_to_java;
+    sink.context = handle;
+    handle->service = jcm_ff_create(fd, &sink, NULL, minIntervalMs);
+    if (handle->service == NULL) {
+        LOGE("Failed to create force feedback service: %s", strerror(errno));
+        env->DeleteGlobalRef(handle->target);
+        delete handle;
+        return 0;
+    }
+    
+    if (pthread_create(&handle->thread, NULL, force_feedback_thread, handle) != 0) {
+        LOGE("Failed to start force feedback thread");
+        jcm_ff_destroy(handle->service);
+        env->DeleteGlobalRef(handle->target);
+        delete handle;
+        return 0;
+    }
+    return (jlong) (intptr_t) handle;
+}
+
+JNIEXPORT void JNICALL
+Java_com_switchroot_joyconmapper_ForceFeedback_nativeStop(JNIEnv *env, jobject thiz, jlong handlePtr) {
+    ForceFeedbackHandle *handle = (ForceFeedbackHandle *) (intptr_t) handlePtr;
+    if (handle == NULL) return;
+    
+    jcm_ff_stop(handle->service);
+    pthread_join(handle->thread, NULL);
+    jcm_ff_destroy(handle->service);
+    env->DeleteGlobalRef(handle->target);
+    delete handle;
+}
+
+// Счётчики в порядке полей jcm_ff_stats
+JNIEXPORT void JNICALL
+Java_com_switchroot_joyconmapper_ForceFeedback_nativeStats(JNIEnv *env, jobject thiz, jlong handlePtr, jlongArray out) {
+    ForceFeedbackHandle *handle = (ForceFeedbackHandle *) (intptr_t) handlePtr;
+    if (handle == NULL) return;
+    
+    jcm_ff_stats stats;
+    jcm_ff_get_stats(handle->service, &stats);
+    jlong values[] = {
+        (jlong) stats.uploads, (jlong) stats.erases, (jlong) stats.plays, (jlong) stats.stops,
+        (jlong) stats.coalesced, (jlong) stats.sink_calls, (jlong) stats.request_errors,
+        (jlong) stats.max_service_us, (jlong) stats.total_service_us
+    };
+    jsize count = env->GetArrayLength(out);
+    jsize total = (jsize) (sizeof(values) / sizeof(values[0]));
+    env->SetLongArrayRegion(out, 0, count < total ? count : total, values);
+}
+
+// Устройство датчиков движения рядом с геймпадом: те же vendor/product и phys
+JNIEXPORT jint JNICALL
+Java_com_switchroot_joyconmapper_MotionSensorDevice_nativeCreate(JNIEnv *env, jobject thiz) {
+    int fd = jcm_create_motion_device("Xbox One Controller (JoyCon Mapper) Motion Sensors", 0x045e, 0x02dd);
+    if (fd < 0) {
+        LOGE("Failed to create motion sensor device: %s", strerror(-fd));
+        return -1;
+    }
+    LOGD("Motion sensor device created");
+    return fd;
+}
+
+JNIEXPORT void JNICALL
+Java_com_switchroot_joyconmapper_MotionSensorDevice_nativeDestroy(JNIEnv *env, jobject thiz, jint fd) {
+    if (fd >= 0) {
+        ioctl(fd, UI_DEV_DESTROY);
+        close(fd);
+    }
+}
+
+// Пачка сэмплов (JCM_IMU_STRIDE значений на сэмпл) одним JNI вызовом и одним write()
+JNIEXPORT jint JNICALL
+Java_com_switchroot_joyconmapper_MotionSensorDevice_nativeSendBatch(JNIEnv *env, jobject thiz, jint fd, jintArray samples, jint count) {
+    if (fd < 0) return -EBADF;
+    if (count <= 0 || count > JCM_IMU_MAX_BATCH) return -EINVAL;
+    
+    jint packed[JCM_IMU_MAX_BATCH * JCM_IMU_STRIDE];
+    env->GetIntArrayRegion(samples, 0, count * JCM_IMU_STRIDE, packed);
+    
+    return jcm_write_imu_batch(fd, packed, count);
+}
+
 }
\ No newline at end of file
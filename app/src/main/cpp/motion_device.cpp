@@ -0,0 +1,93 @@
+#include "motion_device.h"
+
+#include <errno.h>
+#include <fcntl.h>
+#include <string.h>
+#include <unistd.h>
+#include <linux/uinput.h>
+#include <sys/ioctl.h>
+
+// MSC_TIMESTAMP + 6 осей + SYN_REPORT
+#define JCM_IMU_EVENTS_PER_SAMPLE 8
+
+static const int IMU_AXES[6] = { ABS_X, ABS_Y, ABS_Z, ABS_RX, ABS_RY, ABS_RZ };
+
+static int setup_axis(int fd, int code, int range, int resolution) {
+    struct uinput_abs_setup abs_setup;
+    memset(&abs_setup, 0, sizeof(abs_setup));
+    abs_setup.code = code;
+    abs_setup.absinfo.minimum = -range;
+    abs_setup.absinfo.maximum = range;
+    abs_setup.absinfo.resolution = resolution;
+    return ioctl(fd, UI_ABS_SETUP, &abs_setup);
+}
+
+int jcm_create_motion_device(const char *name, unsigned short vendor, unsigned short product) {
+    int fd = open("/dev/uinput", O_WRONLY | O_NONBLOCK | O_CLOEXEC);
+    if (fd < 0) return -errno;
+
+    ioctl(fd, UI_SET_PROPBIT, INPUT_PROP_ACCELEROMETER);
+    ioctl(fd, UI_SET_EVBIT, EV_ABS);
+    ioctl(fd, UI_SET_EVBIT, EV_MSC);
+    ioctl(fd, UI_SET_MSCBIT, MSC_TIMESTAMP);
+
+    // Ускорение ±8g, гироскоп ±2000 градусов/с
+    setup_axis(fd, ABS_X, 8 * JCM_IMU_ACCEL_RES_PER_G, JCM_IMU_ACCEL_RES_PER_G);
+    setup_axis(fd, ABS_Y, 8 * JCM_IMU_ACCEL_RES_PER_G, JCM_IMU_ACCEL_RES_PER_G);
+    setup_axis(fd, ABS_Z, 8 * JCM_IMU_ACCEL_RES_PER_G, JCM_IMU_ACCEL_RES_PER_G);
+    setup_axis(fd, ABS_RX, 2000 * JCM_IMU_GYRO_RES_PER_DPS, JCM_IMU_GYRO_RES_PER_DPS);
+    setup_axis(fd, ABS_RY, 2000 * JCM_IMU_GYRO_RES_PER_DPS, JCM_IMU_GYRO_RES_PER_DPS);
+    setup_axis(fd, ABS_RZ, 2000 * JCM_IMU_GYRO_RES_PER_DPS, JCM_IMU_GYRO_RES_PER_DPS);
+
+    ioctl(fd, UI_SET_PHYS, JCM_DEVICE_PHYS);
+
+    struct uinput_setup usetup;
+    memset(&usetup, 0, sizeof(usetup));
+    usetup.id.bustype = BUS_USB;
+    usetup.id.vendor = vendor;
+    usetup.id.product = product;
+    usetup.id.version = 0x0100;
+    strncpy(usetup.name, name, UINPUT_MAX_NAME_SIZE - 1);
+
+    if (ioctl(fd, UI_DEV_SETUP, &usetup) < 0 || ioctl(fd, UI_DEV_CREATE) < 0) {
+        int error = errno;
+        close(fd);
+        return -error;
+    }
+    return fd;
+}
+
+int jcm_write_imu_batch(int fd, const int *samples, int count) {
+    if (fd < 0) return -EBADF;
+    if (count <= 0 || count > JCM_IMU_MAX_BATCH) return -EINVAL;
+
+    struct input_event events[JCM_IMU_MAX_BATCH * JCM_IMU_EVENTS_PER_SAMPLE];
+    memset(events, 0, sizeof(struct input_event) * count * JCM_IMU_EVENTS_PER_SAMPLE);
+
+    struct input_event *ev = events;
+    for (int i = 0; i < count; i++) {
+        const int *sample = samples + i * JCM_IMU_STRIDE;
+
+        ev->type = EV_MSC;
+        ev->code = MSC_TIMESTAMP;
+        ev->value = sample[0];
+        ev++;
+
+        for (int axis = 0; axis < 6; axis++) {
+            ev->type = EV_ABS;
+            ev->code = IMU_AXES[axis];
+            ev->value = sample[1 + axis];
+            ev++;
+        }
+
+        ev->type = EV_SYN;
+        ev->code = SYN_REPORT;
+        ev++;
+    }
+
+    ssize_t written = write(fd, events, sizeof(struct input_event) * (ev - events));
+    if (written < 0) {
+        return -errno;
+    }
+    return (int) written;
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+#ifndef JOYCONMAPPER_MOTION_DEVICE_H
+#define JOYCONMAPPER_MOTION_DEVICE_H
+
+// Отдельное uinput устройство датчиков движения (INPUT_PROP_ACCELEROMETER)
+// рядом с виртуальным геймпадом. Привязка к геймпаду - общий phys и те же
+// vendor/product, как у hid-nintendo и hid-playstation.
+
+// phys, общий для геймпада и его датчиков: префикс + номер игрока.
+// Датчики есть только у первого игрока
+#define JCM_DEVICE_PHYS_PREFIX "joyconmapper/input"
+#define JCM_DEVICE_PHYS JCM_DEVICE_PHYS_PREFIX "0"
+
+// Сэмпл в упакованном пакете: время (мкс), ускорение X/Y/Z, гироскоп X/Y/Z
+#define JCM_IMU_STRIDE 7
+
+// Максимум сэмплов за один write()
+#define JCM_IMU_MAX_BATCH 32
+
+// Ускорение - единиц на g, гироскоп - единиц на градус/с (absinfo.resolution)
+#define JCM_IMU_ACCEL_RES_PER_G 4096
+#define JCM_IMU_GYRO_RES_PER_DPS 1000
+
+// Создаёт устройство датчиков. Возвращает fd или -errno
+int jcm_create_motion_device(const char *name, unsigned short vendor, unsigned short product);
+
+// Пишет пачку сэмплов одним write(): на каждый сэмпл MSC_TIMESTAMP, шесть осей
+// и SYN_REPORT. Время сэмпла уходит в MSC_TIMESTAMP, поэтому пачка, собранная
+// за несколько миллисекунд, не теряет исходные интервалы.
+// Возвращает число записанных байт или -errno
+int jcm_write_imu_batch(int fd, const int *samples, int count);
+
+#endif
\ No newline at end of file
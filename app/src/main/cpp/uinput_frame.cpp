@@ -0,0 +1,274 @@
+#include "uinput_frame.h"
+
+#include <atomic>
+#include <mutex>
+#include <unistd.h>
+#include <poll.h>
+#include <time.h>
+#include <linux/input.h>
+#include <string.h>
+#include <errno.h>
+
+// fd не меньше этого очередь не получают и пишутся напрямую
+#define JCM_OUTPUT_MAX_FD 1024
+
+// Пауза перед повтором, если fd сообщает о готовности, но запись снова даёт EAGAIN
+#define JCM_OUTPUT_BACKOFF_NS 100000
+
+#define EVENT_SIZE ((int) sizeof(struct input_event))
+
+// Очередь недописанных событий одного fd. Пишущие потоки (поток вывода Java
+// и native мост) берут мьютекс на время кадра; без давления он не оспаривается.
+struct jcm_output {
+    int fd;
+    std::mutex lock;
+    struct input_event events[JCM_OUTPUT_CAPACITY];
+    // Недописанные события - [start, end), у первого уже записано offset байт
+    int start;
+    int end;
+    int offset;
+    // Оси ниже этого индекса не заменяются: после них в очереди стоит кнопка
+    int barrier;
+    jcm_output_stats stats;
+};
+
+static std::atomic<jcm_output *> outputs[JCM_OUTPUT_MAX_FD];
+
+static jcm_output *find_output(int fd) {
+    if (fd < 0 || fd >= JCM_OUTPUT_MAX_FD) return NULL;
+    return outputs[fd].load(std::memory_order_acquire);
+}
+
+static long long now_ms() {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (long long) ts.tv_sec * 1000 + ts.tv_nsec / 1000000;
+}
+
+static void reset_queue(jcm_output *out) {
+    out->start = 0;
+    out->end = 0;
+    out->offset = 0;
+    out->barrier = 0;
+}
+
+// Дописывает очередь без ожидания. 0 - записано всё или fd занят (EAGAIN),
+// -errno - fd сломан: очередь сбрасывается, иначе она осталась бы навсегда
+static int flush_queue(jcm_output *out) {
+    while (out->start < out->end) {
+        const char *data = (const char *) &out->events[out->start] + out->offset;
+        size_t bytes = (size_t) (out->end - out->start) * EVENT_SIZE - out->offset;
+        ssize_t written = write(out->fd, data, bytes);
+        if (written < 0) {
+            if (errno == EINTR) continue;
+            if (errno == EAGAIN || errno == EWOULDBLOCK) {
+                out->stats.eagain++;
+                return 0;
+            }
+            int error = errno;
+            out->stats.errors++;
+            reset_queue(out);
+            return -error;
+        }
+        if ((size_t) written < bytes) {
+            out->stats.partial++;
+        }
+        size_t done = (size_t) written + out->offset;
+        out->start += (int) (done / EVENT_SIZE);
+        out->offset = (int) (done % EVENT_SIZE);
+    }
+    reset_queue(out);
+    return 0;
+}
+
+// Дописывает очередь, ожидая готовности fd не дольше timeout_ms
+static int drain_queue(jcm_output *out, int timeout_ms) {
+    long long deadline = now_ms() + timeout_ms;
+    for (;;) {
+        int before = out->start * EVENT_SIZE + out->offset;
+        int result = flush_queue(out);
+        if (result < 0 || out->start == out->end) return result;
+        long long left = deadline - now_ms();
+        if (left <= 0) return 0;
+
+        out->stats.retries++;
+        if (out->start * EVENT_SIZE + out->offset == before) {
+            // uinput всегда готов к записи по poll(), а EAGAIN даёт занятый
+            // мьютекс устройства: без паузы цикл крутился бы вхолостую
+            struct timespec pause = { 0, JCM_OUTPUT_BACKOFF_NS };
+            nanosleep(&pause, NULL);
+        }
+        struct pollfd pfd;
+        pfd.fd = out->fd;
+        pfd.events = POLLOUT;
+        pfd.revents = 0;
+        poll(&pfd, 1, (int) left);
+    }
+}
+
+// Оси можно заменять только после частично записанного события и последней кнопки
+static int collapse_floor(const jcm_output *out) {
+    int floor = out->start + (out->offset > 0 ? 1 : 0);
+    return out->barrier > floor ? out->barrier : floor;
+}
+
+// Место под одно событие в конце очереди, при необходимости сдвигает очередь в начало
+static bool reserve(jcm_output *out) {
+    if (out->end < JCM_OUTPUT_CAPACITY) return true;
+    if (out->start == 0) return false;
+    int count = out->end - out->start;
+    memmove(out->events, out->events + out->start, sizeof(struct input_event) * count);
+    out->barrier = out->barrier > out->start ? out->barrier - out->start : 0;
+    out->end = count;
+    out->start = 0;
+    return true;
+}
+
+// Ставит события в очередь. Значение оси, уже ждущей в очереди, заменяется
+// новым; кадр, целиком слившийся с очередью, не добавляет свой SYN_REPORT.
+// Для кнопок и SYN_REPORT места ждём, оси без места отбрасываются
+static int enqueue(jcm_output *out, const struct input_event *events, int count) {
+    int appended = 0;
+    for (int i = 0; i < count; i++) {
+        const struct input_event *ev = &events[i];
+        if (ev->type == EV_SYN) {
+            if (appended == 0) continue;
+        } else if (ev->type == EV_ABS) {
+            bool merged = false;
+            for (int j = out->end - 1; j >= collapse_floor(out); j--) {
+                if (out->events[j].type == EV_ABS && out->events[j].code == ev->code) {
+                    out->events[j].value = ev->value;
+                    out->stats.collapsed++;
+                    merged = true;
+                    break;
+                }
+            }
+            if (merged) continue;
+        }
+
+        if (!reserve(out)) {
+            if (ev->type == EV_ABS) {
+                out->stats.dropped++;
+                continue;
+            }
+            int result = drain_queue(out, JCM_OUTPUT_BLOCK_MS);
+            if (result < 0) return result;
+            if (!reserve(out)) {
+                out->stats.errors++;
+                return -EAGAIN;
+            }
+        }
+        out->events[out->end++] = *ev;
+        appended++;
+        if (ev->type != EV_ABS && ev->type != EV_SYN) {
+            out->barrier = out->end;
+        }
+    }
+    return 0;
+}
+
+int jcm_write_frame(int fd, const int *packed, int count) {
+    if (fd < 0) return -EBADF;
+    if (count < 0 || count > JCM_MAX_FRAME_EVENTS) return -EINVAL;
+
+    // Кадр целиком собирается на стеке: события + SYN_REPORT
+    struct input_event events[JCM_MAX_FRAME_EVENTS + 1];
+    memset(events, 0, sizeof(struct input_event) * (count + 1));
+
+    for (int i = 0; i < count; i++) {
+        const int *entry = packed + i * JCM_FRAME_STRIDE;
+        events[i].type = (unsigned short) entry[0];
+        events[i].code = (unsigned short) entry[1];
+        events[i].value = entry[2];
+    }
+
+    events[count].type = EV_SYN;
+    events[count].code = SYN_REPORT;
+    events[count].value = 0;
+
+    size_t bytes = sizeof(struct input_event) * (count + 1);
+    jcm_output *out = find_output(fd);
+    if (out == NULL) {
+        ssize_t written = write(fd, events, bytes);
+        if (written < 0) {
+            return -errno;
+        }
+        return (int) written;
+    }
+
+    std::lock_guard<std::mutex> guard(out->lock);
+    out->stats.frames++;
+    int result = flush_queue(out);
+    if (result < 0) return result;
+
+    if (out->start == out->end) {
+        // Очередь пуста - обычная запись одним write(), как без очереди
+        ssize_t written;
+        do {
+            written = write(fd, events, bytes);
+        } while (written < 0 && errno == EINTR);
+        if (written == (ssize_t) bytes) {
+            return (int) written;
+        }
+        if (written < 0) {
+            if (errno != EAGAIN && errno != EWOULDBLOCK) {
+                out->stats.errors++;
+                return -errno;
+            }
+            out->stats.eagain++;
+            written = 0;
+        } else {
+            out->stats.partial++;
+        }
+
+        // Частично записанное событие кладётся как есть, остаток кадра - через enqueue
+        int first = (int) (written / EVENT_SIZE);
+        out->offset = (int) (written % EVENT_SIZE);
+        if (out->offset > 0) {
+            out->events[out->end++] = events[first++];
+        }
+        result = enqueue(out, events + first, count + 1 - first);
+    } else {
+        result = enqueue(out, events, count + 1);
+    }
+    if (result < 0) return result;
+
+    result = drain_queue(out, JCM_OUTPUT_RETRY_MS);
+    if (result < 0) return result;
+    return (int) bytes;
+}
+
+int jcm_output_open(int fd) {
+    if (fd < 0 || fd >= JCM_OUTPUT_MAX_FD) return -EINVAL;
+    jcm_output *out = new jcm_output();
+    out->fd = fd;
+    reset_queue(out);
+    memset(&out->stats, 0, sizeof(out->stats));
+    delete outputs[fd].exchange(out, std::memory_order_acq_rel);
+    return 0;
+}
+
+// Вызывается после остановки всех потоков, пишущих в fd
+void jcm_output_close(int fd) {
+    if (fd < 0 || fd >= JCM_OUTPUT_MAX_FD) return;
+    delete outputs[fd].exchange(NULL, std::memory_order_acq_rel);
+}
+
+int jcm_output_flush(int fd, int timeout_ms) {
+    jcm_output *out = find_output(fd);
+    if (out == NULL) return 0;
+    std::lock_guard<std::mutex> guard(out->lock);
+    if (out->start == out->end) return 0;
+    int result = drain_queue(out, timeout_ms);
+    if (result < 0) return result;
+    return out->end - out->start;
+}
+
+int jcm_output_get_stats(int fd, jcm_output_stats *stats) {
+    jcm_output *out = find_output(fd);
+    if (out == NULL) return -ENOENT;
+    std::lock_guard<std::mutex> guard(out->lock);
+    *stats = out->stats;
+    stats->pending = out->end - out->start;
+    return 0;
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+#ifndef JOYCONMAPPER_UINPUT_FRAME_H
+#define JOYCONMAPPER_UINPUT_FRAME_H
+
+// Максимальное число событий в одном кадре (без учёта SYN_REPORT)
+#define JCM_MAX_FRAME_EVENTS 32
+
+// Размер одной записи в упакованном кадре: type, code, value
+#define JCM_FRAME_STRIDE 3
+
+// Очередь недописанных событий на fd, в событиях
+#define JCM_OUTPUT_CAPACITY 256
+
+// Сколько запись ждёт готовности fd, прежде чем оставить хвост в очереди, мс
+#define JCM_OUTPUT_RETRY_MS 2
+
+// Сколько запись ждёт места в очереди для кнопок, прежде чем вернуть ошибку, мс
+#define JCM_OUTPUT_BLOCK_MS 1000
+
+// Собирает массив input_event из упакованных троек (type, code, value),
+// дописывает SYN_REPORT и отправляет всё одним write().
+// Не зависит от JNI и Android, поэтому fd может быть pipe или временным файлом.
+//
+// Если для fd открыта очередь (jcm_output_open), EAGAIN и частичная запись
+// не теряют события: остаток ждёт в очереди и дописывается следующими
+// вызовами или jcm_output_flush. Нажатия и отпускания кнопок не отбрасываются
+// никогда, значения осей в очереди заменяются более новыми.
+// Возвращает число принятых байт (записанных или поставленных в очередь) или -errno.
+int jcm_write_frame(int fd, const int *packed, int count);
+
+// Счётчики очереди вывода
+typedef struct {
+    unsigned long long frames;     // кадры, принятые jcm_write_frame
+    unsigned long long eagain;     // write() вернул EAGAIN
+    unsigned long long partial;    // write() записал только часть
+    unsigned long long retries;    // ожидания готовности fd перед повтором
+    unsigned long long collapsed;  // значения осей, заменённые более новыми в очереди
+    unsigned long long dropped;    // значения осей, для которых не нашлось места
+    unsigned long long errors;     // прочие ошибки write() и кнопки без места в очереди
+    int pending;                   // событий в очереди сейчас
+} jcm_output_stats;
+
+// Включает очередь для fd. Вызывается после создания устройства, до записи.
+// Возвращает 0 или -errno
+int jcm_output_open(int fd);
+
+// Выключает очередь; недописанные события теряются вместе с устройством
+void jcm_output_close(int fd);
+
+// Дописывает очередь, ожидая готовности fd не дольше timeout_ms.
+// Возвращает число событий, оставшихся в очереди, или -errno
+int jcm_output_flush(int fd, int timeout_ms);
+
+// 0 или -ENOENT, если очередь для fd не открыта
+int jcm_output_get_stats(int fd, jcm_output_stats *stats);
+
+#endif
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.switchroot.joyconmapper;
+
+// Плотная таблица трансляции скан-кодов Joy-Con в Linux BTN_* коды.
+// Скан-коды Joy-Con лежат в диапазоне BTN_SOUTH (304) .. BTN_DPAD_RIGHT (547),
+// поэтому поиск - одно обращение к int[] без хеширования и автобоксинга.
+final class ButtonTable {
+    static final int SCAN_BASE = 304;
+    static final int SCAN_LIMIT = 548;
+    static final int UNMAPPED = 0;
+    
+    private final int[] table = new int[SCAN_LIMIT - SCAN_BASE];
+    
+    static ButtonTable createDefault() {
+        ButtonTable t = new ButtonTable();
+        // Left Joy-Con
+        t.put(544, LinuxInput.BTN_DPAD_UP);
+        t.put(545, LinuxInput.BTN_DPAD_DOWN);
+        t.put(546, LinuxInput.BTN_DPAD_LEFT);
+        t.put(547, LinuxInput.BTN_DPAD_RIGHT);
+        t.put(310, LinuxInput.BTN_TL);
+        t.put(312, LinuxInput.BTN_TL2);
+        t.put(314, LinuxInput.BTN_SELECT);
+        t.put(317, LinuxInput.BTN_THUMBL);
+        
+        // Right Joy-Con (раскладка Nintendo: X и Y меняются местами)
+        t.put(304, LinuxInput.BTN_A);
+        t.put(305, LinuxInput.BTN_B);
+        t.put(307, LinuxInput.BTN_Y);
+        t.put(308, LinuxInput.BTN_X);
+        t.put(311, LinuxInput.BTN_TR);
+        t.put(313, LinuxInput.BTN_TR2);
+        t.put(315, LinuxInput.BTN_START);
+        t.put(316, LinuxInput.BTN_MODE);
+        t.put(318, LinuxInput.BTN_THUMBR);
+        return t;
+    }
+    
+    void put(int scanCode, int linuxButton) {
+        if (scanCode < SCAN_BASE || scanCode >= SCAN_LIMIT) {
+            throw new IllegalArgumentException("Scan code out of range: " + scanCode);
+        }
+        table[scanCode - SCAN_BASE] = linuxButton;
+    }
+    
+    // Возвращает Linux код кнопки или UNMAPPED
+    int lookup(int scanCode) {
+        int index = scanCode - SCAN_BASE;
+        if (index < 0 || index >= table.length) {
+            return UNMAPPED;
+        }
+        return table[index];
+    }
+    
+    // Таблица для native кода, индексируется как scanCode - SCAN_BASE
+    int[] toArray() {
+        return table.clone();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,187 @@
+package com.switchroot.joyconmapper;
+
+// Фоновое обучение калибровки одного стика по сэмплам в покое.
+//
+// observe() вызывается потоком ввода на каждый сэмпл и стоит несколько
+// сложений и сравнений: сэмплы копятся в окна по WINDOW штук, окно с малым
+// разбросом рядом с текущим центром считается покоем, его среднее и разброс
+// публикуются одним volatile long. Раз в несколько секунд фоновый поток
+// вызывает refine(): сглаживает центр, выводит мёртвую зону из шума и ход из
+// замеченных крайних положений и, если что-то заметно сдвинулось, публикует
+// новую StickCalibration.
+final class CalibrationLearner {
+    private static final int AXIS_MAX = StickCalibration.AXIS_MAX;
+    
+    private static final int WINDOW = 64;
+    // Разброс окна, при котором стик считается отпущенным
+    private static final int IDLE_SPREAD = 1500;
+    // Дальше от центра покоем не считается - это стик, удерживаемый рукой
+    private static final int MAX_CENTER_SHIFT = 2500;
+    // Ход короче этого не растягиваем, чтобы недожатый стик не давал скачков
+    private static final int MIN_RANGE = 24000;
+    private static final int MAX_DEADZONE = 4000;
+    // Изменения меньше этих не стоят новой калибровки и записи на диск
+    private static final int CENTER_EPSILON = 48;
+    private static final int RANGE_EPSILON = 256;
+    private static final int DEADZONE_EPSILON = 96;
+    
+    final String descriptor;
+    
+    private volatile StickCalibration current;
+    
+    // Окно покоя, только поток ввода
+    private int count;
+    private long sumX;
+    private long sumY;
+    private int minX;
+    private int maxX;
+    private int minY;
+    private int maxY;
+    
+    // Крайние положения за всё время. Пишет поток ввода, только когда крайнее
+    // положение обновилось, читает refine()
+    private volatile int extentXPos;
+    private volatile int extentXNeg;
+    private volatile int extentYPos;
+    private volatile int extentYNeg;
+    
+    // Последнее окно покоя: центр x, центр y и разброс по 16 бит
+    private volatile long idleWindow;
+    private volatile long idleWindows;
+    
+    // Состояние refine(), только фоновый поток. Сглаженные центр и зона копятся
+    // здесь, даже пока сдвиг меньше порога публикации
+    private long refinedWindows;
+    private boolean learned;
+    private int learnedCenterX;
+    private int learnedCenterY;
+    private int learnedDeadzone;
+    
+    CalibrationLearner(String descriptor, StickCalibration stored) {
+        this.descriptor = descriptor;
+        this.current = stored != null ? stored : StickCalibration.IDENTITY;
+        this.learned = stored != null;
+        this.learnedCenterX = current.centerX;
+        this.learnedCenterY = current.centerY;
+        this.learnedDeadzone = current.deadzone;
+        resetWindow();
+    }
+    
+    StickCalibration current() {
+        return current;
+    }
+    
+    long idleWindows() {
+        return idleWindows;
+    }
+    
+    // x, y - сырые значения стика в единицах оси
+    void observe(int x, int y) {
+        if (x > extentXPos) {
+            extentXPos = x;
+        } else if (x < extentXNeg) {
+            extentXNeg = x;
+        }
+        if (y > extentYPos) {
+            extentYPos = y;
+        } else if (y < extentYNeg) {
+            extentYNeg = y;
+        }
+        
+        sumX += x;
+        sumY += y;
+        if (x < minX) {
+            minX = x;
+        }
+        if (x > maxX) {
+            maxX = x;
+        }
+        if (y < minY) {
+            minY = y;
+        }
+        if (y > maxY) {
+            maxY = y;
+        }
+        if (++count < WINDOW) {
+            return;
+        }
+        
+        int spread = Math.max(maxX - minX, maxY - minY);
+        int meanX = (int) (sumX / WINDOW);
+        int meanY = (int) (sumY / WINDOW);
+        StickCalibration calibration = current;
+        if (spread <= IDLE_SPREAD
+            && Math.abs(meanX - calibration.centerX) <= MAX_CENTER_SHIFT
+            && Math.abs(meanY - calibration.centerY) <= MAX_CENTER_SHIFT) {
+            idleWindow = ((long) (meanX & 0xFFFF) << 32) | ((long) (meanY & 0xFFFF) << 16) | spread;
+            idleWindows++;
+        }
+        resetWindow();
+    }
+    
+    private void resetWindow() {
+        count = 0;
+        sumX = 0;
+        sumY = 0;
+        minX = Integer.MAX_VALUE;
+        maxX = Integer.MIN_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxY = Integer.MIN_VALUE;
+    }
+    
+    // Фоновый поток. Возвращает новую калибровку, если она опубликована, иначе null
+    StickCalibration refine() {
+        long windows = idleWindows;
+        if (windows != refinedWindows) {
+            long packed = idleWindow;
+            int idleX = (short) (packed >>> 32);
+            int idleY = (short) (packed >>> 16);
+            int spread = (int) (packed & 0xFFFF);
+            // Первое окно принимаем как есть, дальше сглаживаем с весом 1/4
+            if (!learned) {
+                learnedCenterX = idleX;
+                learnedCenterY = idleY;
+                learnedDeadzone = spread;
+                learned = true;
+            } else {
+                learnedCenterX += (idleX - learnedCenterX) / 4;
+                learnedCenterY += (idleY - learnedCenterY) / 4;
+                learnedDeadzone += (spread - learnedDeadzone) / 4;
+            }
+            refinedWindows = windows;
+        }
+        StickCalibration old = current;
+        int centerX = Math.max(-MAX_CENTER_SHIFT * 2, Math.min(MAX_CENTER_SHIFT * 2, learnedCenterX));
+        int centerY = Math.max(-MAX_CENTER_SHIFT * 2, Math.min(MAX_CENTER_SHIFT * 2, learnedCenterY));
+        int deadzone = Math.min(MAX_DEADZONE, learnedDeadzone);
+        
+        int rangeXPos = range(extentXPos - centerX, old.rangeXPos);
+        int rangeXNeg = range(centerX - extentXNeg, old.rangeXNeg);
+        int rangeYPos = range(extentYPos - centerY, old.rangeYPos);
+        int rangeYNeg = range(centerY - extentYNeg, old.rangeYNeg);
+        
+        if (Math.abs(centerX - old.centerX) < CENTER_EPSILON
+            && Math.abs(centerY - old.centerY) < CENTER_EPSILON
+            && Math.abs(deadzone - old.deadzone) < DEADZONE_EPSILON
+            && Math.abs(rangeXPos - old.rangeXPos) < RANGE_EPSILON
+            && Math.abs(rangeXNeg - old.rangeXNeg) < RANGE_EPSILON
+            && Math.abs(rangeYPos - old.rangeYPos) < RANGE_EPSILON
+            && Math.abs(rangeYNeg - old.rangeYNeg) < RANGE_EPSILON) {
+            return null;
+        }
+        StickCalibration next = new StickCalibration(centerX, centerY,
+            rangeXPos, rangeXNeg, rangeYPos, rangeYNeg, deadzone);
+        current = next;
+        return next;
+    }
+    
+    // Ход берём из замеченного упора, если стик до него доходил. Выученный ход
+    // только растёт: после перезапуска упоры копятся заново с нуля
+    private static int range(int observed, int previous) {
+        if (observed < MIN_RANGE) {
+            return previous;
+        }
+        observed = Math.min(AXIS_MAX, observed);
+        return previous == AXIS_MAX ? observed : Math.max(previous, observed);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.switchroot.joyconmapper;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Калибровки стиков по дескриптору Joy-Con: загружаются при подключении,
+// уточняются в фоне из сэмплов покоя и сохраняются в SharedPreferences.
+// Дескриптор не меняется при переподключении, поэтому вернувшийся Joy-Con
+// сразу получает выученную калибровку.
+final class CalibrationStore {
+    private static final String TAG = "CalibrationStore";
+    private static final long REFINE_PERIOD_MS = 2000;
+    
+    private final SharedPreferences prefs;
+    private final Map<String, CalibrationLearner> learners = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refiner = Executors.newSingleThreadScheduledExecutor(
+        r -> new Thread(r, "JoyConMapper-Calibration"));
+    
+    private volatile long saved;
+    
+    CalibrationStore(SharedPreferences prefs) {
+        this.prefs = prefs;
+        refiner.scheduleWithFixedDelay(this::refineAll, REFINE_PERIOD_MS, REFINE_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    // Главный поток, при подключении Joy-Con
+    CalibrationLearner learnerFor(String descriptor) {
+        return learners.computeIfAbsent(descriptor,
+            key -> new CalibrationLearner(key, StickCalibration.decode(prefs.getString(key, null))));
+    }
+    
+    void shutdown() {
+        refiner.shutdownNow();
+    }
+    
+    private void refineAll() {
+        SharedPreferences.Editor editor = null;
+        for (CalibrationLearner learner : learners.values()) {
+            StickCalibration next = learner.refine();
+            if (next == null) {
+                continue;
+            }
+            if (editor == null) {
+                editor = prefs.edit();
+            }
+            editor.putString(learner.descriptor, next.encode());
+            saved++;
+            Log.d(TAG, "Calibration updated for " + learner.descriptor + ": " + next);
+        }
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+    
+    void dump(PrintWriter writer) {
+        writer.println("Calibration: devices=" + learners.size() + " saved=" + saved);
+        for (CalibrationLearner learner : learners.values()) {
+            writer.println("  " + learner.descriptor + ": " + learner.current()
+                + " idleWindows=" + learner.idleWindows());
+        }
+    }
+}
\ No newline at end of file
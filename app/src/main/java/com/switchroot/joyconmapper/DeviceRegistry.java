@@ -0,0 +1,65 @@
+package com.switchroot.joyconmapper;
+
+import java.util.Arrays;
+
+// Реестр устройств ввода: id устройства -> роль Joy-Con.
+// Имя устройства разбирается один раз при подключении, а на горячем пути
+// роль берётся одним обращением к массиву без выделения памяти.
+final class DeviceRegistry {
+    static final int ROLE_OTHER = 0;
+    static final int ROLE_LEFT = 1;
+    static final int ROLE_RIGHT = 2;
+    
+    // Id устройств в Android небольшие, но растут при переподключениях
+    private static final int MAX_DEVICE_ID = 1 << 16;
+    
+    private byte[] roles = new byte[64];
+    
+    // Единственное место, где разбирается имя устройства
+    static int classify(String name) {
+        if (name == null) {
+            return ROLE_OTHER;
+        }
+        String lower = name.toLowerCase();
+        if (!lower.contains("joy-con") && !lower.contains("joycon")) {
+            return ROLE_OTHER;
+        }
+        if (lower.contains("left") || lower.contains("(l)")) {
+            return ROLE_LEFT;
+        }
+        if (lower.contains("right") || lower.contains("(r)")) {
+            return ROLE_RIGHT;
+        }
+        return ROLE_OTHER;
+    }
+    
+    // Запоминает роль устройства и возвращает её
+    int register(int deviceId, String name) {
+        int role = classify(name);
+        if (deviceId < 0 || deviceId >= MAX_DEVICE_ID) {
+            return ROLE_OTHER;
+        }
+        if (deviceId >= roles.length) {
+            if (role == ROLE_OTHER) {
+                return role;
+            }
+            roles = Arrays.copyOf(roles, Math.min(MAX_DEVICE_ID, Integer.highestOneBit(deviceId) << 1));
+        }
+        roles[deviceId] = (byte) role;
+        return role;
+    }
+    
+    void remove(int deviceId) {
+        if (deviceId >= 0 && deviceId < roles.length) {
+            roles[deviceId] = ROLE_OTHER;
+        }
+    }
+    
+    int roleOf(int deviceId) {
+        if (deviceId < 0 || deviceId >= roles.length) {
+            return ROLE_OTHER;
+        }
+        return roles[deviceId];
+    }
+
+}
\ No newline at end of file
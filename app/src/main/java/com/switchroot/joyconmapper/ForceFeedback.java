@@ -0,0 +1,85 @@
+package com.switchroot.joyconmapper;
+
+import android.util.Log;
+import java.io.PrintWriter;
+
+// Обслуживание force feedback uinput устройства (ff_service.cpp).
+// Native поток отвечает на загрузку и удаление эффектов сразу, поэтому
+// игры не зависают в ioctl загрузки, а воспроизведение с ограничением
+// частоты передаётся в RumbleSink.
+final class ForceFeedback {
+    private static final String TAG = "ForceFeedback";
+    
+    static final int DEFAULT_MIN_INTERVAL_MS = 20;
+    
+    // Порядок совпадает с полями jcm_ff_stats
+    static final int STAT_UPLOADS = 0;
+    static final int STAT_ERASES = 1;
+    static final int STAT_PLAYS = 2;
+    static final int STAT_STOPS = 3;
+    static final int STAT_COALESCED = 4;
+    static final int STAT_SINK_CALLS = 5;
+    static final int STAT_REQUEST_ERRORS = 6;
+    static final int STAT_MAX_SERVICE_US = 7;
+    static final int STAT_TOTAL_SERVICE_US = 8;
+    static final int STAT_COUNT = 9;
+    
+    private native long nativeStart(int fd, int minIntervalMs);
+    private native void nativeStop(long handle);
+    private native void nativeStats(long handle, long[] out);
+    
+    private long handle;
+    private volatile RumbleSink sink;
+    
+    void setSink(RumbleSink sink) {
+        this.sink = sink;
+    }
+    
+    synchronized boolean start(int fd, int minIntervalMs) {
+        if (handle != 0) {
+            return true;
+        }
+        try {
+            handle = nativeStart(fd, minIntervalMs);
+        } catch (UnsatisfiedLinkError e) {
+            Log.e(TAG, "Force feedback unavailable", e);
+            handle = 0;
+        }
+        return handle != 0;
+    }
+    
+    // Вызывать до закрытия uinput fd
+    synchronized void stop() {
+        if (handle != 0) {
+            nativeStop(handle);
+            handle = 0;
+        }
+    }
+    
+    synchronized void dump(PrintWriter writer) {
+        if (handle == 0) {
+            writer.println("Force feedback: stopped");
+            return;
+        }
+        long[] stats = new long[STAT_COUNT];
+        nativeStats(handle, stats);
+        long requests = stats[STAT_UPLOADS] + stats[STAT_ERASES];
+        writer.println("Force feedback: uploads=" + stats[STAT_UPLOADS] + " erases=" + stats[STAT_ERASES]
+            + " plays=" + stats[STAT_PLAYS] + " stops=" + stats[STAT_STOPS]
+            + " coalesced=" + stats[STAT_COALESCED] + " sinkCalls=" + stats[STAT_SINK_CALLS]
+            + " errors=" + stats[STAT_REQUEST_ERRORS]
+            + " serviceUs(avg/max)=" + (requests > 0 ? stats[STAT_TOTAL_SERVICE_US] / requests : 0)
+            + "/" + stats[STAT_MAX_SERVICE_US]);
+    }
+    
+    // Вызывается из native потока FF
+    @SuppressWarnings("unused")
+    private void onRumble(int strong, int weak, int durationMs) {
+        RumbleSink current = sink;
+        if (current != null) {
+            current.rumble(strong, weak, durationMs);
+        } else {
+            Log.d(TAG, "Rumble strong=" + strong + " weak=" + weak + " duration=" + durationMs);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.switchroot.joyconmapper;
+
+// Получатель кадров событий: тройки (type, code, value), SYN_REPORT
+// добавляет сам получатель. На устройстве это native запись в uinput,
+// в бенчмарках и на Linux хосте - запись в память или pipe.
+interface FrameSink {
+    // Возвращает число записанных байт или отрицательный код ошибки
+    int writeFrame(int fd, int[] frame, int count);
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+package com.switchroot.joyconmapper;
+
+import java.io.PrintWriter;
+
+// Собирает сэмплы IMU в пачки для MotionSensorDevice.
+// Без Android API, поэтому компилируется и в бенчмарках.
+// Все методы вызываются с одного потока (ImuPipeline), счётчики читаются из dump.
+final class ImuBatcher {
+    static final int MODE_RAW = 0;
+    static final int MODE_DOWNSAMPLE = 1;
+    static final int MODE_FUSION = 2;
+    
+    // Совпадают с motion_device.h
+    static final int STRIDE = 7;
+    static final int MAX_BATCH = 32;
+    static final int ACCEL_RES_PER_G = 4096;
+    static final int GYRO_RES_PER_DPS = 1000;
+    
+    private static final float STANDARD_GRAVITY = 9.80665f;
+    private static final float ACCEL_SCALE = ACCEL_RES_PER_G / STANDARD_GRAVITY;
+    private static final float GYRO_SCALE = (float) (180.0 / Math.PI) * GYRO_RES_PER_DPS;
+    
+    // Доля гироскопа в комплементарном фильтре
+    private static final float FUSION_ALPHA = 0.98f;
+    // Больше этого интервала считаем разрывом потока и сбрасываем оценку
+    private static final long FUSION_MAX_GAP_NANOS = 100_000_000L;
+    
+    private final ImuSink sink;
+    private final int mode;
+    private final int downsample;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    
+    private final int[] batch = new int[MAX_BATCH * STRIDE];
+    private int batchCount;
+    private long batchStartNanos;
+    
+    // Накопление для MODE_DOWNSAMPLE
+    private final float[] sum = new float[6];
+    private int summed;
+    
+    // Оценка вектора гравитации для MODE_FUSION, м/с²
+    private float gravityX;
+    private float gravityY;
+    private float gravityZ;
+    private long lastFusionNanos;
+    private boolean fusionReady;
+    
+    private volatile long samplesIn;
+    private volatile long samplesOut;
+    private volatile long batches;
+    private volatile long writeErrors;
+    
+    // batchSize - сэмплов в пачке, maxDelayMs - сколько сэмпл может ждать отправки
+    ImuBatcher(ImuSink sink, int mode, int downsample, int batchSize, int maxDelayMs) {
+        this.sink = sink;
+        this.mode = mode;
+        this.downsample = Math.max(1, downsample);
+        this.batchSize = Math.max(1, Math.min(MAX_BATCH, batchSize));
+        this.maxDelayNanos = maxDelayMs * 1_000_000L;
+    }
+    
+    static int parseMode(String value) {
+        if ("downsample".equals(value)) return MODE_DOWNSAMPLE;
+        if ("fusion".equals(value)) return MODE_FUSION;
+        return MODE_RAW;
+    }
+    
+    // timestampNanos - время сэмпла от датчика, nowNanos - время прихода.
+    // Ускорение в м/с², угловая скорость в рад/с
+    void onSample(long timestampNanos, long nowNanos, float ax, float ay, float az,
+                  float wx, float wy, float wz) {
+        samplesIn++;
+        
+        if (mode == MODE_DOWNSAMPLE) {
+            sum[0] += ax;
+            sum[1] += ay;
+            sum[2] += az;
+            sum[3] += wx;
+            sum[4] += wy;
+            sum[5] += wz;
+            if (++summed < downsample) {
+                return;
+            }
+            float scale = 1f / summed;
+            append(timestampNanos, nowNanos, sum[0] * scale, sum[1] * scale, sum[2] * scale,
+                    sum[3] * scale, sum[4] * scale, sum[5] * scale);
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] = 0f;
+            }
+            summed = 0;
+        } else if (mode == MODE_FUSION) {
+            fuse(timestampNanos, ax, ay, az, wx, wy, wz);
+            append(timestampNanos, nowNanos, gravityX, gravityY, gravityZ, wx, wy, wz);
+        } else {
+            append(timestampNanos, nowNanos, ax, ay, az, wx, wy, wz);
+        }
+    }
+    
+    // Комплементарный фильтр: гравитация поворачивается по гироскопу
+    // (dg/dt = -ω × g) и подтягивается к акселерометру, что убирает
+    // толчки руки из ускорения, оставляя наклон.
+    private void fuse(long timestampNanos, float ax, float ay, float az, float wx, float wy, float wz) {
+        long gap = timestampNanos - lastFusionNanos;
+        lastFusionNanos = timestampNanos;
+        if (!fusionReady || gap <= 0 || gap > FUSION_MAX_GAP_NANOS) {
+            gravityX = ax;
+            gravityY = ay;
+            gravityZ = az;
+            fusionReady = true;
+            return;
+        }
+        
+        float dt = gap / 1e9f;
+        float gx = gravityX - (wy * gravityZ - wz * gravityY) * dt;
+        float gy = gravityY - (wz * gravityX - wx * gravityZ) * dt;
+        float gz = gravityZ - (wx * gravityY - wy * gravityX) * dt;
+        
+        gravityX = FUSION_ALPHA * gx + (1f - FUSION_ALPHA) * ax;
+        gravityY = FUSION_ALPHA * gy + (1f - FUSION_ALPHA) * ay;
+        gravityZ = FUSION_ALPHA * gz + (1f - FUSION_ALPHA) * az;
+    }
+    
+    private void append(long timestampNanos, long nowNanos, float ax, float ay, float az,
+                        float wx, float wy, float wz) {
+        if (batchCount == 0) {
+            batchStartNanos = nowNanos;
+        }
+        int base = batchCount * STRIDE;
+        // MSC_TIMESTAMP - 32 бита микросекунд, переполнение ожидаемо
+        batch[base] = (int) (timestampNanos / 1000L);
+        batch[base + 1] = Math.round(ax * ACCEL_SCALE);
+        batch[base + 2] = Math.round(ay * ACCEL_SCALE);
+        batch[base + 3] = Math.round(az * ACCEL_SCALE);
+        batch[base + 4] = Math.round(wx * GYRO_SCALE);
+        batch[base + 5] = Math.round(wy * GYRO_SCALE);
+        batch[base + 6] = Math.round(wz * GYRO_SCALE);
+        batchCount++;
+        
+        if (batchCount >= batchSize || nowNanos - batchStartNanos >= maxDelayNanos) {
+            flush();
+        }
+    }
+    
+    // Есть ли сэмплы, ждущие отправки
+    boolean hasPending() {
+        return batchCount > 0;
+    }
+    
+    long maxDelayNanos() {
+        return maxDelayNanos;
+    }
+    
+    void flush() {
+        if (batchCount == 0) {
+            return;
+        }
+        int count = batchCount;
+        batchCount = 0;
+        if (sink.writeBatch(batch, count) < 0) {
+            writeErrors++;
+            return;
+        }
+        samplesOut += count;
+        batches++;
+    }
+    
+    void dump(PrintWriter writer) {
+        long sent = batches;
+        writer.println("IMU: samplesIn=" + samplesIn + " samplesOut=" + samplesOut
+            + " batches=" + sent + " avgBatch=" + (sent == 0 ? 0 : samplesOut / sent)
+            + " writeErrors=" + writeErrors);
+    }
+}
\ No newline at end of file
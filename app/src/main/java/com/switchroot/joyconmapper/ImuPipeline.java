@@ -0,0 +1,146 @@
+package com.switchroot.joyconmapper;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.InputDevice;
+import java.io.PrintWriter;
+
+// Поток IMU Joy-Con: датчики InputDevice -> ImuBatcher -> MotionSensorDevice.
+// Свой поток и свой uinput fd, поэтому кнопки и стики IMU не ждут.
+final class ImuPipeline implements SensorEventListener {
+    private static final String TAG = "ImuPipeline";
+    
+    // Разрешаем HAL копить сэмплы не дольше этого, мкс
+    private static final int MAX_REPORT_LATENCY_US = 4000;
+    
+    private final MotionSensorDevice device = new MotionSensorDevice();
+    private final ImuBatcher batcher;
+    private final Runnable flushTask = this::flushPending;
+    
+    private HandlerThread thread;
+    private Handler handler;
+    private SensorManager sensorManager;
+    private int sourceId = -1;
+    
+    // Последнее ускорение, сэмпл выпускается по каждому событию гироскопа
+    private float accelX;
+    private float accelY;
+    private float accelZ;
+    private boolean haveAccel;
+    private boolean flushPosted;
+    
+    ImuPipeline(int mode, int downsample, int batchSize, int maxDelayMs) {
+        batcher = new ImuBatcher(device, mode, downsample, batchSize, maxDelayMs);
+    }
+    
+    // source - Joy-Con с датчиками, обычно правый. false - датчиков нет
+    synchronized boolean start(InputDevice source) {
+        if (source.getId() == sourceId) {
+            return true;
+        }
+        stop();
+        
+        SensorManager manager = source.getSensorManager();
+        Sensor accel = manager != null ? manager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER) : null;
+        Sensor gyro = manager != null ? manager.getDefaultSensor(Sensor.TYPE_GYROSCOPE) : null;
+        if (accel == null || gyro == null) {
+            Log.w(TAG, "No motion sensors on " + source.getName());
+            return false;
+        }
+        if (!device.create()) {
+            return false;
+        }
+        
+        thread = new HandlerThread("JoyConMapper-IMU");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        sensorManager = manager;
+        manager.registerListener(this, accel, SensorManager.SENSOR_DELAY_FASTEST, MAX_REPORT_LATENCY_US, handler);
+        manager.registerListener(this, gyro, SensorManager.SENSOR_DELAY_FASTEST, MAX_REPORT_LATENCY_US, handler);
+        sourceId = source.getId();
+        Log.d(TAG, "IMU passthrough from " + source.getName());
+        return true;
+    }
+    
+    synchronized void stop() {
+        if (sensorManager != null) {
+            sensorManager.unregisterListener(this);
+            sensorManager = null;
+        }
+        if (thread != null) {
+            handler.removeCallbacks(flushTask);
+            thread.quitSafely();
+            // Поток мог быть внутри write(), fd закрываем только после него.
+            // Ждём без таймаута: слушатель уже снят, и quitSafely() дорабатывает
+            // только поставленные сообщения
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+            handler = null;
+        }
+        device.destroy();
+        sourceId = -1;
+        haveAccel = false;
+        flushPosted = false;
+    }
+    
+    // Joy-Con с датчиками отключился
+    synchronized void onDeviceRemoved(int deviceId) {
+        if (deviceId == sourceId) {
+            stop();
+        }
+    }
+    
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float[] values = event.values;
+        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            accelX = values[0];
+            accelY = values[1];
+            accelZ = values[2];
+            haveAccel = true;
+            return;
+        }
+        if (!haveAccel) {
+            return;
+        }
+        batcher.onSample(event.timestamp, SystemClock.elapsedRealtimeNanos(),
+            accelX, accelY, accelZ, values[0], values[1], values[2]);
+        
+        // Хвост пачки уходит по таймеру, если новых сэмплов не будет
+        if (batcher.hasPending() && !flushPosted) {
+            Handler current = handler;
+            if (current != null) {
+                flushPosted = current.postDelayed(flushTask, batcher.maxDelayNanos() / 1_000_000L);
+            }
+        }
+    }
+    
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+    
+    private void flushPending() {
+        flushPosted = false;
+        batcher.flush();
+    }
+    
+    void dump(PrintWriter writer) {
+        batcher.dump(writer);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.switchroot.joyconmapper;
+
+// Получатель пачек IMU сэмплов. На устройстве - MotionSensorDevice (uinput),
+// на хосте - любая заглушка для бенчмарков
+interface ImuSink {
+    // samples - по ImuBatcher.STRIDE значений на сэмпл.
+    // Возвращает неотрицательное значение при успехе или -errno
+    int writeBatch(int[] samples, int count);
+}
\ No newline at end of file
@@ -0,0 +1,242 @@
+package com.switchroot.joyconmapper;
+
+import android.view.KeyEvent;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Конвейер маппинга без зависимостей от Android событий: принимает уже
+// разобранные поля KeyEvent/MotionEvent и передаёт результат в поток вывода.
+// Благодаря этому тот же путь можно прогонять в бенчмарках на JVM хоста.
+//
+// Активный профиль переназначения читается один раз на событие из
+// AtomicReference, поэтому его можно подменить из любого потока на лету.
+//
+// Состояние игроков (PlayerSlots) лежит в плоских массивах по номеру слота:
+// маршрут события - одно смещение в массиве, у каждого слота свой контроллер
+// и свой поток вывода, поэтому новые игроки не замедляют уже подключённых.
+//
+// Стики переводятся в целые единицы uinput один раз на входе, дальше
+// калибровка Joy-Con (StickCalibration) и кривая отклика (ResponseCurve) -
+// только целочисленная арифметика и обращения к таблицам.
+final class InputMapper {
+    private static final int SCAN_RANGE = ButtonTable.SCAN_LIMIT - ButtonTable.SCAN_BASE;
+    
+    private final VirtualXboxController[] controllers = new VirtualXboxController[PlayerSlots.MAX_SLOTS];
+    private final OutputDispatcher[] dispatchers = new OutputDispatcher[PlayerSlots.MAX_SLOTS];
+    private final AtomicReference<MappingProfile> profile;
+    
+    // Кнопка, которую отправило нажатие, по слоту и скан-коду: отпускание уходит
+    // туда же, даже если профиль сменился, пока кнопка была зажата
+    private final int[] pressedButton = new int[PlayerSlots.MAX_SLOTS * SCAN_RANGE];
+    
+    // Хранение состояния стиков: по StickFilter.AXIS_COUNT значений на слот
+    private final int[] sticks = new int[PlayerSlots.MAX_SLOTS * StickFilter.AXIS_COUNT];
+    
+    // Калибровка Joy-Con по слоту и роли (slot * 2 + role - 1), null - без калибровки
+    private final CalibrationLearner[] calibration = new CalibrationLearner[PlayerSlots.MAX_SLOTS * 2];
+    private volatile ResponseCurve curve = ResponseCurve.linear();
+    private final int[] calibrated = new int[2];
+    
+    // Одиночный Joy-Con боком: его стик становится левым стиком с поворотом на 90°
+    private final boolean[] solo = new boolean[PlayerSlots.MAX_SLOTS];
+    
+    // Слот 0 - основной контроллер, остальные подключаются через attachSlot
+    InputMapper(ButtonTable buttonTable, VirtualXboxController controller, OutputDispatcher dispatcher) {
+        this.profile = new AtomicReference<>(MappingProfile.createDefault(buttonTable));
+        attachSlot(0, controller, dispatcher, false);
+    }
+    
+    MappingProfile profile() {
+        return profile.get();
+    }
+    
+    void setProfile(MappingProfile next) {
+        profile.set(next);
+        for (OutputDispatcher dispatcher : dispatchers) {
+            if (dispatcher != null) {
+                dispatcher.setMacros(next.macros);
+            }
+        }
+    }
+    
+    void setCurve(ResponseCurve next) {
+        curve = next;
+    }
+    
+    // Вызывается из потока колбэков ввода при подключении Joy-Con к слоту
+    void setCalibration(int slot, int role, CalibrationLearner learner) {
+        calibration[slot * 2 + role - 1] = learner;
+    }
+    
+    // Вызывается из потока колбэков ввода до первого события слота
+    void attachSlot(int slot, VirtualXboxController controller, OutputDispatcher dispatcher, boolean soloJoyCon) {
+        controllers[slot] = controller;
+        dispatchers[slot] = dispatcher;
+        solo[slot] = soloJoyCon;
+        if (dispatcher != null) {
+            dispatcher.setMacros(profile.get().macros);
+        }
+        int base = slot * SCAN_RANGE;
+        for (int i = 0; i < SCAN_RANGE; i++) {
+            pressedButton[base + i] = ButtonTable.UNMAPPED;
+        }
+        int stickBase = slot * StickFilter.AXIS_COUNT;
+        for (int i = 0; i < StickFilter.AXIS_COUNT; i++) {
+            sticks[stickBase + i] = 0;
+        }
+    }
+    
+    // Joy-Con слота отключился: отпускаем зажатые кнопки слота и центрируем оси
+    // этого Joy-Con. Контроллер слота остаётся, переподключение продолжит с ним.
+    // Какой Joy-Con нажал кнопку, не хранится, поэтому отпускаются все кнопки слота
+    void releaseSlot(int slot, int role, long eventTimeNanos) {
+        VirtualXboxController controller = controllers[slot];
+        if (controller == null) {
+            return;
+        }
+        boolean created = controller.isCreated();
+        int pressedBase = slot * SCAN_RANGE;
+        for (int i = 0; i < SCAN_RANGE; i++) {
+            int pressed = pressedButton[pressedBase + i];
+            if (pressed != ButtonTable.UNMAPPED) {
+                pressedButton[pressedBase + i] = ButtonTable.UNMAPPED;
+                if (created) {
+                    dispatchers[slot].enqueueButton(pressed, 0, 0, eventTimeNanos);
+                }
+            }
+        }
+        
+        int base = slot * StickFilter.AXIS_COUNT;
+        if (solo[slot] || role == DeviceRegistry.ROLE_LEFT) {
+            sticks[base + StickFilter.AXIS_LX] = 0;
+            sticks[base + StickFilter.AXIS_LY] = 0;
+        } else {
+            sticks[base + StickFilter.AXIS_RX] = 0;
+            sticks[base + StickFilter.AXIS_RY] = 0;
+        }
+        if (created) {
+            MappingProfile current = profile.get();
+            dispatchers[slot].enqueueSticks(
+                current.axis(StickFilter.AXIS_LX, sticks, base), current.axis(StickFilter.AXIS_LY, sticks, base),
+                current.axis(StickFilter.AXIS_RX, sticks, base), current.axis(StickFilter.AXIS_RY, sticks, base),
+                eventTimeNanos);
+        }
+    }
+    
+    boolean onKey(int scanCode, int keyCode, int action, long eventTimeNanos) {
+        return onKey(0, scanCode, keyCode, action, eventTimeNanos);
+    }
+    
+    // Возвращает true, если событие поглощено маппером
+    boolean onKey(int slot, int scanCode, int keyCode, int action, long eventTimeNanos) {
+        VirtualXboxController controller = controllers[slot];
+        if (controller == null) {
+            return false;
+        }
+        int index = scanCode - ButtonTable.SCAN_BASE;
+        boolean inRange = index >= 0 && index < SCAN_RANGE;
+        int pressedIndex = slot * SCAN_RANGE + index;
+        if (action == KeyEvent.ACTION_UP && inRange && pressedButton[pressedIndex] != ButtonTable.UNMAPPED) {
+            int pressed = pressedButton[pressedIndex];
+            pressedButton[pressedIndex] = ButtonTable.UNMAPPED;
+            if (controller.isCreated()) {
+                dispatchers[slot].enqueueButton(pressed, keyCode, 0, eventTimeNanos);
+            }
+            return true;
+        }
+        
+        // Проверяем, есть ли маппинг для этой кнопки (одно обращение к массиву)
+        int mappedButton = profile.get().lookup(scanCode);
+        if (mappedButton == ButtonTable.UNMAPPED || !controller.isCreated()) {
+            return false;
+        }
+        
+        // Передаём событие в поток вывода виртуального контроллера
+        if (action == KeyEvent.ACTION_DOWN) {
+            pressedButton[pressedIndex] = mappedButton;
+            dispatchers[slot].enqueueButton(mappedButton, keyCode, 1, eventTimeNanos);
+        } else if (action == KeyEvent.ACTION_UP) {
+            dispatchers[slot].enqueueButton(mappedButton, keyCode, 0, eventTimeNanos);
+        }
+        return true;
+    }
+    
+    // Пришёл MotionEvent слота: отметка для статистики неровности колбэков
+    void onMotionCallback(int slot, long nowNanos) {
+        OutputDispatcher dispatcher = dispatchers[slot];
+        if (dispatcher != null) {
+            dispatcher.markInputCallback(nowNanos);
+        }
+    }
+    
+    boolean onJoystick(int role, float x, float y, float rx, float ry, long eventTimeNanos) {
+        return onJoystick(0, role, x, y, rx, ry, eventTimeNanos);
+    }
+    
+    // role - роль устройства из DeviceRegistry, оси - значения AXIS_X/Y/RX/RY
+    boolean onJoystick(int slot, int role, float x, float y, float rx, float ry, long eventTimeNanos) {
+        VirtualXboxController controller = controllers[slot];
+        if (controller == null) {
+            return false;
+        }
+        float stickX;
+        float stickY;
+        if (role == DeviceRegistry.ROLE_LEFT) {
+            stickX = x;
+            stickY = y;
+        } else if (role == DeviceRegistry.ROLE_RIGHT) {
+            // Игнорируем правый стик как мышь, используем как обычный стик
+            stickX = rx;
+            stickY = ry;
+        } else {
+            return false;
+        }
+        
+        // Калибровка в системе координат самого Joy-Con, до поворота и профиля
+        int rawX = toAxis(stickX);
+        int rawY = toAxis(stickY);
+        CalibrationLearner learner = calibration[slot * 2 + role - 1];
+        if (learner != null) {
+            learner.observe(rawX, rawY);
+            learner.current().apply(rawX, rawY, calibrated, 0);
+        } else {
+            StickCalibration.IDENTITY.apply(rawX, rawY, calibrated, 0);
+        }
+        ResponseCurve response = curve;
+        int outX = response.apply(calibrated[0]);
+        int outY = response.apply(calibrated[1]);
+        
+        int base = slot * StickFilter.AXIS_COUNT;
+        if (solo[slot]) {
+            // Боком "вверх" у левого Joy-Con смотрит вправо, у правого - влево
+            if (role == DeviceRegistry.ROLE_LEFT) {
+                sticks[base + StickFilter.AXIS_LX] = outY;
+                sticks[base + StickFilter.AXIS_LY] = -outX;
+            } else {
+                sticks[base + StickFilter.AXIS_LX] = -outY;
+                sticks[base + StickFilter.AXIS_LY] = outX;
+            }
+        } else if (role == DeviceRegistry.ROLE_LEFT) {
+            sticks[base + StickFilter.AXIS_LX] = outX;
+            sticks[base + StickFilter.AXIS_LY] = outY;
+        } else {
+            sticks[base + StickFilter.AXIS_RX] = outX;
+            sticks[base + StickFilter.AXIS_RY] = outY;
+        }
+        
+        // Отправляем объединенные данные стиков в поток вывода с учётом
+        // перестановки и инверсии осей из профиля
+        if (controller.isCreated()) {
+            MappingProfile current = profile.get();
+            dispatchers[slot].enqueueSticks(
+                current.axis(StickFilter.AXIS_LX, sticks, base), current.axis(StickFilter.AXIS_LY, sticks, base),
+                current.axis(StickFilter.AXIS_RX, sticks, base), current.axis(StickFilter.AXIS_RY, sticks, base),
+                eventTimeNanos);
+        }
+        return true;
+    }
+    
+    private static int toAxis(float value) {
+        int scaled = (int) (value * StickCalibration.AXIS_MAX);
+        return Math.max(-StickCalibration.AXIS_MAX, Math.min(StickCalibration.AXIS_MAX, scaled));
+    }
+}
\ No newline at end of file
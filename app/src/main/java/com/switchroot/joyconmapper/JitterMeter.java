@@ -0,0 +1,34 @@
+package com.switchroot.joyconmapper;
+
+import java.util.Locale;
+
+// Неровность потока событий: |интервал - предыдущий интервал| между
+// соседними отметками. Ровный поток даёт около нуля при любой частоте.
+// Пишет один поток, как счётчики MapperStats.
+final class JitterMeter {
+    // Дольше этого - пауза, а не неровность: отсчёт начинается заново
+    private static final long MAX_INTERVAL_NANOS = 100_000_000L;
+    
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long lastNanos;
+    private long lastInterval;
+    
+    void mark(long nowNanos) {
+        long interval = nowNanos - lastNanos;
+        lastNanos = nowNanos;
+        if (interval > MAX_INTERVAL_NANOS || interval < 0) {
+            lastInterval = 0;
+            return;
+        }
+        if (lastInterval != 0) {
+            histogram.recordNanos(Math.abs(interval - lastInterval));
+        }
+        lastInterval = interval;
+    }
+    
+    String format() {
+        return String.format(Locale.US, "n=%d p50=%d p99=%d max=%d",
+            histogram.count(), histogram.percentileMicros(50), histogram.percentileMicros(99),
+            histogram.maxMicros());
+    }
+}
\ No newline at end of file
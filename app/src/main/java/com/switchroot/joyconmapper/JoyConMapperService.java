@@ -1,235 +1,714 @@
-package com.switchroot.joyconmapper;
-
-import android.accessibilityservice.AccessibilityService;
-import android.app.Notification;
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.content.Context;
-import android.hardware.input.InputManager;
-import android.os.Build;
-import android.os.Handler;
-import android.os.SystemClock;
-import android.util.Log;
-import android.view.InputDevice;
-import android.view.InputEvent;
-import android.view.KeyEvent;
-import android.view.MotionEvent;
-import android.view.accessibility.AccessibilityEvent;
-import java.util.HashMap;
-import java.util.Map;
-
-public class JoyConMapperService extends AccessibilityService implements InputManager.InputDeviceListener {
-    private static final String TAG = "JoyConMapper";
-    private static final String CHANNEL_ID = "joycon_mapper_channel";
-    
-    private InputManager inputManager;
-    private Handler handler;
-    private VirtualXboxController virtualController;
-    
-    // Маппинг кнопок Joy-Con на Xbox
-    private static final Map<Integer, Integer> BUTTON_MAP = new HashMap<>();
-    static {
-        // Left Joy-Con
-        BUTTON_MAP.put(544, KeyEvent.KEYCODE_DPAD_UP);
-        BUTTON_MAP.put(545, KeyEvent.KEYCODE_DPAD_DOWN);
-        BUTTON_MAP.put(546, KeyEvent.KEYCODE_DPAD_LEFT);
-        BUTTON_MAP.put(547, KeyEvent.KEYCODE_DPAD_RIGHT);
-        BUTTON_MAP.put(310, KeyEvent.KEYCODE_BUTTON_L1);
-        BUTTON_MAP.put(312, KeyEvent.KEYCODE_BUTTON_L2);
-        BUTTON_MAP.put(314, KeyEvent.KEYCODE_BUTTON_SELECT);
-        BUTTON_MAP.put(317, KeyEvent.KEYCODE_BUTTON_THUMBL);
-        BUTTON_MAP.put(309, KeyEvent.KEYCODE_BUTTON_Z);
-        
-        // Right Joy-Con  
-        BUTTON_MAP.put(304, KeyEvent.KEYCODE_BUTTON_A);
-        BUTTON_MAP.put(305, KeyEvent.KEYCODE_BUTTON_B);
-        BUTTON_MAP.put(307, KeyEvent.KEYCODE_BUTTON_Y);
-        BUTTON_MAP.put(308, KeyEvent.KEYCODE_BUTTON_X);
-        BUTTON_MAP.put(311, KeyEvent.KEYCODE_BUTTON_R1);
-        BUTTON_MAP.put(313, KeyEvent.KEYCODE_BUTTON_R2);
-        BUTTON_MAP.put(315, KeyEvent.KEYCODE_BUTTON_START);
-        BUTTON_MAP.put(316, KeyEvent.KEYCODE_BUTTON_MODE);
-        BUTTON_MAP.put(318, KeyEvent.KEYCODE_BUTTON_THUMBR);
-    }
-    
-    private boolean leftJoyConConnected = false;
-    private boolean rightJoyConConnected = false;
-    
-    // Хранение состояния стиков
-    private float leftStickX = 0;
-    private float leftStickY = 0;
-    private float rightStickX = 0;
-    private float rightStickY = 0;
-
-    @Override
-    public void onCreate() {
-        super.onCreate();
-        inputManager = (InputManager) getSystemService(Context.INPUT_SERVICE);
-        handler = new Handler();
-        virtualController = new VirtualXboxController(this);
-        
-        createNotificationChannel();
-        startForegroundService();
-        
-        // Регистрируем слушатель устройств
-        inputManager.registerInputDeviceListener(this, handler);
-        
-        Log.d(TAG, "JoyConMapper Service started");
-        checkConnectedDevices();
-    }
-    
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                CHANNEL_ID,
-                "JoyCon Mapper Service",
-                NotificationManager.IMPORTANCE_LOW
-            );
-            channel.setDescription("Maps JoyCons to Xbox Controller");
-            NotificationManager notificationManager = getSystemService(NotificationManager.class);
-            notificationManager.createNotificationChannel(channel);
-        }
-    }
-    
-    private void startForegroundService() {
-        Notification notification = new Notification.Builder(this, CHANNEL_ID)
-            .setContentTitle("JoyCon Mapper")
-            .setContentText("Mapping JoyCons to Xbox Controller")
-            .setSmallIcon(android.R.drawable.ic_dialog_info)
-            .build();
-            
-        // Используем ID 1 для foreground service
-        startForeground(1, notification);
-    }
-    
-    private void checkConnectedDevices() {
-        int[] deviceIds = inputManager.getInputDeviceIds();
-        for (int deviceId : deviceIds) {
-            InputDevice device = inputManager.getInputDevice(deviceId);
-            if (device != null) {
-                checkJoyConDevice(device);
-            }
-        }
-    }
-    
-    private void checkJoyConDevice(InputDevice device) {
-        String deviceName = device.getName().toLowerCase();
-        
-        if (deviceName.contains("joy-con") || deviceName.contains("joycon")) {
-            if (deviceName.contains("left")) {
-                leftJoyConConnected = true;
-                Log.d(TAG, "Left Joy-Con connected: " + device.getName());
-            } else if (deviceName.contains("right")) {
-                rightJoyConConnected = true;
-                Log.d(TAG, "Right Joy-Con connected: " + device.getName());
-            }
-            
-            // Если оба Joy-Con подключены, создаем виртуальный контроллер
-            if (leftJoyConConnected && rightJoyConConnected) {
-                virtualController.create();
-            }
-        }
-    }
-    
-    @Override
-    public void onInputDeviceAdded(int deviceId) {
-        InputDevice device = inputManager.getInputDevice(deviceId);
-        if (device != null) {
-            Log.d(TAG, "Device added: " + device.getName());
-            checkJoyConDevice(device);
-        }
-    }
-    
-    @Override
-    public void onInputDeviceRemoved(int deviceId) {
-        // Проверяем, отключился ли Joy-Con
-        Log.d(TAG, "Device removed: " + deviceId);
-        checkConnectedDevices();
-    }
-    
-    @Override
-    public void onInputDeviceChanged(int deviceId) {
-        // Устройство изменилось
-    }
-    
-    // Перехват событий через Accessibility Service
-    @Override
-    public void onAccessibilityEvent(AccessibilityEvent event) {
-        // Accessibility events не нужны для нашей задачи
-    }
-    
-    @Override
-    public void onInterrupt() {
-        Log.d(TAG, "Service interrupted");
-    }
-    
-    // Обработка событий ввода
-    public boolean handleKeyEvent(KeyEvent event) {
-        int keyCode = event.getKeyCode();
-        int action = event.getAction();
-        
-        // Проверяем, есть ли маппинг для этой кнопки
-        if (BUTTON_MAP.containsKey(keyCode)) {
-            int mappedKey = BUTTON_MAP.get(keyCode);
-            
-            // Отправляем событие на виртуальный контроллер
-            if (virtualController != null && virtualController.isCreated()) {
-                if (action == KeyEvent.ACTION_DOWN) {
-                    virtualController.sendButtonPress(mappedKey);
-                } else if (action == KeyEvent.ACTION_UP) {
-                    virtualController.sendButtonRelease(mappedKey);
-                }
-                return true; // Событие обработано
-            }
-        }
-        
-        return false;
-    }
-    
-    public boolean handleMotionEvent(MotionEvent event) {
-        int source = event.getSource();
-        
-        // Проверяем, что это джойстик
-        if ((source & InputDevice.SOURCE_JOYSTICK) == InputDevice.SOURCE_JOYSTICK) {
-            // Получаем значения осей
-            float x = event.getAxisValue(MotionEvent.AXIS_X);
-            float y = event.getAxisValue(MotionEvent.AXIS_Y);
-            float rx = event.getAxisValue(MotionEvent.AXIS_RX);
-            float ry = event.getAxisValue(MotionEvent.AXIS_RY);
-            
-            // Определяем, какой это стик
-            InputDevice device = event.getDevice();
-            if (device != null) {
-                String deviceName = device.getName().toLowerCase();
-                
-                if (deviceName.contains("left")) {
-                    leftStickX = x;
-                    leftStickY = y;
-                } else if (deviceName.contains("right")) {
-                    // Игнорируем правый стик как мышь, используем как обычный стик
-                    rightStickX = rx;
-                    rightStickY = ry;
-                }
-                
-                // Отправляем объединенные данные стиков
-                if (virtualController != null && virtualController.isCreated()) {
-                    virtualController.sendAxisData(leftStickX, leftStickY, rightStickX, rightStickY);
-                }
-                
-                return true;
-            }
-        }
-        
-        return false;
-    }
-    
-    @Override
-    public void onDestroy() {
-        super.onDestroy();
-        if (virtualController != null) {
-            virtualController.destroy();
-        }
-        inputManager.unregisterInputDeviceListener(this);
-        Log.d(TAG, "JoyConMapper Service stopped");
-    }
+package com.switchroot.joyconmapper;
+
+import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.hardware.input.InputManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.InputDevice;
+import android.view.InputEvent;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+import android.view.accessibility.AccessibilityEvent;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class JoyConMapperService extends AccessibilityService implements InputManager.InputDeviceListener {
+    private static final String TAG = "JoyConMapper";
+    private static final String CHANNEL_ID = "joycon_mapper_channel";
+    
+    private InputManager inputManager;
+    private Handler handler;
+    private VirtualXboxController virtualController;
+    private OutputDispatcher outputDispatcher;
+    private InputMapper inputMapper;
+    private ProfileManager profileManager;
+    
+    // Запуск: библиотека, JNI и uinput устройство готовятся в фоне, не дожидаясь Joy-Con
+    private ExecutorService startupExecutor;
+    private StartupTimeline startupTimeline;
+    // Поток запуска закончил попытку создать устройство; только главный поток
+    private boolean deviceWarm;
+    private boolean destroyed;
+    private boolean firstEventPending = true;
+    
+    // Native режим: Joy-Con читаются напрямую из evdev, Java только управляет мостом
+    private final NativeBridge nativeBridge = new NativeBridge();
+    private boolean useNativeEngine;
+    
+    // Запись входящих событий для воспроизведения, включается по желанию.
+    // Ссылку читают потоки ввода, меняет главный поток
+    private volatile TraceRecorder traceRecorder;
+    
+    // Трансляция скан-кодов Joy-Con в кнопки Xbox
+    private final ButtonTable buttonTable = ButtonTable.createDefault();
+    
+    // Роли подключенных устройств по id, заполняется из InputDeviceListener
+    private final DeviceRegistry deviceRegistry = new DeviceRegistry();
+    
+    // Вибрация игр уходит на моторы Joy-Con
+    private final JoyConRumble joyConRumble = new JoyConRumble();
+    
+    // Гироскоп и акселерометр правого Joy-Con на отдельное устройство датчиков, по желанию
+    private ImuPipeline imuPipeline;
+    private InputDevice imuSource;
+    
+    // Игроки: слот 0 - основной контроллер, у остальных свои uinput и поток вывода
+    private PlayerSlots playerSlots;
+    private final VirtualXboxController[] slotControllers = new VirtualXboxController[PlayerSlots.MAX_SLOTS];
+    private final OutputDispatcher[] slotDispatchers = new OutputDispatcher[PlayerSlots.MAX_SLOTS];
+    private int stickThreshold;
+    private int stickDeadzone;
+    
+    // Калибровка стиков по Joy-Con, учится в фоне; null - выключена
+    private CalibrationStore calibrationStore;
+    
+    // Расписание вывода стиков (StickScheduler.MODE_*), одно на всех игроков
+    private int outputMode;
+    private int outputRateHz;
+    private int outputDelayUs;
+    
+    // Время появления переподключённого Joy-Con по слоту и роли (slot * 2 + role - 1),
+    // 0 - первое событие уже пришло. Пишет и читает только главный поток
+    private final long[] reconnectStartNanos = new long[PlayerSlots.MAX_SLOTS * 2];
+    
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        startupTimeline = new StartupTimeline(System.nanoTime());
+        inputManager = (InputManager) getSystemService(Context.INPUT_SERVICE);
+        handler = new Handler();
+        virtualController = new VirtualXboxController(this, buttonTable);
+        virtualController.setRumbleSink(joyConRumble);
+        
+        SharedPreferences prefs = getSharedPreferences("joycon_mapper", MODE_PRIVATE);
+        stickThreshold = prefs.getInt("stick_threshold", StickFilter.DEFAULT_THRESHOLD);
+        stickDeadzone = prefs.getInt("stick_deadzone", StickFilter.DEFAULT_DEADZONE);
+        virtualController.configureSticks(stickThreshold, stickDeadzone);
+        nativeBridge.configureSticks(stickThreshold, stickDeadzone);
+        useNativeEngine = prefs.getBoolean("native_engine", false);
+        
+        // Первое нажатие после запуска должно попасть в уже готовый контроллер
+        startupExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "JoyConMapper-Startup"));
+        startupExecutor.execute(this::prewarm);
+        
+        // output_mode: latest | passthrough | fixed (с output_rate_hz и output_delay_us)
+        try {
+            outputMode = StickScheduler.parseMode(prefs.getString("output_mode", "latest"));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Bad output_mode, using latest", e);
+            outputMode = StickScheduler.MODE_LATEST;
+        }
+        outputRateHz = prefs.getInt("output_rate_hz", 1000);
+        outputDelayUs = prefs.getInt("output_delay_us", 0);
+        
+        // Запись в uinput идёт в отдельном потоке, главный поток только ставит события в очередь
+        outputDispatcher = newDispatcher(virtualController);
+        outputDispatcher.start();
+        inputMapper = new InputMapper(buttonTable, virtualController, outputDispatcher);
+        
+        // stick_curve: linear | expo:0.5 | points:0.2=0.1,0.6=0.5
+        try {
+            inputMapper.setCurve(ResponseCurve.parse(prefs.getString("stick_curve", "linear")));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Bad stick_curve, using linear", e);
+        }
+        if (prefs.getBoolean("stick_calibration", true)) {
+            calibrationStore = new CalibrationStore(getSharedPreferences("joycon_calibration", MODE_PRIVATE));
+        }
+        
+        // solo_joycons: каждый Joy-Con - отдельный игрок, держится боком
+        playerSlots = new PlayerSlots(prefs.getBoolean("solo_joycons", false));
+        slotControllers[0] = virtualController;
+        slotDispatchers[0] = outputDispatcher;
+        if (playerSlots.isSolo()) {
+            inputMapper.attachSlot(0, virtualController, outputDispatcher, true);
+        }
+        
+        // Профили компилируются в фоне и подменяются на лету, без пересоздания uinput
+        profileManager = new ProfileManager(new File(getFilesDir(), "profiles"), buttonTable, inputMapper);
+        profileManager.setListener(nativeBridge::updateProfile);
+        profileManager.setGamesListener(() -> handler.post(this::updateEventSubscription));
+        profileManager.select(prefs.getString("profile", "default"));
+        profileManager.reload();
+        
+        // imu_mode: off | raw | downsample | fusion
+        String imuMode = prefs.getString("imu_mode", "off");
+        if (!"off".equals(imuMode)) {
+            imuPipeline = new ImuPipeline(ImuBatcher.parseMode(imuMode), prefs.getInt("imu_downsample", 2),
+                prefs.getInt("imu_batch", 8), prefs.getInt("imu_max_delay_ms", 4));
+        }
+        
+        if (prefs.getBoolean("trace_enabled", false)) {
+            startTrace();
+        }
+        
+        createNotificationChannel();
+        startForegroundService();
+        
+        // Регистрируем слушатель устройств
+        inputManager.registerInputDeviceListener(this, handler);
+        
+        Log.d(TAG, "JoyConMapper Service started");
+        checkConnectedDevices();
+        publishStatus();
+        startupTimeline.mark(StartupTimeline.PHASE_SERVICE_READY);
+    }
+    
+    // Поток запуска: загрузка библиотеки, первый JNI вызов и uinput устройство
+    // первого игрока. Проба запасных backend тоже идёт здесь, с таймаутами
+    private void prewarm() {
+        if (NativeLibrary.load()) {
+            startupTimeline.mark(StartupTimeline.PHASE_LIBRARY_LOADED);
+        }
+        if (virtualController.warmUp()) {
+            startupTimeline.mark(StartupTimeline.PHASE_JNI_WARM);
+        }
+        virtualController.create();
+        if (virtualController.isCreated()) {
+            startupTimeline.mark(StartupTimeline.PHASE_DEVICE_CREATED);
+            startupTimeline.setBackend(virtualController.backendName());
+        }
+        handler.post(this::onDeviceWarm);
+    }
+    
+    private void onDeviceWarm() {
+        if (destroyed) {
+            return;
+        }
+        deviceWarm = true;
+        if (playerSlots.isReady(0)) {
+            createPrimaryController();
+        }
+        publishStatus();
+    }
+    
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                CHANNEL_ID,
+                "JoyCon Mapper Service",
+                NotificationManager.IMPORTANCE_LOW
+            );
+            channel.setDescription("Maps JoyCons to Xbox Controller");
+            NotificationManager notificationManager = getSystemService(NotificationManager.class);
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+    
+    private void startForegroundService() {
+        Notification notification = new Notification.Builder(this, CHANNEL_ID)
+            .setContentTitle("JoyCon Mapper")
+            .setContentText("Mapping JoyCons to Xbox Controller")
+            .setSmallIcon(android.R.drawable.ic_dialog_info)
+            .build();
+            
+        // Используем ID 1 для foreground service
+        startForeground(1, notification);
+    }
+    
+    private void checkConnectedDevices() {
+        int[] deviceIds = inputManager.getInputDeviceIds();
+        for (int deviceId : deviceIds) {
+            InputDevice device = inputManager.getInputDevice(deviceId);
+            if (device != null) {
+                checkJoyConDevice(device);
+            }
+        }
+    }
+    
+    private void checkJoyConDevice(InputDevice device) {
+        int role = deviceRegistry.register(device.getId(), device.getName());
+        
+        if (role != DeviceRegistry.ROLE_OTHER) {
+            startupTimeline.mark(StartupTimeline.PHASE_FIRST_JOYCON);
+            String descriptor = device.getDescriptor();
+            boolean reconnect = playerSlots.slotOf(device.getId()) == PlayerSlots.NO_SLOT
+                && playerSlots.isKnown(descriptor);
+            int slot = playerSlots.assign(device.getId(), role, descriptor);
+            if (slot == PlayerSlots.NO_SLOT) {
+                Log.w(TAG, "No free player slot for " + device.getName());
+                return;
+            }
+            Log.d(TAG, (role == DeviceRegistry.ROLE_LEFT ? "Left" : "Right") + " Joy-Con "
+                + (reconnect ? "reconnected" : "connected") + " to player " + (slot + 1) + ": " + device.getName());
+            if (reconnect) {
+                reconnectStartNanos[slot * 2 + role - 1] = System.nanoTime();
+            }
+            if (calibrationStore != null && descriptor != null) {
+                inputMapper.setCalibration(slot, role, calibrationStore.learnerFor(descriptor));
+            }
+            
+            // Вибрация и датчики движения - только у первого игрока
+            if (slot == 0) {
+                joyConRumble.setDevice(role, device);
+                if (role == DeviceRegistry.ROLE_RIGHT) {
+                    imuSource = device;
+                }
+            }
+            
+            // Если слот собран (пара или одиночный Joy-Con), создаем его виртуальный контроллер
+            if (playerSlots.isReady(slot)) {
+                if (slot == 0) {
+                    createPrimaryController();
+                } else {
+                    createSlotController(slot);
+                }
+            }
+            publishStatus();
+        }
+    }
+    
+    private void createPrimaryController() {
+        // Устройство создаёт поток запуска, главный поток его не ждёт:
+        // когда оно будет готово, onDeviceWarm() вызовет этот метод снова
+        if (!deviceWarm) {
+            return;
+        }
+        if (!virtualController.isCreated()) {
+            // Прошлая попытка не удалась - повторяем в фоне
+            deviceWarm = false;
+            startupExecutor.execute(this::prewarm);
+            return;
+        }
+        startupTimeline.mark(StartupTimeline.PHASE_CONTROLLER_READY);
+        if (useNativeEngine && !nativeBridge.isRunning() && playerSlots.isSinglePair()) {
+            startNativeEngine();
+        }
+        if (imuPipeline != null && imuSource != null) {
+            imuPipeline.start(imuSource);
+        }
+    }
+    
+    // Контроллер дополнительного игрока. Создаётся один раз и живёт до конца
+    // сервиса, как и основной, чтобы переподключение не пересоздавало устройство
+    private void createSlotController(int slot) {
+        if (slotControllers[slot] != null) {
+            return;
+        }
+        // Native мост забирает все Joy-Con себе в один контроллер
+        if (nativeBridge.isRunning()) {
+            Log.w(TAG, "Native engine serves a single pair, switching to the Java path");
+            nativeBridge.stop();
+        }
+        
+        VirtualXboxController controller = new VirtualXboxController(this, buttonTable, slot);
+        controller.configureSticks(stickThreshold, stickDeadzone);
+        controller.create();
+        // Запасной shell путь один на всю систему, игроков он не различает
+        if (controller.uinputFd() < 0) {
+            Log.w(TAG, "Player " + (slot + 1) + " needs uinput, controller not created");
+            controller.destroy();
+            return;
+        }
+        OutputDispatcher dispatcher = newDispatcher(controller);
+        dispatcher.start();
+        inputMapper.attachSlot(slot, controller, dispatcher, playerSlots.isSolo());
+        slotControllers[slot] = controller;
+        slotDispatchers[slot] = dispatcher;
+    }
+    
+    // У каждого потока вывода своё кольцо сэмплов, поэтому и свой планировщик
+    private OutputDispatcher newDispatcher(VirtualXboxController controller) {
+        if (outputMode == StickScheduler.MODE_LATEST) {
+            return new OutputDispatcher(controller);
+        }
+        return new OutputDispatcher(controller, new StickScheduler(outputMode, outputRateHz, outputDelayUs));
+    }
+    
+    @Override
+    public void onInputDeviceAdded(int deviceId) {
+        InputDevice device = inputManager.getInputDevice(deviceId);
+        if (device != null) {
+            Log.d(TAG, "Device added: " + device.getName());
+            checkJoyConDevice(device);
+            
+            // Переподключённый Joy-Con - новый evdev узел, мост нужно перезапустить
+            if (nativeBridge.isRunning() && deviceRegistry.roleOf(deviceId) != DeviceRegistry.ROLE_OTHER) {
+                startNativeEngine();
+            }
+        }
+    }
+    
+    private void startNativeEngine() {
+        int fd = virtualController.uinputFd();
+        if (fd < 0) {
+            Log.w(TAG, "Native engine needs a uinput device, staying on the Java path");
+            return;
+        }
+        if (nativeBridge.start(fd, inputMapper.profile())) {
+            Log.d(TAG, "Native engine started");
+        } else {
+            Log.w(TAG, "Native engine failed to start, staying on the Java path");
+        }
+        publishStatus();
+    }
+    
+    // Снимок слотов и backend для экрана приложения (StatusChannel).
+    // Только главный поток, при смене устройств - не на каждое событие
+    private void publishStatus() {
+        int[] slots = new int[PlayerSlots.MAX_SLOTS];
+        for (int slot = 0; slot < PlayerSlots.MAX_SLOTS; slot++) {
+            if (playerSlots.hasDevice(slot, DeviceRegistry.ROLE_LEFT)) {
+                slots[slot] |= ServiceStatus.SLOT_LEFT;
+            }
+            if (playerSlots.hasDevice(slot, DeviceRegistry.ROLE_RIGHT)) {
+                slots[slot] |= ServiceStatus.SLOT_RIGHT;
+            }
+            if (slotControllers[slot] != null && slotControllers[slot].isCreated()) {
+                slots[slot] |= ServiceStatus.SLOT_CONTROLLER;
+            }
+        }
+        String backend = virtualController.isCreated() ? virtualController.backendName() : "none";
+        StatusChannel.get().publishDevices(!destroyed, backend, nativeBridge.isRunning(), slots);
+    }
+    
+    // Изменения применяются только к этому устройству, без опроса всех устройств.
+    // uinput контроллер слота остаётся: игра не видит исчезновения геймпада,
+    // а переподключившийся Joy-Con продолжает в нём же
+    @Override
+    public void onInputDeviceRemoved(int deviceId) {
+        Log.d(TAG, "Device removed: " + deviceId);
+        releaseDevice(deviceId);
+    }
+    
+    private void releaseDevice(int deviceId) {
+        int role = deviceRegistry.roleOf(deviceId);
+        deviceRegistry.remove(deviceId);
+        int slot = playerSlots.release(deviceId);
+        if (slot != PlayerSlots.NO_SLOT) {
+            inputMapper.releaseSlot(slot, role, System.nanoTime());
+            inputMapper.setCalibration(slot, role, null);
+            reconnectStartNanos[slot * 2 + role - 1] = 0;
+            Log.d(TAG, "Player " + (slot + 1) + " lost a Joy-Con, waiting for reconnect");
+            publishStatus();
+        }
+        if (imuPipeline != null) {
+            imuPipeline.onDeviceRemoved(deviceId);
+        }
+    }
+    
+    @Override
+    public void onInputDeviceChanged(int deviceId) {
+        // Имя устройства могло измениться: если сменилась роль, устройство
+        // отключается от слота и подключается заново
+        InputDevice device = inputManager.getInputDevice(deviceId);
+        if (device == null) {
+            releaseDevice(deviceId);
+            return;
+        }
+        if (DeviceRegistry.classify(device.getName()) != deviceRegistry.roleOf(deviceId)) {
+            releaseDevice(deviceId);
+        }
+        checkJoyConDevice(device);
+    }
+    
+    @Override
+    protected void onServiceConnected() {
+        super.onServiceConnected();
+        updateEventSubscription();
+    }
+    
+    // Смена активного окна нужна только профилям игр. Без них сервис не
+    // подписан ни на одно событие доступности и не будится, пока пользователь
+    // листает или печатает. Только главный поток
+    private void updateEventSubscription() {
+        AccessibilityServiceInfo info = getServiceInfo();
+        if (info == null || profileManager == null) {
+            return;
+        }
+        int eventTypes = profileManager.hasGameProfiles() ? AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED : 0;
+        if (info.eventTypes != eventTypes) {
+            info.eventTypes = eventTypes;
+            setServiceInfo(info);
+            Log.d(TAG, "Accessibility events " + (eventTypes != 0 ? "on" : "off"));
+        }
+    }
+    
+    // Кнопки всех клавиатур системы проходят через этот фильтр. Чужие
+    // устройства отсекаются одним чтением массива ролей и возвращаются
+    // системе нетронутыми; Joy-Con идут в маппер
+    @Override
+    protected boolean onKeyEvent(KeyEvent event) {
+        if (deviceRegistry.roleOf(event.getDeviceId()) == DeviceRegistry.ROLE_OTHER) {
+            return false;
+        }
+        return handleKeyEvent(event);
+    }
+    
+    // Перехват событий через Accessibility Service
+    @Override
+    public void onAccessibilityEvent(AccessibilityEvent event) {
+        // Нужна только смена активного окна - для профилей игр
+        if (event.getEventType() == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+                && event.getPackageName() != null && profileManager != null) {
+            profileManager.onForegroundPackage(event.getPackageName().toString());
+        }
+    }
+    
+    @Override
+    public void onInterrupt() {
+        Log.d(TAG, "Service interrupted");
+    }
+    
+    // Обработка событий ввода
+    public boolean handleKeyEvent(KeyEvent event) {
+        // Joy-Con без слота (все слоты заняты) не управляет чужим игроком:
+        // событие возвращается системе, как у стиков
+        int slot = playerSlots.slotOf(event.getDeviceId());
+        if (slot == PlayerSlots.NO_SLOT) {
+            return false;
+        }
+        long eventTime = eventTimeNanos(event);
+        int role = deviceRegistry.roleOf(event.getDeviceId());
+        if (role != DeviceRegistry.ROLE_OTHER) {
+            noteFirstEvent(slot, role, eventTime);
+        }
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null && slot == 0) {
+            recorder.recordKey(role, event.getScanCode(),
+                event.getKeyCode(), event.getAction(), eventTime);
+        }
+        boolean handled = inputMapper.onKey(slot, event.getScanCode(), event.getKeyCode(), event.getAction(), eventTime);
+        if (handled && firstEventPending) {
+            firstEventPending = false;
+            startupTimeline.mark(StartupTimeline.PHASE_FIRST_EVENT);
+        }
+        return handled;
+    }
+    
+    public boolean handleMotionEvent(MotionEvent event) {
+        int source = event.getSource();
+        
+        // Проверяем, что это джойстик
+        if ((source & InputDevice.SOURCE_JOYSTICK) != InputDevice.SOURCE_JOYSTICK) {
+            return false;
+        }
+        
+        // Определяем, какой это стик, по роли из реестра (без выделения памяти)
+        int role = deviceRegistry.roleOf(event.getDeviceId());
+        if (role == DeviceRegistry.ROLE_OTHER) {
+            return false;
+        }
+        int slot = playerSlots.slotOf(event.getDeviceId());
+        if (slot == PlayerSlots.NO_SLOT) {
+            return false;
+        }
+        
+        long eventTime = eventTimeNanos(event);
+        noteFirstEvent(slot, role, eventTime);
+        // Трасса воспроизводится в один контроллер, поэтому пишется только первый игрок
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null && slot == 0) {
+            // В лог попадает только та пара осей, которую читает маппер
+            if (role == DeviceRegistry.ROLE_LEFT) {
+                recorder.recordStick(role, event.getAxisValue(MotionEvent.AXIS_X),
+                    event.getAxisValue(MotionEvent.AXIS_Y), eventTime);
+            } else {
+                recorder.recordStick(role, event.getAxisValue(MotionEvent.AXIS_RX),
+                    event.getAxisValue(MotionEvent.AXIS_RY), eventTime);
+            }
+        }
+        
+        inputMapper.onMotionCallback(slot, System.nanoTime());
+        
+        // Сэмплы, которые Android собрал в этот MotionEvent. latest их не читает:
+        // все, кроме последнего, он всё равно схлопнет
+        if (outputMode != StickScheduler.MODE_LATEST) {
+            int history = event.getHistorySize();
+            for (int h = 0; h < history; h++) {
+                inputMapper.onJoystick(slot, role,
+                    event.getHistoricalAxisValue(MotionEvent.AXIS_X, h),
+                    event.getHistoricalAxisValue(MotionEvent.AXIS_Y, h),
+                    event.getHistoricalAxisValue(MotionEvent.AXIS_RX, h),
+                    event.getHistoricalAxisValue(MotionEvent.AXIS_RY, h),
+                    historicalEventTimeNanos(event, h));
+            }
+        }
+        boolean handled = inputMapper.onJoystick(slot, role,
+            event.getAxisValue(MotionEvent.AXIS_X), event.getAxisValue(MotionEvent.AXIS_Y),
+            event.getAxisValue(MotionEvent.AXIS_RX), event.getAxisValue(MotionEvent.AXIS_RY),
+            eventTime);
+        if (handled && firstEventPending) {
+            firstEventPending = false;
+            startupTimeline.mark(StartupTimeline.PHASE_FIRST_EVENT);
+        }
+        return handled;
+    }
+    
+    // Первое событие переподключённого Joy-Con: одно чтение массива на событие.
+    // Начало отсчёта - nanoTime в колбэке добавления, а события, стоявшие в
+    // очереди до него, старше: такие пропускаются, отсчёт ждёт следующего
+    private void noteFirstEvent(int slot, int role, long eventTimeNanos) {
+        int link = slot * 2 + role - 1;
+        long start = reconnectStartNanos[link];
+        if (start != 0 && eventTimeNanos > start) {
+            reconnectStartNanos[link] = 0;
+            MapperStats.get().recordReconnect(eventTimeNanos - start);
+        }
+    }
+    
+    // Трассы пишутся в files/traces/, забрать: adb shell run-as com.switchroot.joyconmapper
+    private void startTrace() {
+        if (traceRecorder != null) {
+            return;
+        }
+        File dir = new File(getFilesDir(), "traces");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "Failed to create trace directory " + dir);
+            return;
+        }
+        File file = new File(dir, "trace-" + System.currentTimeMillis() + ".jcmt");
+        try {
+            traceRecorder = TraceRecorder.open(file, TraceRecorder.DEFAULT_CAPACITY);
+            Log.d(TAG, "Recording input trace to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start input trace", e);
+        }
+    }
+    
+    private void stopTrace() {
+        TraceRecorder recorder = traceRecorder;
+        traceRecorder = null;
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+    
+    // Время события в шкале System.nanoTime(): обе шкалы - CLOCK_MONOTONIC,
+    // но до Android 14 доступно только время в миллисекундах
+    private static long eventTimeNanos(KeyEvent event) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            return event.getEventTimeNanos();
+        }
+        return event.getEventTime() * 1_000_000L;
+    }
+    
+    private static long eventTimeNanos(MotionEvent event) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            return event.getEventTimeNanos();
+        }
+        return event.getEventTime() * 1_000_000L;
+    }
+    
+    private static long historicalEventTimeNanos(MotionEvent event, int pos) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            return event.getHistoricalEventTimeNanos(pos);
+        }
+        return event.getHistoricalEventTime(pos) * 1_000_000L;
+    }
+    
+    // Статистика задержек: adb shell dumpsys activity service com.switchroot.joyconmapper
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        // dumpsys ... trace start|stop - управление записью трассы без перезапуска сервиса.
+        // Колбэки ввода идут в главном потоке, поэтому переключаем запись там же
+        if (args != null && args.length == 2 && "trace".equals(args[0])) {
+            if ("start".equals(args[1])) {
+                handler.post(this::startTrace);
+            } else if ("stop".equals(args[1])) {
+                handler.post(this::stopTrace);
+            }
+            writer.println("Trace " + args[1] + " requested");
+            return;
+        }
+        // dumpsys ... profile reload|<имя> - перечитать профили или выбрать профиль по умолчанию
+        if (args != null && args.length == 2 && "profile".equals(args[0])) {
+            if ("reload".equals(args[1])) {
+                profileManager.reload();
+            } else {
+                profileManager.select(args[1]);
+                getSharedPreferences("joycon_mapper", MODE_PRIVATE).edit()
+                    .putString("profile", args[1]).apply();
+            }
+            writer.println("Profile " + args[1] + " requested");
+            return;
+        }
+        
+        writer.println("JoyConMapper: controller=" + (virtualController != null && virtualController.isCreated())
+            + " solo=" + (playerSlots != null && playerSlots.isSolo()));
+        if (playerSlots != null) {
+            for (int slot = 0; slot < PlayerSlots.MAX_SLOTS; slot++) {
+                writer.println("  " + playerSlots.describe(slot)
+                    + " controller=" + (slotControllers[slot] != null && slotControllers[slot].isCreated()));
+            }
+        }
+        if (startupTimeline != null) {
+            startupTimeline.dump(writer);
+        }
+        MapperStats.get().dump(writer);
+        for (int slot = 0; slot < PlayerSlots.MAX_SLOTS; slot++) {
+            if (slotDispatchers[slot] != null) {
+                slotDispatchers[slot].dump(writer, slot);
+            }
+        }
+        if (profileManager != null) {
+            profileManager.dump(writer);
+        }
+        if (calibrationStore != null) {
+            calibrationStore.dump(writer);
+        }
+        nativeBridge.dump(writer);
+        if (imuPipeline != null) {
+            imuPipeline.dump(writer);
+        }
+        if (virtualController != null) {
+            virtualController.dumpBackend(writer);
+        }
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            writer.println("Trace: " + recorder.file() + " records=" + recorder.count()
+                + " dropped=" + recorder.dropped());
+        }
+    }
+    
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        destroyed = true;
+        // Поток запуска мог быть внутри create(): ждём его до уничтожения устройств
+        if (startupExecutor != null) {
+            startupExecutor.shutdownNow();
+            try {
+                startupExecutor.awaitTermination(3, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        stopTrace();
+        if (profileManager != null) {
+            profileManager.shutdown();
+        }
+        if (calibrationStore != null) {
+            calibrationStore.shutdown();
+        }
+        // Мост пишет в uinput fd контроллера, поэтому останавливается до destroy()
+        nativeBridge.stop();
+        if (imuPipeline != null) {
+            imuPipeline.stop();
+        }
+        for (int slot = 0; slot < PlayerSlots.MAX_SLOTS; slot++) {
+            if (slotDispatchers[slot] != null) {
+                slotDispatchers[slot].stop();
+            }
+            if (slotControllers[slot] != null) {
+                slotControllers[slot].destroy();
+            }
+        }
+        inputManager.unregisterInputDeviceListener(this);
+        StatusChannel.get().publishDevices(false, "none", false, new int[PlayerSlots.MAX_SLOTS]);
+        Log.d(TAG, "JoyConMapper Service stopped");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.switchroot.joyconmapper;
+
+import android.os.CombinedVibration;
+import android.os.VibrationEffect;
+import android.os.VibratorManager;
+import android.view.InputDevice;
+
+// Вибрация через моторы самих Joy-Con: сильный мотор Xbox - левый Joy-Con,
+// слабый - правый, как у моторов в рукоятках геймпада.
+final class JoyConRumble implements RumbleSink {
+    // Для эффектов без длительности: до следующей команды, но не вечно
+    private static final long UNBOUNDED_DURATION_MS = 5000;
+    
+    private volatile VibratorManager left;
+    private volatile VibratorManager right;
+    
+    // Вызывается при подключении Joy-Con, role - DeviceRegistry.ROLE_*
+    void setDevice(int role, InputDevice device) {
+        VibratorManager manager = device.getVibratorManager();
+        if (manager != null && manager.getVibratorIds().length == 0) {
+            manager = null;
+        }
+        if (role == DeviceRegistry.ROLE_LEFT) {
+            left = manager;
+        } else if (role == DeviceRegistry.ROLE_RIGHT) {
+            right = manager;
+        }
+    }
+    
+    @Override
+    public void rumble(int strong, int weak, int durationMs) {
+        vibrate(left, strong, durationMs);
+        vibrate(right, weak, durationMs);
+    }
+    
+    private static void vibrate(VibratorManager manager, int magnitude, int durationMs) {
+        if (manager == null) {
+            return;
+        }
+        int amplitude = Math.min(255, magnitude >>> 8);
+        if (amplitude == 0) {
+            manager.cancel();
+            return;
+        }
+        long duration = durationMs > 0 ? durationMs : UNBOUNDED_DURATION_MS;
+        manager.vibrate(CombinedVibration.createParallel(VibrationEffect.createOneShot(duration, amplitude)));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.switchroot.joyconmapper;
+
+// Гистограмма задержек фиксированного размера в микросекундах.
+// Корзины лог-линейные: до 16 мкс точные, дальше 8 корзин на каждую
+// степень двойки (ошибка не больше 12.5%). record() не выделяет память.
+//
+// Пишет только один поток (поток вывода своего OutputDispatcher), читатели
+// получают слегка несогласованный, но пригодный для статистики снимок.
+// Гистограммы нескольких потоков складываются при чтении через addTo().
+final class LatencyHistogram {
+    private static final int LINEAR_LIMIT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - 4) * SUB_BUCKETS;
+    
+    private final long[] counts = new long[BUCKET_COUNT];
+    private volatile long totalCount;
+    private volatile long maxMicros;
+    
+    void recordNanos(long nanos) {
+        long micros = nanos / 1000;
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts[bucketOf(micros)]++;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+        totalCount = totalCount + 1;
+    }
+    
+    // Прибавляет текущий снимок к target; target пишет только вызывающий поток
+    void addTo(LatencyHistogram target) {
+        long added = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts[i];
+            target.counts[i] += count;
+            added += count;
+        }
+        target.totalCount = target.totalCount + added;
+        long max = maxMicros;
+        if (max > target.maxMicros) {
+            target.maxMicros = max;
+        }
+    }
+    
+    long count() {
+        return totalCount;
+    }
+    
+    long maxMicros() {
+        return maxMicros;
+    }
+    
+    // Верхняя граница корзины, в которую попадает заданный перцентиль
+    long percentileMicros(double percentile) {
+        long total = totalCount;
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+    
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+    
+    private static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 4;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.switchroot.joyconmapper;
+
+// Коды событий Linux input (linux/input-event-codes.h), которые пишутся в uinput
+final class LinuxInput {
+    static final int EV_SYN = 0x00;
+    static final int EV_KEY = 0x01;
+    static final int EV_ABS = 0x03;
+    
+    static final int ABS_X = 0x00;
+    static final int ABS_Y = 0x01;
+    static final int ABS_RX = 0x03;
+    static final int ABS_RY = 0x04;
+    
+    static final int BTN_A = 0x130;
+    static final int BTN_B = 0x131;
+    static final int BTN_X = 0x133;
+    static final int BTN_Y = 0x134;
+    static final int BTN_TL = 0x136;
+    static final int BTN_TR = 0x137;
+    static final int BTN_TL2 = 0x138;
+    static final int BTN_TR2 = 0x139;
+    static final int BTN_SELECT = 0x13a;
+    static final int BTN_START = 0x13b;
+    static final int BTN_MODE = 0x13c;
+    static final int BTN_THUMBL = 0x13d;
+    static final int BTN_THUMBR = 0x13e;
+    static final int BTN_DPAD_UP = 0x220;
+    static final int BTN_DPAD_DOWN = 0x221;
+    static final int BTN_DPAD_LEFT = 0x222;
+    static final int BTN_DPAD_RIGHT = 0x223;
+    
+    private LinuxInput() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,239 @@
+package com.switchroot.joyconmapper;
+
+import java.util.Locale;
+
+// Турбо, макросы и аккорды в потоке вывода, рядом с VirtualXboxController.
+//
+// Состояние кнопок - битовые маски в long (номера битов из MacroProgram.bit()):
+// физически зажатые, фаза турбо и кнопки, зажатые макросами. Выход - их
+// объединение; после каждого изменения отправляются только изменившиеся биты,
+// поэтому кнопка, зажатая и пальцем, и макросом, отпускается один раз - последней.
+//
+// Синтетические нажатия ставятся в TimerWheel. Следующий срок считается от
+// предыдущего срока, а не от момента срабатывания, поэтому опоздание одного
+// тика не копится в дрейф. Время передаётся снаружи: на хосте движок можно
+// гонять тестовыми часами.
+//
+// Только поток вывода; setProgram - из любого потока.
+final class MacroEngine implements TimerWheel.Expiry {
+    interface Output {
+        // Отправка одного фронта кнопки, результат как у sendButtonPress.
+        // synthetic - фронт турбо, макроса или смены программы: у него нет
+        // входного события, eventTimeNanos - срок его таймера
+        int emit(int button, int keyCode, int value, long eventTimeNanos, boolean synthetic);
+    }
+    
+    private static final int TIMER_CAPACITY = 64;
+    private static final int KIND_TURBO = 1 << 16;
+    private static final int KIND_MACRO = 2 << 16;
+    private static final int INDEX_MASK = 0xFFFF;
+    
+    private final Output output;
+    private final TimerWheel wheel = new TimerWheel(TIMER_CAPACITY);
+    
+    private volatile MacroProgram nextProgram = MacroProgram.EMPTY;
+    private MacroProgram program = MacroProgram.EMPTY;
+    
+    private long physical;
+    private long turboPhase;
+    private long sent;
+    private final int[] turboTimer = new int[64];
+    
+    // Выполняемые макросы: следующий шаг, зажатые кнопки и таймер следующего шага
+    private final int[] macroStep = new int[MacroProgram.MAX_MACROS];
+    private final long[] macroHeld = new long[MacroProgram.MAX_MACROS];
+    private final int[] macroTimer = new int[MacroProgram.MAX_MACROS];
+    
+    // Android код кнопки для запасного shell пути: последнего физического
+    // фронта, а у кнопок, которые нажимали только макросы, - код по умолчанию
+    private final int[] keyCodes = new int[64];
+    
+    // Опоздание срабатывания таймеров относительно срока
+    private final LatencyHistogram lateness = new LatencyHistogram();
+    private volatile long macrosStarted;
+    private volatile long timersRejected;
+    
+    MacroEngine(Output output) {
+        this.output = output;
+        for (int bit = 0; bit < keyCodes.length; bit++) {
+            keyCodes[bit] = MacroProgram.keyCode(bit);
+        }
+        resetTimers();
+    }
+    
+    void setProgram(MacroProgram next) {
+        nextProgram = next != null ? next : MacroProgram.EMPTY;
+    }
+    
+    // Физический фронт кнопки из кольца OutputDispatcher
+    void onButton(int button, int keyCode, int value, long eventTimeNanos, long nowNanos) {
+        syncProgram(nowNanos);
+        int bit = MacroProgram.bit(button);
+        if (bit < 0) {
+            output.emit(button, keyCode, value, eventTimeNanos, false);
+            return;
+        }
+        keyCodes[bit] = keyCode;
+        long flag = 1L << bit;
+        if (value != 0) {
+            physical |= flag;
+            if ((program.turboMask & flag) != 0 && turboTimer[bit] == TimerWheel.NONE) {
+                startTurbo(bit, nowNanos);
+            }
+            publish(eventTimeNanos, false);
+            for (int chord = 0; chord < program.chordCount(); chord++) {
+                long mask = program.chordMask(chord);
+                if ((mask & flag) != 0 && (physical & mask) == mask) {
+                    startMacro(program.chordMacro(chord), nowNanos);
+                }
+            }
+        } else {
+            physical &= ~flag;
+            wheel.cancel(turboTimer[bit]);
+            turboTimer[bit] = TimerWheel.NONE;
+            turboPhase &= ~flag;
+            publish(eventTimeNanos, false);
+        }
+    }
+    
+    // Срабатывание наступивших таймеров. Возвращает число сработавших
+    int advance(long nowNanos) {
+        syncProgram(nowNanos);
+        return wheel.advance(nowNanos, this);
+    }
+    
+    // Когда вызвать advance; Long.MAX_VALUE - таймеров нет
+    long nextDeadline() {
+        return wheel.nextDeadline();
+    }
+    
+    // Есть ли работа у advance: таймеры или ожидающая смена программы
+    boolean isActive() {
+        return wheel.size() > 0 || nextProgram != program;
+    }
+    
+    @Override
+    public void expire(int payload, long deadlineNanos, long nowNanos) {
+        lateness.recordNanos(nowNanos - deadlineNanos);
+        int index = payload & INDEX_MASK;
+        if ((payload & KIND_TURBO) != 0) {
+            long flag = 1L << index;
+            turboPhase ^= flag;
+            // Поток вывода простоял дольше полупериода - сетка сдвигается, без пачки фронтов
+            long next = deadlineNanos + program.turboHalfPeriodNanos(index);
+            if (next <= nowNanos) {
+                next = nowNanos + program.turboHalfPeriodNanos(index);
+            }
+            turboTimer[index] = schedule(next, KIND_TURBO | index);
+            publish(deadlineNanos, true);
+        } else {
+            macroTimer[index] = TimerWheel.NONE;
+            runMacro(index, deadlineNanos, nowNanos);
+        }
+    }
+    
+    // Первое нажатие турбо сразу, дальше - по сетке от него
+    private void startTurbo(int bit, long nowNanos) {
+        turboPhase |= 1L << bit;
+        turboTimer[bit] = schedule(nowNanos + program.turboHalfPeriodNanos(bit), KIND_TURBO | bit);
+    }
+    
+    private void startMacro(int macro, long nowNanos) {
+        // Повторный аккорд во время выполнения макроса не перезапускает его
+        if (macroTimer[macro] != TimerWheel.NONE) {
+            return;
+        }
+        macrosStarted++;
+        macroStep[macro] = 0;
+        runMacro(macro, nowNanos, nowNanos);
+    }
+    
+    // Выполняет шаги до первой паузы, base - срок, от которого отсчитывается пауза
+    private void runMacro(int macro, long baseNanos, long nowNanos) {
+        int[] steps = program.steps(macro);
+        while (macroStep[macro] < steps.length) {
+            int step = steps[macroStep[macro]++];
+            if (!MacroProgram.isPause(step)) {
+                long flag = 1L << MacroProgram.stepBit(step);
+                if (MacroProgram.isPress(step)) {
+                    macroHeld[macro] |= flag;
+                } else {
+                    macroHeld[macro] &= ~flag;
+                }
+                publish(baseNanos, true);
+            }
+            long delay = MacroProgram.stepDelayNanos(step);
+            if (delay > 0) {
+                long next = Math.max(baseNanos + delay, nowNanos);
+                macroTimer[macro] = schedule(next, KIND_MACRO | macro);
+                if (macroTimer[macro] != TimerWheel.NONE) {
+                    return;
+                }
+                break;
+            }
+        }
+        // Макрос закончился (или не хватило таймеров): всё, что он зажал, отпускается
+        macroHeld[macro] = 0;
+        publish(baseNanos, true);
+    }
+    
+    private int schedule(long deadlineNanos, int payload) {
+        int id = wheel.schedule(deadlineNanos, payload);
+        if (id == TimerWheel.NONE) {
+            timersRejected++;
+        }
+        return id;
+    }
+    
+    // Отправляет изменившиеся биты выхода
+    private void publish(long eventTimeNanos, boolean synthetic) {
+        long next = (physical & ~program.turboMask) | turboPhase;
+        for (int macro = 0; macro < macroHeld.length; macro++) {
+            next |= macroHeld[macro];
+        }
+        long changed = next ^ sent;
+        sent = next;
+        while (changed != 0) {
+            int bit = Long.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            output.emit(MacroProgram.button(bit), keyCodes[bit], (int) (next >>> bit) & 1, eventTimeNanos, synthetic);
+        }
+    }
+    
+    // Новая программа: таймеры старой снимаются, синтетические нажатия отпускаются,
+    // физически зажатые кнопки остаются зажатыми, а ставшие турбо - сразу повторяются
+    private void syncProgram(long nowNanos) {
+        MacroProgram next = nextProgram;
+        if (next == program) {
+            return;
+        }
+        program = next;
+        wheel.clear();
+        resetTimers();
+        turboPhase = 0;
+        for (int macro = 0; macro < macroHeld.length; macro++) {
+            macroHeld[macro] = 0;
+        }
+        long turbo = physical & program.turboMask;
+        while (turbo != 0) {
+            startTurbo(Long.numberOfTrailingZeros(turbo), nowNanos);
+            turbo &= turbo - 1;
+        }
+        publish(nowNanos, true);
+    }
+    
+    private void resetTimers() {
+        for (int i = 0; i < turboTimer.length; i++) {
+            turboTimer[i] = TimerWheel.NONE;
+        }
+        for (int i = 0; i < macroTimer.length; i++) {
+            macroTimer[i] = TimerWheel.NONE;
+        }
+    }
+    
+    String describe() {
+        return String.format(Locale.US, "timers=%d macros=%d rejected=%d lateness(us) n=%d p50=%d p99=%d max=%d",
+            wheel.size(), macrosStarted, timersRejected, lateness.count(), lateness.percentileMicros(50),
+            lateness.percentileMicros(99), lateness.maxMicros());
+    }
+}
\ No newline at end of file
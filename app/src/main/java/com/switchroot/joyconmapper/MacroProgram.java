@@ -0,0 +1,151 @@
+package com.switchroot.joyconmapper;
+
+import android.view.KeyEvent;
+
+// Скомпилированные турбо-кнопки, макросы и аккорды профиля. Неизменяем,
+// как MappingProfile; исполняет его MacroEngine в потоке вывода.
+//
+// Кнопки здесь - выходные Linux BTN_* коды (после переназначения профиля),
+// в масках - номера битов из bit(): BTN_A..BTN_THUMBR и крестовина
+// укладываются в один long.
+//
+// Шаг макроса - один int: номер бита, нажатие или отпускание и пауза после
+// шага в миллисекундах. Шаг без кнопки - только пауза.
+final class MacroProgram {
+    static final int MAX_MACROS = 16;
+    static final int MAX_CHORDS = 16;
+    static final int MAX_STEPS = 256;
+    static final int MAX_DELAY_MS = (1 << 23) - 1;
+    
+    static final MacroProgram EMPTY = new MacroProgram(0, new long[64], new int[0][], new String[0],
+        new long[0], new int[0]);
+    
+    private static final int STEP_BIT_MASK = 0x3F;
+    private static final int STEP_PRESS = 0x40;
+    private static final int STEP_PAUSE = 0x80;
+    private static final int STEP_DELAY_SHIFT = 8;
+    
+    // Android код по номеру бита
+    private static final int[] KEY_CODES = new int[64];
+    
+    static {
+        KEY_CODES[bit(LinuxInput.BTN_A)] = KeyEvent.KEYCODE_BUTTON_A;
+        KEY_CODES[bit(LinuxInput.BTN_B)] = KeyEvent.KEYCODE_BUTTON_B;
+        KEY_CODES[bit(LinuxInput.BTN_X)] = KeyEvent.KEYCODE_BUTTON_X;
+        KEY_CODES[bit(LinuxInput.BTN_Y)] = KeyEvent.KEYCODE_BUTTON_Y;
+        KEY_CODES[bit(LinuxInput.BTN_TL)] = KeyEvent.KEYCODE_BUTTON_L1;
+        KEY_CODES[bit(LinuxInput.BTN_TR)] = KeyEvent.KEYCODE_BUTTON_R1;
+        KEY_CODES[bit(LinuxInput.BTN_TL2)] = KeyEvent.KEYCODE_BUTTON_L2;
+        KEY_CODES[bit(LinuxInput.BTN_TR2)] = KeyEvent.KEYCODE_BUTTON_R2;
+        KEY_CODES[bit(LinuxInput.BTN_SELECT)] = KeyEvent.KEYCODE_BUTTON_SELECT;
+        KEY_CODES[bit(LinuxInput.BTN_START)] = KeyEvent.KEYCODE_BUTTON_START;
+        KEY_CODES[bit(LinuxInput.BTN_MODE)] = KeyEvent.KEYCODE_BUTTON_MODE;
+        KEY_CODES[bit(LinuxInput.BTN_THUMBL)] = KeyEvent.KEYCODE_BUTTON_THUMBL;
+        KEY_CODES[bit(LinuxInput.BTN_THUMBR)] = KeyEvent.KEYCODE_BUTTON_THUMBR;
+        KEY_CODES[bit(LinuxInput.BTN_DPAD_UP)] = KeyEvent.KEYCODE_DPAD_UP;
+        KEY_CODES[bit(LinuxInput.BTN_DPAD_DOWN)] = KeyEvent.KEYCODE_DPAD_DOWN;
+        KEY_CODES[bit(LinuxInput.BTN_DPAD_LEFT)] = KeyEvent.KEYCODE_DPAD_LEFT;
+        KEY_CODES[bit(LinuxInput.BTN_DPAD_RIGHT)] = KeyEvent.KEYCODE_DPAD_RIGHT;
+    }
+    
+    // Биты турбо-кнопок и полупериод автоповтора по номеру бита
+    final long turboMask;
+    private final long[] turboHalfPeriod;
+    
+    private final int[][] macros;
+    private final String[] macroNames;
+    
+    // Аккорд i запускает макрос chordMacro[i], когда зажаты все кнопки chordMask[i]
+    private final long[] chordMask;
+    private final int[] chordMacro;
+    
+    MacroProgram(long turboMask, long[] turboHalfPeriod, int[][] macros, String[] macroNames,
+                 long[] chordMask, int[] chordMacro) {
+        this.turboMask = turboMask;
+        this.turboHalfPeriod = turboHalfPeriod.clone();
+        this.macros = macros.clone();
+        this.macroNames = macroNames.clone();
+        this.chordMask = chordMask.clone();
+        this.chordMacro = chordMacro.clone();
+    }
+    
+    // Номер бита кнопки в масках или -1, если кнопка в маску не попадает
+    static int bit(int button) {
+        if (button >= LinuxInput.BTN_A && button < LinuxInput.BTN_A + 16) {
+            return button - LinuxInput.BTN_A;
+        }
+        if (button >= LinuxInput.BTN_DPAD_UP && button < LinuxInput.BTN_DPAD_UP + 16) {
+            return 16 + button - LinuxInput.BTN_DPAD_UP;
+        }
+        return -1;
+    }
+    
+    static int button(int bit) {
+        return bit < 16 ? LinuxInput.BTN_A + bit : LinuxInput.BTN_DPAD_UP + bit - 16;
+    }
+    
+    // Android код выходной кнопки для запасного shell пути, 0 - нет кода
+    static int keyCode(int bit) {
+        return KEY_CODES[bit];
+    }
+    
+    static int pressStep(int bit, int delayMs) {
+        return bit | STEP_PRESS | delayMs << STEP_DELAY_SHIFT;
+    }
+    
+    static int releaseStep(int bit, int delayMs) {
+        return bit | delayMs << STEP_DELAY_SHIFT;
+    }
+    
+    static int pauseStep(int delayMs) {
+        return STEP_PAUSE | delayMs << STEP_DELAY_SHIFT;
+    }
+    
+    static boolean isPause(int step) {
+        return (step & STEP_PAUSE) != 0;
+    }
+    
+    static boolean isPress(int step) {
+        return (step & STEP_PRESS) != 0;
+    }
+    
+    static int stepBit(int step) {
+        return step & STEP_BIT_MASK;
+    }
+    
+    static long stepDelayNanos(int step) {
+        return (long) (step >>> STEP_DELAY_SHIFT) * 1_000_000L;
+    }
+    
+    boolean isEmpty() {
+        return turboMask == 0 && chordMask.length == 0;
+    }
+    
+    long turboHalfPeriodNanos(int bit) {
+        return turboHalfPeriod[bit];
+    }
+    
+    int macroCount() {
+        return macros.length;
+    }
+    
+    int[] steps(int macro) {
+        return macros[macro];
+    }
+    
+    String macroName(int macro) {
+        return macroNames[macro];
+    }
+    
+    int chordCount() {
+        return chordMask.length;
+    }
+    
+    long chordMask(int chord) {
+        return chordMask[chord];
+    }
+    
+    int chordMacro(int chord) {
+        return chordMacro[chord];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.switchroot.joyconmapper;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Счётчики и гистограммы задержек маппера: от getEventTime() входного
+// события до завершения записи кадра в uinput.
+//
+// У каждого OutputDispatcher свои Counters, потому что потоков вывода
+// столько же, сколько игроков. Сумма по всем собирается только при чтении
+// (dumpsys, StatusChannel), под блокировкой этого объекта; путь событий
+// её не берёт.
+final class MapperStats {
+    static final int TYPE_KEY = 0;
+    static final int TYPE_MOTION = 1;
+    // От появления переподключённого Joy-Con до его первого события
+    static final int TYPE_RECONNECT = 2;
+    
+    private static final MapperStats INSTANCE = new MapperStats();
+    
+    // Счётчики одного диспетчера. У каждого счётчика ровно один пишущий
+    // поток, поэтому хватает volatile без атомарных операций: eventsIn
+    // пишет поток колбэков ввода, остальное - поток вывода диспетчера.
+    static final class Counters {
+        private final LatencyHistogram[] latency = {
+            new LatencyHistogram(),
+            new LatencyHistogram()
+        };
+        
+        volatile long eventsIn;
+        volatile long eventsEmitted;
+        // События турбо и макросов, без входного события
+        volatile long syntheticEmitted;
+        volatile long eventsCoalesced;
+        volatile long writeErrors;
+        
+        void recordLatency(int type, long eventTimeNanos) {
+            latency[type].recordNanos(System.nanoTime() - eventTimeNanos);
+        }
+        
+        // TYPE_KEY или TYPE_MOTION; для снимка из snapshot()
+        long percentileMicros(int type, double percentile) {
+            return latency[type].percentileMicros(percentile);
+        }
+        
+        // Вызывается под блокировкой MapperStats
+        private void addTo(Counters target) {
+            target.eventsIn += eventsIn;
+            target.eventsEmitted += eventsEmitted;
+            target.syntheticEmitted += syntheticEmitted;
+            target.eventsCoalesced += eventsCoalesced;
+            target.writeErrors += writeErrors;
+            latency[TYPE_KEY].addTo(target.latency[TYPE_KEY]);
+            latency[TYPE_MOTION].addTo(target.latency[TYPE_MOTION]);
+        }
+    }
+    
+    private final CopyOnWriteArrayList<Counters> active = new CopyOnWriteArrayList<>();
+    // Итоги остановленных диспетчеров, чтобы сумма не уменьшалась
+    private final Counters retired = new Counters();
+    // Пишет поток сервиса
+    private final LatencyHistogram reconnect = new LatencyHistogram();
+    
+    static MapperStats get() {
+        return INSTANCE;
+    }
+    
+    // Счётчики для нового потока вывода; входят в сумму до retire()
+    Counters register() {
+        Counters counters = new Counters();
+        active.add(counters);
+        return counters;
+    }
+    
+    // Поток вывода остановлен: его счётчики переходят в итоги
+    synchronized void retire(Counters counters) {
+        if (active.remove(counters)) {
+            counters.addTo(retired);
+        }
+    }
+    
+    void recordReconnect(long nanos) {
+        reconnect.recordNanos(nanos);
+    }
+    
+    void dump(PrintWriter writer) {
+        Counters total = snapshot();
+        writer.println("Events: in=" + total.eventsIn + " emitted=" + total.eventsEmitted
+            + " synthetic=" + total.syntheticEmitted + " coalesced=" + total.eventsCoalesced
+            + " writeErrors=" + total.writeErrors);
+        dumpLatency(writer, "Key", total.latency[TYPE_KEY]);
+        dumpLatency(writer, "Motion", total.latency[TYPE_MOTION]);
+        dumpLatency(writer, "Reconnect", reconnect);
+    }
+    
+    String format() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        dump(writer);
+        writer.flush();
+        return out.toString().trim();
+    }
+    
+    // Снимок суммы: итоги плюс работающие диспетчеры. Все значения одного
+    // снимка собраны за один проход, читатель берёт их из одного объекта
+    synchronized Counters snapshot() {
+        Counters total = new Counters();
+        retired.addTo(total);
+        for (Counters counters : active) {
+            counters.addTo(total);
+        }
+        return total;
+    }
+    
+    private static void dumpLatency(PrintWriter writer, String name, LatencyHistogram histogram) {
+        writer.println(String.format(Locale.US,
+            "%s latency (us): n=%d p50=%d p99=%d p99.9=%d max=%d",
+            name, histogram.count(),
+            histogram.percentileMicros(50), histogram.percentileMicros(99),
+            histogram.percentileMicros(99.9), histogram.maxMicros()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.switchroot.joyconmapper;
+
+// Скомпилированный профиль переназначения: только примитивные таблицы,
+// после создания не меняется. Профили разбираются и проверяются в
+// ProfileParser вне пути событий, а InputMapper подменяет активный профиль
+// одной записью ссылки.
+final class MappingProfile {
+    final String name;
+    
+    // Скан-код Joy-Con -> Linux BTN_*, индекс scanCode - ButtonTable.SCAN_BASE
+    private final int[] buttons;
+    
+    // Выходная ось i = axisSign[i] * входная ось axisSource[i] (StickFilter.AXIS_*)
+    private final int[] axisSource;
+    private final int[] axisSign;
+    
+    // Пакеты игр, для которых профиль включается автоматически
+    private final String[] games;
+    
+    // Турбо, макросы и аккорды для MacroEngine потока вывода
+    final MacroProgram macros;
+    
+    MappingProfile(String name, int[] buttons, int[] axisSource, float[] axisScale, String[] games,
+                   MacroProgram macros) {
+        this.name = name;
+        this.buttons = buttons.clone();
+        this.axisSource = axisSource.clone();
+        this.axisSign = new int[axisScale.length];
+        for (int i = 0; i < axisSign.length; i++) {
+            axisSign[i] = axisScale[i] < 0 ? -1 : 1;
+        }
+        this.games = games.clone();
+        this.macros = macros;
+    }
+    
+    // Профиль без переназначений поверх таблицы по умолчанию
+    static MappingProfile createDefault(ButtonTable table) {
+        return new MappingProfile("default", table.toArray(), identityAxes(), new float[] { 1, 1, 1, 1 },
+            new String[0], MacroProgram.EMPTY);
+    }
+    
+    static int[] identityAxes() {
+        return new int[] { StickFilter.AXIS_LX, StickFilter.AXIS_LY, StickFilter.AXIS_RX, StickFilter.AXIS_RY };
+    }
+    
+    // Возвращает Linux код кнопки или ButtonTable.UNMAPPED
+    int lookup(int scanCode) {
+        int index = scanCode - ButtonTable.SCAN_BASE;
+        if (index < 0 || index >= buttons.length) {
+            return ButtonTable.UNMAPPED;
+        }
+        return buttons[index];
+    }
+    
+    // sticks - входные значения осей в единицах uinput в порядке StickFilter.AXIS_*, начиная с base
+    int axis(int axis, int[] sticks, int base) {
+        return axisSign[axis] * sticks[base + axisSource[axis]];
+    }
+    
+    String[] games() {
+        return games.clone();
+    }
+    
+    // Таблицы для native моста, в том же виде, что и внутри профиля
+    int[] toButtonArray() {
+        return buttons.clone();
+    }
+    
+    int[] toAxisSourceArray() {
+        return axisSource.clone();
+    }
+    
+    int[] toAxisScaleArray() {
+        return axisSign.clone();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.switchroot.joyconmapper;
+
+import android.util.Log;
+
+// Виртуальное устройство датчиков движения (INPUT_PROP_ACCELEROMETER),
+// связанное с геймпадом общим phys (motion_device.cpp).
+// Пишет только поток IMU, путь кнопок и стиков его не касается.
+final class MotionSensorDevice implements ImuSink {
+    private static final String TAG = "MotionSensorDevice";
+    
+    private native int nativeCreate();
+    private native void nativeDestroy(int fd);
+    private native int nativeSendBatch(int fd, int[] samples, int count);
+    
+    private volatile int fd = -1;
+    
+    boolean create() {
+        if (fd >= 0) {
+            return true;
+        }
+        if (!NativeLibrary.load()) {
+            return false;
+        }
+        try {
+            fd = nativeCreate();
+        } catch (UnsatisfiedLinkError e) {
+            Log.e(TAG, "Motion sensor device unavailable", e);
+        }
+        return fd >= 0;
+    }
+    
+    @Override
+    public int writeBatch(int[] samples, int count) {
+        int current = fd;
+        if (current < 0) {
+            return 0;
+        }
+        return nativeSendBatch(current, samples, count);
+    }
+    
+    void destroy() {
+        if (fd >= 0) {
+            nativeDestroy(fd);
+            fd = -1;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+package com.switchroot.joyconmapper;
+
+import android.util.Log;
+import java.io.PrintWriter;
+
+// Native режим: evdev узлы Joy-Con читает native поток (evdev_bridge.cpp)
+// и сам пишет кадры в uinput, минуя стек ввода Android, Java и JNI.
+// Здесь только запуск, остановка, подмена таблиц профиля и счётчики.
+//
+// Узлы захватываются через EVIOCGRAB, поэтому пока мост работает,
+// события Joy-Con не доходят до сервиса доступности. Нужен доступ к
+// /dev/input/event* (root или группа input).
+final class NativeBridge {
+    private static final String TAG = "NativeBridge";
+    
+    // Порядок совпадает с полями jcm_bridge_stats
+    static final int STAT_EVENTS_IN = 0;
+    static final int STAT_READS = 1;
+    static final int STAT_FRAMES_OUT = 2;
+    static final int STAT_EVENTS_OUT = 3;
+    static final int STAT_WRITE_ERRORS = 4;
+    static final int STAT_SYNC_DROPPED = 5;
+    static final int STAT_SOURCES_LOST = 6;
+    static final int STAT_COUNT = 7;
+    
+    private native long nativeStart(int uinputFd, int[] buttons, int[] axisSource, int[] axisScale,
+        int threshold, int deadzone);
+    private native void nativeUpdateTables(long handle, int[] buttons, int[] axisSource, int[] axisScale,
+        int threshold, int deadzone);
+    private native void nativeStop(long handle);
+    private native void nativeStats(long handle, long[] out);
+    
+    private long handle;
+    private int threshold = StickFilter.DEFAULT_THRESHOLD;
+    private int deadzone = StickFilter.DEFAULT_DEADZONE;
+    
+    void configureSticks(int threshold, int deadzone) {
+        this.threshold = threshold;
+        this.deadzone = deadzone;
+    }
+    
+    // Перезапускает мост, чтобы подхватить заново подключённые Joy-Con
+    synchronized boolean start(int uinputFd, MappingProfile profile) {
+        stop();
+        if (!NativeLibrary.load()) {
+            return false;
+        }
+        try {
+            handle = nativeStart(uinputFd, profile.toButtonArray(), profile.toAxisSourceArray(),
+                profile.toAxisScaleArray(), threshold, deadzone);
+        } catch (UnsatisfiedLinkError e) {
+            Log.e(TAG, "Native bridge unavailable", e);
+            handle = 0;
+        }
+        return handle != 0;
+    }
+    
+    // Новый профиль вступает в силу перед следующим кадром моста
+    synchronized void updateProfile(MappingProfile profile) {
+        if (handle == 0) {
+            return;
+        }
+        nativeUpdateTables(handle, profile.toButtonArray(), profile.toAxisSourceArray(),
+            profile.toAxisScaleArray(), threshold, deadzone);
+    }
+    
+    synchronized boolean isRunning() {
+        return handle != 0;
+    }
+    
+    synchronized void stop() {
+        if (handle != 0) {
+            nativeStop(handle);
+            handle = 0;
+        }
+    }
+    
+    synchronized void dump(PrintWriter writer) {
+        if (handle == 0) {
+            writer.println("Native bridge: stopped");
+            return;
+        }
+        long[] stats = new long[STAT_COUNT];
+        nativeStats(handle, stats);
+        writer.println("Native bridge: in=" + stats[STAT_EVENTS_IN] + " reads=" + stats[STAT_READS]
+            + " frames=" + stats[STAT_FRAMES_OUT] + " out=" + stats[STAT_EVENTS_OUT]
+            + " writeErrors=" + stats[STAT_WRITE_ERRORS] + " syncDropped=" + stats[STAT_SYNC_DROPPED]
+            + " sourcesLost=" + stats[STAT_SOURCES_LOST]);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,36 @@
+package com.switchroot.joyconmapper;
+
+import android.util.Log;
+
+// Загрузка libjoyconmapper в одном месте. Первый вызов делает поток запуска
+// сервиса, точки входа native классов вызывают её повторно - это одно чтение
+// volatile. Так System.loadLibrary не попадает на главный поток при создании
+// объектов в onCreate.
+final class NativeLibrary {
+    private static final String TAG = "NativeLibrary";
+    
+    // 0 - ещё не загружали, 1 - загружена, -1 - загрузка не удалась
+    private static volatile int state;
+    
+    private NativeLibrary() {
+    }
+    
+    static boolean load() {
+        int current = state;
+        if (current != 0) {
+            return current > 0;
+        }
+        synchronized (NativeLibrary.class) {
+            if (state == 0) {
+                try {
+                    System.loadLibrary("joyconmapper");
+                    state = 1;
+                } catch (UnsatisfiedLinkError e) {
+                    Log.e(TAG, "Failed to load native library", e);
+                    state = -1;
+                }
+            }
+            return state > 0;
+        }
+    }
+}
\ No newline at end of file
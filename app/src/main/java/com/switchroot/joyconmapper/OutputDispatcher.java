@@ -0,0 +1,300 @@
+package com.switchroot.joyconmapper;
+
+import android.os.Process;
+import android.util.Log;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Отдельный поток вывода в uinput. Колбэки ввода только кладут события
+// в очередь, а запись в устройство идёт здесь, вне главного потока.
+//
+// Кнопки передаются через SPSC кольцо из заранее выделенных слотов и
+// никогда не теряются. Стики передаются через "почтовый ящик" с последним
+// состоянием: если поток вывода отстаёт, промежуточные значения схлопываются.
+// С StickScheduler стики вместо ящика идут по его расписанию: каждый сэмпл
+// или ровная сетка тиков.
+//
+// Кнопки из кольца проходят через MacroEngine: турбо, макросы и аккорды
+// профиля. Его таймеры срабатывают здесь же, поток спит до ближайшего срока.
+final class OutputDispatcher implements Runnable {
+    private static final String TAG = "OutputDispatcher";
+    
+    // Размер кольца - степень двойки
+    private static final int RING_SIZE = 256;
+    private static final int RING_MASK = RING_SIZE - 1;
+    
+    // Как часто повторять запись хвоста, который uinput не принял
+    private static final long BACKLOG_RETRY_NANOS = 1_000_000L;
+    
+    private final VirtualXboxController controller;
+    // Свои счётчики на каждый запуск потока вывода, см. MapperStats.
+    // Присваивает start() в главном потоке, читает и поток колбэков ввода
+    private volatile MapperStats.Counters stats;
+    
+    // Слоты кольца кнопок
+    private final int[] ringButton = new int[RING_SIZE];
+    private final int[] ringKeyCode = new int[RING_SIZE];
+    private final int[] ringValue = new int[RING_SIZE];
+    private final long[] ringEventTime = new long[RING_SIZE];
+    
+    // head пишет только поток вывода, tail - только производитель
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    
+    // Последнее состояние стиков: четыре 16-битных значения в одном long
+    private final AtomicLong latestSticks = new AtomicLong();
+    private final AtomicInteger pendingSticks = new AtomicInteger();
+    private volatile long latestStickTime;
+    
+    // null - режим latest, почтовый ящик
+    private final StickScheduler scheduler;
+    
+    // Неровность прихода колбэков (пишет поток ввода) и кадров стиков (поток вывода)
+    private final JitterMeter inputJitter = new JitterMeter();
+    private final JitterMeter outputJitter = new JitterMeter();
+    
+    private final MacroEngine macros = new MacroEngine(this::emitButton);
+    
+    private volatile boolean running;
+    private Thread thread;
+    
+    // uinput не принял часть кадров, их нужно дописать; только поток вывода
+    private boolean backlog;
+    
+    OutputDispatcher(VirtualXboxController controller) {
+        this(controller, null);
+    }
+    
+    OutputDispatcher(VirtualXboxController controller, StickScheduler scheduler) {
+        this.controller = controller;
+        this.scheduler = scheduler;
+    }
+    
+    void start() {
+        if (thread != null) {
+            return;
+        }
+        stats = MapperStats.get().register();
+        running = true;
+        thread = new Thread(this, "JoyConMapper-Output");
+        thread.start();
+    }
+    
+    void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Зависший поток ещё может писать: его счётчики остаются в активных
+        if (!thread.isAlive()) {
+            MapperStats.get().retire(stats);
+        }
+        thread = null;
+    }
+    
+    // Вызывается только из одного потока-производителя (поток колбэков ввода).
+    // eventTimeNanos - время входного события в шкале System.nanoTime()
+    void enqueueButton(int button, int keyCode, int value, long eventTimeNanos) {
+        if (!running) return;
+        stats.eventsIn++;
+        
+        long t = tail.get();
+        // Кнопки не отбрасываются: при полном кольце ждём поток вывода
+        while (t - head.get() >= RING_SIZE) {
+            LockSupport.unpark(thread);
+            Thread.yield();
+        }
+        int index = (int) (t & RING_MASK);
+        ringButton[index] = button;
+        ringKeyCode[index] = keyCode;
+        ringValue[index] = value;
+        ringEventTime[index] = eventTimeNanos;
+        tail.lazySet(t + 1);
+        LockSupport.unpark(thread);
+    }
+    
+    // Значения осей уже в единицах uinput (-32767..32767)
+    void enqueueSticks(int leftX, int leftY, int rightX, int rightY, long eventTimeNanos) {
+        if (!running) return;
+        stats.eventsIn++;
+        
+        long packed = pack(leftX, 0) | pack(leftY, 16) | pack(rightX, 32) | pack(rightY, 48);
+        if (scheduler != null) {
+            if (scheduler.offer(packed, eventTimeNanos)) {
+                LockSupport.unpark(thread);
+            }
+            return;
+        }
+        latestStickTime = eventTimeNanos;
+        latestSticks.set(packed);
+        // Будим поток только на первом значении после его getAndSet(0): пока
+        // ящик не пуст, поток уже разбужен и заберёт последнее значение сам
+        if (pendingSticks.incrementAndGet() == 1) {
+            LockSupport.unpark(thread);
+        }
+    }
+    
+    // Программа турбо и макросов активного профиля, из любого потока.
+    // Применяется потоком вывода на следующем фронте или сроке таймера
+    void setMacros(MacroProgram program) {
+        macros.setProgram(program);
+    }
+    
+    // Поток колбэков ввода, один раз на MotionEvent (вместе с историческими сэмплами)
+    void markInputCallback(long nowNanos) {
+        inputJitter.mark(nowNanos);
+    }
+    
+    @Override
+    public void run() {
+        try {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to raise output thread priority", e);
+        }
+        
+        while (running) {
+            if (!drain()) {
+                // По расписанию спим до следующего тика, иначе до нового события
+                long now = System.nanoTime();
+                long wait = scheduler != null ? scheduler.waitNanos(now) : 0;
+                long deadline = macros.nextDeadline();
+                if (deadline != Long.MAX_VALUE) {
+                    long timer = Math.max(1, deadline - now);
+                    if (wait == 0 || timer < wait) {
+                        wait = timer;
+                    }
+                }
+                if (backlog && (wait == 0 || wait > BACKLOG_RETRY_NANOS)) {
+                    wait = BACKLOG_RETRY_NANOS;
+                }
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        }
+        drain();
+    }
+    
+    // Возвращает true, если что-то было отправлено
+    private boolean drain() {
+        boolean sent = false;
+        
+        long h = head.get();
+        long t = tail.get();
+        long now = h < t || macros.isActive() ? System.nanoTime() : 0;
+        while (h < t) {
+            int index = (int) (h & RING_MASK);
+            macros.onButton(ringButton[index], ringKeyCode[index], ringValue[index], ringEventTime[index], now);
+            h++;
+            head.lazySet(h);
+            sent = true;
+        }
+        if (macros.isActive() && macros.advance(now) > 0) {
+            sent = true;
+        }
+        
+        if (scheduler != null) {
+            sent |= drainScheduled();
+        }
+        
+        // Промежуточные значения стиков пропускаются, отправляется только последнее
+        int pending = scheduler != null ? 0 : pendingSticks.getAndSet(0);
+        if (pending > 0) {
+            outputJitter.mark(System.nanoTime());
+            long eventTime = latestStickTime;
+            long packed = latestSticks.get();
+            int result = controller.sendAxisValues(unpack(packed, 0), unpack(packed, 16),
+                unpack(packed, 32), unpack(packed, 48));
+            account(result, MapperStats.TYPE_MOTION, eventTime);
+            stats.eventsCoalesced += pending - 1;
+            sent = true;
+        }
+        
+        // Запасной shell backend копит команды и отправляет их здесь одной пачкой
+        if (sent && controller.flushPending() < 0) {
+            stats.writeErrors++;
+        }
+        
+        // Кнопки в хвосте не теряются: он дописывается здесь, пока не опустеет
+        if (sent || backlog) {
+            int left = controller.flushBacklog();
+            if (left < 0) {
+                stats.writeErrors++;
+            }
+            backlog = left > 0;
+        }
+        
+        return sent;
+    }
+    
+    // passthrough отдаёт все накопленные сэмплы, fixed - не больше кадра за тик
+    private boolean drainScheduled() {
+        boolean sent = false;
+        long now = System.nanoTime();
+        while (scheduler.poll(now)) {
+            outputJitter.mark(now);
+            long packed = scheduler.sticks;
+            int result = controller.sendAxisValues(unpack(packed, 0), unpack(packed, 16),
+                unpack(packed, 32), unpack(packed, 48));
+            account(result, MapperStats.TYPE_MOTION, scheduler.sampleTime);
+            sent = true;
+            now = System.nanoTime();
+        }
+        return sent;
+    }
+    
+    void dump(PrintWriter writer, int slot) {
+        writer.println("Output " + slot + ": " + (scheduler != null ? scheduler.describe() : "mode=latest"));
+        writer.println("  input jitter (us): " + inputJitter.format());
+        writer.println("  output jitter (us): " + outputJitter.format());
+        writer.println("  macros: " + macros.describe());
+    }
+    
+    // Фронт кнопки от MacroEngine: физический или синтетический. Синтетические
+    // считаются отдельно: входного события у них нет, и в задержку кнопок
+    // и eventsEmitted они не входят
+    private int emitButton(int button, int keyCode, int value, long eventTimeNanos, boolean synthetic) {
+        int result;
+        if (value != 0) {
+            result = controller.sendButtonPress(button, keyCode);
+        } else {
+            result = controller.sendButtonRelease(button, keyCode);
+        }
+        if (!synthetic) {
+            account(result, MapperStats.TYPE_KEY, eventTimeNanos);
+        } else if (result > 0) {
+            stats.syntheticEmitted += result;
+        } else if (result < 0) {
+            stats.writeErrors++;
+        }
+        return result;
+    }
+    
+    private void account(int result, int type, long eventTimeNanos) {
+        if (result > 0) {
+            stats.eventsEmitted += result;
+            stats.recordLatency(type, eventTimeNanos);
+        } else if (result < 0) {
+            stats.writeErrors++;
+        }
+    }
+    
+    private static long pack(int value, int shift) {
+        return ((long) (value & 0xFFFF)) << shift;
+    }
+    
+    private static int unpack(long packed, int shift) {
+        return (short) (packed >>> shift);
+    }
+}
\ No newline at end of file
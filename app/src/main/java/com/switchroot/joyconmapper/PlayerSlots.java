@@ -0,0 +1,145 @@
+package com.switchroot.joyconmapper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Распределение Joy-Con по игрокам. Слот - один виртуальный контроллер:
+// пара левый+правый или, в режиме solo, один Joy-Con, повёрнутый боком.
+// Маршрут id устройства -> слот - одно обращение к массиву, как в DeviceRegistry.
+// Вызывается только из главного потока.
+final class PlayerSlots {
+    static final int MAX_SLOTS = 4;
+    static final int NO_SLOT = -1;
+    
+    private static final int NO_DEVICE = -1;
+    private static final int MAX_DEVICE_ID = 1 << 16;
+    
+    // Слот + 1 по id устройства, 0 - не назначено
+    private byte[] slotByDevice = new byte[64];
+    
+    // Устройства слота по ролям
+    private final int[] leftDevice = new int[MAX_SLOTS];
+    private final int[] rightDevice = new int[MAX_SLOTS];
+    
+    // Каждый Joy-Con - отдельный игрок
+    private final boolean solo;
+    
+    // Последний слот по дескриптору устройства. Дескриптор не меняется при
+    // переподключении, поэтому вернувшийся Joy-Con попадает к своему игроку.
+    // Читается только при подключении, не на пути событий
+    private final HashMap<String, Integer> lastSlot = new HashMap<>();
+    
+    PlayerSlots(boolean solo) {
+        this.solo = solo;
+        Arrays.fill(leftDevice, NO_DEVICE);
+        Arrays.fill(rightDevice, NO_DEVICE);
+    }
+    
+    boolean isSolo() {
+        return solo;
+    }
+    
+    // Назначает Joy-Con его прежнему слоту, если тот свободен, иначе первому слоту,
+    // где свободна его роль (в solo - первому пустому).
+    // Повторный вызов для того же устройства возвращает его текущий слот
+    int assign(int deviceId, int role, String descriptor) {
+        if (deviceId < 0 || deviceId >= MAX_DEVICE_ID || role == DeviceRegistry.ROLE_OTHER) {
+            return NO_SLOT;
+        }
+        int current = slotOf(deviceId);
+        if (current != NO_SLOT) {
+            return current;
+        }
+        Integer previous = descriptor != null ? lastSlot.get(descriptor) : null;
+        if (previous != null && isFree(previous, role)) {
+            return place(deviceId, role, previous, descriptor);
+        }
+        for (int slot = 0; slot < MAX_SLOTS; slot++) {
+            if (isFree(slot, role)) {
+                return place(deviceId, role, slot, descriptor);
+            }
+        }
+        return NO_SLOT;
+    }
+    
+    // Устройство уже было у какого-то игрока - значит, это переподключение
+    boolean isKnown(String descriptor) {
+        return descriptor != null && lastSlot.containsKey(descriptor);
+    }
+    
+    private boolean isFree(int slot, int role) {
+        if (solo) {
+            return leftDevice[slot] == NO_DEVICE && rightDevice[slot] == NO_DEVICE;
+        }
+        return (role == DeviceRegistry.ROLE_LEFT ? leftDevice[slot] : rightDevice[slot]) == NO_DEVICE;
+    }
+    
+    private int place(int deviceId, int role, int slot, String descriptor) {
+        if (role == DeviceRegistry.ROLE_LEFT) {
+            leftDevice[slot] = deviceId;
+        } else {
+            rightDevice[slot] = deviceId;
+        }
+        if (deviceId >= slotByDevice.length) {
+            slotByDevice = Arrays.copyOf(slotByDevice, Math.min(MAX_DEVICE_ID, Integer.highestOneBit(deviceId) << 1));
+        }
+        slotByDevice[deviceId] = (byte) (slot + 1);
+        if (descriptor != null) {
+            lastSlot.put(descriptor, slot);
+        }
+        return slot;
+    }
+    
+    // Освобождает место устройства, возвращает его бывший слот
+    int release(int deviceId) {
+        int slot = slotOf(deviceId);
+        if (slot == NO_SLOT) {
+            return NO_SLOT;
+        }
+        slotByDevice[deviceId] = 0;
+        if (leftDevice[slot] == deviceId) {
+            leftDevice[slot] = NO_DEVICE;
+        }
+        if (rightDevice[slot] == deviceId) {
+            rightDevice[slot] = NO_DEVICE;
+        }
+        return slot;
+    }
+    
+    int slotOf(int deviceId) {
+        if (deviceId < 0 || deviceId >= slotByDevice.length) {
+            return NO_SLOT;
+        }
+        return slotByDevice[deviceId] - 1;
+    }
+    
+    // Слот готов к созданию контроллера: полная пара или один Joy-Con в solo
+    boolean isReady(int slot) {
+        if (solo) {
+            return leftDevice[slot] != NO_DEVICE || rightDevice[slot] != NO_DEVICE;
+        }
+        return leftDevice[slot] != NO_DEVICE && rightDevice[slot] != NO_DEVICE;
+    }
+    
+    // Подключена только одна пара: native мост обслуживает именно этот случай
+    boolean isSinglePair() {
+        if (solo) {
+            return false;
+        }
+        for (int slot = 1; slot < MAX_SLOTS; slot++) {
+            if (leftDevice[slot] != NO_DEVICE || rightDevice[slot] != NO_DEVICE) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    boolean hasDevice(int slot, int role) {
+        return (role == DeviceRegistry.ROLE_LEFT ? leftDevice[slot] : rightDevice[slot]) != NO_DEVICE;
+    }
+    
+    String describe(int slot) {
+        return "slot " + slot + ": left=" + leftDevice[slot] + " right=" + rightDevice[slot]
+            + " ready=" + isReady(slot);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,191 @@
+package com.switchroot.joyconmapper;
+
+import android.util.Log;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Загрузка профилей из files/profiles/*.profile и выбор активного.
+//
+// Разбор и компиляция идут в отдельном потоке, готовые профили кешируются
+// по имени файла и времени изменения. Выбор профиля - поиск в неизменяемой
+// карте и одна запись ссылки в InputMapper, поток событий не блокируется.
+// Профиль игры из строки games имеет приоритет над выбранным по умолчанию.
+final class ProfileManager {
+    private static final String TAG = "ProfileManager";
+    static final String EXTENSION = ".profile";
+    
+    private final File directory;
+    private final ButtonTable baseTable;
+    private final InputMapper mapper;
+    private final MappingProfile builtinDefault;
+    
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(
+        r -> new Thread(r, "JoyConMapper-Profiles"));
+    
+    // Кеш скомпилированных профилей, трогает только поток загрузки
+    private final Map<String, CachedProfile> cache = new HashMap<>();
+    
+    // Неизменяемые снимки, публикуются потоком загрузки целиком
+    private volatile Map<String, MappingProfile> profiles = Collections.emptyMap();
+    private volatile Map<String, MappingProfile> gameProfiles = Collections.emptyMap();
+    
+    private volatile String defaultName;
+    private volatile String foregroundPackage;
+    private volatile long lastSwitchNanos;
+    
+    // Дополнительный получатель нового профиля, например native мост
+    private volatile Consumer<MappingProfile> listener;
+    
+    // Вызывается из потока загрузки, когда появились или пропали профили игр
+    private volatile Runnable gamesListener;
+    
+    private static final class CachedProfile {
+        final long lastModified;
+        final MappingProfile profile;
+        
+        CachedProfile(long lastModified, MappingProfile profile) {
+            this.lastModified = lastModified;
+            this.profile = profile;
+        }
+    }
+    
+    ProfileManager(File directory, ButtonTable baseTable, InputMapper mapper) {
+        this.directory = directory;
+        this.baseTable = baseTable;
+        this.mapper = mapper;
+        this.builtinDefault = MappingProfile.createDefault(baseTable);
+    }
+    
+    // Перечитывает каталог в фоне; неизменённые файлы берутся из кеша
+    void reload() {
+        loader.execute(this::loadAll);
+    }
+    
+    // Профиль по умолчанию, когда для текущей игры нет своего
+    void select(String name) {
+        defaultName = name;
+        apply();
+    }
+    
+    // Вызывается при смене активного окна
+    void onForegroundPackage(String packageName) {
+        if (packageName.equals(foregroundPackage)) {
+            return;
+        }
+        foregroundPackage = packageName;
+        apply();
+    }
+    
+    void setListener(Consumer<MappingProfile> listener) {
+        this.listener = listener;
+    }
+    
+    void setGamesListener(Runnable listener) {
+        this.gamesListener = listener;
+    }
+    
+    // Нужно ли следить за активным окном
+    boolean hasGameProfiles() {
+        return !gameProfiles.isEmpty();
+    }
+    
+    void shutdown() {
+        loader.shutdownNow();
+    }
+    
+    void dump(PrintWriter writer) {
+        writer.println("Profile: active=" + mapper.profile().name + " default=" + defaultName
+            + " foreground=" + foregroundPackage + " loaded=" + profiles.keySet()
+            + " lastSwitchUs=" + lastSwitchNanos / 1000);
+    }
+    
+    private void loadAll() {
+        File[] files = directory.listFiles((dir, fileName) -> fileName.endsWith(EXTENSION));
+        Map<String, MappingProfile> byName = new HashMap<>();
+        Map<String, MappingProfile> byGame = new HashMap<>();
+        Map<String, CachedProfile> seen = new HashMap<>();
+        
+        if (files != null) {
+            for (File file : files) {
+                MappingProfile profile = compile(file);
+                if (profile == null) {
+                    continue;
+                }
+                seen.put(file.getName(), cache.get(file.getName()));
+                byName.put(profile.name, profile);
+                for (String game : profile.games()) {
+                    byGame.put(game, profile);
+                }
+            }
+        }
+        cache.keySet().retainAll(seen.keySet());
+        
+        boolean hadGames = hasGameProfiles();
+        profiles = Collections.unmodifiableMap(byName);
+        gameProfiles = Collections.unmodifiableMap(byGame);
+        Log.d(TAG, "Loaded profiles: " + byName.keySet());
+        apply();
+        
+        Runnable games = gamesListener;
+        if (games != null && hadGames != hasGameProfiles()) {
+            games.run();
+        }
+    }
+    
+    private MappingProfile compile(File file) {
+        CachedProfile cached = cache.get(file.getName());
+        if (cached != null && cached.lastModified == file.lastModified()) {
+            return cached.profile;
+        }
+        String fileName = file.getName();
+        String defaultProfileName = fileName.substring(0, fileName.length() - EXTENSION.length());
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            MappingProfile profile = ProfileParser.parse(defaultProfileName, reader, baseTable);
+            cache.put(fileName, new CachedProfile(file.lastModified(), profile));
+            return profile;
+        } catch (IOException | IllegalArgumentException e) {
+            // Битый профиль не должен ломать остальные: оставляем прошлую версию, если была
+            Log.w(TAG, "Invalid profile " + file + ": " + e.getMessage());
+            return cached != null ? cached.profile : null;
+        }
+    }
+    
+    // Блокировка нужна только чтобы смена игры и перезагрузка не переставили
+    // профиль в обратном порядке; поток событий её не берёт
+    private synchronized void apply() {
+        long start = System.nanoTime();
+        MappingProfile next = null;
+        String game = foregroundPackage;
+        if (game != null) {
+            next = gameProfiles.get(game);
+        }
+        String name = defaultName;
+        if (next == null && name != null) {
+            next = profiles.get(name);
+        }
+        if (next == null) {
+            next = builtinDefault;
+        }
+        if (next != mapper.profile()) {
+            mapper.setProfile(next);
+            lastSwitchNanos = System.nanoTime() - start;
+            Consumer<MappingProfile> current = listener;
+            if (current != null) {
+                current.accept(next);
+            }
+            Log.d(TAG, "Active profile: " + next.name);
+        }
+    }
+}
\ No newline at end of file
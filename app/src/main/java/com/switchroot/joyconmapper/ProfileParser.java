@@ -0,0 +1,279 @@
+package com.switchroot.joyconmapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Разбор текстового профиля переназначения в MappingProfile.
+//
+//   # комментарий
+//   name = Platformer
+//   button A = B            # кнопка Joy-Con с кодом BTN_A шлёт BTN_B
+//   button MODE = NONE      # кнопка остаётся системе Android
+//   button 309 = START      # скан-код числом
+//   axis LX = -LY           # выходная ось = [-]входная ось
+//   games = com.example.game, com.example.other
+//   turbo A = 15            # выходная BTN_A с автоповтором 15 Гц, пока зажата
+//   macro dash = DPAD_RIGHT 30, 40, DPAD_RIGHT 30   # нажать на 30 мс, пауза 40 мс...
+//   macro both = TL+TR 100  # несколько кнопок одновременно
+//   chord MODE+SELECT = dash   # все кнопки аккорда зажаты - запускается макрос
+//
+// Цели ограничены кнопками, которые виртуальный контроллер регистрирует
+// всегда, поэтому смена профиля не требует пересоздания uinput устройства.
+// turbo, macro и chord работают с выходными кнопками, уже после строк button.
+// Ошибки формата - IllegalArgumentException с номером строки.
+final class ProfileParser {
+    private static final Map<String, Integer> BUTTONS = new HashMap<>();
+    private static final Map<String, Integer> AXES = new HashMap<>();
+    
+    static {
+        BUTTONS.put("A", LinuxInput.BTN_A);
+        BUTTONS.put("B", LinuxInput.BTN_B);
+        BUTTONS.put("X", LinuxInput.BTN_X);
+        BUTTONS.put("Y", LinuxInput.BTN_Y);
+        BUTTONS.put("TL", LinuxInput.BTN_TL);
+        BUTTONS.put("TR", LinuxInput.BTN_TR);
+        BUTTONS.put("TL2", LinuxInput.BTN_TL2);
+        BUTTONS.put("TR2", LinuxInput.BTN_TR2);
+        BUTTONS.put("SELECT", LinuxInput.BTN_SELECT);
+        BUTTONS.put("START", LinuxInput.BTN_START);
+        BUTTONS.put("MODE", LinuxInput.BTN_MODE);
+        BUTTONS.put("THUMBL", LinuxInput.BTN_THUMBL);
+        BUTTONS.put("THUMBR", LinuxInput.BTN_THUMBR);
+        BUTTONS.put("DPAD_UP", LinuxInput.BTN_DPAD_UP);
+        BUTTONS.put("DPAD_DOWN", LinuxInput.BTN_DPAD_DOWN);
+        BUTTONS.put("DPAD_LEFT", LinuxInput.BTN_DPAD_LEFT);
+        BUTTONS.put("DPAD_RIGHT", LinuxInput.BTN_DPAD_RIGHT);
+        
+        AXES.put("LX", StickFilter.AXIS_LX);
+        AXES.put("LY", StickFilter.AXIS_LY);
+        AXES.put("RX", StickFilter.AXIS_RX);
+        AXES.put("RY", StickFilter.AXIS_RY);
+    }
+    
+    private ProfileParser() {
+    }
+    
+    // base - таблица, поверх которой применяются строки button
+    static MappingProfile parse(String defaultName, BufferedReader reader, ButtonTable base) throws IOException {
+        String name = defaultName;
+        int[] buttons = base.toArray();
+        int[] axisSource = MappingProfile.identityAxes();
+        float[] axisScale = { 1, 1, 1, 1 };
+        List<String> games = new ArrayList<>();
+        long turboMask = 0;
+        long[] turboHalfPeriod = new long[64];
+        List<int[]> macros = new ArrayList<>();
+        List<String> macroNames = new ArrayList<>();
+        List<Long> chordMasks = new ArrayList<>();
+        List<String> chordTargets = new ArrayList<>();
+        List<Integer> chordLines = new ArrayList<>();
+        
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            
+            int eq = line.indexOf('=');
+            if (eq < 0) {
+                throw error(lineNumber, "expected '='");
+            }
+            String key = line.substring(0, eq).trim();
+            String value = line.substring(eq + 1).trim();
+            String[] keyParts = key.split("\\s+");
+            
+            if (key.equals("name")) {
+                if (value.isEmpty()) {
+                    throw error(lineNumber, "empty name");
+                }
+                name = value;
+            } else if (key.equals("games")) {
+                for (String game : value.split(",")) {
+                    if (!game.trim().isEmpty()) {
+                        games.add(game.trim());
+                    }
+                }
+            } else if (keyParts.length == 2 && keyParts[0].equals("button")) {
+                int scanCode = parseSource(keyParts[1], lineNumber);
+                buttons[scanCode - ButtonTable.SCAN_BASE] = parseTarget(value, lineNumber);
+            } else if (keyParts.length == 2 && keyParts[0].equals("axis")) {
+                int axis = parseAxis(keyParts[1], lineNumber);
+                boolean invert = value.startsWith("-");
+                axisSource[axis] = parseAxis(invert ? value.substring(1).trim() : value, lineNumber);
+                axisScale[axis] = invert ? -1 : 1;
+            } else if (keyParts.length == 2 && keyParts[0].equals("turbo")) {
+                long mask = parseButtonMask(keyParts[1], lineNumber);
+                if (Long.bitCount(mask) != 1) {
+                    throw error(lineNumber, "turbo takes one button");
+                }
+                int bit = Long.numberOfTrailingZeros(mask);
+                int hz = parseInt(value, lineNumber);
+                if (hz < 1 || hz > 100) {
+                    throw error(lineNumber, "turbo rate out of range 1..100 Hz: " + hz);
+                }
+                turboMask |= 1L << bit;
+                turboHalfPeriod[bit] = 500_000_000L / hz;
+            } else if (keyParts.length == 2 && keyParts[0].equals("macro")) {
+                if (macroNames.contains(keyParts[1])) {
+                    throw error(lineNumber, "duplicate macro '" + keyParts[1] + "'");
+                }
+                if (macros.size() == MacroProgram.MAX_MACROS) {
+                    throw error(lineNumber, "too many macros");
+                }
+                macroNames.add(keyParts[1]);
+                macros.add(parseMacro(value, lineNumber));
+            } else if (keyParts.length == 2 && keyParts[0].equals("chord")) {
+                long mask = parseButtonMask(keyParts[1], lineNumber);
+                if (Long.bitCount(mask) < 2) {
+                    throw error(lineNumber, "chord needs at least two buttons");
+                }
+                if (chordMasks.size() == MacroProgram.MAX_CHORDS) {
+                    throw error(lineNumber, "too many chords");
+                }
+                chordMasks.add(mask);
+                chordTargets.add(value);
+                chordLines.add(lineNumber);
+            } else {
+                throw error(lineNumber, "unknown key '" + key + "'");
+            }
+        }
+        
+        // Макрос аккорда может быть объявлен ниже аккорда
+        long[] chordMask = new long[chordMasks.size()];
+        int[] chordMacro = new int[chordMasks.size()];
+        for (int i = 0; i < chordMask.length; i++) {
+            chordMask[i] = chordMasks.get(i);
+            chordMacro[i] = macroNames.indexOf(chordTargets.get(i));
+            if (chordMacro[i] < 0) {
+                throw error(chordLines.get(i), "unknown macro '" + chordTargets.get(i) + "'");
+            }
+        }
+        MacroProgram program = turboMask == 0 && chordMask.length == 0 ? MacroProgram.EMPTY
+            : new MacroProgram(turboMask, turboHalfPeriod, macros.toArray(new int[0][]),
+                macroNames.toArray(new String[0]), chordMask, chordMacro);
+        
+        return new MappingProfile(name, buttons, axisSource, axisScale, games.toArray(new String[0]), program);
+    }
+    
+    // Шаги через запятую: "КНОПКА[+КНОПКА...] мс" - нажать, держать, отпустить;
+    // "мс" - пауза
+    private static int[] parseMacro(String value, int lineNumber) {
+        int[] steps = new int[MacroProgram.MAX_STEPS];
+        int count = 0;
+        for (String item : value.split(",")) {
+            String[] parts = item.trim().split("\\s+");
+            if (parts.length == 1 && !parts[0].isEmpty() && Character.isDigit(parts[0].charAt(0))) {
+                if (count == steps.length) {
+                    throw error(lineNumber, "macro too long");
+                }
+                steps[count++] = MacroProgram.pauseStep(parseDelay(parts[0], lineNumber));
+                continue;
+            }
+            if (parts.length != 2) {
+                throw error(lineNumber, "expected 'BUTTON ms' in macro step '" + item.trim() + "'");
+            }
+            long mask = parseButtonMask(parts[0], lineNumber);
+            int hold = parseDelay(parts[1], lineNumber);
+            if (count + 2 * Long.bitCount(mask) > steps.length) {
+                throw error(lineNumber, "macro too long");
+            }
+            // Все кнопки шага нажимаются и отпускаются в один момент, пауза - после последней
+            for (long bits = mask; bits != 0; bits &= bits - 1) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                steps[count++] = MacroProgram.pressStep(bit, (bits & (bits - 1)) == 0 ? hold : 0);
+            }
+            for (long bits = mask; bits != 0; bits &= bits - 1) {
+                steps[count++] = MacroProgram.releaseStep(Long.numberOfTrailingZeros(bits), 0);
+            }
+        }
+        if (count == 0) {
+            throw error(lineNumber, "empty macro");
+        }
+        return Arrays.copyOf(steps, count);
+    }
+    
+    // Выходные кнопки через '+', в маску MacroProgram
+    private static long parseButtonMask(String token, int lineNumber) {
+        long mask = 0;
+        for (String name : token.split("\\+")) {
+            int bit = MacroProgram.bit(parseTarget(name.trim(), lineNumber));
+            if (bit < 0) {
+                throw error(lineNumber, "button '" + name.trim() + "' cannot be used here");
+            }
+            mask |= 1L << bit;
+        }
+        return mask;
+    }
+    
+    private static int parseDelay(String token, int lineNumber) {
+        int delay = parseInt(token, lineNumber);
+        if (delay < 0 || delay > MacroProgram.MAX_DELAY_MS) {
+            throw error(lineNumber, "delay out of range: " + delay);
+        }
+        return delay;
+    }
+    
+    private static int parseInt(String token, int lineNumber) {
+        try {
+            return Integer.parseInt(token.trim());
+        } catch (NumberFormatException e) {
+            throw error(lineNumber, "expected a number, got '" + token + "'");
+        }
+    }
+    
+    // Источник - имя кнопки или скан-код числом
+    private static int parseSource(String token, int lineNumber) {
+        Integer named = BUTTONS.get(token.toUpperCase(Locale.US));
+        int scanCode;
+        if (named != null) {
+            scanCode = named;
+        } else {
+            try {
+                scanCode = Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw error(lineNumber, "unknown button '" + token + "'");
+            }
+        }
+        if (scanCode < ButtonTable.SCAN_BASE || scanCode >= ButtonTable.SCAN_LIMIT) {
+            throw error(lineNumber, "scan code out of range: " + scanCode);
+        }
+        return scanCode;
+    }
+    
+    private static int parseTarget(String token, int lineNumber) {
+        String upper = token.toUpperCase(Locale.US);
+        if (upper.equals("NONE")) {
+            return ButtonTable.UNMAPPED;
+        }
+        Integer button = BUTTONS.get(upper);
+        if (button == null) {
+            throw error(lineNumber, "unknown target button '" + token + "'");
+        }
+        return button;
+    }
+    
+    private static int parseAxis(String token, int lineNumber) {
+        Integer axis = AXES.get(token.toUpperCase(Locale.US));
+        if (axis == null) {
+            throw error(lineNumber, "unknown axis '" + token + "'");
+        }
+        return axis;
+    }
+    
+    private static IllegalArgumentException error(int lineNumber, String message) {
+        return new IllegalArgumentException("line " + lineNumber + ": " + message);
+    }
+}
\ No newline at end of file
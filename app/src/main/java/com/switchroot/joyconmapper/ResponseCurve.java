@@ -0,0 +1,117 @@
+package com.switchroot.joyconmapper;
+
+import java.util.Locale;
+
+// Кривая отклика стика, запечённая в целочисленную таблицу.
+// Таблица строится один раз вне пути событий (в double), а на сэмпл
+// приходится одно обращение к таблице и линейная интерполяция в int.
+// Кривая осевая: применяется к модулю каждой оси, знак сохраняется.
+final class ResponseCurve {
+    static final int AXIS_MAX = 32767;
+    
+    // Шаг таблицы - 128 единиц оси, 257 точек покрывают 0..32768
+    private static final int SHIFT = 7;
+    private static final int STEP = 1 << SHIFT;
+    private static final int SIZE = ((AXIS_MAX + 1) >> SHIFT) + 1;
+    
+    final String spec;
+    private final int[] table;
+    
+    private ResponseCurve(String spec, int[] table) {
+        this.spec = spec;
+        this.table = table;
+    }
+    
+    int apply(int value) {
+        int magnitude = value < 0 ? -value : value;
+        int out;
+        if (magnitude >= AXIS_MAX) {
+            out = table[SIZE - 1];
+        } else {
+            int index = magnitude >> SHIFT;
+            int low = table[index];
+            out = low + (((table[index + 1] - low) * (magnitude & (STEP - 1))) >> SHIFT);
+        }
+        return value < 0 ? -out : out;
+    }
+    
+    static ResponseCurve linear() {
+        return bake("linear", x -> x);
+    }
+    
+    // Классическое expo: y = (1 - e) * x + e * x^3. e = 0 - линейная,
+    // e = 1 - кубическая, точнее в центре и быстрее у края
+    static ResponseCurve exponential(double expo) {
+        double e = Math.max(0, Math.min(1, expo));
+        return bake(String.format(Locale.US, "expo:%.2f", e), x -> (1 - e) * x + e * x * x * x);
+    }
+    
+    // Ломаная по точкам (вход, выход) в 0..1, точки (0, 0) и (1, 1) добавляются сами
+    static ResponseCurve points(double[] in, double[] out) {
+        int count = in.length + 2;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        StringBuilder spec = new StringBuilder("points:");
+        xs[count - 1] = 1;
+        ys[count - 1] = 1;
+        for (int i = 0; i < in.length; i++) {
+            if (in[i] <= xs[i] || in[i] >= 1 || out[i] < 0 || out[i] > 1) {
+                throw new IllegalArgumentException("curve points must be increasing and inside 0..1");
+            }
+            xs[i + 1] = in[i];
+            ys[i + 1] = out[i];
+            spec.append(i == 0 ? "" : ",").append(String.format(Locale.US, "%.2f=%.2f", in[i], out[i]));
+        }
+        return bake(spec.toString(), x -> {
+            int segment = 1;
+            while (segment < count - 1 && x > xs[segment]) {
+                segment++;
+            }
+            double t = (x - xs[segment - 1]) / (xs[segment] - xs[segment - 1]);
+            return ys[segment - 1] + t * (ys[segment] - ys[segment - 1]);
+        });
+    }
+    
+    // Формат настройки stick_curve: linear | expo:0.5 | points:0.2=0.1,0.6=0.5
+    static ResponseCurve parse(String spec) {
+        if (spec == null || spec.isEmpty() || "linear".equals(spec)) {
+            return linear();
+        }
+        try {
+            if (spec.startsWith("expo:")) {
+                return exponential(Double.parseDouble(spec.substring(5)));
+            }
+            if (spec.startsWith("points:")) {
+                String[] pairs = spec.substring(7).split(",");
+                double[] in = new double[pairs.length];
+                double[] out = new double[pairs.length];
+                for (int i = 0; i < pairs.length; i++) {
+                    String[] pair = pairs[i].split("=");
+                    if (pair.length != 2) {
+                        throw new IllegalArgumentException("bad curve point: " + pairs[i]);
+                    }
+                    in[i] = Double.parseDouble(pair[0].trim());
+                    out[i] = Double.parseDouble(pair[1].trim());
+                }
+                return points(in, out);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad curve: " + spec, e);
+        }
+        throw new IllegalArgumentException("unknown curve: " + spec);
+    }
+    
+    private interface Shape {
+        double at(double x);
+    }
+    
+    private static ResponseCurve bake(String spec, Shape shape) {
+        int[] table = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            double x = Math.min(1.0, (double) (i << SHIFT) / AXIS_MAX);
+            double y = Math.max(0, Math.min(1, shape.at(x)));
+            table[i] = (int) Math.round(y * AXIS_MAX);
+        }
+        return new ResponseCurve(spec, table);
+    }
+}
\ No newline at end of file
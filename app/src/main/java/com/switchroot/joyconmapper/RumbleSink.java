@@ -0,0 +1,9 @@
+package com.switchroot.joyconmapper;
+
+// Приёмник вибрации от force feedback виртуального контроллера.
+// Вызывается из native потока FF не чаще ForceFeedback.DEFAULT_MIN_INTERVAL_MS,
+// промежуточные состояния уже схлопнуты.
+interface RumbleSink {
+    // strong/weak - 0..0xFFFF, оба 0 - остановить. durationMs = 0 - до следующего вызова
+    void rumble(int strong, int weak, int durationMs);
+}
\ No newline at end of file
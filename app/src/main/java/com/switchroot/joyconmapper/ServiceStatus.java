@@ -0,0 +1,103 @@
+package com.switchroot.joyconmapper;
+
+import java.util.Locale;
+
+// Неизменяемый снимок состояния сервиса для экрана приложения. Публикуется
+// через StatusChannel заменой ссылки; version растёт на каждую публикацию,
+// поэтому читатель отличает новый снимок одним сравнением.
+final class ServiceStatus {
+    // Состояние слота игрока - биты
+    static final int SLOT_LEFT = 1;
+    static final int SLOT_RIGHT = 2;
+    static final int SLOT_CONTROLLER = 4;
+    
+    static final ServiceStatus STOPPED = new ServiceStatus(0, false, "none", false,
+        new int[PlayerSlots.MAX_SLOTS], 0, 0, 0, 0, 0, new long[4]);
+    
+    // Порядок значений latency
+    private static final int KEY_P50 = 0;
+    private static final int KEY_P99 = 1;
+    private static final int MOTION_P50 = 2;
+    private static final int MOTION_P99 = 3;
+    
+    final long version;
+    final boolean running;
+    final String backend;
+    final boolean nativeEngine;
+    private final int[] slots;
+    
+    // Счётчики MapperStats и скорости за последний период опроса, событий/с
+    final long eventsIn;
+    final long eventsEmitted;
+    final long writeErrors;
+    final int inRate;
+    final int outRate;
+    private final long[] latency;
+    
+    private ServiceStatus(long version, boolean running, String backend, boolean nativeEngine, int[] slots,
+                          long eventsIn, long eventsEmitted, long writeErrors, int inRate, int outRate,
+                          long[] latency) {
+        this.version = version;
+        this.running = running;
+        this.backend = backend;
+        this.nativeEngine = nativeEngine;
+        this.slots = slots;
+        this.eventsIn = eventsIn;
+        this.eventsEmitted = eventsEmitted;
+        this.writeErrors = writeErrors;
+        this.inRate = inRate;
+        this.outRate = outRate;
+        this.latency = latency;
+    }
+    
+    // Новые устройства и backend, счётчики остаются прежними
+    ServiceStatus withDevices(long nextVersion, boolean nextRunning, String nextBackend, boolean nextNative,
+                              int[] nextSlots) {
+        return new ServiceStatus(nextVersion, nextRunning, nextBackend, nextNative, nextSlots.clone(),
+            eventsIn, eventsEmitted, writeErrors, inRate, outRate, latency);
+    }
+    
+    // Новые счётчики из одного снимка MapperStats, устройства остаются прежними
+    ServiceStatus withCounters(long nextVersion, MapperStats.Counters total, int nextInRate, int nextOutRate) {
+        long[] nextLatency = {
+            total.percentileMicros(MapperStats.TYPE_KEY, 50), total.percentileMicros(MapperStats.TYPE_KEY, 99),
+            total.percentileMicros(MapperStats.TYPE_MOTION, 50), total.percentileMicros(MapperStats.TYPE_MOTION, 99)
+        };
+        return new ServiceStatus(nextVersion, running, backend, nativeEngine, slots,
+            total.eventsIn, total.eventsEmitted, total.writeErrors, nextInRate, nextOutRate, nextLatency);
+    }
+    
+    int slot(int slot) {
+        return slots[slot];
+    }
+    
+    String formatDevices() {
+        StringBuilder out = new StringBuilder("Joy-Con Status:");
+        boolean any = false;
+        for (int slot = 0; slot < slots.length; slot++) {
+            int state = slots[slot];
+            if (state == 0) {
+                continue;
+            }
+            any = true;
+            out.append("\nPlayer ").append(slot + 1).append(": ")
+                .append((state & SLOT_LEFT) != 0 ? "✓ Left" : "✗ Left").append("  ")
+                .append((state & SLOT_RIGHT) != 0 ? "✓ Right" : "✗ Right")
+                .append((state & SLOT_CONTROLLER) != 0 ? "  → controller ready" : "");
+        }
+        if (!running) {
+            out.append("\nService is not running");
+        } else if (!any) {
+            out.append("\n⚠️ No Joy-Con connected. Pair them via Bluetooth");
+        }
+        return out.toString();
+    }
+    
+    String formatStats() {
+        return String.format(Locale.US,
+            "Backend: %s%s\nEvents: in=%d/s out=%d/s errors=%d\n"
+                + "Key latency (us): p50=%d p99=%d\nMotion latency (us): p50=%d p99=%d",
+            backend, nativeEngine ? " (native engine)" : "", inRate, outRate, writeErrors,
+            latency[KEY_P50], latency[KEY_P99], latency[MOTION_P50], latency[MOTION_P99]);
+    }
+}
\ No newline at end of file
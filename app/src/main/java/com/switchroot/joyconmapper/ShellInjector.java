@@ -0,0 +1,201 @@
+package com.switchroot.joyconmapper;
+
+import android.util.Log;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Запасной backend без uinput: одна долгоживущая shell сессия вместо
+// Runtime.exec() на каждое событие. Команды копятся в ограниченной очереди
+// и уходят пачкой за один write(), движения стиков схлопываются до последнего.
+//
+// Все методы, кроме счётчиков, вызываются только из потока вывода.
+final class ShellInjector {
+    private static final String TAG = "ShellInjector";
+    
+    static final int QUEUE_CAPACITY = 64;
+    
+    private final String[] shellCommand;
+    private String preamble;
+    
+    private Process suProcess;
+    private DataOutputStream suOutputStream;
+    
+    // Ограниченная очередь кодов кнопок (кольцо на массиве)
+    private final int[] queue = new int[QUEUE_CAPACITY];
+    private int queueHead = 0;
+    private int queueSize = 0;
+    
+    // Последнее состояние стиков, ещё не отправленное в shell
+    private boolean motionPending = false;
+    private float motionLeftX, motionLeftY, motionRightX, motionRightY;
+    
+    private final StringBuilder batch = new StringBuilder(1024);
+    
+    // Счётчики здоровья и пропускной способности
+    private volatile long commandsSent;
+    private volatile long flushes;
+    private volatile long motionCoalesced;
+    private volatile long dropped;
+    private volatile long errors;
+    private volatile long restarts;
+    
+    // shellCommand - например {"su"} на устройстве или {"sh"} на Linux хосте
+    ShellInjector(String... shellCommand) {
+        this.shellCommand = shellCommand;
+    }
+    
+    // Команды, которые выполняются при каждом запуске сессии.
+    // На хосте здесь можно определить функцию input() вместо настоящей команды
+    void setPreamble(String preamble) {
+        this.preamble = preamble;
+    }
+    
+    boolean start() {
+        if (isAlive()) {
+            return true;
+        }
+        try {
+            ProcessBuilder pb = new ProcessBuilder(shellCommand);
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")));
+            suProcess = pb.start();
+            suOutputStream = new DataOutputStream(suProcess.getOutputStream());
+            if (preamble != null) {
+                suOutputStream.write((preamble + "\n").getBytes(StandardCharsets.UTF_8));
+                suOutputStream.flush();
+            }
+            Log.d(TAG, "Shell session started: " + shellCommand[0]);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to start shell session", e);
+            errors++;
+            suProcess = null;
+            suOutputStream = null;
+            return false;
+        }
+    }
+    
+    // true, если сессия пережила timeoutMs: su без root завершается сразу
+    boolean awaitAlive(long timeoutMs) {
+        Process process = suProcess;
+        if (process == null) {
+            return false;
+        }
+        try {
+            return !process.waitFor(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return process.isAlive();
+        }
+    }
+    
+    String command() {
+        return shellCommand[0];
+    }
+    
+    boolean isAlive() {
+        return suProcess != null && suProcess.isAlive();
+    }
+    
+    // Возвращает 1, если команда принята, и -1, если очередь переполнена
+    int enqueueKey(int keyCode) {
+        if (queueSize == QUEUE_CAPACITY) {
+            dropped++;
+            return -1;
+        }
+        queue[(queueHead + queueSize) % QUEUE_CAPACITY] = keyCode;
+        queueSize++;
+        return 1;
+    }
+    
+    int enqueueMotion(float leftX, float leftY, float rightX, float rightY) {
+        if (motionPending) {
+            motionCoalesced++;
+        }
+        motionPending = true;
+        motionLeftX = leftX;
+        motionLeftY = leftY;
+        motionRightX = rightX;
+        motionRightY = rightY;
+        return 1;
+    }
+    
+    // Отправляет всё накопленное одним write(). Возвращает число команд
+    int flush() {
+        if (queueSize == 0 && !motionPending) {
+            return 0;
+        }
+        
+        batch.setLength(0);
+        int commands = 0;
+        while (queueSize > 0) {
+            batch.append("input keyevent ").append(queue[queueHead]).append('\n');
+            queueHead = (queueHead + 1) % QUEUE_CAPACITY;
+            queueSize--;
+            commands++;
+        }
+        if (motionPending) {
+            batch.append(String.format(Locale.US, "input joystick %f %f %f %f",
+                motionLeftX, motionLeftY, motionRightX, motionRightY)).append('\n');
+            motionPending = false;
+            commands++;
+        }
+        
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        if (!write(bytes)) {
+            // Сессия умерла: перезапускаем один раз и повторяем пачку
+            restarts++;
+            stop();
+            if (!start() || !write(bytes)) {
+                errors++;
+                return -1;
+            }
+        }
+        
+        commandsSent += commands;
+        flushes++;
+        return commands;
+    }
+    
+    void stop() {
+        if (suOutputStream != null) {
+            try {
+                suOutputStream.write("exit\n".getBytes(StandardCharsets.UTF_8));
+                suOutputStream.flush();
+                suOutputStream.close();
+            } catch (IOException e) {
+                // Сессия уже закрыта
+            }
+            suOutputStream = null;
+        }
+        if (suProcess != null) {
+            suProcess.destroy();
+            suProcess = null;
+        }
+    }
+    
+    void dump(PrintWriter writer) {
+        writer.println("Shell backend: alive=" + isAlive() + " commands=" + commandsSent
+            + " flushes=" + flushes + " coalesced=" + motionCoalesced + " dropped=" + dropped
+            + " errors=" + errors + " restarts=" + restarts);
+    }
+    
+    private boolean write(byte[] bytes) {
+        if (suOutputStream == null) {
+            return false;
+        }
+        try {
+            suOutputStream.write(bytes);
+            suOutputStream.flush();
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Shell session write failed", e);
+            return false;
+        }
+    }
+}
\ No newline at end of file
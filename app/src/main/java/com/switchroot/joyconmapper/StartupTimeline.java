@@ -0,0 +1,52 @@
+package com.switchroot.joyconmapper;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Отметки времени фаз запуска сервиса, от начала onCreate.
+// Каждая фаза отмечается один раз - первым вызовом mark().
+// Пишут главный поток и поток запуска, читает dump.
+final class StartupTimeline {
+    static final int PHASE_SERVICE_READY = 0;
+    static final int PHASE_LIBRARY_LOADED = 1;
+    static final int PHASE_JNI_WARM = 2;
+    static final int PHASE_DEVICE_CREATED = 3;
+    static final int PHASE_FIRST_JOYCON = 4;
+    static final int PHASE_CONTROLLER_READY = 5;
+    static final int PHASE_FIRST_EVENT = 6;
+    
+    private static final String[] NAMES = {
+        "serviceReady", "library", "jniWarm", "device", "firstJoyCon", "controllerReady", "firstEvent"
+    };
+    
+    private final long startNanos;
+    private final AtomicLongArray phases = new AtomicLongArray(NAMES.length);
+    private volatile String backend = "pending";
+    
+    StartupTimeline(long startNanos) {
+        this.startNanos = startNanos;
+    }
+    
+    void mark(int phase) {
+        phases.compareAndSet(phase, 0, Math.max(1, System.nanoTime() - startNanos));
+    }
+    
+    void setBackend(String name) {
+        backend = name;
+    }
+    
+    void dump(PrintWriter writer) {
+        StringBuilder line = new StringBuilder("Startup (ms): backend=").append(backend);
+        for (int phase = 0; phase < NAMES.length; phase++) {
+            long nanos = phases.get(phase);
+            line.append(' ').append(NAMES[phase]).append('=');
+            if (nanos == 0) {
+                line.append('-');
+            } else {
+                line.append(String.format(Locale.US, "%.1f", nanos / 1e6));
+            }
+        }
+        writer.println(line);
+    }
+}
\ No newline at end of file
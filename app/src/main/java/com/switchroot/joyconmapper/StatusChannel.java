@@ -0,0 +1,127 @@
+package com.switchroot.joyconmapper;
+
+import android.util.Log;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Канал состояния сервиса к MainActivity. Сервис и активность живут в одном
+// процессе, поэтому канал - общий объект, как MapperStats.
+//
+// Снимок ServiceStatus публикуется заменой ссылки (CAS), чтение - одно
+// volatile чтение без блокировок. Пишут двое: главный поток сервиса при
+// смене устройств и поток опроса счётчиков. Поток опроса работает, только
+// пока есть слушатели: без открытого экрана канал ничего не стоит, а путь
+// событий в любом случае только пишет свои volatile счётчики MapperStats.
+final class StatusChannel {
+    private static final String TAG = "StatusChannel";
+    private static final long SAMPLE_PERIOD_MS = 1000;
+    
+    interface Listener {
+        void onStatus(ServiceStatus status);
+    }
+    
+    private static final class Subscription {
+        final Listener listener;
+        final Executor executor;
+        
+        Subscription(Listener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+    
+    private static final StatusChannel INSTANCE = new StatusChannel();
+    
+    private final AtomicReference<ServiceStatus> status = new AtomicReference<>(ServiceStatus.STOPPED);
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    
+    // Только главный поток
+    private ScheduledExecutorService sampler;
+    
+    // Только поток опроса
+    private long lastIn;
+    private long lastEmitted;
+    private long lastSampleNanos;
+    
+    static StatusChannel get() {
+        return INSTANCE;
+    }
+    
+    ServiceStatus current() {
+        return status.get();
+    }
+    
+    // Главный поток. Слушатель сразу получает текущий снимок, дальше - каждый новый
+    void addListener(Listener listener, Executor executor) {
+        subscriptions.add(new Subscription(listener, executor));
+        ServiceStatus snapshot = status.get();
+        executor.execute(() -> listener.onStatus(snapshot));
+        if (sampler == null) {
+            sampler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "JoyConMapper-Status"));
+            sampler.scheduleWithFixedDelay(this::sample, 0, SAMPLE_PERIOD_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    // Главный поток
+    void removeListener(Listener listener) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.listener == listener) {
+                subscriptions.remove(subscription);
+            }
+        }
+        if (subscriptions.isEmpty() && sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+    }
+    
+    // Главный поток сервиса: слоты, контроллеры и backend изменились
+    void publishDevices(boolean running, String backend, boolean nativeEngine, int[] slots) {
+        ServiceStatus prev;
+        ServiceStatus next;
+        do {
+            prev = status.get();
+            next = prev.withDevices(prev.version + 1, running, backend, nativeEngine, slots);
+        } while (!status.compareAndSet(prev, next));
+        notifyListeners(next);
+    }
+    
+    private void sample() {
+        try {
+            // Один снимок на опрос: скорости и задержки из одного момента
+            MapperStats.Counters total = MapperStats.get().snapshot();
+            long now = System.nanoTime();
+            long in = total.eventsIn;
+            long emitted = total.eventsEmitted;
+            long elapsed = now - lastSampleNanos;
+            // Первый опрос после паузы без слушателей - только точка отсчёта
+            boolean fresh = lastSampleNanos == 0 || elapsed > 3 * SAMPLE_PERIOD_MS * 1_000_000L;
+            int inRate = fresh ? 0 : (int) ((in - lastIn) * 1_000_000_000L / elapsed);
+            int outRate = fresh ? 0 : (int) ((emitted - lastEmitted) * 1_000_000_000L / elapsed);
+            lastIn = in;
+            lastEmitted = emitted;
+            lastSampleNanos = now;
+            
+            ServiceStatus prev;
+            ServiceStatus next;
+            do {
+                prev = status.get();
+                next = prev.withCounters(prev.version + 1, total, inRate, outRate);
+            } while (!status.compareAndSet(prev, next));
+            notifyListeners(next);
+        } catch (RuntimeException e) {
+            // Исключение остановило бы периодическую задачу навсегда
+            Log.w(TAG, "Status sample failed", e);
+        }
+    }
+    
+    private void notifyListeners(ServiceStatus snapshot) {
+        for (Subscription subscription : subscriptions) {
+            subscription.executor.execute(() -> subscription.listener.onStatus(snapshot));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+package com.switchroot.joyconmapper;
+
+import java.util.Locale;
+
+// Калибровка одного стика Joy-Con: центр, ход в каждую сторону и радиальная
+// мёртвая зона, всё в единицах оси (-32767..32767). Неизменяема: новая
+// калибровка публикуется заменой ссылки, поток событий читает её без блокировок.
+// На сэмпл - вычитание центра, умножение на коэффициент Q16 и сравнение квадрата радиуса.
+final class StickCalibration {
+    static final int AXIS_MAX = ResponseCurve.AXIS_MAX;
+    
+    static final StickCalibration IDENTITY =
+        new StickCalibration(0, 0, AXIS_MAX, AXIS_MAX, AXIS_MAX, AXIS_MAX, 0);
+    
+    final int centerX;
+    final int centerY;
+    // Расстояние от центра до упора, которое станет полным отклонением
+    final int rangeXPos;
+    final int rangeXNeg;
+    final int rangeYPos;
+    final int rangeYNeg;
+    final int deadzone;
+    
+    // Коэффициенты растяжения хода в формате Q16
+    private final int gainXPos;
+    private final int gainXNeg;
+    private final int gainYPos;
+    private final int gainYNeg;
+    private final long deadzoneSquared;
+    
+    StickCalibration(int centerX, int centerY, int rangeXPos, int rangeXNeg,
+                     int rangeYPos, int rangeYNeg, int deadzone) {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.rangeXPos = clampRange(rangeXPos);
+        this.rangeXNeg = clampRange(rangeXNeg);
+        this.rangeYPos = clampRange(rangeYPos);
+        this.rangeYNeg = clampRange(rangeYNeg);
+        this.deadzone = Math.max(0, Math.min(AXIS_MAX, deadzone));
+        this.gainXPos = gain(this.rangeXPos);
+        this.gainXNeg = gain(this.rangeXNeg);
+        this.gainYPos = gain(this.rangeYPos);
+        this.gainYNeg = gain(this.rangeYNeg);
+        this.deadzoneSquared = (long) this.deadzone * this.deadzone;
+    }
+    
+    // Пишет откалиброванные x и y в out[offset] и out[offset + 1]
+    void apply(int x, int y, int[] out, int offset) {
+        int dx = scale(x - centerX, gainXPos, gainXNeg);
+        int dy = scale(y - centerY, gainYPos, gainYNeg);
+        if ((long) dx * dx + (long) dy * dy < deadzoneSquared) {
+            dx = 0;
+            dy = 0;
+        }
+        out[offset] = dx;
+        out[offset + 1] = dy;
+    }
+    
+    private static int scale(int delta, int gainPos, int gainNeg) {
+        long scaled = ((long) delta * (delta >= 0 ? gainPos : gainNeg)) >> 16;
+        if (scaled > AXIS_MAX) {
+            return AXIS_MAX;
+        }
+        if (scaled < -AXIS_MAX) {
+            return -AXIS_MAX;
+        }
+        return (int) scaled;
+    }
+    
+    private static int clampRange(int range) {
+        return Math.max(1, Math.min(AXIS_MAX, range));
+    }
+    
+    private static int gain(int range) {
+        return (int) (((long) AXIS_MAX << 16) / range);
+    }
+    
+    // Формат хранения: cx,cy,x+,x-,y+,y-,dz
+    String encode() {
+        return centerX + "," + centerY + "," + rangeXPos + "," + rangeXNeg + ","
+            + rangeYPos + "," + rangeYNeg + "," + deadzone;
+    }
+    
+    // null - строка повреждена, калибровка учится заново
+    static StickCalibration decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        String[] parts = encoded.split(",");
+        if (parts.length != 7) {
+            return null;
+        }
+        try {
+            int[] values = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                values[i] = Integer.parseInt(parts[i].trim());
+            }
+            return new StickCalibration(values[0], values[1], values[2], values[3],
+                values[4], values[5], values[6]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "center=%d,%d range=%d/%d,%d/%d deadzone=%d",
+            centerX, centerY, rangeXPos, rangeXNeg, rangeYPos, rangeYNeg, deadzone);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.switchroot.joyconmapper;
+
+// Состояние стиков перед VirtualXboxController: радиальная мёртвая зона
+// и отправка только тех осей, которые сдвинулись больше порога.
+// Значения по умолчанию совпадают с fuzz/flat из UI_ABS_SETUP в native коде.
+final class StickFilter {
+    static final int AXIS_LX = 0;
+    static final int AXIS_LY = 1;
+    static final int AXIS_RX = 2;
+    static final int AXIS_RY = 3;
+    static final int AXIS_COUNT = 4;
+    
+    static final int DEFAULT_THRESHOLD = 250;
+    static final int DEFAULT_DEADZONE = 1500;
+    
+    private static final int AXIS_MAX = 32767;
+    
+    private final int[] lastEmitted = new int[AXIS_COUNT];
+    private final int[] current = new int[AXIS_COUNT];
+    
+    private int threshold = DEFAULT_THRESHOLD;
+    private long deadzoneSquared = (long) DEFAULT_DEADZONE * DEFAULT_DEADZONE;
+    
+    void configure(int threshold, int deadzone) {
+        this.threshold = Math.max(0, threshold);
+        int dz = Math.max(0, deadzone);
+        this.deadzoneSquared = (long) dz * dz;
+    }
+    
+    // Принимает новые значения осей и возвращает битовую маску осей,
+    // которые нужно отправить. 0 - ничего не изменилось, SYN не нужен
+    int update(int lx, int ly, int rx, int ry) {
+        applyDeadzone(AXIS_LX, lx, ly);
+        applyDeadzone(AXIS_RX, rx, ry);
+        
+        int mask = 0;
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            if (shouldEmit(current[axis], lastEmitted[axis])) {
+                lastEmitted[axis] = current[axis];
+                mask |= 1 << axis;
+            }
+        }
+        return mask;
+    }
+    
+    int value(int axis) {
+        return lastEmitted[axis];
+    }
+    
+    // Сбрасывает состояние, например после пересоздания устройства
+    void reset() {
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            lastEmitted[axis] = 0;
+            current[axis] = 0;
+        }
+    }
+    
+    private void applyDeadzone(int firstAxis, int x, int y) {
+        long distanceSquared = (long) x * x + (long) y * y;
+        if (distanceSquared < deadzoneSquared) {
+            x = 0;
+            y = 0;
+        }
+        current[firstAxis] = x;
+        current[firstAxis + 1] = y;
+    }
+    
+    // Гистерезис: мелкие колебания глушатся порогом, но возврат в центр
+    // и упор в край отправляются всегда, чтобы покой и максимум были точными
+    private boolean shouldEmit(int value, int last) {
+        if (value == last) {
+            return false;
+        }
+        if (value == 0 || value >= AXIS_MAX || value <= -AXIS_MAX) {
+            return true;
+        }
+        return Math.abs(value - last) >= threshold;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,260 @@
+package com.switchroot.joyconmapper;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Расписание вывода стиков для OutputDispatcher.
+//
+// Android пачкует сэмплы Joy-Con в один MotionEvent и доставляет колбэки
+// неровно, поэтому вывод "по приходу колбэка" повторяет эти рывки.
+// Режимы:
+//   latest      - отправить последнее состояние, промежуточные схлопнуть (почтовый
+//                 ящик OutputDispatcher, этот класс не используется)
+//   passthrough - каждый сэмпл, включая исторические, отдельным кадром
+//   fixed       - кадр на каждом тике ровной сетки rateHz. Значение берётся на
+//                 момент тик - delay: интерполяция между двумя соседними сэмплами
+//                 или ближайший сэмпл, если более нового ещё нет
+//
+// Сэмплы идут через SPSC кольцо: пишет поток колбэков ввода, читает поток
+// вывода. Само кольцо и есть история для интерполяции: сэмпл снимается с
+// кольца, только когда его время стало не позже момента тика.
+//
+// Если поток вывода стоит (запись кнопки ждёт место в очереди uinput) и
+// кольцо полное, новые сэмплы заменяют друг друга в отдельном ящике
+// переполнения. Последний поданный сэмпл так не теряется: иначе возврат
+// стика в центр пропал бы, а Joy-Con в покое новых событий не шлёт.
+final class StickScheduler {
+    static final int MODE_LATEST = 0;
+    static final int MODE_PASSTHROUGH = 1;
+    static final int MODE_FIXED = 2;
+    
+    private static final String[] MODE_NAMES = { "latest", "passthrough", "fixed" };
+    
+    private static final int RING_SIZE = 64;
+    private static final int RING_MASK = RING_SIZE - 1;
+    private static final int MAX_DELAY_MICROS = 50_000;
+    
+    final int mode;
+    private final long periodNanos;
+    private final long delayNanos;
+    
+    private final long[] ringSticks = new long[RING_SIZE];
+    private final long[] ringTime = new long[RING_SIZE];
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    
+    // Поток вывода уснул до следующего сэмпла: производитель должен его разбудить
+    private volatile boolean idle = true;
+    // Ящик переполнения: сэмпл новее всех сэмплов кольца. Пишет производитель:
+    // сначала номер записи в overflowVersion, потом значения, и только потом
+    // публикует номер в overflowPending. Забирает тот, кто первым обнулит
+    // overflowPending; номер в overflowVersion, отличный от забранного, значит,
+    // что пока значения читались, производитель уже писал следующий сэмпл
+    private final AtomicLong overflowPending = new AtomicLong();
+    private volatile long overflowVersion;
+    private volatile long overflowSticks;
+    private volatile long overflowTime;
+    // Сэмплы, заменённые в ящике переполнения; пишет только производитель
+    private volatile long dropped;
+    
+    // Состояние потока вывода
+    private long nextTick;
+    private long heldSticks;
+    private long heldTime;
+    private boolean holding;
+    private long lastEmitted = -1;
+    
+    // Результат poll()
+    long sticks;
+    long sampleTime;
+    
+    StickScheduler(int mode, int rateHz, int delayMicros) {
+        this.mode = mode;
+        this.periodNanos = 1_000_000_000L / Math.max(1, rateHz);
+        // Задержка больше запаса кольца переполнила бы его при 200 Гц от двух Joy-Con
+        this.delayNanos = Math.max(0, Math.min(MAX_DELAY_MICROS, delayMicros)) * 1000L;
+    }
+    
+    static int parseMode(String name) {
+        for (int mode = 0; mode < MODE_NAMES.length; mode++) {
+            if (MODE_NAMES[mode].equals(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("unknown output mode: " + name);
+    }
+    
+    // Поток колбэков ввода. true - поток вывода спит и его нужно разбудить
+    boolean offer(long packedSticks, long sampleTimeNanos) {
+        long t = tail.get();
+        long free = RING_SIZE - (t - head.get());
+        if (free <= 0) {
+            long version = overflowVersion + 1;
+            overflowVersion = version;
+            overflowSticks = packedSticks;
+            overflowTime = sampleTimeNanos;
+            if (overflowPending.getAndSet(version) != 0) {
+                dropped++;
+            }
+            return true;
+        }
+        // Кольцо освободилось раньше, чем поток вывода забрал ящик: сэмпл из
+        // ящика старше нового и идёт в кольцо перед ним, если есть место
+        if (overflowPending.getAndSet(0) != 0) {
+            if (free > 1) {
+                put(t++, overflowSticks, overflowTime);
+            } else {
+                dropped++;
+            }
+        }
+        put(t, packedSticks, sampleTimeNanos);
+        // Полная запись: idle читается после публикации сэмпла, см. waitNanos()
+        tail.set(t + 1);
+        return mode == MODE_PASSTHROUGH || idle;
+    }
+    
+    private void put(long position, long packedSticks, long sampleTimeNanos) {
+        int index = (int) (position & RING_MASK);
+        ringSticks[index] = packedSticks;
+        ringTime[index] = sampleTimeNanos;
+    }
+    
+    // Поток вывода, кольцо пусто до позиции h. Сэмпл из ящика переполнения идёт
+    // без ожидания своего времени в сетке: после простоя вывод и так опоздал
+    private boolean takeOverflow(long h) {
+        long version = overflowPending.getAndSet(0);
+        if (version == 0) {
+            return false;
+        }
+        long takenSticks = overflowSticks;
+        long takenTime = overflowTime;
+        // Производитель успел начать следующую запись: пара могла смешаться.
+        // Этот сэмпл уже заменён, следующий придёт через overflowPending
+        if (overflowVersion != version) {
+            return false;
+        }
+        // После проверки пустоты производитель заполнил кольцо и снова ящик:
+        // сэмплы кольца старше, сэмпл возвращается в ящик и ждёт их
+        if (tail.get() != h) {
+            overflowPending.compareAndSet(0, version);
+            return false;
+        }
+        sticks = takenSticks;
+        sampleTime = takenTime;
+        return true;
+    }
+    
+    // Поток вывода. true - пора отправить кадр sticks с временем сэмпла sampleTime
+    boolean poll(long nowNanos) {
+        if (mode == MODE_PASSTHROUGH) {
+            return take();
+        }
+        
+        if (idle) {
+            if (tail.get() == head.get() && overflowPending.get() == 0) {
+                return false;
+            }
+            // Первый сэмпл после простоя: сетка начинается с него, без ожидания тика,
+            // а значение до простоя в интерполяцию уже не попадает
+            idle = false;
+            nextTick = nowNanos;
+            holding = false;
+        }
+        if (nowNanos < nextTick) {
+            return false;
+        }
+        // Отстали больше чем на тик (поток вывода не получил процессор) -
+        // сетку сдвигаем, а не догоняем пачкой кадров
+        nextTick = nowNanos - nextTick > periodNanos ? nowNanos + periodNanos : nextTick + periodNanos;
+        
+        long target = nowNanos - delayNanos;
+        long h = head.get();
+        long t = tail.get();
+        while (h < t && ringTime[(int) (h & RING_MASK)] <= target) {
+            int index = (int) (h & RING_MASK);
+            heldSticks = ringSticks[index];
+            heldTime = ringTime[index];
+            holding = true;
+            h++;
+        }
+        head.lazySet(h);
+        
+        if (h == tail.get() && takeOverflow(h)) {
+            heldSticks = sticks;
+            heldTime = sampleTime;
+            holding = true;
+        } else if (!holding) {
+            // Все сэмплы ещё в будущем относительно target: ждём
+            if (h == t) {
+                return false;
+            }
+            int index = (int) (h & RING_MASK);
+            sticks = ringSticks[index];
+            sampleTime = ringTime[index];
+        } else if (h < t) {
+            int index = (int) (h & RING_MASK);
+            sticks = interpolate(heldSticks, heldTime, ringSticks[index], ringTime[index], target);
+            sampleTime = target;
+        } else {
+            sticks = heldSticks;
+            sampleTime = heldTime;
+        }
+        if (sticks == lastEmitted) {
+            return false;
+        }
+        lastEmitted = sticks;
+        return true;
+    }
+    
+    private boolean take() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return takeOverflow(h);
+        }
+        int index = (int) (h & RING_MASK);
+        sticks = ringSticks[index];
+        sampleTime = ringTime[index];
+        head.lazySet(h + 1);
+        return true;
+    }
+    
+    // Поток вывода, когда отправлять нечего. Сколько можно спать, 0 - до unpark
+    long waitNanos(long nowNanos) {
+        if (mode == MODE_PASSTHROUGH) {
+            return 0;
+        }
+        long h = head.get();
+        if (h == tail.get() && overflowPending.get() == 0 && (!holding || heldSticks == lastEmitted)) {
+            // Последнее значение уже отправлено, новых сэмплов нет.
+            // Повторная проверка после idle: сэмпл мог прийти между ними
+            idle = true;
+            if (tail.get() != h || overflowPending.get() != 0) {
+                idle = false;
+                return 1;
+            }
+            return 0;
+        }
+        return Math.max(1, nextTick - nowNanos);
+    }
+    
+    private static long interpolate(long from, long fromTime, long to, long toTime, long target) {
+        long span = toTime - fromTime;
+        if (span <= 0) {
+            return to;
+        }
+        long offset = target - fromTime;
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 16) {
+            int a = (short) (from >>> shift);
+            int b = (short) (to >>> shift);
+            int value = (int) (a + (b - a) * offset / span);
+            result |= ((long) (value & 0xFFFF)) << shift;
+        }
+        return result;
+    }
+    
+    String describe() {
+        return String.format(Locale.US, "mode=%s rateHz=%d delayUs=%d dropped=%d",
+            MODE_NAMES[mode], 1_000_000_000L / periodNanos, delayNanos / 1000, dropped);
+    }
+}
\ No newline at end of file
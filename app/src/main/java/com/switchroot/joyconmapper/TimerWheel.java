@@ -0,0 +1,218 @@
+package com.switchroot.joyconmapper;
+
+// Хешированное колесо таймеров для потока вывода. Все таймеры лежат в
+// заранее выделенных массивах, schedule/cancel - O(1) и без выделения памяти.
+//
+// Корзина таймера - его тик (deadline / TICK_NANOS) по модулю числа корзин,
+// время срабатывания хранится точным: тик только выбирает корзину, а
+// срабатывает таймер, когда deadline <= now. Время передаётся снаружи,
+// поэтому колесо одинаково работает от System.nanoTime() и от тестовых часов.
+// Таймер дальше одного оборота остаётся в корзине, пока не наступит его время.
+//
+// Только один поток (поток вывода своего слота).
+final class TimerWheel {
+    static final int NONE = -1;
+    
+    // Тик 250 мкс, оборот 512 тиков (128 мс)
+    static final long TICK_NANOS = 250_000L;
+    private static final int SLOTS = 512;
+    private static final int SLOT_MASK = SLOTS - 1;
+    
+    private static final byte FREE = 0;
+    private static final byte ARMED = 1;
+    private static final byte FIRING = 2;
+    private static final byte CANCELLED = 3;
+    
+    interface Expiry {
+        // Таймер уже освобождён: внутри можно ставить новые и отменять другие
+        void expire(int payload, long deadlineNanos, long nowNanos);
+    }
+    
+    private final long[] deadline;
+    private final int[] payload;
+    private final int[] next;
+    private final int[] prev;
+    private final byte[] state;
+    private final int[] slotOf;
+    private final int[] slotHead = new int[SLOTS];
+    
+    private int freeHead;
+    private int size;
+    // Тик последнего advance: корзины до него уже обойдены. Не больше текущего
+    // времени, поэтому таймер в прошлом, положенный в его корзину, не потеряется
+    private long cursor;
+    
+    TimerWheel(int capacity) {
+        deadline = new long[capacity];
+        payload = new int[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        state = new byte[capacity];
+        slotOf = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NONE;
+        }
+        freeHead = capacity > 0 ? 0 : NONE;
+        for (int i = 0; i < SLOTS; i++) {
+            slotHead[i] = NONE;
+        }
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    // Возвращает номер таймера или NONE, если свободных нет
+    int schedule(long deadlineNanos, int payloadValue) {
+        int id = freeHead;
+        if (id == NONE) {
+            return NONE;
+        }
+        freeHead = next[id];
+        long tick = tickOf(deadlineNanos);
+        // Уже наступивший таймер ложится в текущую корзину и сработает при следующем advance
+        if (tick < cursor) {
+            tick = cursor;
+        }
+        deadline[id] = deadlineNanos;
+        payload[id] = payloadValue;
+        state[id] = ARMED;
+        slotOf[id] = (int) (tick & SLOT_MASK);
+        link(id, slotOf[id]);
+        size++;
+        return id;
+    }
+    
+    void cancel(int id) {
+        if (id == NONE) {
+            return;
+        }
+        if (state[id] == ARMED) {
+            unlink(id, slotOf[id]);
+            release(id);
+        } else if (state[id] == FIRING) {
+            state[id] = CANCELLED;
+        }
+    }
+    
+    // Снимает все таймеры без срабатывания
+    void clear() {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int id = slotHead[slot];
+            while (id != NONE) {
+                int following = next[id];
+                release(id);
+                id = following;
+            }
+            slotHead[slot] = NONE;
+        }
+        size = 0;
+    }
+    
+    // Срабатывают все таймеры с deadline <= now, примерно в порядке времени.
+    // Возвращает число сработавших
+    int advance(long nowNanos, Expiry expiry) {
+        long nowTick = tickOf(nowNanos);
+        if (size == 0) {
+            cursor = Math.max(cursor, nowTick);
+            return 0;
+        }
+        
+        // Наступившие таймеры сначала снимаются с корзин в отдельный список:
+        // колбэк может ставить и отменять таймеры, пока корзины обходятся
+        int dueHead = NONE;
+        int dueTail = NONE;
+        long last = Math.min(nowTick, cursor + SLOT_MASK);
+        for (long tick = cursor; tick <= last; tick++) {
+            int slot = (int) (tick & SLOT_MASK);
+            int id = slotHead[slot];
+            while (id != NONE) {
+                int following = next[id];
+                if (deadline[id] <= nowNanos) {
+                    unlink(id, slot);
+                    state[id] = FIRING;
+                    next[id] = NONE;
+                    if (dueTail == NONE) {
+                        dueHead = id;
+                    } else {
+                        next[dueTail] = id;
+                    }
+                    dueTail = id;
+                }
+                id = following;
+            }
+        }
+        if (nowTick > cursor) {
+            cursor = nowTick;
+        }
+        
+        int fired = 0;
+        int id = dueHead;
+        while (id != NONE) {
+            int following = next[id];
+            boolean cancelled = state[id] == CANCELLED;
+            long due = deadline[id];
+            int value = payload[id];
+            release(id);
+            if (!cancelled) {
+                expiry.expire(value, due, nowNanos);
+                fired++;
+            }
+            id = following;
+        }
+        return fired;
+    }
+    
+    // Ближайшее время срабатывания; Long.MAX_VALUE - таймеров нет.
+    // Если ближайший таймер дальше оборота, возвращает конец оборота: поток
+    // проснётся раньше, ничего не сработает, и время пересчитается
+    long nextDeadline() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        for (long tick = cursor; tick < cursor + SLOTS; tick++) {
+            long earliest = Long.MAX_VALUE;
+            for (int id = slotHead[(int) (tick & SLOT_MASK)]; id != NONE; id = next[id]) {
+                if (tickOf(deadline[id]) <= tick && deadline[id] < earliest) {
+                    earliest = deadline[id];
+                }
+            }
+            if (earliest != Long.MAX_VALUE) {
+                return earliest;
+            }
+        }
+        return (cursor + SLOTS) * TICK_NANOS;
+    }
+    
+    private static long tickOf(long nanos) {
+        return nanos / TICK_NANOS;
+    }
+    
+    private void link(int id, int slot) {
+        int head = slotHead[slot];
+        next[id] = head;
+        prev[id] = NONE;
+        if (head != NONE) {
+            prev[head] = id;
+        }
+        slotHead[slot] = id;
+    }
+    
+    private void unlink(int id, int slot) {
+        if (prev[id] != NONE) {
+            next[prev[id]] = next[id];
+        } else {
+            slotHead[slot] = next[id];
+        }
+        if (next[id] != NONE) {
+            prev[next[id]] = prev[id];
+        }
+        size--;
+    }
+    
+    private void release(int id) {
+        state[id] = FREE;
+        next[id] = freeHead;
+        freeHead = id;
+    }
+}
\ No newline at end of file
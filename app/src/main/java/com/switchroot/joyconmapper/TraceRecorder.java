@@ -0,0 +1,135 @@
+package com.switchroot.joyconmapper;
+
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Запись входящих событий в компактный бинарный лог для воспроизведения
+// зависаний и регрессионных прогонов (см. TraceReplayer).
+//
+// Формат (little-endian): заголовок 16 байт - magic, version, число записей;
+// дальше записи фиксированной ширины по 16 байт:
+//   long  время события (шкала System.nanoTime())
+//   byte  роль устройства (DeviceRegistry.ROLE_*)
+//   byte  вид записи (KIND_*)
+//   short код: скан-код кнопки или ось
+//   int   значение: keyCode << 8 | action, либо биты float для осей
+//
+// Файл заранее отображается в память целиком, запись события - несколько
+// put в MappedByteBuffer без системных вызовов и выделения памяти.
+// Вызывается только из потока колбэков ввода.
+final class TraceRecorder {
+    private static final String TAG = "TraceRecorder";
+    
+    static final int MAGIC = 0x544D434A; // "JCMT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 16;
+    
+    // 256K записей (4 МБ) - около 10 минут активной игры на двух Joy-Con
+    static final int DEFAULT_CAPACITY = 1 << 18;
+    
+    static final int KIND_KEY = 0;
+    // Стик пишется двумя записями подряд: X, затем Y
+    static final int KIND_STICK_X = 1;
+    static final int KIND_STICK_Y = 2;
+    
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final int capacity;
+    private MappedByteBuffer buffer;
+    private int count;
+    
+    private volatile long dropped;
+    
+    private TraceRecorder(File file, RandomAccessFile raf, int capacity) throws IOException {
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.capacity = capacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+            HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, 0);
+    }
+    
+    static TraceRecorder open(File file, int capacity) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            return new TraceRecorder(file, raf, capacity);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+    
+    void recordKey(int role, int scanCode, int keyCode, int action, long eventTimeNanos) {
+        if (buffer == null || count >= capacity) {
+            dropped++;
+            return;
+        }
+        put(eventTimeNanos, role, KIND_KEY, scanCode, (keyCode << 8) | (action & 0xFF));
+        commit();
+    }
+    
+    void recordStick(int role, float x, float y, long eventTimeNanos) {
+        if (buffer == null || count + 2 > capacity) {
+            dropped++;
+            return;
+        }
+        put(eventTimeNanos, role, KIND_STICK_X, 0, Float.floatToRawIntBits(x));
+        put(eventTimeNanos, role, KIND_STICK_Y, 1, Float.floatToRawIntBits(y));
+        commit();
+    }
+    
+    private void put(long eventTimeNanos, int role, int kind, int code, int value) {
+        int offset = HEADER_SIZE + (count++) * RECORD_SIZE;
+        buffer.putLong(offset, eventTimeNanos);
+        buffer.put(offset + 8, (byte) role);
+        buffer.put(offset + 9, (byte) kind);
+        buffer.putShort(offset + 10, (short) code);
+        buffer.putInt(offset + 12, value);
+    }
+    
+    // Число записей в заголовке обновляется после самих записей, поэтому
+    // даже после падения процесса файл остаётся читаемым
+    private void commit() {
+        buffer.putLong(8, count);
+    }
+    
+    int count() {
+        return count;
+    }
+    
+    long dropped() {
+        return dropped;
+    }
+    
+    File file() {
+        return file;
+    }
+    
+    // Сбрасывает данные на диск и обрезает файл до реально записанных событий
+    void close() {
+        if (buffer == null) {
+            return;
+        }
+        buffer.force();
+        buffer = null;
+        try {
+            channel.truncate(HEADER_SIZE + (long) count * RECORD_SIZE);
+            raf.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to finalize trace " + file, e);
+        }
+        Log.d(TAG, "Trace closed: " + file + " records=" + count + " dropped=" + dropped);
+    }
+}
\ No newline at end of file
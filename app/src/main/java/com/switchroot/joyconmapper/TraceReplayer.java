@@ -0,0 +1,114 @@
+package com.switchroot.joyconmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+// Детерминированное воспроизведение лога TraceRecorder через InputMapper.
+// События подаются в исходном порядке и с исходными значениями; время
+// события заменяется моментом подачи, чтобы гистограммы задержек в
+// MapperStats мерили сам конвейер.
+//
+// realTime = true сохраняет исходные интервалы между событиями,
+// false - подаёт события так быстро, как принимает конвейер.
+final class TraceReplayer {
+    // Последние ~200 мкс ожидания крутимся, а не паркуемся: parkNanos
+    // просыпается с опозданием в десятки микросекунд
+    private static final long SPIN_NANOS = 200_000;
+    
+    private final MappedByteBuffer buffer;
+    private final int count;
+    
+    private TraceReplayer(MappedByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+    }
+    
+    static TraceReplayer open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.limit() < TraceRecorder.HEADER_SIZE
+                    || buffer.getInt(0) != TraceRecorder.MAGIC
+                    || buffer.getInt(4) != TraceRecorder.VERSION) {
+                throw new IOException("Not a JoyConMapper trace: " + file);
+            }
+            // Файл мог остаться необрезанным после падения - верим заголовку,
+            // но не дальше фактического размера
+            long available = (buffer.limit() - TraceRecorder.HEADER_SIZE) / TraceRecorder.RECORD_SIZE;
+            int count = (int) Math.min(buffer.getLong(8), available);
+            return new TraceReplayer(buffer, count);
+        }
+    }
+    
+    int count() {
+        return count;
+    }
+    
+    long durationNanos() {
+        if (count == 0) {
+            return 0;
+        }
+        return timeOf(count - 1) - timeOf(0);
+    }
+    
+    // Возвращает число событий, принятых маппером
+    int replay(InputMapper mapper, boolean realTime) {
+        if (count == 0) {
+            return 0;
+        }
+        long traceStart = timeOf(0);
+        long replayStart = System.nanoTime();
+        int handled = 0;
+        float stickX = 0;
+        
+        for (int i = 0; i < count; i++) {
+            int offset = TraceRecorder.HEADER_SIZE + i * TraceRecorder.RECORD_SIZE;
+            long now = realTime
+                ? waitUntil(replayStart + (buffer.getLong(offset) - traceStart))
+                : System.nanoTime();
+            int role = buffer.get(offset + 8);
+            int kind = buffer.get(offset + 9);
+            int code = buffer.getShort(offset + 10);
+            int value = buffer.getInt(offset + 12);
+            
+            if (kind == TraceRecorder.KIND_KEY) {
+                if (mapper.onKey(code, value >>> 8, value & 0xFF, now)) {
+                    handled++;
+                }
+            } else if (kind == TraceRecorder.KIND_STICK_X) {
+                stickX = Float.intBitsToFloat(value);
+            } else if (kind == TraceRecorder.KIND_STICK_Y) {
+                float stickY = Float.intBitsToFloat(value);
+                // Маппер берёт X/Y для левого Joy-Con и RX/RY для правого
+                if (mapper.onJoystick(role, stickX, stickY, stickX, stickY, now)) {
+                    handled++;
+                }
+            }
+        }
+        return handled;
+    }
+    
+    private long timeOf(int index) {
+        return buffer.getLong(TraceRecorder.HEADER_SIZE + index * TraceRecorder.RECORD_SIZE);
+    }
+    
+    private static long waitUntil(long deadline) {
+        long now = System.nanoTime();
+        while (now < deadline) {
+            long remaining = deadline - now;
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+            now = System.nanoTime();
+        }
+        return now;
+    }
+}
\ No newline at end of file
@@ -1,193 +1,341 @@
-package com.switchroot.joyconmapper;
-
-import android.content.Context;
-import android.os.Build;
-import android.util.Log;
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
-public class VirtualXboxController {
-    private static final String TAG = "VirtualXbox";
-    private Context context;
-    private boolean isCreated = false;
-    private Process suProcess;
-    private DataOutputStream suOutputStream;
-    
-    // Native library для работы с uinput
-    static {
-        try {
-            System.loadLibrary("joyconmapper");
-        } catch (UnsatisfiedLinkError e) {
-            Log.e(TAG, "Failed to load native library", e);
-        }
-    }
-    
-    // Native методы
-    private native int nativeCreateDevice();
-    private native void nativeDestroyDevice(int fd);
-    private native void nativeSendButton(int fd, int button, int value);
-    private native void nativeSendAxis(int fd, int axis, int value);
-    private native void nativeSendSync(int fd);
-    
-    private int deviceFd = -1;
-    
-    public VirtualXboxController(Context context) {
-        this.context = context;
-    }
-    
-    public void create() {
-        if (isCreated) {
-            return;
-        }
-        
-        try {
-            // Пытаемся создать устройство через native код
-            deviceFd = nativeCreateDevice();
-            if (deviceFd >= 0) {
-                isCreated = true;
-                Log.d(TAG, "Virtual Xbox controller created via native");
-                return;
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Native method failed, trying shell approach", e);
-        }
-        
-        // Альтернативный подход через shell команды (требует root)
-        createViaShell();
-    }
-    
-    private void createViaShell() {
-        try {
-            // Создаем скрипт для создания виртуального устройства
-            String script = "#!/system/bin/sh\n" +
-                "# Create virtual Xbox controller\n" +
-                "if [ ! -e /dev/uinput ]; then\n" +
-                "  mknod /dev/uinput c 10 223\n" +
-                "fi\n" +
-                "chmod 666 /dev/uinput\n" +
-                "# Signal that device is ready\n" +
-                "echo 'Virtual controller ready'\n";
-            
-            // Сохраняем скрипт
-            File scriptFile = new File(context.getCacheDir(), "create_controller.sh");
-            FileOutputStream fos = new FileOutputStream(scriptFile);
-            fos.write(script.getBytes());
-            fos.close();
-            scriptFile.setExecutable(true);
-            
-            // Выполняем скрипт
-            ProcessBuilder pb = new ProcessBuilder("sh", scriptFile.getAbsolutePath());
-            Process process = pb.start();
-            process.waitFor();
-            
-            isCreated = true;
-            Log.d(TAG, "Virtual controller setup completed");
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to create virtual controller", e);
-            
-            // Пытаемся без root через системные API
-            createViaSystemApi();
-        }
-    }
-    
-    private void createViaSystemApi() {
-        // Используем рефлексию для доступа к скрытым API Android
-        try {
-            Class<?> inputManagerClass = Class.forName("android.hardware.input.InputManager");
-            // Здесь можно попытаться использовать скрытые методы InputManager
-            // для инъекции событий без root
-            
-            Log.d(TAG, "Attempting to use system API for input injection");
-            isCreated = true;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "System API approach failed", e);
-        }
-    }
-    
-    public void sendButtonPress(int button) {
-        if (!isCreated) return;
-        
-        if (deviceFd >= 0) {
-            nativeSendButton(deviceFd, button, 1);
-            nativeSendSync(deviceFd);
-        } else {
-            // Альтернативный метод через input команду
-            sendInputCommand("keyevent", button, "down");
-        }
-    }
-    
-    public void sendButtonRelease(int button) {
-        if (!isCreated) return;
-        
-        if (deviceFd >= 0) {
-            nativeSendButton(deviceFd, button, 0);
-            nativeSendSync(deviceFd);
-        } else {
-            sendInputCommand("keyevent", button, "up");
-        }
-    }
-    
-    public void sendAxisData(float leftX, float leftY, float rightX, float rightY) {
-        if (!isCreated) return;
-        
-        if (deviceFd >= 0) {
-            // Конвертируем float в int значения для uinput
-            int lx = (int) (leftX * 32767);
-            int ly = (int) (leftY * 32767);
-            int rx = (int) (rightX * 32767);
-            int ry = (int) (rightY * 32767);
-            
-            nativeSendAxis(deviceFd, 0, lx);  // ABS_X
-            nativeSendAxis(deviceFd, 1, ly);  // ABS_Y
-            nativeSendAxis(deviceFd, 3, rx);  // ABS_RX
-            nativeSendAxis(deviceFd, 4, ry);  // ABS_RY
-            nativeSendSync(deviceFd);
-        } else {
-            // Используем альтернативный метод
-            sendMotionViaShell(leftX, leftY, rightX, rightY);
-        }
-    }
-    
-    private void sendInputCommand(String type, int code, String action) {
-        try {
-            String command = String.format("input %s %d", type, code);
-            Runtime.getRuntime().exec(new String[]{"sh", "-c", command});
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to send input command", e);
-        }
-    }
-    
-    private void sendMotionViaShell(float leftX, float leftY, float rightX, float rightY) {
-        // Эмуляция через sendevent или input команды
-        try {
-            // Конвертируем координаты в события
-            String cmd = String.format("input joystick %f %f %f %f", leftX, leftY, rightX, rightY);
-            Runtime.getRuntime().exec(new String[]{"sh", "-c", cmd});
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to send motion", e);
-        }
-    }
-    
-    public boolean isCreated() {
-        return isCreated;
-    }
-    
-    public void destroy() {
-        if (deviceFd >= 0) {
-            nativeDestroyDevice(deviceFd);
-            deviceFd = -1;
-        }
-        
-        if (suProcess != null) {
-            suProcess.destroy();
-            suProcess = null;
-        }
-        
-        isCreated = false;
-        Log.d(TAG, "Virtual controller destroyed");
-    }
+package com.switchroot.joyconmapper;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+public class VirtualXboxController {
+    private static final String TAG = "VirtualXbox";
+    private Context context;
+    private volatile boolean isCreated = false;
+    
+    // Запасной путь без uinput: постоянная shell сессия с командами input
+    private ShellInjector shellInjector;
+    
+    // Native методы
+    private native int nativeCreateDevice(int[] buttonTable, int slot);
+    private native void nativeDestroyDevice(int fd);
+    private native int nativeSendFrame(int fd, int[] frame, int count);
+    private native int nativeFlushOutput(int fd);
+    private native void nativeOutputStats(int fd, long[] out);
+    
+    // Сколько ждать скрипт подготовки и решения su при запасном shell пути
+    private static final long SHELL_SCRIPT_TIMEOUT_MS = 2000;
+    private static final long SHELL_PROBE_TIMEOUT_MS = 300;
+    
+    // Размер кадра должен совпадать с JCM_MAX_FRAME_EVENTS в uinput_frame.h
+    private static final int FRAME_CAPACITY = 32;
+    private static final int FRAME_STRIDE = 3;
+    
+    private volatile int deviceFd = -1;
+    private final ButtonTable buttonTable;
+    // Номер игрока (PlayerSlots), отличает uinput устройства друг от друга
+    private final int slot;
+    private final StickFilter stickFilter = new StickFilter();
+    
+    // Ответы на запросы вибрации от игр, работает только поверх uinput
+    private final ForceFeedback forceFeedback = new ForceFeedback();
+    
+    // Куда уходят кадры: по умолчанию native запись в uinput
+    private FrameSink frameSink = this::nativeSendFrame;
+    // Кадры идут через native очередь вывода (uinput_frame.cpp), а не в FrameSink хоста
+    private volatile boolean nativeOutput;
+    
+    // Кадр событий: тройки (type, code, value), переиспользуется между вызовами.
+    // Native код сам добавляет SYN_REPORT и отправляет кадр одним write()
+    private final int[] frame = new int[FRAME_CAPACITY * FRAME_STRIDE];
+    private int frameSize = 0;
+    
+    public VirtualXboxController(Context context, ButtonTable buttonTable) {
+        this(context, buttonTable, 0);
+    }
+    
+    public VirtualXboxController(Context context, ButtonTable buttonTable, int slot) {
+        this.context = context;
+        this.buttonTable = buttonTable;
+        this.slot = slot;
+    }
+    
+    // Native library загружается здесь, а не в static блоке: объект создаётся
+    // на главном потоке, а create() сервис вызывает из потока запуска
+    public synchronized void create() {
+        if (isCreated) {
+            return;
+        }
+        
+        try {
+            if (!NativeLibrary.load()) {
+                throw new UnsatisfiedLinkError("libjoyconmapper not loaded");
+            }
+            // Пытаемся создать устройство через native код
+            // Таблица кнопок передаётся один раз: по ней native код включает нужные KEYBIT
+            deviceFd = nativeCreateDevice(buttonTable.toArray(), slot);
+            if (deviceFd >= 0) {
+                nativeOutput = true;
+                stickFilter.reset();
+                if (!forceFeedback.start(deviceFd, ForceFeedback.DEFAULT_MIN_INTERVAL_MS)) {
+                    Log.w(TAG, "Force feedback servicing unavailable");
+                }
+                isCreated = true;
+                Log.d(TAG, "Virtual Xbox controller created via native");
+                return;
+            }
+        } catch (Exception | UnsatisfiedLinkError e) {
+            Log.e(TAG, "Native method failed, trying shell approach", e);
+        }
+        
+        // Альтернативный подход через shell команды (требует root)
+        createViaShell();
+    }
+    
+    // Первый вызов native метода связывает JNI символ; делаем его заранее на
+    // потоке запуска, чтобы первое нажатие не платило за поиск символа.
+    // fd = -1: native код сразу возвращает -EBADF, ничего не записывая
+    boolean warmUp() {
+        if (!NativeLibrary.load()) {
+            return false;
+        }
+        try {
+            nativeSendFrame(-1, frame, 0);
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            Log.e(TAG, "JNI warm-up failed", e);
+            return false;
+        }
+    }
+    
+    // Создание поверх произвольного получателя кадров, без native кода и uinput.
+    // Используется в бенчмарках и при прогоне на Linux хосте
+    void createWithSink(FrameSink sink, int fd) {
+        frameSink = sink;
+        nativeOutput = false;
+        deviceFd = fd;
+        stickFilter.reset();
+        isCreated = true;
+    }
+    
+    private void createViaShell() {
+        try {
+            // Создаем скрипт для создания виртуального устройства
+            String script = "#!/system/bin/sh\n" +
+                "# Create virtual Xbox controller\n" +
+                "if [ ! -e /dev/uinput ]; then\n" +
+                "  mknod /dev/uinput c 10 223\n" +
+                "fi\n" +
+                "chmod 666 /dev/uinput\n" +
+                "# Signal that device is ready\n" +
+                "echo 'Virtual controller ready'\n";
+            
+            // Сохраняем скрипт
+            File scriptFile = new File(context.getCacheDir(), "create_controller.sh");
+            FileOutputStream fos = new FileOutputStream(scriptFile);
+            fos.write(script.getBytes());
+            fos.close();
+            scriptFile.setExecutable(true);
+            
+            // Выполняем скрипт
+            ProcessBuilder pb = new ProcessBuilder("sh", scriptFile.getAbsolutePath());
+            Process process = pb.start();
+            if (!process.waitFor(SHELL_SCRIPT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Controller setup script timed out");
+                process.destroy();
+            }
+            
+            startShellBackend();
+            isCreated = true;
+            Log.d(TAG, "Virtual controller setup completed");
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to create virtual controller", e);
+            
+            // Пытаемся без root через системные API
+            createViaSystemApi();
+        }
+    }
+    
+    private void createViaSystemApi() {
+        // Используем рефлексию для доступа к скрытым API Android
+        try {
+            Class<?> inputManagerClass = Class.forName("android.hardware.input.InputManager");
+            // Здесь можно попытаться использовать скрытые методы InputManager
+            // для инъекции событий без root
+            
+            Log.d(TAG, "Attempting to use system API for input injection");
+            startShellBackend();
+            isCreated = true;
+            
+        } catch (Exception e) {
+            Log.e(TAG, "System API approach failed", e);
+        }
+    }
+    
+    // Предпочитаем root сессию, без root команда input доступна не везде.
+    // su и sh запускаются одновременно: если su не завершился за время пробы
+    // (root не отклонён), остаёмся на нём, иначе берём уже готовый sh
+    private void startShellBackend() {
+        ShellInjector root = new ShellInjector("su");
+        ShellInjector plain = new ShellInjector("sh");
+        boolean rootStarted = root.start();
+        plain.start();
+        if (rootStarted && root.awaitAlive(SHELL_PROBE_TIMEOUT_MS)) {
+            plain.stop();
+            shellInjector = root;
+        } else {
+            root.stop();
+            shellInjector = plain;
+        }
+    }
+    
+    // button - Linux BTN_* код, keyCode - Android код для запасного shell пути.
+    // Методы отправки возвращают число отправленных событий, 0 если отправлять
+    // нечего, и отрицательное значение при ошибке записи
+    public int sendButtonPress(int button, int keyCode) {
+        if (!isCreated) return 0;
+        
+        if (deviceFd >= 0) {
+            putEvent(LinuxInput.EV_KEY, button, 1);
+            return flushFrame();
+        } else {
+            // Альтернативный метод через input команду
+            return shellInjector.enqueueKey(keyCode);
+        }
+    }
+    
+    public int sendButtonRelease(int button, int keyCode) {
+        if (!isCreated) return 0;
+        
+        if (deviceFd >= 0) {
+            putEvent(LinuxInput.EV_KEY, button, 0);
+            return flushFrame();
+        } else {
+            // input keyevent отправляет нажатие и отпускание сразу, на отпускание ничего не шлём
+            return 0;
+        }
+    }
+    
+    // Значения осей уже в единицах uinput (-32767..32767)
+    public int sendAxisValues(int lx, int ly, int rx, int ry) {
+        if (!isCreated) return 0;
+        
+        // Отправляем только сдвинувшиеся оси; если стики в покое - ничего не пишем
+        int changed = stickFilter.update(lx, ly, rx, ry);
+        if (changed == 0) return 0;
+        
+        if (deviceFd >= 0) {
+            putAxisIfChanged(changed, StickFilter.AXIS_LX, LinuxInput.ABS_X);
+            putAxisIfChanged(changed, StickFilter.AXIS_LY, LinuxInput.ABS_Y);
+            putAxisIfChanged(changed, StickFilter.AXIS_RX, LinuxInput.ABS_RX);
+            putAxisIfChanged(changed, StickFilter.AXIS_RY, LinuxInput.ABS_RY);
+            return flushFrame();
+        } else {
+            // Используем альтернативный метод
+            return shellInjector.enqueueMotion(lx / 32767f, ly / 32767f, rx / 32767f, ry / 32767f);
+        }
+    }
+    
+    private void putAxisIfChanged(int changed, int axis, int code) {
+        if ((changed & (1 << axis)) != 0) {
+            putEvent(LinuxInput.EV_ABS, code, stickFilter.value(axis));
+        }
+    }
+    
+    private void putEvent(int type, int code, int value) {
+        int offset = frameSize * FRAME_STRIDE;
+        frame[offset] = type;
+        frame[offset + 1] = code;
+        frame[offset + 2] = value;
+        frameSize++;
+    }
+    
+    // Один JNI вызов и один write() на всё состояние контроллера
+    private int flushFrame() {
+        int events = frameSize;
+        int result = frameSink.writeFrame(deviceFd, frame, frameSize);
+        frameSize = 0;
+        return result < 0 ? result : events;
+    }
+    
+    // Отправляет накопленные команды shell backend одной пачкой.
+    // Поток вывода вызывает это после того, как разобрал очередь событий
+    public int flushPending() {
+        if (deviceFd >= 0 || shellInjector == null) return 0;
+        return shellInjector.flush();
+    }
+    
+    // Дописывает кадры, которые uinput не принял сразу (EAGAIN, частичная запись).
+    // Возвращает число событий, оставшихся в очереди, или -errno
+    public int flushBacklog() {
+        if (!nativeOutput) return 0;
+        return nativeFlushOutput(deviceFd);
+    }
+    
+    // dumpsys зовёт из binder потока: блокировка та же, что у destroy(), иначе
+    // native очередь fd могла бы освободиться посреди чтения её счётчиков
+    public synchronized void dumpBackend(PrintWriter writer) {
+        int fd = deviceFd;
+        if (fd >= 0) {
+            writer.println("Backend: uinput fd=" + fd);
+            if (nativeOutput) {
+                long[] stats = new long[8];
+                nativeOutputStats(fd, stats);
+                writer.println("Output write: frames=" + stats[0] + " eagain=" + stats[1]
+                    + " partial=" + stats[2] + " retries=" + stats[3] + " collapsed=" + stats[4]
+                    + " dropped=" + stats[5] + " errors=" + stats[6] + " pending=" + stats[7]);
+            }
+            forceFeedback.dump(writer);
+        } else if (shellInjector != null) {
+            shellInjector.dump(writer);
+        } else {
+            writer.println("Backend: none");
+        }
+    }
+    
+    public void setRumbleSink(RumbleSink sink) {
+        forceFeedback.setSink(sink);
+    }
+    
+    // Порог изменения и радиальная мёртвая зона стиков в единицах uinput
+    public void configureSticks(int threshold, int deadzone) {
+        stickFilter.configure(threshold, deadzone);
+    }
+    
+    // uinput fd для native моста, -1 если устройство создано не через uinput
+    int uinputFd() {
+        return deviceFd;
+    }
+    
+    // Для статистики запуска
+    String backendName() {
+        if (deviceFd >= 0) {
+            return "uinput";
+        }
+        ShellInjector shell = shellInjector;
+        return shell != null ? "shell-" + shell.command() : "none";
+    }
+    
+    public boolean isCreated() {
+        return isCreated;
+    }
+    
+    public synchronized void destroy() {
+        if (deviceFd >= 0) {
+            // Поток FF читает fd устройства, останавливаем его до закрытия
+            forceFeedback.stop();
+            nativeOutput = false;
+            nativeDestroyDevice(deviceFd);
+            deviceFd = -1;
+        }
+        
+        if (shellInjector != null) {
+            shellInjector.stop();
+            shellInjector = null;
+        }
+        
+        isCreated = false;
+        Log.d(TAG, "Virtual controller destroyed");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,278 @@
+#include "harness.h"
+#include "uinput_frame.h"
+#include "evdev_bridge.h"
+
+#include <errno.h>
+#include <fcntl.h>
+#include <pthread.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <unistd.h>
+#include <sys/socket.h>
+
+// Типичный кадр вывода: два стика, кнопка на каждом восьмом кадре
+static int fill_frame(int *packed, int frame) {
+    int count = 0;
+    int axes[] = { ABS_X, ABS_Y, ABS_RX, ABS_RY };
+    for (int i = 0; i < 4; i++) {
+        packed[count * JCM_FRAME_STRIDE] = EV_ABS;
+        packed[count * JCM_FRAME_STRIDE + 1] = axes[i];
+        packed[count * JCM_FRAME_STRIDE + 2] = (frame * 37 + i * 9000) % 65535 - 32767;
+        count++;
+    }
+    if (frame % 8 == 0) {
+        packed[count * JCM_FRAME_STRIDE] = EV_KEY;
+        packed[count * JCM_FRAME_STRIDE + 1] = BTN_A;
+        packed[count * JCM_FRAME_STRIDE + 2] = (frame / 8) & 1;
+        count++;
+    }
+    return count;
+}
+
+static void report(const char *name, int frames, uint64_t events, uint64_t elapsed_ns, jcm_syscall_counts counts) {
+    double seconds = elapsed_ns / 1e9;
+    printf("%-22s frames=%d ns/frame=%.0f frames/s=%.0f events/s=%.0f writes/frame=%.3f polls/frame=%.3f eagain=%llu\n",
+        name, frames, (double) elapsed_ns / frames, frames / seconds, events / seconds,
+        (double) counts.writes / frames, (double) counts.polls / frames,
+        (unsigned long long) counts.write_eagain);
+}
+
+// jcm_write_frame в приёмник: стоимость кадра и число системных вызовов на кадр
+static int bench_frames(jcm_sink_kind kind, const char *name, int frames, bool queued) {
+    jcm_sink sink;
+    int result = jcm_sink_open(&sink, kind);
+    if (result < 0) {
+        fprintf(stderr, "%s: cannot open sink: %s\n", name, strerror(-result));
+        return 1;
+    }
+    if (queued) jcm_output_open(sink.write_fd);
+
+    int packed[8 * JCM_FRAME_STRIDE];
+    uint64_t events = 0;
+    int errors = 0;
+    jcm_counts_reset();
+    uint64_t start = jcm_now_ns();
+    for (int frame = 0; frame < frames; frame++) {
+        int count = fill_frame(packed, frame);
+        if (jcm_write_frame(sink.write_fd, packed, count) < 0) errors++;
+        events += count + 1;
+        // memfd растёт без конца: возвращаемся в начало, lseek не считается
+        if (kind == JCM_SINK_MEMFD && (frame & 4095) == 4095) lseek(sink.write_fd, 0, SEEK_SET);
+    }
+    uint64_t elapsed = jcm_now_ns() - start;
+    report(name, frames, events, elapsed, jcm_counts_get());
+
+    if (queued) jcm_output_close(sink.write_fd);
+    jcm_sink_close(&sink);
+    return errors == 0 ? 0 : 1;
+}
+
+static void *bridge_thread(void *arg) {
+    jcm_bridge_run((jcm_bridge *) arg);
+    return NULL;
+}
+
+// Полный native путь: pipe источника -> мост -> приёмник.
+// Источник пишет по кадру Joy-Con: кнопка или стик и SYN_REPORT
+static int bench_bridge(jcm_sink_kind kind, int frames) {
+    jcm_sink sink;
+    if (jcm_sink_open(&sink, kind) < 0) return 1;
+    int source[2];
+    if (pipe(source) < 0) return 1;
+    fcntl(source[0], F_SETFL, O_NONBLOCK);
+
+    jcm_bridge_tables tables;
+    memset(&tables, 0, sizeof(tables));
+    for (int i = 0; i < JCM_SCAN_LIMIT - JCM_SCAN_BASE; i++) tables.buttons[i] = JCM_SCAN_BASE + i;
+    for (int i = 0; i < JCM_AXIS_COUNT; i++) {
+        tables.axis_source[i] = i;
+        tables.axis_scale[i] = 1;
+    }
+    tables.threshold = 1;
+    tables.deadzone = 0;
+    jcm_bridge *bridge = jcm_bridge_create(sink.write_fd, &tables);
+    jcm_bridge_add_source(bridge, source[0]);
+    pthread_t thread;
+    pthread_create(&thread, NULL, bridge_thread, bridge);
+
+    jcm_counts_reset();
+    uint64_t start = jcm_now_ns();
+    for (int frame = 0; frame < frames; frame++) {
+        struct input_event events[3];
+        events[0] = jcm_event(EV_ABS, ABS_X, (frame * 37) % 30000 + 1);
+        events[1] = jcm_event(EV_KEY, BTN_A, frame & 1);
+        events[2] = jcm_event(EV_SYN, SYN_REPORT, 0);
+        jcm_raw_write(source[1], events, sizeof(events));
+    }
+    jcm_bridge_stats stats;
+    do {
+        jcm_bridge_get_stats(bridge, &stats);
+    } while (stats.events_in < (uint64_t) frames * 3);
+    uint64_t elapsed = jcm_now_ns() - start;
+    jcm_syscall_counts counts = jcm_counts_get();
+
+    jcm_bridge_stop(bridge);
+    pthread_join(thread, NULL);
+    // Записи источника идут мимо счётчиков, поэтому writes - только выход моста
+    report("bridge", frames, stats.events_out, elapsed, counts);
+    printf("%-22s reads=%llu frames_out=%llu events_in/read=%.2f\n", "",
+        (unsigned long long) stats.reads, (unsigned long long) stats.frames_out,
+        stats.reads > 0 ? (double) stats.events_in / stats.reads : 0.0);
+    jcm_bridge_destroy(bridge);
+    close(source[1]);
+    jcm_sink_close(&sink);
+    return 0;
+}
+
+int jcm_run_bench(int argc, char **argv) {
+    jcm_sink_kind kind = JCM_SINK_NULL;
+    bool all_sinks = argc < 1;
+    if (!all_sinks && jcm_sink_parse(argv[0], &kind) < 0) {
+        fprintf(stderr, "unknown sink '%s', expected null, pipe or memfd\n", argv[0]);
+        return 2;
+    }
+    int frames = argc > 1 ? atoi(argv[1]) : 1000000;
+    if (frames <= 0) return 2;
+
+    static const char *names[] = { "null", "pipe", "memfd" };
+    int failed = 0;
+    for (int k = 0; k < 3; k++) {
+        if (!all_sinks && k != kind) continue;
+        char name[64];
+        snprintf(name, sizeof(name), "frame/%s", names[k]);
+        failed |= bench_frames((jcm_sink_kind) k, name, frames, false);
+        snprintf(name, sizeof(name), "frame/%s+queue", names[k]);
+        failed |= bench_frames((jcm_sink_kind) k, name, frames, true);
+    }
+    failed |= bench_bridge(all_sinks ? JCM_SINK_NULL : kind, frames / 4);
+    return failed;
+}
+
+// Stress: неблокирующий pipe с маленьким буфером и читатель, который
+// периодически замирает. Каждое нажатие и отпускание должно дойти по порядку,
+// последнее значение оси - совпасть с последним записанным
+struct stress_reader {
+    int fd;
+    int stall_ms;
+    volatile bool writer_done;
+    long keys_seen;
+    long order_errors;
+    long last_x;
+    long frames_seen;
+};
+
+static void *stress_reader_thread(void *arg) {
+    stress_reader *reader = (stress_reader *) arg;
+    char buffer[4096 + sizeof(struct input_event)];
+    size_t have = 0;
+    int expected = 1;
+    long reads = 0;
+    for (;;) {
+        ssize_t bytes = read(reader->fd, buffer + have, 4096);
+        if (bytes <= 0) {
+            if (bytes == 0 || reader->writer_done) {
+                // Писатель закончил: дочитываем хвост и выходим
+                jcm_sleep_ms(20);
+                bytes = read(reader->fd, buffer + have, 4096);
+                if (bytes <= 0) break;
+            } else {
+                jcm_sleep_ms(1);
+                continue;
+            }
+        }
+        have += (size_t) bytes;
+        size_t offset = 0;
+        for (; offset + sizeof(struct input_event) <= have; offset += sizeof(struct input_event)) {
+            struct input_event *event = (struct input_event *) (buffer + offset);
+            if (event->type == EV_KEY) {
+                if (event->value != expected) reader->order_errors++;
+                expected = !expected;
+                reader->keys_seen++;
+            } else if (event->type == EV_ABS && event->code == ABS_X) {
+                reader->last_x = event->value;
+            } else if (event->type == EV_SYN) {
+                reader->frames_seen++;
+            }
+        }
+        memmove(buffer, buffer + offset, have - offset);
+        have -= offset;
+        // Раз в 64 чтения - долгая пауза, как занятый InputReader
+        if (++reads % 64 == 0) jcm_sleep_ms(reader->stall_ms);
+    }
+    return NULL;
+}
+
+static int stress_run(const char *name, bool socket_pair, int frames, int stall_ms) {
+    int fds[2];
+    if (socket_pair) {
+        if (socketpair(AF_UNIX, SOCK_STREAM, 0, fds) < 0) return 1;
+        int size = 4096;
+        setsockopt(fds[1], SOL_SOCKET, SO_SNDBUF, &size, sizeof(size));
+    } else {
+        if (pipe(fds) < 0) return 1;
+        fcntl(fds[1], F_SETPIPE_SZ, 4096);
+    }
+    fcntl(fds[0], F_SETFL, O_NONBLOCK);
+    fcntl(fds[1], F_SETFL, O_NONBLOCK);
+    jcm_output_open(fds[1]);
+
+    stress_reader reader;
+    memset(&reader, 0, sizeof(reader));
+    reader.fd = fds[0];
+    reader.stall_ms = stall_ms;
+    reader.last_x = -1;
+    pthread_t thread;
+    pthread_create(&thread, NULL, stress_reader_thread, &reader);
+
+    long edges = 0;
+    int failures = 0;
+    jcm_counts_reset();
+    uint64_t start = jcm_now_ns();
+    for (int frame = 0; frame < frames; frame++) {
+        int packed[2 * JCM_FRAME_STRIDE] = { EV_ABS, ABS_X, frame, 0, 0, 0 };
+        int count = 1;
+        if (frame % 5 == 0) {
+            packed[3] = EV_KEY;
+            packed[4] = BTN_A;
+            packed[5] = (int) ((edges + 1) & 1);
+            edges++;
+            count = 2;
+        }
+        if (jcm_write_frame(fds[1], packed, count) < 0) failures++;
+    }
+    while (jcm_output_flush(fds[1], 100) > 0) {
+    }
+    uint64_t elapsed = jcm_now_ns() - start;
+    jcm_syscall_counts counts = jcm_counts_get();
+    jcm_output_stats stats;
+    jcm_output_get_stats(fds[1], &stats);
+    reader.writer_done = true;
+    pthread_join(thread, NULL);
+
+    bool ok = reader.keys_seen == edges && reader.order_errors == 0
+        && reader.last_x == frames - 1 && failures == 0;
+    printf("%s: frames=%d ms=%llu writes=%llu write_eagain=%llu polls=%llu\n", name, frames,
+        (unsigned long long) (elapsed / 1000000), (unsigned long long) counts.writes,
+        (unsigned long long) counts.write_eagain, (unsigned long long) counts.polls);
+    printf("  queue: eagain=%llu partial=%llu retries=%llu collapsed=%llu dropped=%llu errors=%llu\n",
+        (unsigned long long) stats.eagain, (unsigned long long) stats.partial,
+        (unsigned long long) stats.retries, (unsigned long long) stats.collapsed,
+        (unsigned long long) stats.dropped, (unsigned long long) stats.errors);
+    printf("  key edges sent=%ld seen=%ld order_errors=%ld last ABS_X=%ld/%d -> %s\n", edges,
+        reader.keys_seen, reader.order_errors, reader.last_x, frames - 1, ok ? "ok" : "FAIL");
+
+    jcm_output_close(fds[1]);
+    close(fds[0]);
+    close(fds[1]);
+    return ok ? 0 : 1;
+}
+
+int jcm_run_stress(int argc, char **argv) {
+    int frames = argc > 0 ? atoi(argv[0]) : 100000;
+    int stall_ms = argc > 1 ? atoi(argv[1]) : 200;
+    if (frames <= 0 || stall_ms < 0) return 2;
+    int failed = stress_run("pipe", false, frames, stall_ms);
+    failed |= stress_run("socket", true, frames, stall_ms);
+    return failed;
+}
\ No newline at end of file
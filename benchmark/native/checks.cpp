@@ -0,0 +1,602 @@
+#include "harness.h"
+#include "uinput_frame.h"
+#include "evdev_bridge.h"
+#include "motion_device.h"
+#include "ff_service.h"
+
+#include <errno.h>
+#include <fcntl.h>
+#include <pthread.h>
+#include <stdio.h>
+#include <string.h>
+#include <unistd.h>
+
+// Проверки разбирают записанный поток input_event обратно и сравнивают
+// его с ожидаемым: тип, код, значение и SYN_REPORT в конце каждого кадра.
+
+static bool same_event(const struct input_event &event, int type, int code, int value) {
+    return event.type == type && event.code == code && event.value == value;
+}
+
+// Кадр - ровно один write() с событиями и SYN_REPORT
+static void check_frame_layout() {
+    jcm_sink sink;
+    if (!JCM_CHECK(jcm_sink_open(&sink, JCM_SINK_MEMFD) == 0)) return;
+
+    int packed[] = {
+        EV_KEY, BTN_A, 1,
+        EV_ABS, ABS_X, -32767,
+        EV_ABS, ABS_RY, 12345
+    };
+    jcm_counts_reset();
+    int result = jcm_write_frame(sink.write_fd, packed, 3);
+    jcm_syscall_counts counts = jcm_counts_get();
+    JCM_CHECK(result == 4 * (int) sizeof(struct input_event));
+    JCM_CHECK(counts.writes == 1);
+
+    // Пустой кадр - только SYN_REPORT
+    JCM_CHECK(jcm_write_frame(sink.write_fd, packed, 0) == (int) sizeof(struct input_event));
+
+    struct input_event events[8];
+    int count = jcm_sink_read_events(&sink, events, 8);
+    if (JCM_CHECK(count == 5)) {
+        JCM_CHECK(same_event(events[0], EV_KEY, BTN_A, 1));
+        JCM_CHECK(same_event(events[1], EV_ABS, ABS_X, -32767));
+        JCM_CHECK(same_event(events[2], EV_ABS, ABS_RY, 12345));
+        JCM_CHECK(same_event(events[3], EV_SYN, SYN_REPORT, 0));
+        JCM_CHECK(same_event(events[4], EV_SYN, SYN_REPORT, 0));
+    }
+    jcm_sink_close(&sink);
+}
+
+static void check_frame_errors() {
+    int packed[(JCM_MAX_FRAME_EVENTS + 1) * JCM_FRAME_STRIDE];
+    memset(packed, 0, sizeof(packed));
+    JCM_CHECK(jcm_write_frame(-1, packed, 1) == -EBADF);
+    JCM_CHECK(jcm_write_frame(1, packed, -1) == -EINVAL);
+    JCM_CHECK(jcm_write_frame(1, packed, JCM_MAX_FRAME_EVENTS + 1) == -EINVAL);
+
+    // Закрытый fd - ошибка write() наружу, без очереди
+    int fds[2];
+    if (!JCM_CHECK(pipe(fds) == 0)) return;
+    close(fds[0]);
+    close(fds[1]);
+    JCM_CHECK(jcm_write_frame(fds[1], packed, 1) == -EBADF);
+
+    // Максимальный кадр целиком одним write()
+    jcm_sink sink;
+    if (!JCM_CHECK(jcm_sink_open(&sink, JCM_SINK_MEMFD) == 0)) return;
+    for (int i = 0; i < JCM_MAX_FRAME_EVENTS; i++) {
+        packed[i * JCM_FRAME_STRIDE] = EV_KEY;
+        packed[i * JCM_FRAME_STRIDE + 1] = BTN_A + i;
+        packed[i * JCM_FRAME_STRIDE + 2] = i & 1;
+    }
+    jcm_counts_reset();
+    JCM_CHECK(jcm_write_frame(sink.write_fd, packed, JCM_MAX_FRAME_EVENTS) > 0);
+    JCM_CHECK(jcm_counts_get().writes == 1);
+    struct input_event events[JCM_MAX_FRAME_EVENTS + 1];
+    JCM_CHECK(jcm_sink_read_events(&sink, events, JCM_MAX_FRAME_EVENTS + 1) == JCM_MAX_FRAME_EVENTS + 1);
+    JCM_CHECK(same_event(events[JCM_MAX_FRAME_EVENTS - 1], EV_KEY, BTN_A + JCM_MAX_FRAME_EVENTS - 1, 1));
+    JCM_CHECK(same_event(events[JCM_MAX_FRAME_EVENTS], EV_SYN, SYN_REPORT, 0));
+    jcm_sink_close(&sink);
+}
+
+// Очередь на полном неблокирующем pipe: кнопки ждут, оси схлопываются,
+// после опустошения поток продолжается с того же места
+static void check_output_queue() {
+    int fds[2];
+    if (!JCM_CHECK(pipe2(fds, O_NONBLOCK) == 0)) return;
+    struct input_event filler = jcm_event(EV_SYN, SYN_REPORT, 0);
+    int prefilled = 0;
+    while (jcm_raw_write(fds[1], &filler, sizeof(filler)) == (ssize_t) sizeof(filler)) {
+        prefilled++;
+    }
+    JCM_CHECK(jcm_output_open(fds[1]) == 0);
+
+    // Без читателя: оси копятся в очереди и заменяются более новыми
+    int axis[] = { EV_ABS, ABS_X, 0 };
+    for (int value = 1; value <= 100; value++) {
+        axis[2] = value;
+        JCM_CHECK(jcm_write_frame(fds[1], axis, 1) > 0);
+    }
+    int press[] = { EV_KEY, BTN_B, 1 };
+    JCM_CHECK(jcm_write_frame(fds[1], press, 1) > 0);
+    axis[2] = 101;
+    JCM_CHECK(jcm_write_frame(fds[1], axis, 1) > 0);
+
+    jcm_output_stats stats;
+    JCM_CHECK(jcm_output_get_stats(fds[1], &stats) == 0);
+    JCM_CHECK(stats.collapsed == 99);
+    JCM_CHECK(stats.dropped == 0);
+    // ABS_X, SYN, кнопка, SYN, ABS_X, SYN: ось после кнопки не сливается с осью до неё
+    JCM_CHECK(stats.pending == 6);
+
+    // Читатель освобождает pipe, flush дописывает очередь
+    struct input_event drained[4096];
+    ssize_t bytes = read(fds[0], drained, sizeof(struct input_event) * prefilled);
+    JCM_CHECK(bytes == (ssize_t) (sizeof(struct input_event) * prefilled));
+    JCM_CHECK(jcm_output_flush(fds[1], 100) == 0);
+
+    struct input_event events[8];
+    bytes = read(fds[0], events, sizeof(events));
+    if (JCM_CHECK(bytes == (ssize_t) (6 * sizeof(struct input_event)))) {
+        JCM_CHECK(same_event(events[0], EV_ABS, ABS_X, 100));
+        JCM_CHECK(same_event(events[1], EV_SYN, SYN_REPORT, 0));
+        JCM_CHECK(same_event(events[2], EV_KEY, BTN_B, 1));
+        JCM_CHECK(same_event(events[3], EV_SYN, SYN_REPORT, 0));
+        JCM_CHECK(same_event(events[4], EV_ABS, ABS_X, 101));
+        JCM_CHECK(same_event(events[5], EV_SYN, SYN_REPORT, 0));
+    }
+    jcm_output_close(fds[1]);
+    close(fds[0]);
+    close(fds[1]);
+}
+
+// Читатель полного pipe: ждёт, потом читает, пока не увидит все нажатия
+struct backpressure_reader {
+    int fd;
+    int delay_ms;
+    int expected_keys;
+    int keys_seen;
+    int order_errors;
+};
+
+static void *backpressure_thread(void *arg) {
+    backpressure_reader *reader = (backpressure_reader *) arg;
+    jcm_sleep_ms(reader->delay_ms);
+    struct input_event events[256];
+    int expected = 1;
+    uint64_t deadline = jcm_now_ns() + 5000000000ULL;
+    while (reader->keys_seen < reader->expected_keys && jcm_now_ns() < deadline) {
+        ssize_t bytes = read(reader->fd, events, sizeof(events));
+        if (bytes <= 0) {
+            jcm_sleep_ms(1);
+            continue;
+        }
+        // Pipe читается целыми событиями: запись кратна размеру события
+        for (int i = 0; i < (int) (bytes / sizeof(struct input_event)); i++) {
+            if (events[i].type != EV_KEY) continue;
+            if (events[i].value != expected) reader->order_errors++;
+            expected = !expected;
+            reader->keys_seen++;
+        }
+    }
+    return NULL;
+}
+
+// Кнопки при полной очереди: запись ждёт место, пока читатель не освободит
+// pipe, и ни одно нажатие не теряется. Без читателя - -EAGAIN через
+// JCM_OUTPUT_BLOCK_MS, а не бесконечное ожидание
+static void check_output_backpressure() {
+    int fds[2];
+    if (!JCM_CHECK(pipe2(fds, O_NONBLOCK) == 0)) return;
+    struct input_event filler = jcm_event(EV_SYN, SYN_REPORT, 0);
+    while (jcm_raw_write(fds[1], &filler, sizeof(filler)) == (ssize_t) sizeof(filler)) {
+    }
+    JCM_CHECK(jcm_output_open(fds[1]) == 0);
+
+    // Кадр кнопки - два события, очередь вмещает половину от этого числа кадров
+    const int edges = JCM_OUTPUT_CAPACITY;
+    backpressure_reader reader;
+    memset(&reader, 0, sizeof(reader));
+    reader.fd = fds[0];
+    // Дольше, чем писатель заполняет очередь (по JCM_OUTPUT_RETRY_MS на кадр)
+    reader.delay_ms = 400;
+    reader.expected_keys = edges;
+    pthread_t thread;
+    if (!JCM_CHECK(pthread_create(&thread, NULL, backpressure_thread, &reader) == 0)) return;
+
+    int failures = 0;
+    for (int i = 0; i < edges; i++) {
+        int key[] = { EV_KEY, BTN_A, (i & 1) == 0 ? 1 : 0 };
+        if (jcm_write_frame(fds[1], key, 1) <= 0) failures++;
+    }
+    JCM_CHECK(failures == 0);
+    while (jcm_output_flush(fds[1], 100) > 0) {
+    }
+    pthread_join(thread, NULL);
+    JCM_CHECK(reader.keys_seen == edges);
+    JCM_CHECK(reader.order_errors == 0);
+
+    jcm_output_stats stats;
+    JCM_CHECK(jcm_output_get_stats(fds[1], &stats) == 0);
+    JCM_CHECK(stats.frames == (unsigned long long) edges);
+    JCM_CHECK(stats.eagain > 0);
+    JCM_CHECK(stats.retries > 0);
+    JCM_CHECK(stats.errors == 0);
+    JCM_CHECK(stats.pending == 0);
+
+    // Читателя больше нет: pipe и очередь заполняются, кнопка получает ошибку
+    while (jcm_raw_write(fds[1], &filler, sizeof(filler)) == (ssize_t) sizeof(filler)) {
+    }
+    int result = 0;
+    uint64_t start = jcm_now_ns();
+    for (int i = 0; i <= JCM_OUTPUT_CAPACITY / 2 && result >= 0; i++) {
+        int key[] = { EV_KEY, BTN_B, (i & 1) == 0 ? 1 : 0 };
+        result = jcm_write_frame(fds[1], key, 1);
+    }
+    uint64_t waited_ms = (jcm_now_ns() - start) / 1000000;
+    JCM_CHECK(result == -EAGAIN);
+    JCM_CHECK(waited_ms >= JCM_OUTPUT_BLOCK_MS);
+    JCM_CHECK(jcm_output_get_stats(fds[1], &stats) == 0);
+    JCM_CHECK(stats.errors == 1);
+
+    jcm_output_close(fds[1]);
+    close(fds[0]);
+    close(fds[1]);
+}
+
+static void *bridge_thread(void *arg) {
+    jcm_bridge_run((jcm_bridge *) arg);
+    return NULL;
+}
+
+static void send_event(int fd, int type, int code, int value) {
+    struct input_event event = jcm_event(type, code, value);
+    jcm_raw_write(fd, &event, sizeof(event));
+}
+
+static bool wait_events_in(jcm_bridge *bridge, uint64_t expected) {
+    for (int i = 0; i < 200; i++) {
+        jcm_bridge_stats stats;
+        jcm_bridge_get_stats(bridge, &stats);
+        if (stats.events_in >= expected) return true;
+        jcm_sleep_ms(1);
+    }
+    return false;
+}
+
+// Мост: трансляция по таблицам, инверсия осей, SYN_DROPPED и потеря источника
+static void check_bridge() {
+    int source[2];
+    int output[2];
+    if (!JCM_CHECK(pipe2(source, O_NONBLOCK) == 0 && pipe2(output, O_NONBLOCK) == 0)) return;
+
+    jcm_bridge_tables tables;
+    memset(&tables, 0, sizeof(tables));
+    tables.buttons[BTN_A - JCM_SCAN_BASE] = BTN_B;
+    for (int i = 0; i < JCM_AXIS_COUNT; i++) {
+        tables.axis_source[i] = i;
+        tables.axis_scale[i] = 1;
+    }
+    tables.axis_scale[1] = -1;
+    tables.threshold = 250;
+    tables.deadzone = 1500;
+
+    jcm_bridge *bridge = jcm_bridge_create(output[1], &tables);
+    JCM_CHECK(jcm_bridge_add_source(bridge, source[0]) == 0);
+    pthread_t thread;
+    pthread_create(&thread, NULL, bridge_thread, bridge);
+
+    send_event(source[1], EV_KEY, BTN_A, 1);
+    send_event(source[1], EV_ABS, ABS_X, 20000);
+    send_event(source[1], EV_ABS, ABS_Y, 10000);
+    send_event(source[1], EV_SYN, SYN_REPORT, 0);
+    JCM_CHECK(wait_events_in(bridge, 4));
+
+    // Отпускание уходит на ту кнопку, что была нажата, даже после смены таблиц
+    tables.buttons[BTN_A - JCM_SCAN_BASE] = BTN_A;
+    jcm_bridge_set_tables(bridge, &tables);
+    send_event(source[1], EV_KEY, BTN_A, 0);
+    send_event(source[1], EV_SYN, SYN_REPORT, 0);
+    // После SYN_DROPPED всё до SYN_REPORT пропускается
+    send_event(source[1], EV_SYN, SYN_DROPPED, 0);
+    send_event(source[1], EV_KEY, BTN_X, 1);
+    send_event(source[1], EV_SYN, SYN_REPORT, 0);
+    JCM_CHECK(wait_events_in(bridge, 9));
+
+    // Источник пропал - его оси центрируются
+    close(source[1]);
+    jcm_sleep_ms(20);
+    jcm_bridge_stop(bridge);
+    pthread_join(thread, NULL);
+
+    struct input_event events[16];
+    ssize_t bytes = read(output[0], events, sizeof(events));
+    int count = bytes > 0 ? (int) (bytes / (ssize_t) sizeof(struct input_event)) : 0;
+    if (JCM_CHECK(count == 9)) {
+        JCM_CHECK(same_event(events[0], EV_KEY, BTN_B, 1));
+        JCM_CHECK(same_event(events[1], EV_ABS, ABS_X, 20000));
+        JCM_CHECK(same_event(events[2], EV_ABS, ABS_Y, -10000));
+        JCM_CHECK(same_event(events[3], EV_SYN, SYN_REPORT, 0));
+        JCM_CHECK(same_event(events[4], EV_KEY, BTN_B, 0));
+        JCM_CHECK(same_event(events[5], EV_SYN, SYN_REPORT, 0));
+        JCM_CHECK(same_event(events[6], EV_ABS, ABS_X, 0));
+        JCM_CHECK(same_event(events[7], EV_ABS, ABS_Y, 0));
+        JCM_CHECK(same_event(events[8], EV_SYN, SYN_REPORT, 0));
+    }
+    jcm_bridge_stats stats;
+    jcm_bridge_get_stats(bridge, &stats);
+    JCM_CHECK(stats.sync_dropped == 1);
+    JCM_CHECK(stats.sources_lost == 1);
+    JCM_CHECK(stats.write_errors == 0);
+    jcm_bridge_destroy(bridge);
+    close(output[0]);
+    close(output[1]);
+}
+
+// Источник-pipe режет события на произвольной границе: мост склеивает
+// куски, ни одно событие не теряется и не сдвигается
+static void check_bridge_split_reads() {
+    int source[2];
+    int output[2];
+    if (!JCM_CHECK(pipe2(source, O_NONBLOCK) == 0 && pipe2(output, O_NONBLOCK) == 0)) return;
+
+    jcm_bridge_tables tables;
+    memset(&tables, 0, sizeof(tables));
+    tables.buttons[BTN_A - JCM_SCAN_BASE] = BTN_B;
+    for (int i = 0; i < JCM_AXIS_COUNT; i++) {
+        tables.axis_source[i] = i;
+        tables.axis_scale[i] = 1;
+    }
+
+    jcm_bridge *bridge = jcm_bridge_create(output[1], &tables);
+    JCM_CHECK(jcm_bridge_add_source(bridge, source[0]) == 0);
+    pthread_t thread;
+    pthread_create(&thread, NULL, bridge_thread, bridge);
+
+    struct input_event stream[] = {
+        jcm_event(EV_KEY, BTN_A, 1),
+        jcm_event(EV_ABS, ABS_X, 20000),
+        jcm_event(EV_SYN, SYN_REPORT, 0),
+        jcm_event(EV_KEY, BTN_A, 0),
+        jcm_event(EV_SYN, SYN_REPORT, 0)
+    };
+    const unsigned char *bytes = (const unsigned char *) stream;
+    size_t size = sizeof(stream);
+    // 7 байт не делит размер события: каждый кусок кончается посреди события
+    for (size_t offset = 0; offset < size; offset += 7) {
+        size_t chunk = size - offset < 7 ? size - offset : 7;
+        jcm_raw_write(source[1], bytes + offset, chunk);
+        jcm_sleep_ms(1);
+    }
+    JCM_CHECK(wait_events_in(bridge, 5));
+    jcm_bridge_stop(bridge);
+    pthread_join(thread, NULL);
+
+    struct input_event events[8];
+    ssize_t read_bytes = read(output[0], events, sizeof(events));
+    int count = read_bytes > 0 ? (int) (read_bytes / (ssize_t) sizeof(struct input_event)) : 0;
+    if (JCM_CHECK(count == 5)) {
+        JCM_CHECK(same_event(events[0], EV_KEY, BTN_B, 1));
+        JCM_CHECK(same_event(events[1], EV_ABS, ABS_X, 20000));
+        JCM_CHECK(same_event(events[2], EV_SYN, SYN_REPORT, 0));
+        JCM_CHECK(same_event(events[3], EV_KEY, BTN_B, 0));
+        JCM_CHECK(same_event(events[4], EV_SYN, SYN_REPORT, 0));
+    }
+    jcm_bridge_stats stats;
+    jcm_bridge_get_stats(bridge, &stats);
+    JCM_CHECK(stats.events_in == 5);
+    JCM_CHECK(stats.reads > 5);
+    jcm_bridge_destroy(bridge);
+    close(source[1]);
+    close(output[0]);
+    close(output[1]);
+}
+
+// Пачка IMU: на сэмпл MSC_TIMESTAMP, шесть осей и SYN_REPORT, всё одним write()
+static void check_imu_batch() {
+    jcm_sink sink;
+    if (!JCM_CHECK(jcm_sink_open(&sink, JCM_SINK_MEMFD) == 0)) return;
+    int samples[2 * JCM_IMU_STRIDE] = {
+        1000, 1, 2, 3, 4, 5, 6,
+        6000, -1, -2, -3, -4, -5, -6
+    };
+    jcm_counts_reset();
+    JCM_CHECK(jcm_write_imu_batch(sink.write_fd, samples, 2) > 0);
+    JCM_CHECK(jcm_counts_get().writes == 1);
+    JCM_CHECK(jcm_write_imu_batch(sink.write_fd, samples, 0) == -EINVAL);
+
+    static const int axes[6] = { ABS_X, ABS_Y, ABS_Z, ABS_RX, ABS_RY, ABS_RZ };
+    struct input_event events[16];
+    if (JCM_CHECK(jcm_sink_read_events(&sink, events, 16) == 16)) {
+        for (int sample = 0; sample < 2; sample++) {
+            const struct input_event *ev = events + sample * 8;
+            const int *values = samples + sample * JCM_IMU_STRIDE;
+            JCM_CHECK(same_event(ev[0], EV_MSC, MSC_TIMESTAMP, values[0]));
+            for (int axis = 0; axis < 6; axis++) {
+                JCM_CHECK(same_event(ev[1 + axis], EV_ABS, axes[axis], values[1 + axis]));
+            }
+            JCM_CHECK(same_event(ev[7], EV_SYN, SYN_REPORT, 0));
+        }
+    }
+    jcm_sink_close(&sink);
+}
+
+// Force feedback: вместо ioctl UI_BEGIN/END_FF_* подставные ops, вместо
+// uinput fd - pipe. request_id выбирает, что "вернёт ядро"
+enum {
+    FF_REQUEST_RUMBLE = 1,     // FF_RUMBLE в слоте 0
+    FF_REQUEST_BAD_ID = 2,     // слот вне JCM_FF_MAX_EFFECTS
+    FF_REQUEST_BAD_TYPE = 3,   // FF_CONSTANT не поддерживается
+    FF_REQUEST_FAIL = 4        // сама ioctl возвращает ошибку
+};
+
+struct ff_record {
+    pthread_mutex_t lock;
+    int sink_calls;
+    int strong;
+    int weak;
+    int duration_ms;
+    int end_upload_calls;
+    int last_upload_retval;
+    int end_erase_calls;
+};
+
+static ff_record ff_state;
+
+static int fake_begin_upload(int fd, struct uinput_ff_upload *upload) {
+    if (upload->request_id == FF_REQUEST_FAIL) return -1;
+    memset(&upload->effect, 0, sizeof(upload->effect));
+    upload->effect.type = upload->request_id == FF_REQUEST_BAD_TYPE ? FF_CONSTANT : FF_RUMBLE;
+    upload->effect.id = upload->request_id == FF_REQUEST_BAD_ID ? JCM_FF_MAX_EFFECTS : 0;
+    upload->effect.replay.length = 100;
+    upload->effect.u.rumble.strong_magnitude = 0x8000;
+    upload->effect.u.rumble.weak_magnitude = 0x4000;
+    return 0;
+}
+
+static int fake_end_upload(int fd, struct uinput_ff_upload *upload) {
+    pthread_mutex_lock(&ff_state.lock);
+    ff_state.end_upload_calls++;
+    ff_state.last_upload_retval = upload->retval;
+    pthread_mutex_unlock(&ff_state.lock);
+    return 0;
+}
+
+static int fake_begin_erase(int fd, struct uinput_ff_erase *erase) {
+    erase->effect_id = 0;
+    return 0;
+}
+
+static int fake_end_erase(int fd, struct uinput_ff_erase *erase) {
+    pthread_mutex_lock(&ff_state.lock);
+    ff_state.end_erase_calls++;
+    pthread_mutex_unlock(&ff_state.lock);
+    return 0;
+}
+
+static void fake_rumble(void *context, int strong, int weak, int duration_ms) {
+    ff_record *record = (ff_record *) context;
+    pthread_mutex_lock(&record->lock);
+    record->sink_calls++;
+    record->strong = strong;
+    record->weak = weak;
+    record->duration_ms = duration_ms;
+    pthread_mutex_unlock(&record->lock);
+}
+
+static ff_record ff_snapshot() {
+    pthread_mutex_lock(&ff_state.lock);
+    ff_record copy = ff_state;
+    pthread_mutex_unlock(&ff_state.lock);
+    return copy;
+}
+
+struct ff_run {
+    jcm_ff_service *service;
+    int result;
+};
+
+static void *ff_thread(void *arg) {
+    ff_run *run = (ff_run *) arg;
+    run->result = jcm_ff_run(run->service);
+    return NULL;
+}
+
+static bool wait_ff_sink_calls(int expected) {
+    for (int i = 0; i < 200; i++) {
+        if (ff_snapshot().sink_calls >= expected) return true;
+        jcm_sleep_ms(1);
+    }
+    return false;
+}
+
+static bool wait_ff_errors(jcm_ff_service *service, uint64_t expected) {
+    for (int i = 0; i < 200; i++) {
+        jcm_ff_stats stats;
+        jcm_ff_get_stats(service, &stats);
+        if (stats.request_errors >= expected) return true;
+        jcm_sleep_ms(1);
+    }
+    return false;
+}
+
+// Загрузка, запуск с усилением, остановка и удаление эффекта, затем отказы:
+// неверный слот и тип, ошибка ioctl, запуск удалённого эффекта, закрытый fd
+static void check_force_feedback() {
+    int requests[2];
+    if (!JCM_CHECK(pipe2(requests, O_NONBLOCK) == 0)) return;
+
+    memset(&ff_state, 0, sizeof(ff_state));
+    pthread_mutex_init(&ff_state.lock, NULL);
+    jcm_ff_sink sink = { fake_rumble, &ff_state };
+    jcm_ff_ops ops = { fake_begin_upload, fake_end_upload, fake_begin_erase, fake_end_erase };
+    ff_run run = { jcm_ff_create(requests[0], &sink, &ops, 0), 0 };
+    if (!JCM_CHECK(run.service != NULL)) return;
+    pthread_t thread;
+    pthread_create(&thread, NULL, ff_thread, &run);
+
+    // Загрузка и запуск одной пачкой: эффект уже в слоте к моменту EV_FF
+    struct input_event upload_and_play[] = {
+        jcm_event(EV_UINPUT, UI_FF_UPLOAD, FF_REQUEST_RUMBLE),
+        jcm_event(EV_FF, 0, 1)
+    };
+    jcm_raw_write(requests[1], upload_and_play, sizeof(upload_and_play));
+    if (JCM_CHECK(wait_ff_sink_calls(1))) {
+        ff_record record = ff_snapshot();
+        JCM_CHECK(record.end_upload_calls == 1 && record.last_upload_retval == 0);
+        JCM_CHECK(record.strong == 0x8000 && record.weak == 0x4000 && record.duration_ms == 100);
+    }
+
+    // Половинное усиление, два повтора
+    send_event(requests[1], EV_FF, FF_GAIN, 0x8000);
+    send_event(requests[1], EV_FF, 0, 2);
+    if (JCM_CHECK(wait_ff_sink_calls(2))) {
+        ff_record record = ff_snapshot();
+        JCM_CHECK(record.strong == 0x4000 && record.weak == 0x2000 && record.duration_ms == 200);
+    }
+
+    send_event(requests[1], EV_FF, 0, 0);
+    if (JCM_CHECK(wait_ff_sink_calls(3))) {
+        ff_record record = ff_snapshot();
+        JCM_CHECK(record.strong == 0 && record.weak == 0 && record.duration_ms == 0);
+    }
+
+    send_event(requests[1], EV_UINPUT, UI_FF_ERASE, 5);
+    // Каждый отказ считается отдельно, ядру уходит ненулевой retval
+    send_event(requests[1], EV_UINPUT, UI_FF_UPLOAD, FF_REQUEST_BAD_ID);
+    send_event(requests[1], EV_UINPUT, UI_FF_UPLOAD, FF_REQUEST_BAD_TYPE);
+    send_event(requests[1], EV_UINPUT, UI_FF_UPLOAD, FF_REQUEST_FAIL);
+    // Слот 0 удалён: запуск - ошибка, приёмник не вызывается
+    send_event(requests[1], EV_FF, 0, 1);
+    JCM_CHECK(wait_ff_errors(run.service, 4));
+
+    // Закрытый пишущий конец - POLLHUP, цикл выходит с -EIO
+    close(requests[1]);
+    pthread_join(thread, NULL);
+    JCM_CHECK(run.result == -EIO);
+
+    ff_record record = ff_snapshot();
+    JCM_CHECK(record.sink_calls == 3);
+    // Неверный слот и тип доходят до end_upload, ошибка begin - нет
+    JCM_CHECK(record.end_upload_calls == 3 && record.last_upload_retval == -EINVAL);
+    JCM_CHECK(record.end_erase_calls == 1);
+
+    jcm_ff_stats stats;
+    jcm_ff_get_stats(run.service, &stats);
+    JCM_CHECK(stats.uploads == 1);
+    JCM_CHECK(stats.erases == 1);
+    JCM_CHECK(stats.plays == 2);
+    JCM_CHECK(stats.stops == 1);
+    JCM_CHECK(stats.sink_calls == 3);
+    JCM_CHECK(stats.request_errors == 4);
+    jcm_ff_destroy(run.service);
+    close(requests[0]);
+    pthread_mutex_destroy(&ff_state.lock);
+}
+
+int jcm_run_checks() {
+    struct {
+        const char *name;
+        void (*run)();
+    } checks[] = {
+        { "frame_layout", check_frame_layout },
+        { "frame_errors", check_frame_errors },
+        { "output_queue", check_output_queue },
+        { "output_backpressure", check_output_backpressure },
+        { "bridge", check_bridge },
+        { "bridge_split_reads", check_bridge_split_reads },
+        { "imu_batch", check_imu_batch },
+        { "force_feedback", check_force_feedback }
+    };
+    int failed = 0;
+    for (size_t i = 0; i < sizeof(checks) / sizeof(checks[0]); i++) {
+        int before = jcm_check_failures();
+        checks[i].run();
+        bool ok = jcm_check_failures() == before;
+        printf("%-20s %s\n", checks[i].name, ok ? "ok" : "FAIL");
+        if (!ok) failed++;
+    }
+    return failed == 0 ? 0 : 1;
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+#include "harness.h"
+
+#include <atomic>
+#include <errno.h>
+#include <fcntl.h>
+#include <poll.h>
+#include <pthread.h>
+#include <stdio.h>
+#include <string.h>
+#include <time.h>
+#include <unistd.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+
+// Перехват через -Wl,--wrap: вызовы write()/poll() из всех объектов сборки
+// попадают сюда, __real_* - исходные функции libc
+extern "C" ssize_t __real_write(int fd, const void *data, size_t size);
+extern "C" int __real_poll(struct pollfd *fds, nfds_t count, int timeout);
+
+static std::atomic<uint64_t> count_writes(0);
+static std::atomic<uint64_t> count_write_bytes(0);
+static std::atomic<uint64_t> count_write_eagain(0);
+static std::atomic<uint64_t> count_polls(0);
+
+extern "C" ssize_t __wrap_write(int fd, const void *data, size_t size) {
+    count_writes.fetch_add(1, std::memory_order_relaxed);
+    ssize_t written = __real_write(fd, data, size);
+    if (written > 0) {
+        count_write_bytes.fetch_add((uint64_t) written, std::memory_order_relaxed);
+    } else if (written < 0 && (errno == EAGAIN || errno == EWOULDBLOCK)) {
+        count_write_eagain.fetch_add(1, std::memory_order_relaxed);
+    }
+    return written;
+}
+
+extern "C" int __wrap_poll(struct pollfd *fds, nfds_t count, int timeout) {
+    count_polls.fetch_add(1, std::memory_order_relaxed);
+    return __real_poll(fds, count, timeout);
+}
+
+void jcm_counts_reset() {
+    count_writes.store(0);
+    count_write_bytes.store(0);
+    count_write_eagain.store(0);
+    count_polls.store(0);
+}
+
+jcm_syscall_counts jcm_counts_get() {
+    jcm_syscall_counts counts;
+    counts.writes = count_writes.load();
+    counts.write_bytes = count_write_bytes.load();
+    counts.write_eagain = count_write_eagain.load();
+    counts.polls = count_polls.load();
+    return counts;
+}
+
+ssize_t jcm_raw_write(int fd, const void *data, size_t size) {
+    return __real_write(fd, data, size);
+}
+
+// Читающий конец pipe приёмника: читает, пока пишущий конец не закрыт
+static void *drain_thread(void *arg) {
+    int fd = *(int *) arg;
+    char buffer[16384];
+    while (read(fd, buffer, sizeof(buffer)) > 0) {
+    }
+    return NULL;
+}
+
+int jcm_sink_open(jcm_sink *sink, jcm_sink_kind kind) {
+    memset(sink, 0, sizeof(*sink));
+    sink->kind = kind;
+    sink->read_fd = -1;
+    if (kind == JCM_SINK_NULL) {
+        sink->write_fd = open("/dev/null", O_WRONLY | O_CLOEXEC);
+        return sink->write_fd < 0 ? -errno : 0;
+    }
+    if (kind == JCM_SINK_MEMFD) {
+        sink->write_fd = (int) syscall(SYS_memfd_create, "jcm_sink", 0);
+        if (sink->write_fd < 0) return -errno;
+        sink->read_fd = sink->write_fd;
+        return 0;
+    }
+    int fds[2];
+    if (pipe2(fds, O_CLOEXEC) < 0) return -errno;
+    sink->read_fd = fds[0];
+    sink->write_fd = fds[1];
+    pthread_t *thread = new pthread_t;
+    if (pthread_create(thread, NULL, drain_thread, &sink->read_fd) != 0) {
+        delete thread;
+        close(fds[0]);
+        close(fds[1]);
+        return -EAGAIN;
+    }
+    sink->drainer = thread;
+    return 0;
+}
+
+void jcm_sink_close(jcm_sink *sink) {
+    if (sink->write_fd >= 0) close(sink->write_fd);
+    if (sink->drainer != NULL) {
+        pthread_t *thread = (pthread_t *) sink->drainer;
+        pthread_join(*thread, NULL);
+        delete thread;
+        close(sink->read_fd);
+    }
+    memset(sink, 0, sizeof(*sink));
+    sink->write_fd = -1;
+    sink->read_fd = -1;
+}
+
+int jcm_sink_parse(const char *name, jcm_sink_kind *kind) {
+    if (strcmp(name, "null") == 0) *kind = JCM_SINK_NULL;
+    else if (strcmp(name, "pipe") == 0) *kind = JCM_SINK_PIPE;
+    else if (strcmp(name, "memfd") == 0) *kind = JCM_SINK_MEMFD;
+    else return -EINVAL;
+    return 0;
+}
+
+int jcm_sink_read_events(jcm_sink *sink, struct input_event *out, int capacity) {
+    if (sink->kind != JCM_SINK_MEMFD) return -EINVAL;
+    ssize_t bytes = pread(sink->read_fd, out, sizeof(struct input_event) * capacity, 0);
+    if (bytes < 0) return -errno;
+    return (int) (bytes / (ssize_t) sizeof(struct input_event));
+}
+
+struct input_event jcm_event(int type, int code, int value) {
+    struct input_event event;
+    memset(&event, 0, sizeof(event));
+    event.type = (unsigned short) type;
+    event.code = (unsigned short) code;
+    event.value = value;
+    return event;
+}
+
+static int check_failures = 0;
+
+bool jcm_check(bool ok, const char *expr, const char *file, int line) {
+    if (!ok) {
+        check_failures++;
+        fprintf(stderr, "  FAIL %s:%d: %s\n", file, line, expr);
+    }
+    return ok;
+}
+
+int jcm_check_failures() {
+    return check_failures;
+}
+
+void jcm_sleep_ms(int ms) {
+    struct timespec pause;
+    pause.tv_sec = ms / 1000;
+    pause.tv_nsec = (long) (ms % 1000) * 1000000L;
+    nanosleep(&pause, NULL);
+}
+
+uint64_t jcm_now_ns() {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (uint64_t) ts.tv_sec * 1000000000ULL + (uint64_t) ts.tv_nsec;
+}
\ No newline at end of file
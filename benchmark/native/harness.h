@@ -0,0 +1,63 @@
+#ifndef JOYCONMAPPER_HOST_HARNESS_H
+#define JOYCONMAPPER_HOST_HARNESS_H
+
+#include <stddef.h>
+#include <stdint.h>
+#include <sys/types.h>
+#include <linux/input.h>
+
+// Общие части host harness: счётчики перехваченных системных вызовов,
+// приёмники вместо uinput fd и разбор потока input_event.
+
+// Вызовы библиотеки, прошедшие через -Wl,--wrap
+struct jcm_syscall_counts {
+    uint64_t writes;
+    uint64_t write_bytes;
+    uint64_t write_eagain;
+    uint64_t polls;
+};
+
+void jcm_counts_reset();
+jcm_syscall_counts jcm_counts_get();
+
+// Настоящий write(): для записей самого harness, чтобы они не попадали в счётчики
+ssize_t jcm_raw_write(int fd, const void *data, size_t size);
+
+// Приёмник вместо uinput fd
+enum jcm_sink_kind {
+    JCM_SINK_NULL,   // /dev/null - только стоимость вызова
+    JCM_SINK_PIPE,   // pipe, читающий конец опустошает поток
+    JCM_SINK_MEMFD   // memfd, содержимое читается обратно
+};
+
+struct jcm_sink {
+    jcm_sink_kind kind;
+    int write_fd;
+    int read_fd;
+    void *drainer;
+};
+
+// 0 или -errno
+int jcm_sink_open(jcm_sink *sink, jcm_sink_kind kind);
+void jcm_sink_close(jcm_sink *sink);
+int jcm_sink_parse(const char *name, jcm_sink_kind *kind);
+
+// memfd: весь записанный поток с начала, в событиях. -errno при ошибке
+int jcm_sink_read_events(jcm_sink *sink, struct input_event *out, int capacity);
+
+// Собирает событие без времени, как его пишет библиотека
+struct input_event jcm_event(int type, int code, int value);
+
+// Проверка в стиле assert, но с продолжением: печатает место и считает провал
+#define JCM_CHECK(cond) jcm_check((cond), #cond, __FILE__, __LINE__)
+bool jcm_check(bool ok, const char *expr, const char *file, int line);
+int jcm_check_failures();
+
+void jcm_sleep_ms(int ms);
+uint64_t jcm_now_ns();
+
+int jcm_run_checks();
+int jcm_run_bench(int argc, char **argv);
+int jcm_run_stress(int argc, char **argv);
+
+#endif
\ No newline at end of file
@@ -0,0 +1,17 @@
+#include "harness.h"
+
+#include <stdio.h>
+#include <string.h>
+
+// jcm_host_harness [check]                        - проверки потока input_event
+// jcm_host_harness bench [sink] [frames]          - кадры/с, события/с, вызовы на кадр;
+//                                                   sink: null, pipe, memfd
+// jcm_host_harness stress [frames] [stall_ms]     - EAGAIN на полном неблокирующем pipe
+int main(int argc, char **argv) {
+    const char *mode = argc > 1 ? argv[1] : "check";
+    if (strcmp(mode, "check") == 0) return jcm_run_checks();
+    if (strcmp(mode, "bench") == 0) return jcm_run_bench(argc - 2, argv + 2);
+    if (strcmp(mode, "stress") == 0) return jcm_run_stress(argc - 2, argv + 2);
+    fprintf(stderr, "usage: %s [check | bench [sink] [frames] | stress [frames] [stall_ms]]\n", argv[0]);
+    return 2;
+}
\ No newline at end of file
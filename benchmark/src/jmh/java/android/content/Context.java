@@ -0,0 +1,10 @@
+package android.content;
+
+import java.io.File;
+
+// Заглушка android.content.Context: кэш во временном каталоге хоста
+public class Context {
+    public File getCacheDir() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+}
\ No newline at end of file
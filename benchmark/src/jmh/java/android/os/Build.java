@@ -0,0 +1,11 @@
+package android.os;
+
+// Заглушка android.os.Build
+public final class Build {
+    public static final class VERSION {
+        public static final int SDK_INT = 35;
+    }
+    
+    private Build() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,13 @@
+package android.os;
+
+// Заглушка android.os.Process: приоритет потока на хосте не меняется
+public final class Process {
+    public static final int THREAD_PRIORITY_DEFAULT = 0;
+    public static final int THREAD_PRIORITY_URGENT_DISPLAY = -8;
+    
+    public static void setThreadPriority(int priority) {
+    }
+    
+    private Process() {
+    }
+}
\ No newline at end of file
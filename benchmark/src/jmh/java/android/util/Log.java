@@ -0,0 +1,31 @@
+package android.util;
+
+// Заглушка android.util.Log для JVM хоста: сообщения не выводятся
+public final class Log {
+    public static int d(String tag, String msg) {
+        return 0;
+    }
+    
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+    
+    public static int w(String tag, String msg) {
+        return 0;
+    }
+    
+    public static int w(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+    
+    public static int e(String tag, String msg) {
+        return 0;
+    }
+    
+    public static int e(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+    
+    private Log() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.switchroot.joyconmapper;
+
+import android.content.Context;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Методы отправки VirtualXboxController синхронно, как их вызывает поток
+// вывода: фильтр стиков, сборка кадра и вызов получателя кадров
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ControllerBenchmark {
+    private static final int SAMPLES = Traces.STICK_RATE_HZ;
+    
+    private RecordingFrameSink sink;
+    private VirtualXboxController controller;
+    
+    private int[] traceX;
+    private int[] traceY;
+    private int sample;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        controller = new VirtualXboxController(new Context(), ButtonTable.createDefault());
+        sink = new RecordingFrameSink();
+        controller.createWithSink(sink, 0);
+        
+        float[][] trace = Traces.stickCircle(SAMPLES, 0.8f, 1);
+        traceX = new int[SAMPLES];
+        traceY = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            traceX[i] = (int) (trace[0][i] * 32767);
+            traceY[i] = (int) (trace[1][i] * 32767);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("\n" + getClass().getSimpleName() + ": " + sink.summary());
+    }
+    
+    @Benchmark
+    public int sendAxisMoving() {
+        int i = sample;
+        sample = i + 1 == SAMPLES ? 0 : i + 1;
+        return controller.sendAxisValues(traceX[i], traceY[i], traceY[i], traceX[i]);
+    }
+    
+    // Стик в покое: фильтр не должен ничего отправлять
+    @Benchmark
+    public int sendAxisAtRest() {
+        return controller.sendAxisValues(120, -90, 0, 0);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public int sendButtonEdge() {
+        return controller.sendButtonPress(LinuxInput.BTN_A, 96)
+            + controller.sendButtonRelease(LinuxInput.BTN_A, 96);
+    }
+}
\ No newline at end of file
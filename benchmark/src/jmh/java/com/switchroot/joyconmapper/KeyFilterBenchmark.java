@@ -0,0 +1,97 @@
+package com.switchroot.joyconmapper;
+
+import android.content.Context;
+import android.view.KeyEvent;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Фильтр onKeyEvent сервиса: через него идут кнопки всех клавиатур системы.
+// Сервис на хосте не создать, поэтому filter() повторяет его маршрут:
+// роль из DeviceRegistry, слот из PlayerSlots, затем InputMapper.
+// foreignKey - чужая клавиатура, которую фильтр сразу возвращает системе;
+// foreignKeyByName - то же решение по имени устройства, для сравнения;
+// joyConKey - кнопка Joy-Con до очереди потока вывода.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class KeyFilterBenchmark {
+    private static final int KEYBOARD_ID = 3;
+    private static final String KEYBOARD_NAME = "gpio-keys";
+    private static final int JOYCON_ID = 7;
+    
+    private final DeviceRegistry registry = new DeviceRegistry();
+    private final PlayerSlots slots = new PlayerSlots(false);
+    private RecordingFrameSink sink;
+    private OutputDispatcher dispatcher;
+    private InputMapper mapper;
+    
+    private int mash;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        ButtonTable table = ButtonTable.createDefault();
+        VirtualXboxController controller = new VirtualXboxController(new Context(), table);
+        sink = new RecordingFrameSink();
+        controller.createWithSink(sink, 0);
+        dispatcher = new OutputDispatcher(controller);
+        dispatcher.start();
+        mapper = new InputMapper(table, controller, dispatcher);
+        
+        registry.register(KEYBOARD_ID, KEYBOARD_NAME);
+        int role = registry.register(JOYCON_ID, "Joy-Con (L)");
+        slots.assign(JOYCON_ID, role, "joycon-left");
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dispatcher.stop();
+        System.out.println("\n" + getClass().getSimpleName() + ": " + sink.summary());
+    }
+    
+    @Benchmark
+    public boolean foreignKey() {
+        return filter(KEYBOARD_ID, 116, 26, KeyEvent.ACTION_DOWN);
+    }
+    
+    @Benchmark
+    public boolean foreignKeyByName() {
+        if (DeviceRegistry.classify(KEYBOARD_NAME) == DeviceRegistry.ROLE_OTHER) {
+            return false;
+        }
+        return filter(KEYBOARD_ID, 116, 26, KeyEvent.ACTION_DOWN);
+    }
+    
+    // Нажатие и отпускание разных кнопок
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean joyConKey() {
+        int i = mash;
+        mash = (i + 1) % Traces.MASH_SCAN_CODES.length;
+        int scanCode = Traces.MASH_SCAN_CODES[i];
+        int keyCode = Traces.MASH_KEY_CODES[i];
+        boolean pressed = filter(JOYCON_ID, scanCode, keyCode, KeyEvent.ACTION_DOWN);
+        boolean released = filter(JOYCON_ID, scanCode, keyCode, KeyEvent.ACTION_UP);
+        return pressed & released;
+    }
+    
+    // onKeyEvent и handleKeyEvent без трассы и отметок запуска
+    private boolean filter(int deviceId, int scanCode, int keyCode, int action) {
+        if (registry.roleOf(deviceId) == DeviceRegistry.ROLE_OTHER) {
+            return false;
+        }
+        int slot = slots.slotOf(deviceId);
+        if (slot == PlayerSlots.NO_SLOT) {
+            return false;
+        }
+        return mapper.onKey(slot, scanCode, keyCode, action, System.nanoTime());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.switchroot.joyconmapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// MacroEngine на тестовых часах: время задаёт бенчмарк, а не System.nanoTime().
+// buttonEdge - фронт кнопки через движок с аккордами в профиле,
+// turboTick - шаг часов на тик колеса при восьми зажатых турбо-кнопках.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MacroBenchmark {
+    private static final String PROFILE =
+        "turbo A = 30\nturbo B = 25\nturbo X = 20\nturbo Y = 15\n"
+        + "turbo TL = 12\nturbo TR = 10\nturbo TL2 = 8\nturbo TR2 = 6\n"
+        + "macro tap = START 20, 20, START 20\n"
+        + "chord MODE+SELECT = tap\nchord TL+TR+START = tap\nchord DPAD_UP+DPAD_DOWN = tap\n";
+    
+    private static final int[] TURBO = {
+        LinuxInput.BTN_A, LinuxInput.BTN_B, LinuxInput.BTN_X, LinuxInput.BTN_Y,
+        LinuxInput.BTN_TL, LinuxInput.BTN_TR, LinuxInput.BTN_TL2, LinuxInput.BTN_TR2
+    };
+    
+    private MacroEngine edges;
+    private MacroEngine turbo;
+    private long emitted;
+    private long now;
+    private int value;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        MacroProgram program = ProfileParser.parse("benchmark",
+            new BufferedReader(new StringReader(PROFILE)), ButtonTable.createDefault()).macros;
+        MacroEngine.Output output = (button, keyCode, value, eventTimeNanos, synthetic) -> {
+            emitted++;
+            return 1;
+        };
+        edges = new MacroEngine(output);
+        edges.setProgram(program);
+        turbo = new MacroEngine(output);
+        turbo.setProgram(program);
+        now = 1_000_000_000L;
+        for (int button : TURBO) {
+            turbo.onButton(button, 0, 1, now, now);
+        }
+    }
+    
+    @Benchmark
+    public long buttonEdge() {
+        value ^= 1;
+        edges.onButton(LinuxInput.BTN_DPAD_LEFT, 0, value, now, now);
+        return emitted;
+    }
+    
+    @Benchmark
+    public int turboTick() {
+        now += TimerWheel.TICK_NANOS;
+        return turbo.advance(now);
+    }
+}
\ No newline at end of file
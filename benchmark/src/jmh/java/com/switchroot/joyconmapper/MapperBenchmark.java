@@ -0,0 +1,107 @@
+package com.switchroot.joyconmapper;
+
+import android.content.Context;
+import android.view.KeyEvent;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Полный путь от разобранного события до кадра в uinput: InputMapper на
+// потоке колбэков и OutputDispatcher с отдельным потоком вывода.
+// Время - стоимость события для потока колбэков (ns/event), запись в
+// "устройство" идёт параллельно в RecordingFrameSink.
+// liveStatus - открытый экран приложения: StatusChannel опрашивает счётчики
+// и рассылает снимки, путь событий от этого не должен замедляться.
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MapperBenchmark {
+    private static final int SAMPLES = Traces.STICK_RATE_HZ;
+    
+    @Param({ "false", "true" })
+    public boolean liveStatus;
+    
+    private RecordingFrameSink sink;
+    private OutputDispatcher dispatcher;
+    private InputMapper mapper;
+    
+    private float[][] leftTrace;
+    private float[][] rightTrace;
+    private int sample;
+    private int mash;
+    private volatile long snapshots;
+    private final StatusChannel.Listener statusListener = status -> snapshots = status.version;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        ButtonTable table = ButtonTable.createDefault();
+        VirtualXboxController controller = new VirtualXboxController(new Context(), table);
+        sink = new RecordingFrameSink();
+        controller.createWithSink(sink, 0);
+        dispatcher = new OutputDispatcher(controller);
+        dispatcher.start();
+        mapper = new InputMapper(table, controller, dispatcher);
+        
+        leftTrace = Traces.stickCircle(SAMPLES, 0.8f, 1);
+        rightTrace = Traces.stickCircle(SAMPLES, 0.5f, 2);
+        if (liveStatus) {
+            StatusChannel.get().addListener(statusListener, Runnable::run);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dispatcher.stop();
+        StatusChannel.get().removeListener(statusListener);
+        System.out.println("\n" + getClass().getSimpleName() + ": " + sink.summary()
+            + (liveStatus ? " status snapshots=" + snapshots : ""));
+    }
+    
+    // Левый стик, 200 Гц поток сэмплов
+    @Benchmark
+    public boolean leftStick200Hz() {
+        int i = nextSample();
+        return mapper.onJoystick(DeviceRegistry.ROLE_LEFT, leftTrace[0][i], leftTrace[1][i], 0, 0,
+            System.nanoTime());
+    }
+    
+    // Быстрые нажатия: нажатие и отпускание разных кнопок
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean buttonMashing() {
+        int i = mash;
+        mash = (i + 1) % Traces.MASH_SCAN_CODES.length;
+        int scanCode = Traces.MASH_SCAN_CODES[i];
+        int keyCode = Traces.MASH_KEY_CODES[i];
+        boolean pressed = mapper.onKey(scanCode, keyCode, KeyEvent.ACTION_DOWN, System.nanoTime());
+        boolean released = mapper.onKey(scanCode, keyCode, KeyEvent.ACTION_UP, System.nanoTime());
+        return pressed & released;
+    }
+    
+    // Оба Joy-Con активны: два стика и кнопка на каждом восьмом сэмпле
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public boolean bothJoyCons() {
+        int i = nextSample();
+        long now = System.nanoTime();
+        boolean handled = mapper.onJoystick(DeviceRegistry.ROLE_LEFT, leftTrace[0][i], leftTrace[1][i], 0, 0, now);
+        handled &= mapper.onJoystick(DeviceRegistry.ROLE_RIGHT, 0, 0, rightTrace[0][i], rightTrace[1][i], now);
+        if ((i & 7) == 0) {
+            int action = (i & 8) == 0 ? KeyEvent.ACTION_DOWN : KeyEvent.ACTION_UP;
+            handled &= mapper.onKey(304, KeyEvent.KEYCODE_BUTTON_A, action, now);
+        }
+        return handled;
+    }
+    
+    private int nextSample() {
+        int i = sample;
+        sample = i + 1 == SAMPLES ? 0 : i + 1;
+        return i;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.switchroot.joyconmapper;
+
+import android.content.Context;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Задержка игрока 1, пока остальные N-1 игроков тоже играют: от onJoystick
+// до записи кадра его потоком вывода. Потоки вывода всех слотов работают,
+// остальные слоты получают стики с частотой otherRateHz из отдельного потока,
+// как от своих Joy-Con. В отличие от PlayersBenchmark здесь видно, сколько
+// чужие потоки вывода добавляют к задержке одного игрока.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlayerLatencyBenchmark {
+    private static final int SAMPLES = Traces.STICK_RATE_HZ;
+    
+    @Param({ "1", "2", "4" })
+    public int players;
+    
+    @Param({ "200", "1000" })
+    public int otherRateHz;
+    
+    private RecordingFrameSink[] sinks;
+    private OutputDispatcher[] dispatchers;
+    private InputMapper mapper;
+    private Thread others;
+    private volatile boolean running;
+    
+    private float[][] trace;
+    private int sample;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        ButtonTable table = ButtonTable.createDefault();
+        sinks = new RecordingFrameSink[players];
+        dispatchers = new OutputDispatcher[players];
+        for (int slot = 0; slot < players; slot++) {
+            VirtualXboxController controller = new VirtualXboxController(new Context(), table, slot);
+            sinks[slot] = new RecordingFrameSink();
+            controller.createWithSink(sinks[slot], slot);
+            dispatchers[slot] = new OutputDispatcher(controller);
+            dispatchers[slot].start();
+            if (slot == 0) {
+                mapper = new InputMapper(table, controller, dispatchers[slot]);
+            }
+        }
+        trace = Traces.stickCircle(SAMPLES, 0.8f, 1);
+        
+        running = true;
+        if (players > 1) {
+            others = new Thread(this::feedOthers, "PlayerLatencyBenchmark-Others");
+            others.setDaemon(true);
+            others.start();
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        if (others != null) {
+            others.join();
+        }
+        for (int slot = 0; slot < players; slot++) {
+            dispatchers[slot].stop();
+            System.out.println("\n" + getClass().getSimpleName() + " player " + (slot + 1) + ": "
+                + sinks[slot].summary());
+        }
+    }
+    
+    // Левый стик игрока 1 и ожидание кадра от его потока вывода
+    @Benchmark
+    public long playerOneStick() {
+        int i = sample;
+        sample = i + 1 == SAMPLES ? 0 : i + 1;
+        long before = sinks[0].writes.get();
+        mapper.onJoystick(0, DeviceRegistry.ROLE_LEFT, trace[0][i], trace[1][i], 0, 0, System.nanoTime());
+        long writes;
+        // yield, а не голый спин: на одном ядре поток вывода иначе не получит CPU
+        while ((writes = sinks[0].writes.get()) == before) {
+            Thread.yield();
+        }
+        return writes;
+    }
+    
+    // Остальные игроки: по сэмплу каждому слоту раз в период, прямо в их
+    // диспетчеры. InputMapper однопоточный, его держит поток бенчмарка
+    private void feedOthers() {
+        long period = 1_000_000_000L / otherRateHz;
+        long next = System.nanoTime();
+        int i = 0;
+        while (running) {
+            int x = (int) (trace[0][i] * 32767);
+            int y = (int) (trace[1][i] * 32767);
+            long now = System.nanoTime();
+            for (int slot = 1; slot < players; slot++) {
+                dispatchers[slot].enqueueSticks(x, y, 0, 0, now);
+            }
+            i = i + 1 == SAMPLES ? 0 : i + 1;
+            next += period;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,86 @@
+package com.switchroot.joyconmapper;
+
+import android.content.Context;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Стоимость события при нескольких игроках: события стиков идут по кругу
+// всем слотам, у каждого свой контроллер и поток вывода. Маршрут слота -
+// смещение в массиве, поэтому без потоков вывода (outputThreads=false) время
+// на событие не зависит от числа игроков. С потоками на малом числе ядер во
+// время входят и записи потоков вывода: чем больше игроков, тем меньше
+// событий одного слота схлопывается в одну запись. Задержку одного игрока
+// при остальных активных показывает PlayerLatencyBenchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayersBenchmark {
+    private static final int SAMPLES = Traces.STICK_RATE_HZ;
+    
+    @Param({ "1", "2", "4" })
+    public int players;
+    
+    @Param({ "true", "false" })
+    public boolean outputThreads;
+    
+    private RecordingFrameSink[] sinks;
+    private OutputDispatcher[] dispatchers;
+    private InputMapper mapper;
+    
+    private float[][] trace;
+    private int sample;
+    private int player;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        ButtonTable table = ButtonTable.createDefault();
+        sinks = new RecordingFrameSink[players];
+        dispatchers = new OutputDispatcher[players];
+        for (int slot = 0; slot < players; slot++) {
+            VirtualXboxController controller = new VirtualXboxController(new Context(), table, slot);
+            sinks[slot] = new RecordingFrameSink();
+            controller.createWithSink(sinks[slot], slot);
+            dispatchers[slot] = new OutputDispatcher(controller);
+            if (outputThreads) {
+                dispatchers[slot].start();
+            }
+            if (slot == 0) {
+                mapper = new InputMapper(table, controller, dispatchers[slot]);
+            } else {
+                mapper.attachSlot(slot, controller, dispatchers[slot], false);
+            }
+        }
+        trace = Traces.stickCircle(SAMPLES, 0.8f, 1);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int slot = 0; slot < players; slot++) {
+            dispatchers[slot].stop();
+            System.out.println("\n" + getClass().getSimpleName() + " player " + (slot + 1) + ": "
+                + sinks[slot].summary());
+        }
+    }
+    
+    // Левый стик, 200 Гц на игрока, игроки чередуются
+    @Benchmark
+    public boolean stickRoundRobin() {
+        int slot = player;
+        player = slot + 1 == players ? 0 : slot + 1;
+        int i = sample;
+        if (slot == 0) {
+            sample = i + 1 == SAMPLES ? 0 : i + 1;
+        }
+        return mapper.onJoystick(slot, DeviceRegistry.ROLE_LEFT, trace[0][i], trace[1][i], 0, 0,
+            System.nanoTime());
+    }
+}
\ No newline at end of file
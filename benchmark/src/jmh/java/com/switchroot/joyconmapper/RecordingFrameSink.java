@@ -0,0 +1,27 @@
+package com.switchroot.joyconmapper;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Получатель кадров для хоста: вместо write() в uinput только считает
+// вызовы и события, как если бы каждый кадр был одним системным вызовом
+final class RecordingFrameSink implements FrameSink {
+    // Размер struct input_event на 64-битном Linux
+    private static final int INPUT_EVENT_SIZE = 24;
+    
+    final AtomicLong writes = new AtomicLong();
+    final AtomicLong events = new AtomicLong();
+    
+    @Override
+    public int writeFrame(int fd, int[] frame, int count) {
+        writes.incrementAndGet();
+        // + SYN_REPORT, который добавляет native код
+        events.addAndGet(count + 1);
+        return (count + 1) * INPUT_EVENT_SIZE;
+    }
+    
+    String summary() {
+        long w = writes.get();
+        return "writes=" + w + " events=" + events.get()
+            + " events/write=" + (w == 0 ? 0 : (double) events.get() / w);
+    }
+}
\ No newline at end of file
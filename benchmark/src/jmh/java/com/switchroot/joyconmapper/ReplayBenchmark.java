@@ -0,0 +1,87 @@
+package com.switchroot.joyconmapper;
+
+import android.content.Context;
+import android.view.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Прогон записанной трассы через весь конвейер с максимальной скоростью.
+// Трасса с устройства: gradle -p benchmark jmh -Djcm.trace=/path/trace.jcmt
+// Без неё используется синтетическая: 10 секунд двух стиков на 200 Гц
+// с нажатиями кнопок.
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReplayBenchmark {
+    private static final int SYNTHETIC_SECONDS = 10;
+    
+    private RecordingFrameSink sink;
+    private OutputDispatcher dispatcher;
+    private InputMapper mapper;
+    private TraceReplayer replayer;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ButtonTable table = ButtonTable.createDefault();
+        VirtualXboxController controller = new VirtualXboxController(new Context(), table);
+        sink = new RecordingFrameSink();
+        controller.createWithSink(sink, 0);
+        dispatcher = new OutputDispatcher(controller);
+        dispatcher.start();
+        mapper = new InputMapper(table, controller, dispatcher);
+        
+        String path = System.getProperty("jcm.trace");
+        File file = path != null ? new File(path) : writeSyntheticTrace();
+        replayer = TraceReplayer.open(file);
+        System.out.println("\nReplaying " + file + ": " + replayer.count() + " records, "
+            + replayer.durationNanos() / 1_000_000 + " ms");
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dispatcher.stop();
+        System.out.println("\n" + getClass().getSimpleName() + ": " + sink.summary());
+        System.out.println(MapperStats.get().format());
+    }
+    
+    // Время прогона всей трассы; латентность - в выводе MapperStats
+    @Benchmark
+    public int replayFastest() {
+        return replayer.replay(mapper, false);
+    }
+    
+    private static File writeSyntheticTrace() throws IOException {
+        File file = File.createTempFile("jcm-synthetic", ".jcmt");
+        file.deleteOnExit();
+        
+        int samples = Traces.STICK_RATE_HZ;
+        float[][] left = Traces.stickCircle(samples, 0.8f, 1);
+        float[][] right = Traces.stickCircle(samples, 0.5f, 2);
+        long period = 1_000_000_000L / Traces.STICK_RATE_HZ;
+        
+        TraceRecorder recorder = TraceRecorder.open(file, TraceRecorder.DEFAULT_CAPACITY);
+        long time = 0;
+        for (int n = 0; n < SYNTHETIC_SECONDS * samples; n++) {
+            int i = n % samples;
+            recorder.recordStick(DeviceRegistry.ROLE_LEFT, left[0][i], left[1][i], time);
+            recorder.recordStick(DeviceRegistry.ROLE_RIGHT, right[0][i], right[1][i], time);
+            if ((n & 15) == 0) {
+                // Нажатие и отпускание одной пары - одна и та же кнопка
+                int m = (n >> 5) % Traces.MASH_SCAN_CODES.length;
+                int action = (n & 16) == 0 ? KeyEvent.ACTION_DOWN : KeyEvent.ACTION_UP;
+                recorder.recordKey(DeviceRegistry.ROLE_RIGHT, Traces.MASH_SCAN_CODES[m],
+                    Traces.MASH_KEY_CODES[m], action, time);
+            }
+            time += period;
+        }
+        recorder.close();
+        return file;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.switchroot.joyconmapper;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Обработка одного сэмпла стика: калибровка и кривая отклика.
+// lutStage - путь InputMapper (целые числа и таблица), doubleStage - та же
+// кривая, посчитанная на каждом сэмпле в double, для сравнения.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StickBenchmark {
+    private static final int SAMPLES = Traces.STICK_RATE_HZ;
+    
+    @Param({ "linear", "expo:0.5", "points:0.2=0.1,0.6=0.5" })
+    public String curveSpec;
+    
+    private ResponseCurve curve;
+    private CalibrationLearner learner;
+    private int[] xs;
+    private int[] ys;
+    private final int[] out = new int[2];
+    private double expo;
+    private int sample;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        curve = ResponseCurve.parse(curveSpec);
+        expo = curveSpec.startsWith("expo:") ? Double.parseDouble(curveSpec.substring(5)) : 0;
+        learner = new CalibrationLearner("benchmark",
+            new StickCalibration(900, -700, 29000, 30000, 31000, 28000, 400));
+        float[][] trace = Traces.stickCircle(SAMPLES, 0.8f, 1);
+        xs = new int[SAMPLES];
+        ys = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            xs[i] = (int) (trace[0][i] * 32767);
+            ys[i] = (int) (trace[1][i] * 32767);
+        }
+    }
+    
+    @Benchmark
+    public int lutStage() {
+        int i = nextSample();
+        learner.observe(xs[i], ys[i]);
+        learner.current().apply(xs[i], ys[i], out, 0);
+        return curve.apply(out[0]) + curve.apply(out[1]);
+    }
+    
+    @Benchmark
+    public int doubleStage() {
+        int i = nextSample();
+        double x = (xs[i] - 900) / 29000.0;
+        double y = (ys[i] + 700) / 31000.0;
+        if (Math.sqrt(x * x + y * y) < 400 / 32767.0) {
+            return 0;
+        }
+        return (int) (shape(x) * 32767) + (int) (shape(y) * 32767);
+    }
+    
+    private double shape(double v) {
+        double a = Math.min(1, Math.abs(v));
+        double y = (1 - expo) * a + expo * Math.pow(a, 3);
+        return v < 0 ? -y : y;
+    }
+    
+    private int nextSample() {
+        int i = sample;
+        sample = i + 1 == SAMPLES ? 0 : i + 1;
+        return i;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.switchroot.joyconmapper;
+
+// Синтетические трассы входных событий для бенчмарков
+final class Traces {
+    // Частота опроса Joy-Con на устройствах
+    static final int STICK_RATE_HZ = 200;
+    
+    // Одна секунда движения стика по кругу с шумом покоя у центра,
+    // как у реального Joy-Con при 200 Гц
+    static float[][] stickCircle(int samples, float radius, long seed) {
+        float[] x = new float[samples];
+        float[] y = new float[samples];
+        java.util.Random random = new java.util.Random(seed);
+        for (int i = 0; i < samples; i++) {
+            double angle = 2 * Math.PI * i / samples;
+            float noise = (random.nextFloat() - 0.5f) * 0.01f;
+            x[i] = (float) (radius * Math.cos(angle)) + noise;
+            y[i] = (float) (radius * Math.sin(angle)) + noise;
+        }
+        return new float[][] { x, y };
+    }
+    
+    // Скан-коды кнопок, по которым "долбит" игрок: A, B, X, Y, ZR
+    static final int[] MASH_SCAN_CODES = { 304, 305, 308, 307, 313 };
+    static final int[] MASH_KEY_CODES = { 96, 97, 99, 100, 105 };
+    
+    private Traces() {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.switchroot.joyconmapper;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.view.KeyEvent;
+import java.lang.management.ManagementFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+// Путь кнопки на потоке колбэков не должен выделять память: ни боксинга
+// скан-кодов, ни объектов событий. Считаются байты, выделенные текущим
+// потоком, после прогрева JIT; поток вывода в подсчёт не входит.
+public class InputMapperAllocationTest {
+    private static final int WARMUP = 200_000;
+    private static final int EVENTS = 100_000;
+    // Вне диапазона ButtonTable
+    private static final int UNMAPPED_SCAN_CODE = 1;
+    
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private RecordingFrameSink sink;
+    private OutputDispatcher dispatcher;
+    private InputMapper mapper;
+    
+    @Before
+    public void setUp() {
+        ButtonTable table = ButtonTable.createDefault();
+        VirtualXboxController controller = new VirtualXboxController(new Context(), table);
+        sink = new RecordingFrameSink();
+        controller.createWithSink(sink, 0);
+        dispatcher = new OutputDispatcher(controller);
+        dispatcher.start();
+        mapper = new InputMapper(table, controller, dispatcher);
+    }
+    
+    @After
+    public void tearDown() {
+        dispatcher.stop();
+    }
+    
+    @Test
+    public void onKeyDoesNotAllocate() {
+        mash(WARMUP);
+        // Сам замер тоже может выделять: вычитаем пустой замер
+        long idle = allocatedBy(0);
+        long mashing = allocatedBy(EVENTS);
+        assertEquals("bytes allocated by " + EVENTS + " key events", idle, mashing);
+    }
+    
+    private long allocatedBy(int events) {
+        long tid = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(tid);
+        mash(events);
+        return threads.getThreadAllocatedBytes(tid) - before;
+    }
+    
+    // Нажатие и отпускание по кругу кнопок из трассы бенчмарка,
+    // каждое восьмое событие - скан-код без маппинга
+    private void mash(int events) {
+        for (int i = 0; i < events; i++) {
+            int button = (i >> 1) % Traces.MASH_SCAN_CODES.length;
+            int action = (i & 1) == 0 ? KeyEvent.ACTION_DOWN : KeyEvent.ACTION_UP;
+            if ((i & 7) == 7) {
+                mapper.onKey(UNMAPPED_SCAN_CODE, 0, action, i);
+            } else {
+                mapper.onKey(Traces.MASH_SCAN_CODES[button], Traces.MASH_KEY_CODES[button], action, i);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,175 @@
+package com.switchroot.joyconmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.view.KeyEvent;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+// MacroEngine на тестовых часах: какие фронты выходят, в каком порядке, с
+// каким временем события и насколько позже срока они отправлены.
+public class MacroEngineTest {
+    private static final long MS = 1_000_000L;
+    
+    private static final class Edge {
+        final int button;
+        final int keyCode;
+        final int value;
+        final long eventTime;
+        final boolean synthetic;
+        final long emittedAt;
+        
+        Edge(int button, int keyCode, int value, long eventTime, boolean synthetic, long emittedAt) {
+            this.button = button;
+            this.keyCode = keyCode;
+            this.value = value;
+            this.eventTime = eventTime;
+            this.synthetic = synthetic;
+            this.emittedAt = emittedAt;
+        }
+    }
+    
+    private final List<Edge> edges = new ArrayList<>();
+    private long clock;
+    private final MacroEngine engine = new MacroEngine((button, keyCode, value, eventTimeNanos, synthetic) -> {
+        edges.add(new Edge(button, keyCode, value, eventTimeNanos, synthetic, clock));
+        return 1;
+    });
+    
+    @Test
+    public void turboKeepsGridAndRecordsLateness() throws IOException {
+        load("turbo A = 10\n");
+        press(LinuxInput.BTN_A, KeyEvent.KEYCODE_BUTTON_A, 0);
+        // Первое нажатие - ответ на физическое, сразу
+        assertEdge(0, LinuxInput.BTN_A, 1, 0, false);
+        assertEquals(50 * MS, engine.nextDeadline());
+        
+        advance(50 * MS);
+        assertEdge(1, LinuxInput.BTN_A, 0, 50 * MS, true);
+        // Опоздание на 3 мс не сдвигает сетку
+        advance(103 * MS);
+        assertEdge(2, LinuxInput.BTN_A, 1, 100 * MS, true);
+        assertEquals(3 * MS, edges.get(2).emittedAt - edges.get(2).eventTime);
+        assertEquals(150 * MS, engine.nextDeadline());
+        advance(150 * MS);
+        assertEdge(3, LinuxInput.BTN_A, 0, 150 * MS, true);
+        
+        // Проспали больше полупериода: один фронт, сетка от момента пробуждения
+        advance(400 * MS);
+        assertEquals(5, edges.size());
+        assertEdge(4, LinuxInput.BTN_A, 1, 200 * MS, true);
+        assertEquals(450 * MS, engine.nextDeadline());
+        
+        release(LinuxInput.BTN_A, KeyEvent.KEYCODE_BUTTON_A, 410 * MS);
+        assertEdge(5, LinuxInput.BTN_A, 0, 410 * MS, false);
+        assertEquals(Long.MAX_VALUE, engine.nextDeadline());
+        assertTrue(engine.describe(), engine.describe().contains("lateness(us) n=4 "));
+        assertTrue(engine.describe(), engine.describe().endsWith("max=200000"));
+    }
+    
+    @Test
+    public void chordRunsMacroStepsAtExactDeadlines() throws IOException {
+        load("chord TL+TR = dash\nmacro dash = DPAD_RIGHT 30, 40, X 20\n");
+        press(LinuxInput.BTN_TL, KeyEvent.KEYCODE_BUTTON_L1, 0);
+        press(LinuxInput.BTN_TR, KeyEvent.KEYCODE_BUTTON_R1, 1 * MS);
+        assertEquals(3, edges.size());
+        assertEdge(0, LinuxInput.BTN_TL, 1, 0, false);
+        assertEdge(1, LinuxInput.BTN_TR, 1, 1 * MS, false);
+        // Кнопку жмёт только макрос: код по умолчанию, а не 0
+        assertEdge(2, LinuxInput.BTN_DPAD_RIGHT, 1, 1 * MS, true);
+        assertEquals(KeyEvent.KEYCODE_DPAD_RIGHT, edges.get(2).keyCode);
+        
+        advance(31 * MS);
+        assertEdge(3, LinuxInput.BTN_DPAD_RIGHT, 0, 31 * MS, true);
+        // Пауза 40 мс от срока отпускания; advance опоздал на 4 мс
+        assertEquals(71 * MS, engine.nextDeadline());
+        advance(75 * MS);
+        assertEdge(4, LinuxInput.BTN_X, 1, 71 * MS, true);
+        assertEquals(KeyEvent.KEYCODE_BUTTON_X, edges.get(4).keyCode);
+        assertEquals(75 * MS, edges.get(4).emittedAt);
+        // Удержание 20 мс считается от срока шага, а не от опоздавшего advance
+        assertEquals(91 * MS, engine.nextDeadline());
+        advance(91 * MS);
+        assertEdge(5, LinuxInput.BTN_X, 0, 91 * MS, true);
+        assertEquals(6, edges.size());
+        assertEquals(Long.MAX_VALUE, engine.nextDeadline());
+        assertTrue(engine.describe(), engine.describe().contains("macros=1 "));
+    }
+    
+    @Test
+    public void buttonHeldByFingerAndMacroIsReleasedOnceLast() throws IOException {
+        load("chord TL+TR = hold\nmacro hold = A 50\n");
+        press(LinuxInput.BTN_A, KeyEvent.KEYCODE_BUTTON_A, 0);
+        press(LinuxInput.BTN_TL, KeyEvent.KEYCODE_BUTTON_L1, 1 * MS);
+        press(LinuxInput.BTN_TR, KeyEvent.KEYCODE_BUTTON_R1, 1 * MS);
+        // A уже зажата пальцем: нажатие макроса ничего не отправляет
+        assertEquals(3, edges.size());
+        
+        release(LinuxInput.BTN_A, KeyEvent.KEYCODE_BUTTON_A, 10 * MS);
+        assertEquals(3, edges.size());
+        // Повторный аккорд во время макроса его не перезапускает
+        release(LinuxInput.BTN_TR, KeyEvent.KEYCODE_BUTTON_R1, 20 * MS);
+        press(LinuxInput.BTN_TR, KeyEvent.KEYCODE_BUTTON_R1, 21 * MS);
+        assertEquals(5, edges.size());
+        
+        advance(51 * MS);
+        assertEquals(6, edges.size());
+        assertEdge(5, LinuxInput.BTN_A, 0, 51 * MS, true);
+        assertTrue(engine.describe(), engine.describe().contains("macros=1 "));
+    }
+    
+    @Test
+    public void programSwitchDropsSyntheticStateAndKeepsPhysical() throws IOException {
+        load("turbo B = 10\n");
+        press(LinuxInput.BTN_B, KeyEvent.KEYCODE_BUTTON_B, 0);
+        press(LinuxInput.BTN_X, KeyEvent.KEYCODE_BUTTON_X, 0);
+        advance(50 * MS);
+        assertEdge(2, LinuxInput.BTN_B, 0, 50 * MS, true);
+        
+        // B больше не турбо, но всё ещё зажата пальцем: снова нажата
+        engine.setProgram(MacroProgram.EMPTY);
+        advance(60 * MS);
+        assertEquals(4, edges.size());
+        assertEdge(3, LinuxInput.BTN_B, 1, 60 * MS, true);
+        assertEquals(Long.MAX_VALUE, engine.nextDeadline());
+        
+        release(LinuxInput.BTN_B, KeyEvent.KEYCODE_BUTTON_B, 70 * MS);
+        release(LinuxInput.BTN_X, KeyEvent.KEYCODE_BUTTON_X, 70 * MS);
+        assertEdge(4, LinuxInput.BTN_B, 0, 70 * MS, false);
+        assertEdge(5, LinuxInput.BTN_X, 0, 70 * MS, false);
+    }
+    
+    private void load(String profile) throws IOException {
+        engine.setProgram(ProfileParser.parse("test", new BufferedReader(new StringReader(profile)),
+            ButtonTable.createDefault()).macros);
+    }
+    
+    // Физическое событие: время события совпадает с моментом обработки
+    private void press(int button, int keyCode, long now) {
+        clock = now;
+        engine.onButton(button, keyCode, 1, now, now);
+    }
+    
+    private void release(int button, int keyCode, long now) {
+        clock = now;
+        engine.onButton(button, keyCode, 0, now, now);
+    }
+    
+    private void advance(long now) {
+        clock = now;
+        engine.advance(now);
+    }
+    
+    private void assertEdge(int index, int button, int value, long eventTime, boolean synthetic) {
+        Edge edge = edges.get(index);
+        assertEquals("button of edge " + index, button, edge.button);
+        assertEquals("value of edge " + index, value, edge.value);
+        assertEquals("time of edge " + index, eventTime, edge.eventTime);
+        assertEquals("synthetic of edge " + index, synthetic, edge.synthetic);
+    }
+}
\ No newline at end of file
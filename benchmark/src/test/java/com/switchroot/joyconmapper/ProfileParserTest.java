@@ -0,0 +1,158 @@
+package com.switchroot.joyconmapper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+
+// Разбор профилей: строки button, axis, name и games поверх таблицы по
+// умолчанию, строки turbo, macro и chord, ошибки формата с номером строки.
+public class ProfileParserTest {
+    private final ButtonTable defaults = ButtonTable.createDefault();
+    
+    @Test
+    public void validLinesOverlayDefaultTable() throws IOException {
+        MappingProfile profile = parse(
+            "# Платформер\n"
+            + "name = Platformer\n"
+            + "\n"
+            + "button A = B            # комментарий в конце строки\n"
+            + "button mode = none\n"
+            + "button 309 = START\n"
+            + "games = com.example.game, com.example.other ,\n");
+        
+        assertEquals("Platformer", profile.name);
+        assertEquals(LinuxInput.BTN_B, profile.lookup(LinuxInput.BTN_A));
+        assertEquals(ButtonTable.UNMAPPED, profile.lookup(LinuxInput.BTN_MODE));
+        assertEquals(LinuxInput.BTN_START, profile.lookup(309));
+        // Строки без переназначения оставляют таблицу по умолчанию
+        assertEquals(defaults.lookup(305), profile.lookup(305));
+        assertEquals(defaults.lookup(544), profile.lookup(544));
+        assertArrayEquals(new String[] { "com.example.game", "com.example.other" }, profile.games());
+        assertArrayEquals(MappingProfile.identityAxes(), profile.toAxisSourceArray());
+        assertSame(MacroProgram.EMPTY, profile.macros);
+    }
+    
+    @Test
+    public void emptyProfileKeepsFileNameAndDefaults() throws IOException {
+        MappingProfile profile = parse("# только комментарий\n\n");
+        assertEquals("file", profile.name);
+        assertArrayEquals(defaults.toArray(), profile.toButtonArray());
+        assertArrayEquals(new int[] { 1, 1, 1, 1 }, profile.toAxisScaleArray());
+        assertArrayEquals(new String[0], profile.games());
+    }
+    
+    @Test
+    public void axisLinesSwapAndInvert() throws IOException {
+        MappingProfile profile = parse(
+            "axis LX = -LY\n"
+            + "axis ly = LX\n"
+            + "axis RY = - RY\n");
+        
+        assertArrayEquals(new int[] { StickFilter.AXIS_LY, StickFilter.AXIS_LX, StickFilter.AXIS_RX, StickFilter.AXIS_RY },
+            profile.toAxisSourceArray());
+        assertArrayEquals(new int[] { -1, 1, 1, -1 }, profile.toAxisScaleArray());
+        
+        int[] sticks = new int[8];
+        int base = 4;
+        sticks[base + StickFilter.AXIS_LX] = 100;
+        sticks[base + StickFilter.AXIS_LY] = 200;
+        sticks[base + StickFilter.AXIS_RX] = 300;
+        sticks[base + StickFilter.AXIS_RY] = 400;
+        assertEquals(-200, profile.axis(StickFilter.AXIS_LX, sticks, base));
+        assertEquals(100, profile.axis(StickFilter.AXIS_LY, sticks, base));
+        assertEquals(300, profile.axis(StickFilter.AXIS_RX, sticks, base));
+        assertEquals(-400, profile.axis(StickFilter.AXIS_RY, sticks, base));
+    }
+    
+    @Test
+    public void unknownKeysAreRejected() {
+        assertError("name = x\nbuttons A = B\n", "line 2: unknown key 'buttons A'");
+        assertError("button = B\n", "line 1: unknown key 'button'");
+        assertError("button A B = X\n", "line 1: unknown key 'button A B'");
+        assertError("deadzone = 10\n", "line 1: unknown key 'deadzone'");
+    }
+    
+    @Test
+    public void errorsCarryLineNumbers() {
+        assertError("\n# comment\nbutton A B\n", "line 3: expected '='");
+        assertError("name =\n", "line 1: empty name");
+        assertError("button PLUS = A\n", "line 1: unknown button 'PLUS'");
+        assertError("button 303 = A\n", "line 1: scan code out of range: 303");
+        assertError("button 548 = A\n", "line 1: scan code out of range: 548");
+        assertError("button A = C\n", "line 1: unknown target button 'C'");
+        assertError("axis LX = LZ\n", "line 1: unknown axis 'LZ'");
+        assertError("\n\naxis Z = LX\n", "line 3: unknown axis 'Z'");
+    }
+    
+    @Test
+    public void turboMacroAndChordLinesCompile() throws IOException {
+        MappingProfile profile = parse(
+            "turbo A = 20\n"
+            + "chord MODE+SELECT = dash\n"
+            + "macro dash = DPAD_RIGHT 30, 40, TL+TR 100\n");
+        MacroProgram macros = profile.macros;
+        
+        int a = MacroProgram.bit(LinuxInput.BTN_A);
+        assertEquals(1L << a, macros.turboMask);
+        assertEquals(25_000_000L, macros.turboHalfPeriodNanos(a));
+        
+        assertEquals(1, macros.macroCount());
+        assertEquals("dash", macros.macroName(0));
+        int right = MacroProgram.bit(LinuxInput.BTN_DPAD_RIGHT);
+        int tl = MacroProgram.bit(LinuxInput.BTN_TL);
+        int tr = MacroProgram.bit(LinuxInput.BTN_TR);
+        // Кнопки шага жмутся по очереди, задержка после последней; отпускаются сразу после
+        assertArrayEquals(new int[] {
+            MacroProgram.pressStep(right, 30), MacroProgram.releaseStep(right, 0),
+            MacroProgram.pauseStep(40),
+            MacroProgram.pressStep(tl, 0), MacroProgram.pressStep(tr, 100),
+            MacroProgram.releaseStep(tl, 0), MacroProgram.releaseStep(tr, 0) }, macros.steps(0));
+        
+        // Аккорд ссылается на макрос, объявленный ниже
+        assertEquals(1, macros.chordCount());
+        assertEquals((1L << MacroProgram.bit(LinuxInput.BTN_MODE)) | (1L << MacroProgram.bit(LinuxInput.BTN_SELECT)),
+            macros.chordMask(0));
+        assertEquals(0, macros.chordMacro(0));
+    }
+    
+    @Test
+    public void macroErrorsCarryLineNumbers() {
+        assertError("turbo A+B = 10\n", "line 1: turbo takes one button");
+        assertError("turbo A = 0\n", "line 1: turbo rate out of range 1..100 Hz: 0");
+        assertError("turbo A = 101\n", "line 1: turbo rate out of range 1..100 Hz: 101");
+        assertError("turbo A = fast\n", "line 1: expected a number, got 'fast'");
+        assertError("chord A = x\nmacro x = B 10\n", "line 1: chord needs at least two buttons");
+        assertError("macro x = A 10\nchord A+B = missing\n", "line 2: unknown macro 'missing'");
+        assertError("macro x = A 10\nmacro x = B 10\n", "line 2: duplicate macro 'x'");
+        assertError("macro x = A\n", "line 1: expected 'BUTTON ms' in macro step 'A'");
+        assertError("macro x = A -5\n", "line 1: delay out of range: -5");
+        assertError("macro x = NONE 10\n", "line 1: button 'NONE' cannot be used here");
+        
+        StringBuilder many = new StringBuilder();
+        for (int i = 0; i <= MacroProgram.MAX_MACROS; i++) {
+            many.append("macro m").append(i).append(" = A 10\n");
+        }
+        assertError(many.toString(), "line " + (MacroProgram.MAX_MACROS + 1) + ": too many macros");
+    }
+    
+    private MappingProfile parse(String text) throws IOException {
+        return ProfileParser.parse("file", new BufferedReader(new StringReader(text)), defaults);
+    }
+    
+    private void assertError(String text, String message) {
+        try {
+            parse(text);
+            fail("expected error: " + message);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,128 @@
+package com.switchroot.joyconmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// ShellInjector против настоящего /bin/sh: preamble подменяет команду input
+// функцией, которая дописывает аргументы в файл. Так видно, какие команды
+// дошли до shell, в каком порядке и что стало после смерти сессии.
+public class ShellInjectorTest {
+    private static final long WAIT_MS = 2000;
+    // Код клавиши, на котором подменённый input завершает shell
+    private static final int EXIT_KEY = 999;
+    
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    
+    private File log;
+    private ShellInjector injector;
+    
+    @Before
+    public void setUp() throws IOException {
+        log = folder.newFile("input.log");
+        injector = new ShellInjector("/bin/sh");
+        injector.setPreamble("input() { [ \"$2\" = " + EXIT_KEY + " ] && exit; echo \"$*\" >> '"
+            + log.getAbsolutePath() + "'; }");
+    }
+    
+    @After
+    public void tearDown() {
+        injector.stop();
+    }
+    
+    @Test
+    public void flushSendsKeysInOrderAndLatestMotion() throws Exception {
+        assertTrue(injector.start());
+        assertEquals(1, injector.enqueueKey(96));
+        assertEquals(1, injector.enqueueKey(97));
+        injector.enqueueMotion(0.1f, 0.2f, 0.3f, 0.4f);
+        injector.enqueueMotion(0.5f, -0.5f, 0f, 1f);
+        
+        assertEquals(3, injector.flush());
+        assertEquals(Arrays.asList(
+            "keyevent 96",
+            "keyevent 97",
+            "joystick 0.500000 -0.500000 0.000000 1.000000"), awaitLines(3));
+        // Пустая очередь - ни одного write()
+        assertEquals(0, injector.flush());
+        assertTrue(dump().contains("commands=3 flushes=1 coalesced=1 dropped=0 errors=0 restarts=0"));
+    }
+    
+    @Test
+    public void fullQueueDropsNewKeys() throws Exception {
+        assertTrue(injector.start());
+        for (int i = 0; i < ShellInjector.QUEUE_CAPACITY; i++) {
+            assertEquals(1, injector.enqueueKey(i));
+        }
+        assertEquals(-1, injector.enqueueKey(1000));
+        
+        assertEquals(ShellInjector.QUEUE_CAPACITY, injector.flush());
+        List<String> lines = awaitLines(ShellInjector.QUEUE_CAPACITY);
+        assertEquals("keyevent 0", lines.get(0));
+        assertEquals("keyevent " + (ShellInjector.QUEUE_CAPACITY - 1), lines.get(lines.size() - 1));
+        assertTrue(dump().contains("dropped=1"));
+    }
+    
+    @Test
+    public void deadSessionIsRestartedAndBatchRetried() throws Exception {
+        assertTrue(injector.start());
+        injector.enqueueKey(EXIT_KEY);
+        assertEquals(1, injector.flush());
+        assertFalse("shell should exit on the exit key", injector.awaitAlive(WAIT_MS));
+        
+        injector.enqueueKey(96);
+        assertEquals(1, injector.flush());
+        // Новая сессия снова выполнила preamble, пачка дошла после перезапуска
+        assertEquals(Collections.singletonList("keyevent 96"), awaitLines(1));
+        assertTrue(injector.isAlive());
+        assertTrue(dump().contains("errors=0 restarts=1"));
+    }
+    
+    @Test
+    public void missingShellFailsWithoutThrowing() {
+        ShellInjector missing = new ShellInjector("/nonexistent/sh");
+        assertFalse(missing.start());
+        assertFalse(missing.isAlive());
+        assertFalse(missing.awaitAlive(10));
+        
+        missing.enqueueKey(96);
+        assertEquals(-1, missing.flush());
+        StringWriter out = new StringWriter();
+        missing.dump(new PrintWriter(out, true));
+        // Ошибка первого start() и неудачный перезапуск во flush()
+        assertTrue(out.toString().contains("commands=0 flushes=0 coalesced=0 dropped=0 errors=3 restarts=1"));
+    }
+    
+    private String dump() {
+        StringWriter out = new StringWriter();
+        injector.dump(new PrintWriter(out, true));
+        return out.toString();
+    }
+    
+    // Shell выполняет пачку асинхронно: ждём, пока в файле появятся все строки
+    private List<String> awaitLines(int count) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        List<String> lines = Files.readAllLines(log.toPath(), StandardCharsets.UTF_8);
+        while (lines.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            lines = Files.readAllLines(log.toPath(), StandardCharsets.UTF_8);
+        }
+        return lines;
+    }
+}
\ No newline at end of file
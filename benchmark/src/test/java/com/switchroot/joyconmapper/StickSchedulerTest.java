@@ -0,0 +1,144 @@
+package com.switchroot.joyconmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+// Кольцо и ящик переполнения StickScheduler: поток вывода стоит, а поток
+// ввода продолжает подавать сэмплы. Время на фиктивной шкале, poll() и
+// waitNanos() получают его явно.
+public class StickSchedulerTest {
+    private static final long PERIOD_NANOS = 5_000_000L;
+    // 64 сэмпла в кольце, остальные через ящик переполнения
+    private static final int STALLED_SAMPLES = 201;
+    private static final long CENTRE = 0;
+    
+    @Test
+    public void stalledSchedulerEndsOnCentre() {
+        StickScheduler scheduler = new StickScheduler(StickScheduler.MODE_FIXED, 200, 0);
+        long last = offerStalled(scheduler);
+        
+        long now = last + PERIOD_NANOS;
+        long emitted = -1;
+        int frames = 0;
+        while (scheduler.poll(now)) {
+            emitted = scheduler.sticks;
+            assertEquals(last, scheduler.sampleTime);
+            frames++;
+            now += PERIOD_NANOS;
+        }
+        // Кольцо схлопнуто до последнего сэмпла, и это возврат в центр из ящика
+        assertEquals(1, frames);
+        assertEquals(CENTRE, emitted);
+        assertEquals(0, scheduler.waitNanos(now));
+        assertTrue(scheduler.describe().endsWith("dropped=" + (STALLED_SAMPLES - 64 - 1)));
+    }
+    
+    @Test
+    public void passthroughKeepsRingOrderThenOverflow() {
+        StickScheduler scheduler = new StickScheduler(StickScheduler.MODE_PASSTHROUGH, 200, 0);
+        long last = offerStalled(scheduler);
+        
+        List<Long> times = new ArrayList<>();
+        while (scheduler.poll(0)) {
+            times.add(scheduler.sampleTime);
+            if (scheduler.sampleTime == last) {
+                assertEquals(CENTRE, scheduler.sticks);
+            } else {
+                assertEquals(stick(times.size() - 1), scheduler.sticks);
+            }
+        }
+        assertEquals(65, times.size());
+        for (int i = 0; i < 64; i++) {
+            assertEquals(time(i), (long) times.get(i));
+        }
+        assertEquals(last, (long) times.get(64));
+    }
+    
+    @Test
+    public void ringSpaceTakesOverflowBeforeNewSample() {
+        StickScheduler scheduler = new StickScheduler(StickScheduler.MODE_PASSTHROUGH, 200, 0);
+        for (int i = 0; i < 65; i++) {
+            scheduler.offer(stick(i), time(i));
+        }
+        // Поток вывода забрал два сэмпла: сэмпл из ящика встаёт в кольцо перед новым
+        assertTrue(scheduler.poll(0));
+        assertTrue(scheduler.poll(0));
+        scheduler.offer(stick(65), time(65));
+        
+        long expected = 2;
+        while (scheduler.poll(0)) {
+            assertEquals(time((int) expected), scheduler.sampleTime);
+            expected++;
+        }
+        assertEquals(66, expected);
+    }
+    
+    // Производитель постоянно переполняет кольцо, поток вывода забирает.
+    // Значение и время каждого сэмпла - один и тот же номер, и пара из ящика
+    // переполнения не должна смешивать два сэмпла
+    @Test
+    public void overflowPairIsNeverTorn() throws InterruptedException {
+        StickScheduler scheduler = new StickScheduler(StickScheduler.MODE_PASSTHROUGH, 200, 0);
+        int samples = 200_000;
+        AtomicBoolean done = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= samples; i++) {
+                scheduler.offer(i, i);
+            }
+            done.set(true);
+        });
+        producer.start();
+        
+        long previous = 0;
+        long taken = 0;
+        for (;;) {
+            // done читается до poll(): после него все сэмплы уже поданы
+            boolean finished = done.get();
+            if (!scheduler.poll(0)) {
+                if (finished) {
+                    break;
+                }
+                continue;
+            }
+            if (scheduler.sticks != scheduler.sampleTime) {
+                fail("torn sample: sticks=" + scheduler.sticks + " time=" + scheduler.sampleTime);
+            }
+            assertTrue("out of order: " + scheduler.sampleTime + " after " + previous,
+                scheduler.sampleTime > previous);
+            previous = scheduler.sampleTime;
+            taken++;
+        }
+        producer.join();
+        assertFalse(scheduler.poll(0));
+        // Последний сэмпл не теряется
+        assertEquals(samples, previous);
+        assertTrue(taken > 0);
+    }
+    
+    // Поток вывода не вызывает poll(): кольцо заполняется, остальное идёт в
+    // ящик. Последний сэмпл - стик в центре. Возвращает время последнего
+    private static long offerStalled(StickScheduler scheduler) {
+        for (int i = 0; i < STALLED_SAMPLES - 1; i++) {
+            scheduler.offer(stick(i), time(i));
+        }
+        long last = time(STALLED_SAMPLES - 1);
+        scheduler.offer(CENTRE, last);
+        return last;
+    }
+    
+    // Левый стик отклонён, значение зависит от номера сэмпла
+    private static long stick(int i) {
+        return 1000 + i;
+    }
+    
+    private static long time(int i) {
+        return 1_000_000_000L + i * PERIOD_NANOS;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+package com.switchroot.joyconmapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+// TimerWheel на тестовых часах: точное время срабатывания, таймеры дальше
+// оборота колеса (128 мс), отмена во время срабатывания и курсор, отставший
+// от часов, пока колесо стояло пустым.
+public class TimerWheelTest {
+    private static final long MS = 1_000_000L;
+    
+    // Сработавший таймер: payload, срок и время advance
+    private final List<long[]> fired = new ArrayList<>();
+    private final TimerWheel.Expiry record = (payload, deadline, now) -> fired.add(new long[] { payload, deadline, now });
+    
+    @Test
+    public void firesAtDeadlineInTickOrder() {
+        TimerWheel wheel = new TimerWheel(8);
+        wheel.schedule(3 * MS, 1);
+        wheel.schedule(1 * MS, 2);
+        wheel.schedule(2 * MS, 3);
+        assertEquals(3, wheel.size());
+        assertEquals(1 * MS, wheel.nextDeadline());
+        
+        // Тот же тик, но срок ещё не наступил
+        assertEquals(0, wheel.advance(1 * MS - 1, record));
+        assertEquals(2, wheel.advance(2 * MS, record));
+        assertFired(0, 2, 1 * MS, 2 * MS);
+        assertFired(1, 3, 2 * MS, 2 * MS);
+        assertEquals(3 * MS, wheel.nextDeadline());
+        
+        // Опоздавший advance: срок остаётся точным, опоздание видно по now
+        assertEquals(1, wheel.advance(5 * MS, record));
+        assertFired(2, 1, 3 * MS, 5 * MS);
+        assertEquals(0, wheel.size());
+        assertEquals(Long.MAX_VALUE, wheel.nextDeadline());
+    }
+    
+    @Test
+    public void farTimerWaitsPastFullTurns() {
+        TimerWheel wheel = new TimerWheel(8);
+        wheel.schedule(300 * MS, 7);
+        // Дальше оборота: поток проснётся в конце оборота и пересчитает срок
+        assertEquals(128 * MS, wheel.nextDeadline());
+        
+        for (long now = 1 * MS; now < 300 * MS; now += MS) {
+            assertEquals("fired early at " + now, 0, wheel.advance(now, record));
+        }
+        assertEquals(300 * MS, wheel.nextDeadline());
+        assertEquals(1, wheel.advance(300 * MS, record));
+        assertFired(0, 7, 300 * MS, 300 * MS);
+        
+        // advance сразу через несколько оборотов обходит все корзины
+        wheel.schedule(1000 * MS, 8);
+        wheel.schedule(1001 * MS, 9);
+        assertEquals(2, wheel.advance(1500 * MS, record));
+        assertFired(1, 8, 1000 * MS, 1500 * MS);
+        assertFired(2, 9, 1001 * MS, 1500 * MS);
+        assertEquals(0, wheel.size());
+    }
+    
+    @Test
+    public void cancelWhileFiringSkipsTimer() {
+        TimerWheel wheel = new TimerWheel(2);
+        int[] second = new int[1];
+        wheel.schedule(1 * MS, 1);
+        second[0] = wheel.schedule(2 * MS, 2);
+        // Оба таймера уже сняты с корзин в список срабатывания, первый отменяет второй
+        TimerWheel.Expiry cancelling = (payload, deadline, now) -> {
+            fired.add(new long[] { payload, deadline, now });
+            wheel.cancel(second[0]);
+        };
+        assertEquals(1, wheel.advance(3 * MS, cancelling));
+        assertEquals(1, fired.size());
+        assertFired(0, 1, 1 * MS, 3 * MS);
+        assertEquals(0, wheel.size());
+        
+        // Отменённый таймер вернулся в свободные: вся ёмкость снова доступна
+        assertTrue(wheel.schedule(4 * MS, 3) != TimerWheel.NONE);
+        assertTrue(wheel.schedule(4 * MS, 4) != TimerWheel.NONE);
+        assertEquals(TimerWheel.NONE, wheel.schedule(4 * MS, 5));
+        assertEquals(2, wheel.advance(4 * MS, record));
+    }
+    
+    @Test
+    public void staleCursorStillFiresOnTime() {
+        TimerWheel wheel = new TimerWheel(4);
+        // Пустое колесо advance не вызывали: курсор остался на нуле
+        long now = 10_000 * MS;
+        wheel.schedule(now + 1 * MS, 1);
+        // Конец оборота от старого курсора уже в прошлом: поток проснётся сразу
+        assertTrue(wheel.nextDeadline() <= now);
+        assertEquals(0, wheel.advance(now, record));
+        assertEquals(now + 1 * MS, wheel.nextDeadline());
+        
+        // Срок в прошлом ложится в текущую корзину и срабатывает первым advance
+        wheel.schedule(now - 50 * MS, 2);
+        assertEquals(now - 50 * MS, wheel.nextDeadline());
+        assertEquals(2, wheel.advance(now + 1 * MS, record));
+        assertEquals(2, fired.size());
+        assertFiredPayload(2, now - 50 * MS, now + 1 * MS);
+        assertFiredPayload(1, now + 1 * MS, now + 1 * MS);
+    }
+    
+    private void assertFired(int index, int payload, long deadline, long now) {
+        long[] timer = fired.get(index);
+        assertEquals(payload, timer[0]);
+        assertEquals(deadline, timer[1]);
+        assertEquals(now, timer[2]);
+    }
+    
+    // Порядок внутри одной корзины не задан: поиск по payload
+    private void assertFiredPayload(int payload, long deadline, long now) {
+        for (long[] timer : fired) {
+            if (timer[0] == payload) {
+                assertEquals(deadline, timer[1]);
+                assertEquals(now, timer[2]);
+                return;
+            }
+        }
+        throw new AssertionError("timer " + payload + " did not fire");
+    }
+}
\ No newline at end of file